@@ -17,12 +17,27 @@
 package com.frankc.shorturl;
 
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import com.frankc.shorturl.importer.ImportCommand;
 
 @SpringBootApplication
+@EnableScheduling
 public class ShortUrlApplication {
 
     public static void main(final String[] args) {
-        SpringApplication.run(ShortUrlApplication.class, args);
+        if (args.length > 0 && ImportCommand.NAME.equals(args[0])) {
+            // run the import without starting a web server, then exit
+            System.exit(SpringApplication.exit(
+                    new SpringApplicationBuilder(ShortUrlApplication.class)
+                        .web(WebApplicationType.NONE)
+                        .properties(ImportCommand.ENABLED_PROPERTY + "=true")
+                        .run(args)));
+        } else {
+            SpringApplication.run(ShortUrlApplication.class, args);
+        }
     }
 }
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter over Strings.
+ *
+ * Concurrent calls to put and mightContain are safe. False negatives are
+ * never returned for a value that has been put, false positives are returned
+ * at approximately the configured rate while the number of values put stays
+ * below the expected number of insertions. The number of distinct values
+ * put is counted approximately, so a caller can tell when the filter is full.
+ *
+ * @author Frank Callaly
+ */
+public final class ConcurrentBloomFilter {
+
+    private static final long FNV64_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV64_PRIME = 0x100000001b3L;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final int MAX_WORDS = Integer.MAX_VALUE - 8;
+
+    private final AtomicLongArray bits;
+    private final long numBits;
+    private final int numHashFunctions;
+    private final long expectedInsertions;
+    private final AtomicLong approximateCount = new AtomicLong();
+
+    public ConcurrentBloomFilter(final long expectedInsertions,
+                                 final double falsePositiveRate) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException(
+                    "expectedInsertions must be positive");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException(
+                    "falsePositiveRate must be between 0 and 1");
+        }
+
+        long optimalBits = (long) Math.ceil(
+                -expectedInsertions * Math.log(falsePositiveRate)
+                / (Math.log(2) * Math.log(2)));
+        int numWords = (int) Math.min(MAX_WORDS,
+                                      (optimalBits + Long.SIZE - 1)
+                                      / Long.SIZE);
+
+        this.expectedInsertions = expectedInsertions;
+        this.bits = new AtomicLongArray(numWords);
+        this.numBits = (long) numWords * Long.SIZE;
+        this.numHashFunctions = Math.max(1, (int) Math.round(
+                (double) numBits / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param value to add
+     * @return true if the filter changed, i.e. the value was not already
+     *         possibly present
+     */
+    public boolean put(final CharSequence value) {
+        long hash1 = hash(value);
+        long hash2 = mix64(hash1 + GOLDEN_GAMMA);
+        boolean changed = false;
+
+        for (int i = 0; i < numHashFunctions; ++i) {
+            long bitIndex = index(hash1 + i * hash2);
+            int wordIndex = (int) (bitIndex >>> 6);
+            long mask = 1L << bitIndex;
+
+            long word = bits.get(wordIndex);
+            while ((word & mask) == 0) {
+                if (bits.compareAndSet(wordIndex, word, word | mask)) {
+                    changed = true;
+                    break;
+                }
+                word = bits.get(wordIndex);
+            }
+        }
+        if (changed) {
+            approximateCount.incrementAndGet();
+        }
+        return changed;
+    }
+
+    public boolean mightContain(final CharSequence value) {
+        long hash1 = hash(value);
+        long hash2 = mix64(hash1 + GOLDEN_GAMMA);
+
+        for (int i = 0; i < numHashFunctions; ++i) {
+            long bitIndex = index(hash1 + i * hash2);
+
+            if ((bits.get((int) (bitIndex >>> 6)) & (1L << bitIndex)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long expectedInsertions() {
+        return expectedInsertions;
+    }
+
+    /**
+     * @return the number of distinct values put, less any false positives
+     */
+    public long approximateCount() {
+        return approximateCount.get();
+    }
+
+    public long bitSize() {
+        return numBits;
+    }
+
+    public int numHashFunctions() {
+        return numHashFunctions;
+    }
+
+    private long index(final long combinedHash) {
+        return (combinedHash & Long.MAX_VALUE) % numBits;
+    }
+
+    private static long hash(final CharSequence value) {
+        long hash = FNV64_OFFSET_BASIS;
+
+        for (int i = 0; i < value.length(); ++i) {
+            hash ^= value.charAt(i);
+            hash *= FNV64_PRIME;
+        }
+        return mix64(hash);
+    }
+
+    // finalizer from MurmurHash3, spreads the bits of the FNV hash
+    private static long mix64(final long value) {
+        long mixed = value;
+        mixed ^= mixed >>> 33;
+        mixed *= 0xff51afd7ed558ccdL;
+        mixed ^= mixed >>> 33;
+        mixed *= 0xc4ceb9fe1a85ec53L;
+        mixed ^= mixed >>> 33;
+        return mixed;
+    }
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.cache;
+
+/**
+ * Estimated number of recent redirects made by a shortUrlPath.
+ *
+ * clicks may overstate the true number by up to clicks - minClicks, the
+ * true number is never less than minClicks.
+ *
+ * @author Frank Callaly
+ */
+public class HotLink {
+
+    private final String shortUrlPath;
+
+    private final long clicks;
+
+    private final long minClicks;
+
+    public HotLink(final String shortUrlPath, final long clicks,
+                   final long minClicks) {
+        this.shortUrlPath = shortUrlPath;
+        this.clicks = clicks;
+        this.minClicks = minClicks;
+    }
+
+    public String getShortUrlPath() {
+        return shortUrlPath;
+    }
+
+    public long getClicks() {
+        return clicks;
+    }
+
+    public long getMinClicks() {
+        return minClicks;
+    }
+
+    public String toString() {
+        return "shortUrlPath: " + shortUrlPath + ", clicks: " + clicks
+               + ", minClicks: " + minClicks;
+    }
+}
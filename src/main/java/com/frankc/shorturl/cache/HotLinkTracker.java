@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tracks the most redirected shortUrlPaths over the last few minutes, in a
+ * fixed amount of memory, and pins the hottest in the ShortUrlCache.
+ *
+ * A redirect only writes its path into a slot of a ring buffer, one of
+ * several striped by thread so that redirects rarely touch the same
+ * counter, without any atomic read-modify-write. The buffers are lossy: if
+ * a drain falls behind, unread paths are overwritten, which samples rather
+ * than blocks the busiest periods.
+ * Drains feed the paths into a Space-Saving summary per minute, of which
+ * windowMinutes are kept.
+ *
+ * @author Frank Callaly
+ */
+@Component
+public class HotLinkTracker {
+
+    private static final long MINUTE_MS = 60000;
+
+    private static final int STRIPE_SLOTS = 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final ShortUrlCache shortUrlCache;
+
+    private final boolean enabled;
+
+    private final int pinnedSize;
+
+    private final int pinWindowMinutes;
+
+    private final Stripe[] stripes;
+
+    private final SpaceSaving[] summaries;
+
+    // minute each summary counts, only accessed while holding summaryLock
+    private final long[] summaryMinutes;
+
+    private final ReentrantLock summaryLock = new ReentrantLock();
+
+    @Autowired
+    public HotLinkTracker(
+            final ShortUrlCache shortUrlCache,
+            @Value("${com.frankc.shorturl.hotLinks.enabled:true}")
+                                            final boolean enabled,
+            @Value("${com.frankc.shorturl.hotLinks.capacity:1000}")
+                                            final int capacity,
+            @Value("${com.frankc.shorturl.hotLinks.windowMinutes:15}")
+                                            final int windowMinutes,
+            @Value("${com.frankc.shorturl.hotLinks.pinnedSize:100}")
+                                            final int pinnedSize,
+            @Value("${com.frankc.shorturl.hotLinks.pinWindowMinutes:1}")
+                                            final int pinWindowMinutes) {
+        this.shortUrlCache = shortUrlCache;
+        this.enabled = enabled;
+        this.pinnedSize = pinnedSize;
+        this.pinWindowMinutes = pinWindowMinutes;
+
+        // a power of two of at least twice the number of cores
+        int numStripes = Integer.highestOneBit(
+                Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+        this.stripes = new Stripe[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            stripes[i] = new Stripe();
+        }
+
+        // the minute in progress plus windowMinutes complete ones
+        this.summaries = new SpaceSaving[windowMinutes + 1];
+        this.summaryMinutes = new long[windowMinutes + 1];
+        for (int i = 0; i < summaries.length; i++) {
+            summaries[i] = new SpaceSaving(capacity);
+            summaryMinutes[i] = -1;
+        }
+        logger.info("Tracking top " + capacity + " shortUrlPaths per minute"
+                    + " for " + windowMinutes + " minutes in "
+                    + numStripes + " stripes");
+    }
+
+    /**
+     * Record a redirect. Never blocks.
+     *
+     * @param shortUrlPath that has been redirected by
+     */
+    public void record(final String shortUrlPath) {
+        if (!enabled) {
+            return;
+        }
+
+        Stripe stripe = stripes[(int) Thread.currentThread().getId()
+                                & (stripes.length - 1)];
+        // no compare-and-set: two threads sharing a stripe may claim the
+        // same slot, which loses one record, as the buffer may anyway
+        long write = stripe.writes.get();
+        stripe.writes.lazySet(write + 1);
+        stripe.slots.lazySet((int) write & (STRIPE_SLOTS - 1), shortUrlPath);
+    }
+
+    /**
+     * Move recorded redirects from the stripes into the current minute's
+     * summary.
+     */
+    @Scheduled(
+        fixedDelayString = "${com.frankc.shorturl.hotLinks.drainIntervalMs:"
+                           + "100}")
+    public void drain() {
+        drain(System.currentTimeMillis());
+    }
+
+    void drain(final long now) {
+        summaryLock.lock();
+        try {
+            SpaceSaving summary = summaryFor(now / MINUTE_MS);
+
+            for (Stripe stripe : stripes) {
+                long writes = stripe.writes.get();
+                long from = Math.max(stripe.reads, writes - STRIPE_SLOTS);
+
+                for (long read = from; read < writes; read++) {
+                    // null if the write is still in progress, or the slot
+                    // was drained before being overwritten
+                    String path = stripe.slots.getAndSet(
+                            (int) read & (STRIPE_SLOTS - 1), null);
+                    if (path != null) {
+                        summary.offer(path);
+                    }
+                }
+                stripe.reads = writes;
+            }
+        } finally {
+            summaryLock.unlock();
+        }
+    }
+
+    /**
+     * Find the most redirected shortUrlPaths of the last minutes.
+     *
+     * Covers the minute in progress and up to minutes complete minutes
+     * before it. Summaries are merged by adding counts, a path missing from
+     * a full summary is counted as possibly having that summary's minimum
+     * count.
+     *
+     * @param minutes number of complete minutes to include, larger values
+     *                are treated as windowMinutes
+     * @param limit maximum number of paths to return
+     * @return up to limit HotLinks, most clicks first
+     */
+    public List<HotLink> topLinks(final int minutes, final int limit) {
+        return topLinks(minutes, limit, System.currentTimeMillis());
+    }
+
+    List<HotLink> topLinks(final int minutes, final int limit,
+                           final long now) {
+        long currentMinute = now / MINUTE_MS;
+        long fromMinute = currentMinute
+                          - Math.min(minutes, summaries.length - 1);
+        Map<String, long[]> merged = new HashMap<>();
+        long sumOfMinCounts = 0;
+
+        summaryLock.lock();
+        try {
+            for (int i = 0; i < summaries.length; i++) {
+                if (summaryMinutes[i] < fromMinute
+                        || summaryMinutes[i] > currentMinute) {
+                    continue;
+                }
+
+                // counted relative to the minimum, which is added back for
+                // every path whether or not this summary monitors it
+                long minCount = summaries[i].minCount();
+                sumOfMinCounts += minCount;
+                for (HotLink link : summaries[i].snapshot()) {
+                    long[] counts = merged.computeIfAbsent(
+                            link.getShortUrlPath(), path -> new long[2]);
+                    counts[0] += link.getClicks() - minCount;
+                    counts[1] += link.getMinClicks();
+                }
+            }
+        } finally {
+            summaryLock.unlock();
+        }
+
+        List<HotLink> links = new ArrayList<>(merged.size());
+        for (Map.Entry<String, long[]> entry : merged.entrySet()) {
+            links.add(new HotLink(entry.getKey(),
+                                  entry.getValue()[0] + sumOfMinCounts,
+                                  entry.getValue()[1]));
+        }
+        return links.stream()
+                    .sorted((a, b) -> Long.compare(b.getClicks(),
+                                                   a.getClicks()))
+                    .limit(limit)
+                    .collect(Collectors.toList());
+    }
+
+    /**
+     * Pin the hottest shortUrlPaths of the last pinWindowMinutes in the
+     * ShortUrlCache, so that a spike of other lookups can't evict them.
+     */
+    @Scheduled(
+        fixedDelayString = "${com.frankc.shorturl.hotLinks.pinIntervalMs:"
+                           + "5000}")
+    public void pinHotLinks() {
+        if (!enabled || pinnedSize <= 0) {
+            return;
+        }
+
+        List<String> hottest = topLinks(pinWindowMinutes, pinnedSize)
+                                   .stream()
+                                   .map(HotLink::getShortUrlPath)
+                                   .collect(Collectors.toList());
+        shortUrlCache.pinOnly(hottest);
+    }
+
+    private SpaceSaving summaryFor(final long minute) {
+        int index = (int) (minute % summaries.length);
+
+        if (summaryMinutes[index] != minute) {
+            summaries[index].clear();
+            summaryMinutes[index] = minute;
+        }
+        return summaries[index];
+    }
+
+    private static final class Stripe {
+
+        private final AtomicReferenceArray<String> slots =
+                new AtomicReferenceArray<>(STRIPE_SLOTS);
+
+        private final AtomicLong writes = new AtomicLong();
+
+        // only accessed while holding summaryLock
+        private long reads;
+    }
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+/**
+ * HTTP caching policy for redirect and not found responses.
+ *
+ * max-age applies to browsers and, unless sharedMaxAge is set, to shared
+ * caches such as CDNs. sharedMaxAge sets s-maxage for shared caches only.
+ * A ShortUrl may override both with its own cacheMaxAge, for example a short
+ * value for links that are expected to be deleted soon. notFoundMaxAge is a
+ * negative TTL for 404s. Negative values leave the header out, which is the
+ * default.
+ *
+ * notFoundMaxAge only applies to 404s for paths that are known not to exist.
+ * A path the shortUrlPath filter rules out may have been created on another
+ * node since the filter last synced, so that 404 is sent with no-store.
+ *
+ * @author Frank Callaly
+ */
+@Component
+public class RedirectCacheControl {
+
+    private final CacheControl defaultCacheControl;
+
+    private final ResponseEntity<Void> notFoundResponse;
+
+    private final ResponseEntity<Void> unsyncedNotFoundResponse;
+
+    public RedirectCacheControl(
+            @Value("${com.frankc.shorturl.redirect.maxAge:-1}")
+                                                final long maxAge,
+            @Value("${com.frankc.shorturl.redirect.sharedMaxAge:-1}")
+                                                final long sharedMaxAge,
+            @Value("${com.frankc.shorturl.redirect.notFoundMaxAge:-1}")
+                                                final long notFoundMaxAge) {
+        CacheControl cacheControl = maxAge >= 0
+                ? CacheControl.maxAge(maxAge, TimeUnit.SECONDS)
+                : CacheControl.empty();
+        if (sharedMaxAge >= 0) {
+            cacheControl = cacheControl.sMaxAge(sharedMaxAge, TimeUnit.SECONDS);
+        }
+        this.defaultCacheControl = cacheControl;
+
+        HttpHeaders notFoundHeaders = new HttpHeaders();
+        if (notFoundMaxAge >= 0) {
+            notFoundHeaders.setCacheControl(
+                    CacheControl.maxAge(notFoundMaxAge, TimeUnit.SECONDS));
+        }
+        this.notFoundResponse =
+                new ResponseEntity<>(notFoundHeaders, HttpStatus.NOT_FOUND);
+
+        HttpHeaders unsyncedNotFoundHeaders = new HttpHeaders();
+        unsyncedNotFoundHeaders.setCacheControl(CacheControl.noStore());
+        this.unsyncedNotFoundResponse = new ResponseEntity<>(
+                unsyncedNotFoundHeaders, HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * Get the Cache-Control for a redirect.
+     *
+     * @param linkMaxAge per-link override in seconds, or null for the
+     *                   configured default
+     * @return the CacheControl to send with the redirect
+     */
+    public CacheControl forRedirect(final Integer linkMaxAge) {
+        if (linkMaxAge == null) {
+            return defaultCacheControl;
+        }
+        return CacheControl.maxAge(linkMaxAge, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Get the shared, immutable response for an unknown shortUrlPath.
+     *
+     * @return a 404 response, with Cache-Control if a negative TTL is set
+     */
+    public ResponseEntity<Void> getNotFoundResponse() {
+        return notFoundResponse;
+    }
+
+    /**
+     * Get the shared, immutable response for a shortUrlPath only the
+     * shortUrlPath filter has ruled out.
+     *
+     * @return a 404 response that must not be cached
+     */
+    public ResponseEntity<Void> getUnsyncedNotFoundResponse() {
+        return unsyncedNotFoundResponse;
+    }
+}
@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.cache;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.frankc.shorturl.entities.ShortUrlRedirect;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Bounded in-process cache of ShortUrlRedirects keyed by shortUrlPath.
+ *
+ * Backed by Caffeine, which uses a frequency-aware (W-TinyLFU) eviction
+ * policy so a small hot set of links stays resident. The cache is bounded
+ * either by number of entries or, if maximumWeight is set, by an estimate of
+ * the memory held by each entry.
+ *
+ * Entries expire expireAfterWriteMs after they were loaded. Invalidation
+ * is local to a node, so this bounds how long other nodes keep serving a
+ * deleted or changed ShortUrl.
+ *
+ * A few hot shortUrlPaths can also be pinned. Pinned redirects are held
+ * outside Caffeine as well, and reload an evicted entry without a database
+ * query, so a burst of lookups for other paths can't push them out. A
+ * pinned redirect expires with the entry it was pinned from.
+ *
+ * @author Frank Callaly
+ */
+@Component
+public class ShortUrlCache {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    // rough per-entry overhead of the ShortUrlRedirect object, its Strings,
+    // prebuilt headers and the cache node, used when bounding by weight
+    private static final int ENTRY_OVERHEAD_BYTES = 480;
+
+    private final Cache<String, ShortUrlRedirect> cache;
+
+    private final Map<String, PinnedRedirect> pinned =
+            new ConcurrentHashMap<>();
+
+    private final long expireAfterWriteNanos;
+
+    private final Ticker ticker;
+
+    @Autowired
+    public ShortUrlCache(
+            @Value("${com.frankc.shorturl.cache.maximumSize:100000}")
+                                            final long maximumSize,
+            @Value("${com.frankc.shorturl.cache.maximumWeight:0}")
+                                            final long maximumWeight,
+            @Value("${com.frankc.shorturl.cache.expireAfterWriteMs:60000}")
+                                            final long expireAfterWriteMs) {
+        this(maximumSize, maximumWeight, expireAfterWriteMs,
+             ForkJoinPool.commonPool(), Ticker.systemTicker());
+    }
+
+    ShortUrlCache(final long maximumSize, final long maximumWeight,
+                  final Executor maintenanceExecutor) {
+        this(maximumSize, maximumWeight, 0, maintenanceExecutor,
+             Ticker.systemTicker());
+    }
+
+    /**
+     * @param expireAfterWriteMs lifetime of an entry, 0 for no expiry
+     */
+    ShortUrlCache(final long maximumSize, final long maximumWeight,
+                  final long expireAfterWriteMs,
+                  final Executor maintenanceExecutor, final Ticker ticker) {
+        this.expireAfterWriteNanos = expireAfterWriteMs > 0
+                ? TimeUnit.MILLISECONDS.toNanos(expireAfterWriteMs)
+                : Long.MAX_VALUE;
+        this.ticker = ticker;
+
+        Caffeine<Object, Object> builder =
+                Caffeine.newBuilder()
+                        .executor(maintenanceExecutor)
+                        .ticker(ticker)
+                        .recordStats();
+        if (expireAfterWriteMs > 0) {
+            builder.expireAfterWrite(expireAfterWriteMs,
+                                     TimeUnit.MILLISECONDS);
+        }
+
+        if (maximumWeight > 0) {
+            logger.info("ShortUrl cache bounded to approx. "
+                        + maximumWeight + " bytes");
+            this.cache = builder.maximumWeight(maximumWeight)
+                                .weigher(ShortUrlCache::weigh)
+                                .build();
+        } else {
+            logger.info("ShortUrl cache bounded to "
+                        + maximumSize + " entries");
+            this.cache = builder.maximumSize(maximumSize).build();
+        }
+    }
+
+    /**
+     * Find a ShortUrlRedirect in the cache, loading it on a miss.
+     *
+     * @param shortUrlPath of redirect to find
+     * @param loader to call on a cache miss, may return null
+     * @return the cached or loaded redirect, or null if the loader returns null
+     */
+    public ShortUrlRedirect get(
+                    final String shortUrlPath,
+                    final Function<String, ShortUrlRedirect> loader) {
+        return cache.get(shortUrlPath, path -> {
+            ShortUrlRedirect pinnedRedirect = getPinned(path);
+            return pinnedRedirect != null ? pinnedRedirect
+                                          : loader.apply(path);
+        });
+    }
+
+    public ShortUrlRedirect getIfPresent(final String shortUrlPath) {
+        ShortUrlRedirect redirect = cache.getIfPresent(shortUrlPath);
+        return redirect != null ? redirect : getPinned(shortUrlPath);
+    }
+
+    public void put(final String shortUrlPath,
+                    final ShortUrlRedirect redirect) {
+        cache.put(shortUrlPath, redirect);
+        pinned.replace(shortUrlPath, new PinnedRedirect(
+                            redirect, expiresAt(expireAfterWriteNanos)));
+    }
+
+    public void invalidate(final String shortUrlPath) {
+        cache.invalidate(shortUrlPath);
+        pinned.remove(shortUrlPath);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+        pinned.clear();
+    }
+
+    /**
+     * Pin exactly the given shortUrlPaths, unpinning any others.
+     *
+     * Only paths currently in the cache are pinned, with their cached
+     * redirect. Others will be pinned by a later call once looked up.
+     *
+     * @param shortUrlPaths to pin
+     */
+    public void pinOnly(final Collection<String> shortUrlPaths) {
+        Set<String> toPin = new HashSet<>(shortUrlPaths);
+        pinned.keySet().retainAll(toPin);
+
+        for (String shortUrlPath : toPin) {
+            ShortUrlRedirect redirect = cache.getIfPresent(shortUrlPath);
+            if (redirect == null) {
+                continue;
+            }
+            PinnedRedirect pinnedRedirect = new PinnedRedirect(
+                        redirect, expiresAt(remainingLifetime(shortUrlPath)));
+            pinned.put(shortUrlPath, pinnedRedirect);
+
+            // unpin if invalidated or replaced while being pinned
+            if (cache.getIfPresent(shortUrlPath) != redirect) {
+                pinned.remove(shortUrlPath, pinnedRedirect);
+            }
+        }
+    }
+
+    public int pinnedSize() {
+        return pinned.size();
+    }
+
+    public long estimatedSize() {
+        return cache.estimatedSize();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Report hit, miss and eviction counters in a form suitable for
+     * rendering as JSON.
+     *
+     * @return a Map of cache statistic names to values
+     */
+    public Map<String, Object> statsSummary() {
+        CacheStats stats = stats();
+
+        Map<String, Object> statsMap = new LinkedHashMap<>();
+        statsMap.put("size", estimatedSize());
+        statsMap.put("pinnedSize", pinnedSize());
+        statsMap.put("requestCount", stats.requestCount());
+        statsMap.put("hitCount", stats.hitCount());
+        statsMap.put("missCount", stats.missCount());
+        statsMap.put("hitRate", stats.hitRate());
+        statsMap.put("evictionCount", stats.evictionCount());
+        statsMap.put("evictionWeight", stats.evictionWeight());
+        return statsMap;
+    }
+
+    private ShortUrlRedirect getPinned(final String shortUrlPath) {
+        PinnedRedirect pinnedRedirect = pinned.get(shortUrlPath);
+        if (pinnedRedirect == null) {
+            return null;
+        }
+        if (ticker.read() - pinnedRedirect.expiresAt >= 0) {
+            pinned.remove(shortUrlPath, pinnedRedirect);
+            return null;
+        }
+        return pinnedRedirect.redirect;
+    }
+
+    private long remainingLifetime(final String shortUrlPath) {
+        if (expireAfterWriteNanos == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        OptionalLong age = cache.policy().expireAfterWrite()
+                .map(expiry -> expiry.ageOf(shortUrlPath,
+                                            TimeUnit.NANOSECONDS))
+                .orElse(OptionalLong.empty());
+        return age.isPresent()
+                ? Math.max(0, expireAfterWriteNanos - age.getAsLong()) : 0;
+    }
+
+    private long expiresAt(final long lifetimeNanos) {
+        long now = ticker.read();
+        return lifetimeNanos > Long.MAX_VALUE - now ? Long.MAX_VALUE
+                                                    : now + lifetimeNanos;
+    }
+
+    private static int weigh(final String shortUrlPath,
+                             final ShortUrlRedirect redirect) {
+        // redirectTo is held twice, as a String and in the Location header
+        int redirectToLength = redirect.getRedirectTo() == null
+                                   ? 0 : 2 * redirect.getRedirectTo().length();
+
+        return ENTRY_OVERHEAD_BYTES
+               + (2 * (shortUrlPath.length() + redirectToLength));
+    }
+
+    /**
+     * A pinned redirect and when the entry it was pinned from expires.
+     */
+    private static final class PinnedRedirect {
+
+        private final ShortUrlRedirect redirect;
+
+        private final long expiresAt;
+
+        PinnedRedirect(final ShortUrlRedirect redirect,
+                       final long expiresAt) {
+            this.redirect = redirect;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.cache;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.frankc.shorturl.datasource.ReplicaRoutingDataSource;
+import com.frankc.shorturl.repositories.ShortUrlRepo;
+import com.frankc.shorturl.utils.ShortUrlPathGenerator;
+
+/**
+ * Membership filter over all existing shortUrlPaths.
+ *
+ * Lookups for paths the filter has never seen can be answered as not found
+ * without reading the short_url row. The filter is built from the short_url
+ * table shortly after startup and then rebuilt periodically, which is also
+ * how deleted paths are removed. It is sized from the number of rows and
+ * rebuilt early if it fills up. Rebuilds page through the whole table, so
+ * they run on a thread of their own rather than holding up the other
+ * scheduled tasks. Until the first build completes every path is reported
+ * as possibly present. Paths that could never be stored are always
+ * reported as absent.
+ *
+ * Paths created on other nodes are added by syncing the paths created since
+ * the last sync every syncIntervalMs. Lookups never wait for a sync, so a
+ * path created on another node may be reported as absent here for up to
+ * about syncIntervalMs + syncOverlapMs after it was committed.
+ *
+ * @author Frank Callaly
+ */
+@Component
+@Profile("!logstore")
+public class ShortUrlPathFilter implements DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private ShortUrlRepo shortUrlRepo;
+
+    @Value("${com.frankc.shorturl.filter.enabled:true}")
+    private boolean enabled;
+
+    // minimum capacity, the filter is sized to twice the number of rows
+    @Value("${com.frankc.shorturl.filter.expectedInsertions:1000000}")
+    private long expectedInsertions;
+
+    @Value("${com.frankc.shorturl.filter.falsePositiveRate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${com.frankc.shorturl.filter.rebuildPageSize:10000}")
+    private int rebuildPageSize;
+
+    // allowance for clock differences between nodes and for transactions
+    // that commit some time after setting created
+    @Value("${com.frankc.shorturl.filter.syncOverlapMs:2000}")
+    private long syncOverlapMs;
+
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    // one rebuild at a time, a rebuild requested while one is running is
+    // dropped as the running one will include the same rows
+    private final ThreadPoolExecutor rebuildExecutor = new ThreadPoolExecutor(
+            1, 1, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>(),
+            newRebuildThreadFactory(),
+            new ThreadPoolExecutor.DiscardPolicy());
+
+    private volatile ConcurrentBloomFilter current;
+
+    private volatile ConcurrentBloomFilter rebuilding;
+
+    // wall clock time the last sync started, 0 before the first build
+    private volatile long syncedFrom;
+
+    /**
+     * Check if a shortUrlPath could ever be stored.
+     *
+     * @param shortUrlPath to check
+     * @return false if no shortUrl can have this shortUrlPath
+     */
+    public static boolean isStorable(final String shortUrlPath) {
+        // as ShortUrlPathGenerator.PATH_PATTERN, without a Matcher per call
+        // on the redirect path
+        int length = shortUrlPath.length();
+        if (length == 0 || length > ShortUrlPathGenerator.MAX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = shortUrlPath.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'A' && c <= 'Z'
+                  || c >= 'a' && c <= 'z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if a shortUrlPath may exist, from memory only.
+     *
+     * @param shortUrlPath to check
+     * @return false only if the shortUrlPath did not exist as of the last
+     *         sync, or could never be stored
+     */
+    public boolean mightContain(final String shortUrlPath) {
+        if (!isStorable(shortUrlPath)) {
+            return false;
+        }
+        ConcurrentBloomFilter filter = current;
+        return filter == null || filter.mightContain(shortUrlPath);
+    }
+
+    /**
+     * Record a newly created shortUrlPath.
+     *
+     * @param shortUrlPath that has been saved
+     */
+    public void put(final String shortUrlPath) {
+        // read rebuilding before current: if a rebuild swaps in its filter
+        // between the two reads the path still lands in the new filter
+        ConcurrentBloomFilter newFilter = rebuilding;
+        ConcurrentBloomFilter filter = current;
+
+        if (newFilter != null) {
+            newFilter.put(shortUrlPath);
+        }
+        if (filter != null) {
+            filter.put(shortUrlPath);
+        }
+    }
+
+    /**
+     * Add the paths created on any node since the last sync, and rebuild
+     * the filter if it has filled up.
+     */
+    @Scheduled(
+        initialDelayString = "${com.frankc.shorturl.filter.initialDelayMs:0}",
+        fixedDelayString = "${com.frankc.shorturl.filter.syncIntervalMs:1000}")
+    public void sync() {
+        if (!enabled) {
+            return;
+        }
+
+        syncLock.lock();
+        try {
+            syncLocked();
+        } catch (RuntimeException ex) {
+            logger.error("Failed to sync shortUrlPath filter : " + ex);
+        } finally {
+            syncLock.unlock();
+        }
+
+        ConcurrentBloomFilter filter = current;
+        if (filter != null
+                && filter.approximateCount() > filter.expectedInsertions()) {
+            logger.info("shortUrlPath filter is full, rebuilding");
+            requestRebuild();
+        }
+    }
+
+    /**
+     * Start a rebuild on the rebuild thread, unless one is already running.
+     */
+    @Scheduled(
+        initialDelayString = "${com.frankc.shorturl.filter.initialDelayMs:0}",
+        fixedDelayString =
+                "${com.frankc.shorturl.filter.rebuildIntervalMs:3600000}")
+    public void requestRebuild() {
+        if (enabled) {
+            rebuildExecutor.execute(this::rebuild);
+        }
+    }
+
+    /**
+     * Rebuild the filter from all shortUrlPaths in the repository.
+     *
+     * Paths are read in pages ordered by shortUrlPath so that no long running
+     * query or transaction is held open. Paths created while the rebuild is
+     * running are added to both the old and new filters. Paths are read
+     * from the primary database, as a replica may be missing recent creates.
+     * Runs on the calling thread, see requestRebuild.
+     */
+    public void rebuild() {
+        if (!enabled || !rebuildLock.tryLock()) {
+            return;
+        }
+
+        try {
+            long startTime = System.currentTimeMillis();
+            long capacity = Math.max(expectedInsertions,
+                                     2 * shortUrlRepo.count());
+            rebuilding = new ConcurrentBloomFilter(capacity,
+                                                   falsePositiveRate);
+            // syncs from now on also add to the new filter
+            if (syncedFrom == 0) {
+                syncedFrom = startTime;
+            }
+
+            long numPaths = 0;
+            String lastPath = "";
+            while (true) {
+                String after = lastPath;
+                List<String> paths = ReplicaRoutingDataSource.onPrimary(
+                        () -> shortUrlRepo.findShortUrlPathsAfter(
+                                after, PageRequest.of(0, rebuildPageSize)));
+
+                for (String path : paths) {
+                    rebuilding.put(path);
+                }
+                numPaths += paths.size();
+
+                if (paths.size() < rebuildPageSize) {
+                    break;
+                }
+                lastPath = paths.get(paths.size() - 1);
+            }
+
+            current = rebuilding;
+            logger.info("Rebuilt shortUrlPath filter with " + numPaths
+                        + " paths, capacity " + capacity + " in "
+                        + (System.currentTimeMillis() - startTime) + "ms");
+        } catch (RuntimeException ex) {
+            logger.error("Failed to rebuild shortUrlPath filter : " + ex);
+        } finally {
+            rebuilding = null;
+            rebuildLock.unlock();
+        }
+    }
+
+    private void syncLocked() {
+        long since = syncedFrom;
+        if (since == 0) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        List<String> paths = ReplicaRoutingDataSource.onPrimary(
+                () -> shortUrlRepo.findShortUrlPathsCreatedSince(
+                        new Date(since - syncOverlapMs)));
+        for (String path : paths) {
+            put(path);
+        }
+        syncedFrom = startTime;
+    }
+
+    @Override
+    public void destroy() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    private static CustomizableThreadFactory newRebuildThreadFactory() {
+        CustomizableThreadFactory threadFactory =
+                new CustomizableThreadFactory("shorturl-filter-rebuild-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
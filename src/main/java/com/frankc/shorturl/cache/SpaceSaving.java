@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving summary of the most frequent items in a stream, in a fixed
+ * number of counters.
+ *
+ * Each monitored item has a count, which is never less than its true
+ * frequency, and an error, the most by which the count may overstate it.
+ * When an item that is not monitored arrives and all counters are in use,
+ * it takes over the counter with the smallest count, inheriting that count
+ * as its error. Any item occurring more than total / capacity times is
+ * guaranteed to be monitored.
+ *
+ * Counters are kept in a binary min-heap on count, so each offer is
+ * O(log capacity). Not thread safe.
+ *
+ * @author Frank Callaly
+ */
+public class SpaceSaving {
+
+    private final int capacity;
+
+    private final Map<String, Counter> counters;
+
+    private final Counter[] heap;
+
+    private int size;
+
+    private long total;
+
+    public SpaceSaving(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(2 * capacity);
+        this.heap = new Counter[capacity];
+    }
+
+    /**
+     * Count one occurrence of an item.
+     *
+     * @param item that occurred
+     */
+    public void offer(final String item) {
+        total++;
+
+        Counter counter = counters.get(item);
+        if (counter != null) {
+            counter.count++;
+            siftDown(counter.index);
+            return;
+        }
+
+        if (size < capacity) {
+            counter = new Counter(item, 1, 0);
+            counter.index = size;
+            heap[size++] = counter;
+            counters.put(item, counter);
+            siftUp(counter.index);
+            return;
+        }
+
+        // replace the least frequent item, whose count becomes the error
+        counter = heap[0];
+        counters.remove(counter.item);
+        counter.item = item;
+        counter.error = counter.count;
+        counter.count++;
+        counters.put(item, counter);
+        siftDown(0);
+    }
+
+    /**
+     * @return the smallest count monitored, an upper bound on the
+     *         frequency of any item that is not monitored, or 0 while
+     *         fewer than capacity items have been seen
+     */
+    public long minCount() {
+        return size < capacity ? 0 : heap[0].count;
+    }
+
+    /**
+     * @return the number of occurrences offered since the last clear
+     */
+    public long total() {
+        return total;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return a snapshot of each monitored item's count and error, in no
+     *         particular order
+     */
+    public List<HotLink> snapshot() {
+        List<HotLink> snapshot = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            snapshot.add(new HotLink(heap[i].item, heap[i].count,
+                                     heap[i].count - heap[i].error));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Forget every item, keeping the allocated counters' capacity.
+     */
+    public void clear() {
+        counters.clear();
+        for (int i = 0; i < size; i++) {
+            heap[i] = null;
+        }
+        size = 0;
+        total = 0;
+    }
+
+    private void siftUp(final int from) {
+        int index = from;
+        Counter counter = heap[index];
+
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(final int from) {
+        int index = from;
+        Counter counter = heap[index];
+        int half = size >>> 1;
+
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && heap[right].count < heap[child].count) {
+                child = right;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    private void place(final Counter counter, final int index) {
+        heap[index] = counter;
+        counter.index = index;
+    }
+
+    private static final class Counter {
+
+        private String item;
+
+        private long count;
+
+        private long error;
+
+        private int index;
+
+        private Counter(final String item, final long count,
+                        final long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
@@ -19,36 +19,68 @@ package com.frankc.shorturl.controllers;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.hateoas.Link;
 import org.springframework.hateoas.Resources;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.frankc.shorturl.cache.HotLink;
+import com.frankc.shorturl.cache.HotLinkTracker;
+import com.frankc.shorturl.cache.ShortUrlCache;
 import com.frankc.shorturl.controllers.exceptions.ImmutableShortUrlPathException;
 import com.frankc.shorturl.controllers.exceptions.InvalidRedirectToException;
 import com.frankc.shorturl.controllers.exceptions.MaxPathGenerationRetriesException;
 import com.frankc.shorturl.controllers.exceptions.ShortUrlNotFoundException;
+import com.frankc.shorturl.controllers.hateoas.ShortUrlCursorResources;
 import com.frankc.shorturl.controllers.hateoas.ShortUrlResource;
 import com.frankc.shorturl.entities.ShortUrl;
+import com.frankc.shorturl.importer.ImportFormat;
+import com.frankc.shorturl.importer.ImportReportWriter;
+import com.frankc.shorturl.importer.ShortUrlImporter;
+import com.frankc.shorturl.repositories.ShortUrlRepo.ExportRow;
+import com.frankc.shorturl.services.BatchCreateResult;
+import com.frankc.shorturl.services.ShortUrlCursor;
 import com.frankc.shorturl.services.ShortUrlService;
 
 import io.swagger.annotations.ApiOperation;
@@ -61,6 +93,7 @@ import io.swagger.annotations.ApiResponses;
  * @author Frank Callaly
  */
 @RestController
+@Profile("!reactive")
 @RequestMapping(ShortUrlController.BASE_PATH)
 public class ShortUrlController {
 
@@ -68,12 +101,41 @@ public class ShortUrlController {
 
     public static final String BASE_PATH = "/short-urls/";
 
+    public static final String VIEW_FULL = "full";
+
+    public static final String VIEW_SUMMARY = "summary";
+
+    private static final int EXPORT_BUFFER_SIZE = 8192;
+
     @Autowired
     private ShortUrlService shortUrlService;
 
+    @Autowired
+    private ShortUrlCache shortUrlCache;
+
+    @Autowired
+    private ShortUrlImporter shortUrlImporter;
+
+    @Autowired
+    private HotLinkTracker hotLinkTracker;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @Value("${com.frankc.shorturl.controller.maxPageSize:50}")
     private int maxPageSize;
 
+    @Value("${com.frankc.shorturl.controller.maxBatchSize:100000}")
+    private int maxBatchSize;
+
+    // pages by cursor cost the same however deep they are, so can be larger
+    @Value("${com.frankc.shorturl.controller.maxCursorPageSize:1000}")
+    private int maxCursorPageSize;
+
+    // redirectTo is cut to this many characters in the summary view
+    @Value("${com.frankc.shorturl.controller.summaryRedirectToLength:100}")
+    private int summaryRedirectToLength;
+
     /**
      * Find a collection of all ShortUrls in the repository.
      *
@@ -116,6 +178,96 @@ public class ShortUrlController {
                         .withRel("self")), HttpStatus.OK);
     }
 
+    /**
+     * Find a page of ShortUrls continuing from a cursor, ordered by id or
+     * by created. Unlike findAllShortUrls no rows are skipped over and no
+     * count is run, so every page takes the same time however deep it is.
+     *
+     * @param cursor from the next link of the previous page, or null for
+     *               the first page
+     * @param orderBy id or created, for the first page, following pages
+     *                keep the order of their cursor
+     * @param pageSize maximum number of ShortUrls in the page
+     * @param view full, or summary to truncate each redirectTo
+     * @param includeTotal include a cached total count of ShortUrls
+     * @return a page of ShortUrls with a next link if there are more
+     */
+    @ApiOperation(value = "Find a page of shortUrls after a cursor",
+                  notes = "Follow the next link for the following page. "
+                          + "The summary view truncates each redirectTo.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 400, message = "Invalid parameters given")})
+    @GetMapping(path = "by-cursor", produces = "application/hal+json")
+    public HttpEntity<ShortUrlCursorResources> findShortUrlsByCursor(
+                @RequestParam(value = "cursor", required = false)
+                                        final String cursor,
+                @RequestParam(value = "orderBy", defaultValue = "id")
+                                        final String orderBy,
+                @RequestParam(value = "pageSize", defaultValue = "10")
+                                        Integer pageSize,
+                @RequestParam(value = "view", defaultValue = VIEW_FULL)
+                                        final String view,
+                @RequestParam(value = "includeTotal", defaultValue = "false")
+                                        final boolean includeTotal) {
+        logger.debug("GET findShortUrlsByCursor: " + cursor);
+
+        ShortUrlCursor pageCursor;
+        try {
+            pageCursor = cursor != null
+                ? ShortUrlCursor.decode(cursor)
+                : ShortUrlCursor.first(ShortUrlCursor.Order.parse(orderBy));
+        } catch (IllegalArgumentException ex) {
+            logger.warn("Invalid cursor or orderBy: " + cursor + ", "
+                        + orderBy);
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        if (pageSize < 1
+                || !(VIEW_FULL.equals(view) || VIEW_SUMMARY.equals(view))) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        if (pageSize > maxCursorPageSize) {
+            logger.warn("Truncating page size from " + pageSize
+                        + " to " + maxCursorPageSize);
+            pageSize = maxCursorPageSize;
+        }
+
+        // one extra row shows whether there is a next page
+        List<ShortUrl> page = shortUrlService.findPage(
+                        pageCursor, pageSize + 1,
+                        VIEW_SUMMARY.equals(view) ? summaryRedirectToLength
+                                                  : Integer.MAX_VALUE);
+        boolean hasNext = page.size() > pageSize;
+        if (hasNext) {
+            page = page.subList(0, pageSize);
+        }
+
+        List<Link> links = new ArrayList<>(2);
+        links.add(linkTo(methodOn(this.getClass())
+                    .findShortUrlsByCursor(cursor, orderBy, pageSize, view,
+                                           includeTotal))
+                    .withSelfRel());
+        if (hasNext) {
+            links.add(linkTo(methodOn(this.getClass())
+                        .findShortUrlsByCursor(
+                                pageCursor.after(page.get(pageSize - 1))
+                                          .encode(),
+                                null, pageSize, view, includeTotal))
+                        .withRel(Link.REL_NEXT));
+        }
+
+        return new ResponseEntity<>(
+                new ShortUrlCursorResources(
+                    page.stream()
+                        .map(ShortUrlResource::new)
+                        .collect(Collectors.toList()),
+                    includeTotal ? shortUrlService.countShortUrls() : null,
+                    links.toArray(new Link[links.size()])),
+                HttpStatus.OK);
+    }
+
     /**
      * Find a single particular ShortUrl in the repository.
      *
@@ -146,6 +298,53 @@ public class ShortUrlController {
         return new ResponseEntity<>(resource, HttpStatus.OK);
     }
 
+    /**
+     * Find the number of redirects made by a ShortUrl.
+     *
+     * @param shortUrlPath of ShortUrl to count redirects of
+     * @return a Map of the shortUrlPath and its count of clicks
+     */
+    @ApiOperation(value = "Find the number of redirects made by a shortUrl",
+                  notes = "Includes clicks counted by this node and not yet "
+                          + "written to the database. Clicks pending on "
+                          + "other nodes are added when they next flush.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 404,
+                         message = "The requested shortUrl was not found")})
+    @GetMapping(path = "{shortUrlPath}/clicks",
+                produces = "application/json")
+    public HttpEntity<Map<String, Object>> countClicks(
+                        @PathVariable("shortUrlPath") final String shortUrlPath)
+                        throws ShortUrlNotFoundException {
+        logger.debug("GET countClicks: " + shortUrlPath);
+
+        try {
+            return new ResponseEntity<>(
+                    clicksSummary(shortUrlPath,
+                                  shortUrlService.countClicks(shortUrlPath)),
+                    HttpStatus.OK);
+        } catch (NoSuchElementException ex) {
+            logger.warn("Failed attempt to find short url: " + shortUrlPath);
+            throw new ShortUrlNotFoundException();
+        }
+    }
+
+    /**
+     * Build the body of a clicks response.
+     *
+     * @param shortUrlPath that was counted
+     * @param clicks number of redirects made by shortUrlPath
+     * @return a Map of the shortUrlPath and its count of clicks
+     */
+    public static Map<String, Object> clicksSummary(final String shortUrlPath,
+                                                    final long clicks) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("shortUrlPath", shortUrlPath);
+        summary.put("clicks", clicks);
+        return summary;
+    }
+
     /**
      * Create a new ShortUrl and add to the repository.
      *
@@ -154,12 +353,14 @@ public class ShortUrlController {
      */
     @ApiOperation(value = "Create a new ShortUrl",
                   notes = "ShortUrlPath is read-only. "
-                          + "Only include the redirectTo field in request.")
+                          + "Include the redirectTo field and optionally "
+                          + "cacheMaxAge in request.")
     @ApiResponses(value = {
             @ApiResponse(code = 201,
                          message = "The requested shortUrl was created"),
             @ApiResponse(code = 400,
-                         message = "The given redirectTo is invalid"),
+                         message = "The given redirectTo or cacheMaxAge "
+                                   + "is invalid"),
             @ApiResponse(code = 409,
                          message = "ShortUrlPath should not be included in "
                                    + "request as it is a read-only property")})
@@ -179,7 +380,8 @@ public class ShortUrlController {
         ShortUrl createdShortUrl = null;
         try {
             createdShortUrl = shortUrlService
-                                .createShortUrl(newShortUrl.getRedirectTo());
+                                .createShortUrl(newShortUrl.getRedirectTo(),
+                                                newShortUrl.getCacheMaxAge());
         } catch (IllegalArgumentException ex) {
             logger.warn("Service refused to create ShortUrl for redirect: "
                         + newShortUrl.getRedirectTo());
@@ -191,29 +393,300 @@ public class ShortUrlController {
                         HttpStatus.CREATED);
     }
 
+    /**
+     * Create a ShortUrl for each of a list of redirectTo URLs.
+     *
+     * @param redirectTos URLs to create ShortUrls for
+     * @return a result per redirectTo, in the same order
+     */
+    @ApiOperation(value = "Create a ShortUrl for each of a list of URLs",
+                  notes = "Each result has a status of CREATED, INVALID or "
+                          + "FAILED, a failed item does not fail the batch.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200,
+                         message = "The batch was processed, see the status "
+                                   + "of each result"),
+            @ApiResponse(code = 400,
+                         message = "More redirectTos than maxBatchSize")})
+    @PostMapping(path = "batch", consumes = "application/json",
+                 produces = "application/json")
+    public HttpEntity<List<BatchCreateResult>> createShortUrls(
+                                @RequestBody final List<String> redirectTos) {
+        logger.debug("POST createShortUrls: " + redirectTos.size());
+
+        if (redirectTos.size() > maxBatchSize) {
+            logger.warn("Refusing batch of " + redirectTos.size()
+                        + " ShortUrls, maximum is " + maxBatchSize);
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        return new ResponseEntity<>(
+                        shortUrlService.createShortUrls(redirectTos),
+                        HttpStatus.OK);
+    }
+
+    /**
+     * Import ShortUrls from an NDJSON or CSV request body of any size. The
+     * body is read and written in bounded batches, and the report is
+     * streamed back as NDJSON while the import runs.
+     *
+     * @param contentType application/x-ndjson or text/csv
+     * @param keepShortUrlPaths keep the shortUrlPaths given in the import
+     * @param includeCreated report created ShortUrls as well as failures
+     * @param request to read the import from
+     * @param response to stream the report to
+     * @throws IOException if the import can't be read or the report sent
+     */
+    @ApiOperation(value = "Import ShortUrls from NDJSON or CSV",
+                  notes = "Each line is a redirectTo and optionally a "
+                          + "shortUrlPath. The response is an NDJSON stream "
+                          + "of failed results, progress after each batch "
+                          + "and a final summary.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200,
+                         message = "The import was read, see the summary"),
+            @ApiResponse(code = 415,
+                         message = "The import is not NDJSON or CSV")})
+    @PostMapping(path = "import",
+                 consumes = {ImportFormat.NDJSON_VALUE,
+                             ImportFormat.CSV_VALUE},
+                 produces = ImportFormat.NDJSON_VALUE)
+    public void importShortUrls(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType,
+            @RequestParam(value = "keepShortUrlPaths", defaultValue = "false")
+            final boolean keepShortUrlPaths,
+            @RequestParam(value = "includeCreated", defaultValue = "false")
+            final boolean includeCreated,
+            final HttpServletRequest request,
+            final HttpServletResponse response) throws IOException {
+        logger.debug("POST importShortUrls: " + contentType);
+
+        Charset charset = contentType.getCharset() != null
+                                ? contentType.getCharset()
+                                : StandardCharsets.UTF_8;
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(ImportFormat.NDJSON_VALUE);
+        try (ImportReportWriter report = new ImportReportWriter(
+                        response.getOutputStream(), includeCreated)) {
+            shortUrlImporter.importShortUrls(
+                    new InputStreamReader(request.getInputStream(), charset),
+                    ImportFormat.forMediaType(contentType.toString()),
+                    keepShortUrlPaths, report);
+        }
+    }
+
+    /**
+     * Stream every ShortUrl, or those created or updated within the given
+     * ranges, as NDJSON in id order. Rows are read from the database a
+     * page at a time and written as they are read, so any number can be
+     * exported in one request.
+     *
+     * @param createdFrom only ShortUrls created at or after this
+     * @param createdTo only ShortUrls created before this
+     * @param updatedFrom only ShortUrls last updated at or after this
+     * @param updatedTo only ShortUrls last updated before this
+     * @param acceptEncoding gzip compresses the export
+     * @param response to stream the export to
+     * @throws IOException if the export can't be sent
+     */
+    @ApiOperation(value = "Export ShortUrls as NDJSON",
+                  notes = "Optionally within ISO-8601 created and updated "
+                          + "date-time ranges, for incremental exports. "
+                          + "Compressed with Accept-Encoding: gzip.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Success")})
+    @GetMapping(path = "export-ndjson", produces = ImportFormat.NDJSON_VALUE)
+    public void exportShortUrls(
+            @RequestParam(value = "createdFrom", required = false)
+            @DateTimeFormat(iso = ISO.DATE_TIME) final Date createdFrom,
+            @RequestParam(value = "createdTo", required = false)
+            @DateTimeFormat(iso = ISO.DATE_TIME) final Date createdTo,
+            @RequestParam(value = "updatedFrom", required = false)
+            @DateTimeFormat(iso = ISO.DATE_TIME) final Date updatedFrom,
+            @RequestParam(value = "updatedTo", required = false)
+            @DateTimeFormat(iso = ISO.DATE_TIME) final Date updatedTo,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING,
+                           required = false)
+            final String acceptEncoding,
+            final HttpServletResponse response) throws IOException {
+        logger.debug("GET exportShortUrls: created " + createdFrom + " to "
+                     + createdTo + ", updated " + updatedFrom + " to "
+                     + updatedTo);
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(ImportFormat.NDJSON_VALUE);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        OutputStream out = response.getOutputStream();
+        if (acceptsGzip(acceptEncoding)) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            out = new GZIPOutputStream(out, EXPORT_BUFFER_SIZE);
+        }
+
+        try (JsonGenerator generator =
+                        objectMapper.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            long numRows = shortUrlService.exportShortUrls(
+                            createdFrom, createdTo, updatedFrom, updatedTo,
+                            row -> writeExportRow(generator, row));
+            logger.info("Exported " + numRows + " ShortUrls");
+        }
+    }
+
     /**
      * Delete a single particular ShortUrl from the repository.
      *
+     * A ShortUrl that dedup returned to several creates is reference
+     * counted, a delete only removes it once every one of those creates
+     * has been matched by a delete. Until then a delete removes one
+     * creator, answers 202 and the ShortUrl keeps redirecting.
+     *
      * @param shortUrlPath of ShortUrl to delete
-     * @return a Resource<ShortUrl> corresponding to the given shortUrlPath
+     * @return the shortUrlPath and whether it was deleted, with a 200 if it
+     *         was or a 202 if other creators remain
      */
-    @ApiOperation(value = "Delete a shortUrl")
+    @ApiOperation(value = "Delete a shortUrl",
+                  notes = "A shortUrl returned to several creates by dedup "
+                          + "is only deleted by the last of their deletes, "
+                          + "earlier ones answer 202 with deleted false.")
     @ApiResponses(value = {
         @ApiResponse(code = 200, message = "Success"),
+        @ApiResponse(code = 202,
+                     message = "Creator removed, shortUrl is still in use"),
         @ApiResponse(code = 404,
                      message = "The requested shortUrlPath was not found")})
     @DeleteMapping("{shortUrlPath}")
-    public void deleteShortUrl(
+    public HttpEntity<Map<String, Object>> deleteShortUrl(
                     @PathVariable("shortUrlPath") final String shortUrlPath)
                     throws ShortUrlNotFoundException {
         logger.debug("DELETE deleteShortUrl: " + shortUrlPath);
 
         try {
-            shortUrlService.deleteByShortUrlPath(shortUrlPath);
+            boolean deleted =
+                    shortUrlService.deleteByShortUrlPath(shortUrlPath);
+            return new ResponseEntity<>(
+                    deleteSummary(shortUrlPath, deleted),
+                    deleted ? HttpStatus.OK : HttpStatus.ACCEPTED);
         } catch (NoSuchElementException ex) {
             logger.warn("Failed to find short url for deletion: "
                         + shortUrlPath);
             throw new ShortUrlNotFoundException();
         }
     }
+
+    /**
+     * Build the body of a delete response.
+     *
+     * @param shortUrlPath that was deleted
+     * @param deleted false if only one of its creators was removed
+     * @return a Map of the shortUrlPath and whether it was deleted
+     */
+    public static Map<String, Object> deleteSummary(final String shortUrlPath,
+                                                    final boolean deleted) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("shortUrlPath", shortUrlPath);
+        summary.put("deleted", deleted);
+        return summary;
+    }
+
+    /**
+     * Find the shortUrls with the most redirects in the last few minutes.
+     *
+     * @param minutes number of complete minutes to include, in addition to
+     *                the minute in progress
+     * @param limit maximum number of shortUrls to return
+     * @return a List of HotLinks, most clicks first
+     */
+    @ApiOperation(value = "Find the most redirected shortUrls right now",
+                  notes = "Counts are estimates from a fixed size summary. "
+                          + "The true count is between minClicks and clicks, "
+                          + "and only includes redirects served by this "
+                          + "node.")
+    @ApiResponses(value = {
+        @ApiResponse(code = 200, message = "Success"),
+        @ApiResponse(code = 400, message = "Invalid parameters given")})
+    @GetMapping(path = "top-links", produces = "application/json")
+    public HttpEntity<List<HotLink>> findTopLinks(
+                @RequestParam(value = "minutes", defaultValue = "5")
+                                        final int minutes,
+                @RequestParam(value = "limit", defaultValue = "10")
+                                        final int limit) {
+        logger.debug("GET findTopLinks: " + minutes + ", " + limit);
+
+        if (minutes < 0 || limit < 1) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(hotLinkTracker.topLinks(minutes, limit),
+                                    HttpStatus.OK);
+    }
+
+    /**
+     * Report hit, miss and eviction counters for the ShortUrl lookup cache.
+     *
+     * @return a Map of cache statistic names to values
+     */
+    @ApiOperation(value = "Get statistics for the shortUrl lookup cache")
+    @ApiResponses(value = {
+        @ApiResponse(code = 200, message = "Success")})
+    @GetMapping(path = "cache-stats", produces = "application/json")
+    public HttpEntity<Map<String, Object>> getCacheStats() {
+        logger.debug("GET getCacheStats");
+        return new ResponseEntity<>(shortUrlCache.statsSummary(),
+                                    HttpStatus.OK);
+    }
+
+    // whether an Accept-Encoding header lists gzip, or failing that *,
+    // with a qvalue above 0
+    private static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] params = coding.split(";");
+            String name = params[0].trim();
+            if (name.equalsIgnoreCase("gzip")) {
+                return qvalue(params) > 0;
+            }
+            if (name.equals("*")) {
+                wildcard = qvalue(params) > 0;
+            }
+        }
+        return wildcard;
+    }
+
+    // qvalue of a coding split into its name and parameters, 1 if not
+    // given and 0, so not acceptable, if malformed
+    private static double qvalue(final String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.length() > 1
+                    && Character.toLowerCase(param.charAt(0)) == 'q'
+                    && param.charAt(1) == '=') {
+                try {
+                    return Double.parseDouble(param.substring(2).trim());
+                } catch (NumberFormatException ex) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static void writeExportRow(final JsonGenerator generator,
+                                       final ExportRow row)
+                                       throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("shortUrlPath", row.getShortUrlPath());
+        generator.writeStringField("redirectTo", row.getRedirectTo());
+        if (row.getCacheMaxAge() != null) {
+            generator.writeNumberField("cacheMaxAge", row.getCacheMaxAge());
+        }
+        generator.writeObjectField("created", row.getCreated());
+        generator.writeObjectField("lastUpdated", row.getLastUpdated());
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
 }
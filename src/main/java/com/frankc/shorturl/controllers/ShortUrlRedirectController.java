@@ -16,15 +16,11 @@
  ******************************************************************************/
 package com.frankc.shorturl.controllers;
 
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.util.NoSuchElementException;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -33,8 +29,12 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.frankc.shorturl.controllers.exceptions.ShortUrlNotFoundException;
-import com.frankc.shorturl.entities.ShortUrl;
+import com.frankc.shorturl.cache.HotLinkTracker;
+import com.frankc.shorturl.cache.RedirectCacheControl;
+import com.frankc.shorturl.cache.ShortUrlPathFilter;
+import com.frankc.shorturl.entities.ShortUrlRedirect;
+import com.frankc.shorturl.metrics.RedirectMetrics;
+import com.frankc.shorturl.services.ClickCounter;
 import com.frankc.shorturl.services.ShortUrlService;
 
 import io.swagger.annotations.ApiOperation;
@@ -47,6 +47,7 @@ import io.swagger.annotations.ApiResponses;
  * @author Frank Callaly
  */
 @RestController
+@Profile("!reactive")
 @RequestMapping(ShortUrlRedirectController.BASE_PATH)
 public class ShortUrlRedirectController {
 
@@ -57,11 +58,27 @@ public class ShortUrlRedirectController {
     @Autowired
     private ShortUrlService shortUrlService;
 
+    // not available in the logstore profile
+    @Autowired(required = false)
+    private ShortUrlPathFilter shortUrlPathFilter;
+
+    @Autowired
+    private RedirectCacheControl redirectCacheControl;
+
+    @Autowired
+    private ClickCounter clickCounter;
+
+    @Autowired
+    private HotLinkTracker hotLinkTracker;
+
+    @Autowired
+    private RedirectMetrics redirectMetrics;
+
     /**
      * Redirect to the redirectTo field of a ShortUrl.
      *
      * @param shortUrlPath of shortUrl to be redirected by
-     * @throws ShortUrlNotFoundException
+     * @return a 301 redirect, or a 404 if shortUrlPath is not known
      */
     @ApiOperation(value = "Redirect according to a shortUrl")
     @ApiResponses(value = {
@@ -73,31 +90,50 @@ public class ShortUrlRedirectController {
     @ResponseStatus(HttpStatus.MOVED_PERMANENTLY)
     @GetMapping("{shortUrlPath:[a-zA-Z0-9]+$}")
     public HttpEntity<Void> redirectByShortUrl(
-                    @PathVariable("shortUrlPath") final String shortUrlPath)
-                    throws ShortUrlNotFoundException {
-        ShortUrl requestedShortUrl = null;
-
-        try {
-            requestedShortUrl =
-                    shortUrlService.findByShortUrlPath(shortUrlPath);
-        } catch (NoSuchElementException ex) {
-            logger.warn("Failed attempt to find short url: " + shortUrlPath);
-            throw new ShortUrlNotFoundException();
+                    @PathVariable("shortUrlPath") final String shortUrlPath) {
+        // checked here as well as in the service, as a path created on
+        // another node since the last sync must not get a cacheable 404
+        if (shortUrlPathFilter != null
+                && !shortUrlPathFilter.mightContain(shortUrlPath)) {
+            return notFound(shortUrlPath,
+                    ShortUrlPathFilter.isStorable(shortUrlPath)
+                        ? redirectCacheControl.getUnsyncedNotFoundResponse()
+                        : redirectCacheControl.getNotFoundResponse());
         }
 
-        HttpHeaders responseHeaders = new HttpHeaders();
+        ShortUrlRedirect requestedRedirect =
+                    shortUrlService.findRedirectByShortUrlPath(shortUrlPath);
+        if (requestedRedirect == null) {
+            return notFound(shortUrlPath,
+                            redirectCacheControl.getNotFoundResponse());
+        }
 
-        try {
-            responseHeaders.setLocation(
-                    new URI(requestedShortUrl.getRedirectTo()));
-        } catch (URISyntaxException ex) {
-            logger.error("Invalid URI in shortUrl: " + requestedShortUrl);
+        // redirectTo is validated on creation, this only catches rows
+        // stored before that validation existed
+        if (!requestedRedirect.isValid()) {
+            logger.error("Invalid URI in shortUrl: " + requestedRedirect);
+            redirectMetrics.invalid();
             return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
         }
 
-        logger.debug("Redirecting From [" + shortUrlPath + "] to ["
-                     + requestedShortUrl.getRedirectTo() + "]");
-        return new ResponseEntity<>(responseHeaders,
-                                    HttpStatus.MOVED_PERMANENTLY);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Redirecting From [" + shortUrlPath + "] to ["
+                         + requestedRedirect.getRedirectTo() + "]");
+        }
+        clickCounter.increment(shortUrlPath);
+        hotLinkTracker.record(shortUrlPath);
+        redirectMetrics.redirected();
+        return requestedRedirect.getResponse();
+    }
+
+    private HttpEntity<Void> notFound(final String shortUrlPath,
+                                      final ResponseEntity<Void> response) {
+        // misses are counted by redirectMetrics, a flood of unknown paths
+        // would otherwise also be a flood of log lines
+        if (logger.isDebugEnabled()) {
+            logger.debug("Failed attempt to find short url: " + shortUrlPath);
+        }
+        redirectMetrics.notFound();
+        return response;
     }
 }
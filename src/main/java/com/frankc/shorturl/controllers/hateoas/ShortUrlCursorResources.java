@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.controllers.hateoas;
+
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.Resources;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A page of a keyset paged listing of ShortUrls, with a next link
+ * carrying the cursor for the following page when there may be one.
+ *
+ * @author Frank Callaly
+ */
+public class ShortUrlCursorResources extends Resources<ShortUrlResource> {
+
+    private final Long totalCount;
+
+    /**
+     * @param content ShortUrls of the page
+     * @param totalCount approximate number of ShortUrls, or null
+     * @param links self, and next when there are more pages
+     */
+    public ShortUrlCursorResources(final Iterable<ShortUrlResource> content,
+                                   final Long totalCount,
+                                   final Link... links) {
+        super(content, links);
+        this.totalCount = totalCount;
+    }
+
+    /**
+     * @return the number of ShortUrls, cached so it may be slightly out of
+     *         date, or null if it was not requested
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long getTotalCount() {
+        return totalCount;
+    }
+}
@@ -3,7 +3,9 @@ package com.frankc.shorturl.controllers.hateoas;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
 
+import org.springframework.hateoas.Link;
 import org.springframework.hateoas.ResourceSupport;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import com.frankc.shorturl.controllers.ShortUrlController;
 import com.frankc.shorturl.controllers.ShortUrlRedirectController;
@@ -32,6 +34,30 @@ public class ShortUrlResource extends ResourceSupport {
                 .withRel("exec-redirect"));
     }
 
+    /**
+     * Build the same links from an explicit base URI, for use outside of a
+     * Spring MVC request where linkTo cannot find the current request.
+     *
+     * @param shortUrl to wrap
+     * @param baseUri scheme, host and port the links should point at
+     */
+    public ShortUrlResource(final ShortUrl shortUrl,
+                            final UriComponentsBuilder baseUri) {
+        this.shortUrl = shortUrl;
+
+        add(new Link(baseUri.cloneBuilder()
+                            .path(ShortUrlController.BASE_PATH)
+                            .toUriString(), "all-urls"));
+        add(new Link(baseUri.cloneBuilder()
+                            .path(ShortUrlController.BASE_PATH)
+                            .path(shortUrl.getShortUrlPath())
+                            .toUriString()));
+        add(new Link(baseUri.cloneBuilder()
+                            .path(ShortUrlRedirectController.BASE_PATH)
+                            .path(shortUrl.getShortUrlPath())
+                            .toUriString(), "exec-redirect"));
+    }
+
     public ShortUrl getShortUrl() {
         return shortUrl;
     }
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.datasource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Replaces the auto-configured DataSource with one sending read-only
+ * transactions to read replicas, when com.frankc.shorturl.replicas.enabled
+ * is true.
+ *
+ * The primary is spring.datasource.url, the replicas are
+ * com.frankc.shorturl.replicas.urls, all with the spring.datasource
+ * credentials and spring.datasource.hikari pool settings. Replicas are
+ * health checked every com.frankc.shorturl.replicas.healthCheckIntervalMs.
+ *
+ * @author Frank Callaly
+ */
+@Configuration
+@Profile("!logstore")
+@ConditionalOnProperty(name = "com.frankc.shorturl.replicas.enabled",
+                       havingValue = "true")
+public class ReplicaRoutingConfig {
+
+    public static final String HEALTHY_GAUGE = "shorturl.replicas.healthy";
+
+    @Autowired
+    private DataSourceProperties dataSourceProperties;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${com.frankc.shorturl.replicas.urls:}")
+    private String[] replicaUrls;
+
+    @Value("${com.frankc.shorturl.replicas.healthCheckTimeoutSeconds:1}")
+    private int healthCheckTimeoutSeconds;
+
+    // not a bean itself, each DataSource bean is initialized from schema.sql
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Bean
+    public DataSource dataSource() {
+        if (replicaUrls.length == 0) {
+            throw new IllegalStateException(
+                        "com.frankc.shorturl.replicas.urls lists no replicas");
+        }
+
+        List<DataSource> replicas = new ArrayList<>(replicaUrls.length);
+        for (int i = 0; i < replicaUrls.length; ++i) {
+            HikariDataSource replica =
+                    createPool(replicaUrls[i].trim(), "replica-" + (i + 1));
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+
+        routingDataSource = new ReplicaRoutingDataSource(
+                        createPool(dataSourceProperties.determineUrl(),
+                                   "primary"),
+                        replicas);
+        meterRegistry.gauge(HEALTHY_GAUGE, routingDataSource,
+                            ReplicaRoutingDataSource::countHealthy);
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Scheduled(
+        fixedDelayString =
+            "${com.frankc.shorturl.replicas.healthCheckIntervalMs:5000}")
+    public void checkReplicas() {
+        if (routingDataSource != null) {
+            routingDataSource.checkReplicas(healthCheckTimeoutSeconds);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (routingDataSource != null) {
+            routingDataSource.close();
+        }
+    }
+
+    private HikariDataSource createPool(final String url,
+                                        final String poolName) {
+        HikariDataSource pool = dataSourceProperties
+                .initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .url(url)
+                .build();
+        Binder.get(environment).bind("spring.datasource.hikari",
+                                     Bindable.ofInstance(pool));
+        pool.setPoolName(poolName);
+        pool.setMetricsTrackerFactory(
+                    new MicrometerMetricsTrackerFactory(meterRegistry));
+        return pool;
+    }
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.datasource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * DataSource which sends connections for read-only transactions to a
+ * replica and all others to the primary.
+ *
+ * Must be wrapped in a LazyConnectionDataSourceProxy. Transaction managers
+ * take a connection before marking the transaction read-only, the proxy
+ * defers choosing one until the first statement is run. Replicas are used
+ * in turn, skipping any that failed their last health check or a
+ * connection attempt since. If no replica is healthy reads go to the
+ * primary.
+ *
+ * @author Frank Callaly
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource
+                                      implements Closeable {
+
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY =
+            ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final DataSource primary;
+
+    private final List<Replica> replicas = new ArrayList<>();
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    /**
+     * @param primary DataSource for writes
+     * @param replicas DataSources for read-only transactions
+     */
+    public ReplicaRoutingDataSource(final DataSource primary,
+                                    final List<DataSource> replicas) {
+        this.primary = primary;
+        for (DataSource replica : replicas) {
+            this.replicas.add(new Replica(replica));
+        }
+    }
+
+    /**
+     * Run action with its reads sent to the primary, for reads that must
+     * see the latest writes.
+     *
+     * @param action to run on this thread
+     * @return the result of action
+     */
+    public static <T> T onPrimary(final Supplier<T> action) {
+        Boolean previous = PRIMARY_ONLY.get();
+        PRIMARY_ONLY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            PRIMARY_ONLY.set(previous);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return route(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(final String username,
+                                    final String password)
+                                    throws SQLException {
+        return route(dataSource ->
+                        dataSource.getConnection(username, password));
+    }
+
+    /**
+     * Check each replica can be connected to, marking it healthy or not.
+     *
+     * @param timeoutSeconds to wait for a connection to be validated
+     */
+    public void checkReplicas(final int timeoutSeconds) {
+        for (int i = 0; i < replicas.size(); ++i) {
+            Replica replica = replicas.get(i);
+            boolean healthy;
+            try (Connection connection =
+                        replica.dataSource.getConnection()) {
+                healthy = connection.isValid(timeoutSeconds);
+            } catch (SQLException ex) {
+                healthy = false;
+            }
+
+            if (healthy && !replica.healthy) {
+                logger.info("Replica " + (i + 1) + " is healthy, sending "
+                            + "reads to it");
+            } else if (!healthy && replica.healthy) {
+                logger.warn("Replica " + (i + 1) + " failed health check");
+            }
+            replica.healthy = healthy;
+        }
+    }
+
+    /**
+     * @return number of replicas reads may be sent to
+     */
+    public int countHealthy() {
+        int numHealthy = 0;
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                ++numHealthy;
+            }
+        }
+        return numHealthy;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (primary instanceof Closeable) {
+            ((Closeable) primary).close();
+        }
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof Closeable) {
+                ((Closeable) replica.dataSource).close();
+            }
+        }
+    }
+
+    private Connection route(final Connector connector) throws SQLException {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && !PRIMARY_ONLY.get()) {
+            for (int i = 0; i < replicas.size(); ++i) {
+                Replica replica = replicas.get(Math.floorMod(
+                        nextReplica.getAndIncrement(), replicas.size()));
+                if (!replica.healthy) {
+                    continue;
+                }
+
+                try {
+                    return connector.connect(replica.dataSource);
+                } catch (SQLException ex) {
+                    logger.warn("Failed to connect to replica, sending "
+                                + "reads elsewhere until it passes a health "
+                                + "check : " + ex);
+                    replica.healthy = false;
+                }
+            }
+        }
+        return connector.connect(primary);
+    }
+
+    @FunctionalInterface
+    private interface Connector {
+        Connection connect(DataSource dataSource) throws SQLException;
+    }
+
+    private static final class Replica {
+
+        private final DataSource dataSource;
+
+        private volatile boolean healthy = true;
+
+        Replica(final DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.entities;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * A scheme and host prefix which redirect_to stores as its id.
+ *
+ * Rows are only written and read by RedirectPrefixRepo with plain JDBC; the
+ * entity exists so the table is part of the schema Hibernate manages.
+ *
+ * @author Frank Callaly
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(
+            name = "uk_redirect_prefix_prefix", columnNames = "prefix"))
+public class RedirectPrefix {
+
+    public static final int PREFIX_FIELD_SIZE = 255;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private int id;
+
+    // utf8mb4_bin in schema.sql, prefixes are matched case sensitively so
+    // two differing only in case must both be storable
+    @Column(nullable = false, length = PREFIX_FIELD_SIZE)
+    private String prefix;
+
+    public RedirectPrefix() { }
+
+    public RedirectPrefix(final String prefix) {
+        this.prefix = prefix;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(final int id) {
+        this.id = id;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public void setPrefix(final String prefix) {
+        this.prefix = prefix;
+    }
+
+    public String toString() {
+        return "id: " + id + ", prefix: " + prefix;
+    }
+}
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.entities;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.frankc.shorturl.utils.RedirectPrefixDictionary;
+
+/**
+ * Stores a ShortUrl's inline redirectTo with its scheme and host replaced
+ * by a RedirectPrefixDictionary id, where the dictionary has one.
+ *
+ * Created by Hibernate through Spring, which injects the dictionary.
+ * Applies wherever the redirectTo attribute is selected, including
+ * projections, but not to functions of it such as substring.
+ *
+ * @author Frank Callaly
+ */
+@Converter
+public class RedirectToConverter
+             implements AttributeConverter<String, String> {
+
+    @Autowired
+    private RedirectPrefixDictionary redirectPrefixDictionary;
+
+    @Override
+    public String convertToDatabaseColumn(final String redirectTo) {
+        return redirectPrefixDictionary.encode(redirectTo);
+    }
+
+    @Override
+    public String convertToEntityAttribute(final String stored) {
+        return redirectPrefixDictionary.decode(stored);
+    }
+}
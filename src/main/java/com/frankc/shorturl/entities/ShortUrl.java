@@ -19,14 +19,18 @@ package com.frankc.shorturl.entities;
 import java.util.Date;
 
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Lob;
+import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -39,21 +43,62 @@ import io.swagger.annotations.ApiModelProperty;
  * @author Frank Callaly
  */
 @Entity
+@Table(indexes = {
+    @Index(name = "idx_short_url_created", columnList = "created"),
+    @Index(name = "uk_short_url_redirect_to_hash",
+           columnList = "redirectToHash", unique = true)})
 public class ShortUrl {
 
+    /**
+     * Longest redirectTo kept inline in the short_url row, longer ones are
+     * kept in redirectToOverflow.
+     */
+    public static final int MAX_INLINE_REDIRECT_TO_LENGTH = 2048;
+
     private static final int UUID2_FIELD_SIZE = 36;
 
     @JsonIgnore
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "short_url_id")
+    @GenericGenerator(
+            name = "short_url_id",
+            strategy = "com.frankc.shorturl.entities.PooledIdGenerator")
     private long id;
 
+    // ascii_bin in schema.sql, so compared case sensitively. Not declared
+    // here as H2, which the tests use, has no such column definition
     @Column(unique = true, length = UUID2_FIELD_SIZE)
     private String shortUrlPath;
 
-    @Lob
+    // null when redirectTo is longer than MAX_INLINE_REDIRECT_TO_LENGTH, a
+    // bounded varchar so that InnoDB keeps it in the row rather than off
+    // page as a LOB
+    @Convert(converter = RedirectToConverter.class)
+    @Column(length = MAX_INLINE_REDIRECT_TO_LENGTH)
     private String redirectTo;
 
+    // only set when redirectTo is too long to be kept inline
+    @JsonIgnore
+    @Lob
+    private String redirectToOverflow;
+
+    // SHA-256 of the canonical redirectTo and cacheMaxAge, only set when
+    // created with com.frankc.shorturl.dedup.enabled. Unique, so creates of
+    // the same URL on different nodes can't both insert
+    @JsonIgnore
+    @Column(columnDefinition = "binary(32)")
+    private byte[] redirectToHash;
+
+    // number of creates a dedup ShortUrl has been returned by, each delete
+    // takes one away and only the last deletes the ShortUrl
+    @JsonIgnore
+    @Column(columnDefinition = "int default 1 not null")
+    private int creators = 1;
+
+    @ApiModelProperty(notes = "Optional Cache-Control max-age in seconds for "
+                              + "redirects, overrides the configured default")
+    private Integer cacheMaxAge;
+
 
     @JsonIgnore
     @CreationTimestamp
@@ -89,11 +134,45 @@ public class ShortUrl {
     }
 
     public String getRedirectTo() {
-        return this.redirectTo;
+        return this.redirectTo != null
+               ? this.redirectTo : this.redirectToOverflow;
     }
 
     public void setRedirectTo(final String redirectTo) {
-        this.redirectTo = redirectTo;
+        if (redirectTo != null
+                && redirectTo.length() > MAX_INLINE_REDIRECT_TO_LENGTH) {
+            this.redirectTo = null;
+            this.redirectToOverflow = redirectTo;
+        } else {
+            this.redirectTo = redirectTo;
+            this.redirectToOverflow = null;
+        }
+    }
+
+    @ApiModelProperty(hidden = true)
+    public byte[] getRedirectToHash() {
+        return redirectToHash;
+    }
+
+    public void setRedirectToHash(final byte[] redirectToHash) {
+        this.redirectToHash = redirectToHash;
+    }
+
+    @ApiModelProperty(hidden = true)
+    public int getCreators() {
+        return creators;
+    }
+
+    public void setCreators(final int creators) {
+        this.creators = creators;
+    }
+
+    public Integer getCacheMaxAge() {
+        return cacheMaxAge;
+    }
+
+    public void setCacheMaxAge(final Integer cacheMaxAge) {
+        this.cacheMaxAge = cacheMaxAge;
     }
 
     @ApiModelProperty(hidden = true)
@@ -118,6 +197,7 @@ public class ShortUrl {
         return "Id: " + this.getId()
                + ", shortUrl: " + this.getShortUrlPath()
                + ", redirectTo: " + this.getRedirectTo()
+               + ", cacheMaxAge: " + this.getCacheMaxAge()
                + ", created: " + this.getCreated()
                + ", last updated: " + this.getLastUpdated();
     }
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.entities;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Persisted number of redirects made by a shortUrlPath.
+ *
+ * Kept apart from short_url so that counting clicks never locks or rewrites
+ * ShortUrl rows. Rows are only written by ClickCountRepo, which adds
+ * aggregated deltas with plain JDBC; the entity exists so the table is
+ * part of the schema Hibernate manages.
+ *
+ * @author Frank Callaly
+ */
+@Entity
+public class ShortUrlClickCount {
+
+    private static final int UUID2_FIELD_SIZE = 36;
+
+    @Id
+    @Column(length = UUID2_FIELD_SIZE)
+    private String shortUrlPath;
+
+    @Column(nullable = false)
+    private long clicks;
+
+    public ShortUrlClickCount() { }
+
+    public ShortUrlClickCount(final String shortUrlPath, final long clicks) {
+        this.shortUrlPath = shortUrlPath;
+        this.clicks = clicks;
+    }
+
+    public String getShortUrlPath() {
+        return shortUrlPath;
+    }
+
+    public void setShortUrlPath(final String shortUrlPath) {
+        this.shortUrlPath = shortUrlPath;
+    }
+
+    public long getClicks() {
+        return clicks;
+    }
+
+    public void setClicks(final long clicks) {
+        this.clicks = clicks;
+    }
+
+    public String toString() {
+        return "shortUrlPath: " + shortUrlPath + ", clicks: " + clicks;
+    }
+}
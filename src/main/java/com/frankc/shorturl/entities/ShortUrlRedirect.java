@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.entities;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Immutable, ready to send redirect for a shortUrlPath.
+ *
+ * The redirectTo URL is parsed once when this object is created and the
+ * complete response is built up front. ResponseEntity is immutable, so a
+ * cached redirect can be returned for every click without parsing the URL or
+ * copying headers.
+ *
+ * @author Frank Callaly
+ */
+public final class ShortUrlRedirect {
+
+    private final String shortUrlPath;
+
+    private final String redirectTo;
+
+    private final ResponseEntity<Void> response;
+
+    public ShortUrlRedirect(final String shortUrlPath,
+                            final String redirectTo) {
+        this(shortUrlPath, redirectTo, CacheControl.empty());
+    }
+
+    public ShortUrlRedirect(final String shortUrlPath,
+                            final String redirectTo,
+                            final CacheControl cacheControl) {
+        this.shortUrlPath = shortUrlPath;
+        this.redirectTo = redirectTo;
+        this.response = buildResponse(redirectTo, cacheControl);
+    }
+
+    public String getShortUrlPath() {
+        return shortUrlPath;
+    }
+
+    public String getRedirectTo() {
+        return redirectTo;
+    }
+
+    /**
+     * Get the redirect response for this shortUrlPath.
+     *
+     * @return a 301 response with Location set, or null if redirectTo is not
+     *         a valid URI
+     */
+    public ResponseEntity<Void> getResponse() {
+        return response;
+    }
+
+    public boolean isValid() {
+        return response != null;
+    }
+
+    public String toString() {
+        return "shortUrl: " + this.getShortUrlPath()
+               + ", redirectTo: " + this.getRedirectTo();
+    }
+
+    private static ResponseEntity<Void> buildResponse(
+                                        final String redirectTo,
+                                        final CacheControl cacheControl) {
+        if (redirectTo == null) {
+            return null;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        try {
+            headers.setLocation(new URI(redirectTo));
+        } catch (URISyntaxException ex) {
+            return null;
+        }
+        // HttpHeaders stores a null value for CacheControl.empty() which
+        // the servlet response then rejects, so only set it when present
+        if (cacheControl.getHeaderValue() != null) {
+            headers.setCacheControl(cacheControl);
+        }
+        return new ResponseEntity<>(headers, HttpStatus.MOVED_PERMANENTLY);
+    }
+}
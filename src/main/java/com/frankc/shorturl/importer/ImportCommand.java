@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.importer;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.ExitCodeGenerator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Command line import, run by ShortUrlApplication when its first argument
+ * is import, e.g.
+ *
+ * java -jar shorturl.jar import --file=urls.csv --report=report.ndjson
+ *
+ * Options are --file, a path or - for stdin, --format of ndjson or csv,
+ * by default from the file extension, --report, a path for the NDJSON
+ * report, by default stdout, --keepShortUrlPaths and --includeCreated.
+ *
+ * @author Frank Callaly
+ */
+@Component
+@ConditionalOnProperty(ImportCommand.ENABLED_PROPERTY)
+public class ImportCommand implements ApplicationRunner, ExitCodeGenerator {
+
+    public static final String NAME = "import";
+
+    public static final String ENABLED_PROPERTY =
+            "com.frankc.shorturl.importer.command.enabled";
+
+    private static final String STDIN = "-";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private ShortUrlImporter shortUrlImporter;
+
+    private int exitCode;
+
+    @Override
+    public void run(final ApplicationArguments args) {
+        String file = getOption(args, "file");
+        String formatName = getOption(args, "format");
+        String report = getOption(args, "report");
+
+        if (file == null) {
+            usage();
+            return;
+        }
+
+        ImportFormat format;
+        try {
+            format = formatName != null
+                ? ImportFormat.valueOf(formatName.toUpperCase(Locale.ENGLISH))
+                : ImportFormat.forFileName(file);
+        } catch (IllegalArgumentException ex) {
+            usage();
+            return;
+        }
+
+        try (InputStream in = STDIN.equals(file)
+                                    ? StreamUtils.nonClosing(System.in)
+                                    : new FileInputStream(file);
+             OutputStream out = report == null
+                                    ? StreamUtils.nonClosing(System.out)
+                                    : new FileOutputStream(report);
+             ImportReportWriter reportWriter = new ImportReportWriter(
+                            out, args.containsOption("includeCreated"))) {
+            shortUrlImporter.importShortUrls(
+                    new InputStreamReader(in, StandardCharsets.UTF_8),
+                    format, args.containsOption("keepShortUrlPaths"),
+                    reportWriter);
+        } catch (IOException ex) {
+            logger.error("Import from " + file + " failed : " + ex);
+            exitCode = 1;
+        }
+    }
+
+    @Override
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    private void usage() {
+        logger.error("Usage: import --file=<path or -> [--format=ndjson|csv]"
+                     + " [--report=<path>] [--keepShortUrlPaths]"
+                     + " [--includeCreated]");
+        exitCode = 2;
+    }
+
+    private static String getOption(final ApplicationArguments args,
+                                    final String name) {
+        List<String> values = args.getOptionValues(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.importer;
+
+import java.util.Locale;
+
+/**
+ * Supported formats for bulk imports, one ShortUrl per line.
+ *
+ * NDJSON lines are either an object with redirectTo and optionally
+ * shortUrlPath fields, or a bare JSON string redirectTo. CSV lines are
+ * redirectTo with an optional second column of shortUrlPath, and may start
+ * with a header line whose first column is redirectTo.
+ *
+ * @author Frank Callaly
+ */
+public enum ImportFormat {
+
+    NDJSON(ImportFormat.NDJSON_VALUE),
+    CSV(ImportFormat.CSV_VALUE);
+
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+
+    public static final String CSV_VALUE = "text/csv";
+
+    private final String mediaType;
+
+    ImportFormat(final String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @param mediaType a content type, parameters are ignored
+     * @return the format with the given media type
+     * @throws IllegalArgumentException if no format has the media type
+     */
+    public static ImportFormat forMediaType(final String mediaType)
+                                            throws IllegalArgumentException {
+        String baseType = mediaType.split(";", 2)[0].trim()
+                                   .toLowerCase(Locale.ENGLISH);
+        for (ImportFormat format : values()) {
+            if (format.mediaType.equals(baseType)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException(
+                        "Unsupported import media type: " + mediaType);
+    }
+
+    /**
+     * @param fileName name of an import file
+     * @return CSV for a .csv file, otherwise NDJSON
+     */
+    public static ImportFormat forFileName(final String fileName) {
+        if (fileName.toLowerCase(Locale.ENGLISH).endsWith(".csv")) {
+            return CSV;
+        }
+        return NDJSON;
+    }
+}
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.importer;
+
+import java.io.IOException;
+
+import com.frankc.shorturl.services.BatchCreateResult;
+
+/**
+ * Receives the results of an import as each batch is written, on the
+ * importing thread. An IOException ends the import.
+ *
+ * @author Frank Callaly
+ */
+public interface ImportListener {
+
+    void onResult(ImportRecord record, BatchCreateResult result)
+                  throws IOException;
+
+    void onBatchWritten(ImportProgress progress) throws IOException;
+
+    void onComplete(ImportProgress progress) throws IOException;
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.importer;
+
+import com.frankc.shorturl.services.BatchCreateResult;
+
+/**
+ * Running totals for an import. Only updated by the importing thread.
+ *
+ * @author Frank Callaly
+ */
+public class ImportProgress {
+
+    private long read;
+
+    private long created;
+
+    private long invalid;
+
+    private long duplicate;
+
+    private long failed;
+
+    void add(final BatchCreateResult.Status status) {
+        ++read;
+        switch (status) {
+            case CREATED:
+                ++created;
+                break;
+            case INVALID:
+                ++invalid;
+                break;
+            case DUPLICATE:
+                ++duplicate;
+                break;
+            default:
+                ++failed;
+                break;
+        }
+    }
+
+    public long getRead() {
+        return read;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getInvalid() {
+        return invalid;
+    }
+
+    public long getDuplicate() {
+        return duplicate;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    @Override
+    public String toString() {
+        return "read: " + read + ", created: " + created
+               + ", invalid: " + invalid + ", duplicate: " + duplicate
+               + ", failed: " + failed;
+    }
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.importer;
+
+/**
+ * One line read from an import.
+ *
+ * @author Frank Callaly
+ */
+public final class ImportRecord {
+
+    private final long lineNumber;
+
+    private final String redirectTo;
+
+    private final String shortUrlPath;
+
+    /**
+     * @param lineNumber of the line in the import, from 1
+     * @param redirectTo as given, null if the line could not be parsed
+     * @param shortUrlPath as given, or null
+     */
+    public ImportRecord(final long lineNumber, final String redirectTo,
+                        final String shortUrlPath) {
+        this.lineNumber = lineNumber;
+        this.redirectTo = redirectTo;
+        this.shortUrlPath = shortUrlPath;
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    public String getRedirectTo() {
+        return redirectTo;
+    }
+
+    public String getShortUrlPath() {
+        return shortUrlPath;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportRecord [lineNumber=" + lineNumber + ", redirectTo="
+               + redirectTo + ", shortUrlPath=" + shortUrlPath + "]";
+    }
+}
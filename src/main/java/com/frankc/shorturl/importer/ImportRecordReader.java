@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Reads ImportRecords one line at a time, holding no more than one line in
+ * memory however large the input. Not thread safe.
+ *
+ * A line which can't be parsed, or is longer than MAX_LINE_LENGTH, is
+ * returned as a record with a null redirectTo rather than ending the
+ * import. Blank lines are skipped.
+ *
+ * @author Frank Callaly
+ */
+public class ImportRecordReader {
+
+    // well beyond any URL a browser will follow
+    public static final int MAX_LINE_LENGTH = 65536;
+
+    public static final String REDIRECTTO_FIELD = "redirectTo";
+
+    public static final String SHORTURLPATH_FIELD = "shortUrlPath";
+
+    private static final ObjectReader JSON_READER =
+            new ObjectMapper().readerFor(JsonNode.class);
+
+    private final BufferedReader in;
+
+    private final ImportFormat format;
+
+    private final StringBuilder line = new StringBuilder();
+
+    private long lineNumber;
+
+    private boolean endOfInput;
+
+    private boolean firstRecord = true;
+
+    public ImportRecordReader(final Reader in, final ImportFormat format) {
+        this.in = in instanceof BufferedReader
+                        ? (BufferedReader) in : new BufferedReader(in);
+        this.format = format;
+    }
+
+    /**
+     * @return the next record, or null at the end of the input
+     * @throws IOException if the input can't be read
+     */
+    public ImportRecord next() throws IOException {
+        while (readLine()) {
+            if (isBlank(line)) {
+                continue;
+            }
+            if (line.length() > MAX_LINE_LENGTH) {
+                return new ImportRecord(lineNumber, null, null);
+            }
+            if (format == ImportFormat.CSV) {
+                List<String> columns = parseCsv(line);
+                boolean header = firstRecord && REDIRECTTO_FIELD
+                        .equalsIgnoreCase(columns.get(0).trim());
+                firstRecord = false;
+                if (header) {
+                    continue;
+                }
+                return new ImportRecord(lineNumber, columns.get(0),
+                                        columns.size() > 1
+                                            ? emptyToNull(columns.get(1))
+                                            : null);
+            }
+            return parseNdjson(line);
+        }
+        return null;
+    }
+
+    /**
+     * Read the next line into line, without its line terminator. Only the
+     * first MAX_LINE_LENGTH + 1 characters of a longer line are kept.
+     *
+     * @return false at the end of the input
+     */
+    private boolean readLine() throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+        line.setLength(0);
+
+        int c;
+        boolean empty = true;
+        while ((c = in.read()) != -1 && c != '\n') {
+            empty = false;
+            if (line.length() <= MAX_LINE_LENGTH) {
+                line.append((char) c);
+            }
+        }
+        if (c == -1) {
+            endOfInput = true;
+            if (empty) {
+                return false;
+            }
+        }
+
+        int last = line.length() - 1;
+        if (last >= 0 && line.charAt(last) == '\r') {
+            line.setLength(last);
+        }
+        ++lineNumber;
+        return true;
+    }
+
+    private ImportRecord parseNdjson(final CharSequence json) {
+        try {
+            JsonNode node = JSON_READER.readTree(json.toString());
+            if (node == null) {
+                return new ImportRecord(lineNumber, null, null);
+            }
+            if (node.isTextual()) {
+                return new ImportRecord(lineNumber, node.textValue(), null);
+            }
+            return new ImportRecord(
+                            lineNumber,
+                            node.path(REDIRECTTO_FIELD).textValue(),
+                            emptyToNull(
+                                node.path(SHORTURLPATH_FIELD).textValue()));
+        } catch (JsonProcessingException ex) {
+            return new ImportRecord(lineNumber, null, null);
+        } catch (IOException ex) {
+            // not thrown reading from a String
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Split a CSV line on commas outside of double quotes, where a quoted
+     * field may contain "" for a double quote.
+     */
+    static List<String> parseCsv(final CharSequence csv) {
+        List<String> columns = new ArrayList<>(2);
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < csv.length(); ++i) {
+            char c = csv.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    column.append(c);
+                } else if (i + 1 < csv.length() && csv.charAt(i + 1) == '"') {
+                    column.append('"');
+                    ++i;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                columns.add(column.toString());
+                column.setLength(0);
+            } else {
+                column.append(c);
+            }
+        }
+        columns.add(column.toString());
+        return columns;
+    }
+
+    private static boolean isBlank(final CharSequence value) {
+        for (int i = 0; i < value.length(); ++i) {
+            if (!Character.isWhitespace(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String emptyToNull(final String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
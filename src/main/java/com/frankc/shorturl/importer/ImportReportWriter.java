@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.frankc.shorturl.services.BatchCreateResult;
+
+/**
+ * Writes an import report as NDJSON, flushed after every batch so a client
+ * sees progress as the import runs.
+ *
+ * Lines have a type of result, for each record which was not created
+ * (or every record with includeCreated), progress, after each batch, and
+ * summary, once at the end.
+ *
+ * @author Frank Callaly
+ */
+public class ImportReportWriter implements ImportListener, Closeable {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final JsonGenerator generator;
+
+    private final boolean includeCreated;
+
+    public ImportReportWriter(final OutputStream out,
+                              final boolean includeCreated)
+                              throws IOException {
+        this.generator = JSON_FACTORY.createGenerator(out);
+        this.generator.setRootValueSeparator(null);
+        this.includeCreated = includeCreated;
+    }
+
+    public void onResult(final ImportRecord record,
+                         final BatchCreateResult result) throws IOException {
+        if (!includeCreated
+                && result.getStatus() == BatchCreateResult.Status.CREATED) {
+            return;
+        }
+
+        generator.writeStartObject();
+        generator.writeStringField("type", "result");
+        generator.writeNumberField("line", record.getLineNumber());
+        generator.writeStringField("status", result.getStatus().name());
+        writeOptionalField("redirectTo", result.getRedirectTo());
+        writeOptionalField("shortUrlPath", result.getShortUrlPath());
+        writeOptionalField("error", result.getError());
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    public void onBatchWritten(final ImportProgress progress)
+                               throws IOException {
+        writeProgress("progress", progress);
+        generator.flush();
+    }
+
+    public void onComplete(final ImportProgress progress) throws IOException {
+        writeProgress("summary", progress);
+        generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+
+    private void writeProgress(final String type,
+                               final ImportProgress progress)
+                               throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", type);
+        generator.writeNumberField("read", progress.getRead());
+        generator.writeNumberField("created", progress.getCreated());
+        generator.writeNumberField("invalid", progress.getInvalid());
+        generator.writeNumberField("duplicate", progress.getDuplicate());
+        generator.writeNumberField("failed", progress.getFailed());
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    private void writeOptionalField(final String name, final String value)
+                                    throws IOException {
+        if (value != null) {
+            generator.writeStringField(name, value);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.importer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.frankc.shorturl.entities.ShortUrl;
+import com.frankc.shorturl.services.BatchCreateResult;
+import com.frankc.shorturl.services.ShortUrlService;
+import com.frankc.shorturl.utils.RedirectUrlValidator;
+import com.frankc.shorturl.utils.ShortUrlPathGenerator;
+
+/**
+ * Streams ShortUrls from an NDJSON or CSV import into the repository.
+ *
+ * The importing thread reads records into batches of batchSize. Each batch
+ * is validated in parallel on a shared pool while the following batches
+ * are read, and batches are written in order through
+ * ShortUrlService.importShortUrls. Once maxBatchesInFlight batches have
+ * been read but not written, reading waits for the oldest to be written,
+ * so memory use is bounded by batchSize * maxBatchesInFlight records
+ * whatever the size of the import.
+ *
+ * @author Frank Callaly
+ */
+@Component
+public class ShortUrlImporter implements DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private ShortUrlService shortUrlService;
+
+    @Autowired
+    private RedirectUrlValidator redirectUrlValidator;
+
+    @Value("${com.frankc.shorturl.importer.batchSize:1000}")
+    private int batchSize;
+
+    @Value("${com.frankc.shorturl.importer.maxBatchesInFlight:4}")
+    private int maxBatchesInFlight;
+
+    private final int validationThreads;
+
+    private final ExecutorService validationExecutor;
+
+    /**
+     * @param validationThreads threads to validate URLs on, shared by all
+     *                          imports, 0 for one per processor
+     */
+    @Autowired
+    public ShortUrlImporter(
+            @Value("${com.frankc.shorturl.importer.validationThreads:0}")
+            final int validationThreads) {
+        this.validationThreads = validationThreads > 0
+                ? validationThreads
+                : Runtime.getRuntime().availableProcessors();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.validationExecutor = Executors.newFixedThreadPool(
+                this.validationThreads, runnable -> {
+                    Thread thread = new Thread(runnable, "shorturl-import-"
+                                               + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Import every record from in, reporting results to listener as each
+     * batch is written.
+     *
+     * @param in the import, read incrementally
+     * @param format of the import
+     * @param keepShortUrlPaths keep shortUrlPaths given in the import,
+     *                          rather than generating new ones
+     * @param listener to report results and progress to
+     * @return totals for the import
+     * @throws IOException if the import can't be read or the listener fails
+     */
+    public ImportProgress importShortUrls(final Reader in,
+                                          final ImportFormat format,
+                                          final boolean keepShortUrlPaths,
+                                          final ImportListener listener)
+                                          throws IOException {
+        ImportRecordReader reader = new ImportRecordReader(in, format);
+        ImportProgress progress = new ImportProgress();
+        Deque<ValidatedBatch> inFlight = new ArrayDeque<>(maxBatchesInFlight);
+        List<ImportRecord> records = new ArrayList<>(batchSize);
+
+        try {
+            ImportRecord record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+                if (records.size() < batchSize) {
+                    continue;
+                }
+                if (inFlight.size() >= maxBatchesInFlight) {
+                    write(inFlight.removeFirst(), progress, listener);
+                }
+                inFlight.addLast(validate(records, keepShortUrlPaths));
+                records = new ArrayList<>(batchSize);
+            }
+            if (!records.isEmpty()) {
+                inFlight.addLast(validate(records, keepShortUrlPaths));
+            }
+            while (!inFlight.isEmpty()) {
+                write(inFlight.removeFirst(), progress, listener);
+            }
+        } finally {
+            for (ValidatedBatch batch : inFlight) {
+                batch.cancel();
+            }
+        }
+
+        logger.info("Import complete, " + progress);
+        listener.onComplete(progress);
+        return progress;
+    }
+
+    @Override
+    public void destroy() {
+        validationExecutor.shutdownNow();
+    }
+
+    /**
+     * Start validating records on the validation pool, split into a slice
+     * per validation thread.
+     */
+    private ValidatedBatch validate(final List<ImportRecord> records,
+                                    final boolean keepShortUrlPaths) {
+        ValidatedBatch batch = new ValidatedBatch(records);
+        int sliceSize = (records.size() + validationThreads - 1)
+                        / validationThreads;
+
+        for (int start = 0; start < records.size(); start += sliceSize) {
+            int from = start;
+            int to = Math.min(start + sliceSize, records.size());
+            batch.slices.add(validationExecutor.submit(() -> {
+                for (int i = from; i < to; ++i) {
+                    validateRecord(batch, i, keepShortUrlPaths);
+                }
+            }));
+        }
+        return batch;
+    }
+
+    private void validateRecord(final ValidatedBatch batch, final int index,
+                                final boolean keepShortUrlPaths) {
+        ImportRecord record = batch.records.get(index);
+        String redirectTo = record.getRedirectTo();
+
+        if (redirectTo == null) {
+            batch.results[index] = BatchCreateResult.invalid(null);
+            return;
+        }
+
+        ShortUrl shortUrl;
+        try {
+            shortUrl = new ShortUrl(redirectUrlValidator.normaliseUrl(
+                                                                redirectTo));
+        } catch (MalformedURLException ex) {
+            batch.results[index] = BatchCreateResult.invalid(redirectTo);
+            return;
+        }
+
+        String shortUrlPath = record.getShortUrlPath();
+        if (keepShortUrlPaths && shortUrlPath != null) {
+            if (!ShortUrlPathGenerator.PATH_PATTERN.matcher(shortUrlPath)
+                                                  .matches()) {
+                batch.results[index] = BatchCreateResult.invalidShortUrlPath(
+                                                    redirectTo, shortUrlPath);
+                return;
+            }
+            shortUrl.setShortUrlPath(shortUrlPath);
+        }
+        batch.shortUrls[index] = shortUrl;
+    }
+
+    /**
+     * Wait for a batch to be validated, insert its valid ShortUrls and
+     * report every record's result.
+     */
+    private void write(final ValidatedBatch batch,
+                       final ImportProgress progress,
+                       final ImportListener listener) throws IOException {
+        batch.await();
+
+        List<ShortUrl> validShortUrls = new ArrayList<>(batch.size());
+        for (ShortUrl shortUrl : batch.shortUrls) {
+            if (shortUrl != null) {
+                validShortUrls.add(shortUrl);
+            }
+        }
+
+        List<BatchCreateResult> created =
+                        shortUrlService.importShortUrls(validShortUrls);
+
+        int next = 0;
+        for (int i = 0; i < batch.size(); ++i) {
+            BatchCreateResult result = batch.shortUrls[i] != null
+                                            ? created.get(next++)
+                                            : batch.results[i];
+            progress.add(result.getStatus());
+            listener.onResult(batch.records.get(i), result);
+        }
+        listener.onBatchWritten(progress);
+    }
+
+    /**
+     * A batch of records, each of which validation resolves to either a
+     * ShortUrl to insert or an INVALID result.
+     */
+    private static final class ValidatedBatch {
+
+        private final List<ImportRecord> records;
+
+        private final ShortUrl[] shortUrls;
+
+        private final BatchCreateResult[] results;
+
+        private final List<Future<?>> slices = new ArrayList<>();
+
+        ValidatedBatch(final List<ImportRecord> records) {
+            this.records = records;
+            this.shortUrls = new ShortUrl[records.size()];
+            this.results = new BatchCreateResult[records.size()];
+        }
+
+        int size() {
+            return records.size();
+        }
+
+        void await() throws IOException {
+            try {
+                for (Future<?> slice : slices) {
+                    slice.get();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException(ex.getCause());
+            }
+        }
+
+        void cancel() {
+            for (Future<?> slice : slices) {
+                slice.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.logstore;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+/**
+ * Log locations of entries in id order, held in direct ByteBuffers outside
+ * the Java heap, for paging through a LogStore without scanning its
+ * OffHeapIndex.
+ *
+ * Entries are 16 bytes, the id and the location, in chunks which are each
+ * in id order and hold lower ids than the chunks after them. The LogStore
+ * assigns ids in increasing order, so a new entry is appended to the last
+ * chunk, or a new one, and the index never has to be copied to grow. An id
+ * is found by binary search over the first ids of the chunks and then
+ * within one. A removal clears the location of an entry, a chunk is
+ * squeezed once most of its entries are removed and dropped once all are,
+ * so skipping removed entries costs at most one entry read per live one.
+ *
+ * Not thread safe, LogStore only uses it while holding its lock.
+ *
+ * @author Frank Callaly
+ */
+final class IdIndex {
+
+    private static final int ENTRY_SIZE = 16;
+
+    // 2^16 entries of 16 bytes, 1MB, per direct buffer
+    static final int DEFAULT_CHUNK_ENTRIES_BITS = 16;
+
+    private final int chunkEntries;
+
+    private final List<Chunk> chunks = new ArrayList<>();
+
+    private long size;
+
+    private long lastId;
+
+    private boolean sorted = true;
+
+    IdIndex() {
+        this(DEFAULT_CHUNK_ENTRIES_BITS);
+    }
+
+    /**
+     * @param chunkEntriesBits log2 of the number of entries per chunk
+     */
+    IdIndex(final int chunkEntriesBits) {
+        this.chunkEntries = 1 << chunkEntriesBits;
+    }
+
+    /**
+     * Add an entry. An id lower than one already added leaves the index
+     * unusable until sort() is called.
+     */
+    void add(final long id, final long location) {
+        Chunk last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (last == null || last.count == chunkEntries) {
+            last = new Chunk(chunkEntries);
+            chunks.add(last);
+        }
+
+        if (size > 0 && id <= lastId) {
+            sorted = false;
+        }
+        last.set(last.count++, id, location);
+        ++last.live;
+        ++size;
+        lastId = Math.max(lastId, id);
+    }
+
+    /**
+     * Put entries added out of order into id order. Only used while the
+     * index is built, before any removal, when every chunk but the last is
+     * full.
+     */
+    void sort() {
+        if (!sorted) {
+            sort(0, size - 1);
+            sorted = true;
+        }
+    }
+
+    /**
+     * @return false if there is no entry for id
+     */
+    boolean replace(final long id, final long location) {
+        Chunk chunk = chunkFor(id);
+        int position = chunk == null ? -1 : chunk.indexOf(id);
+        if (position < 0 || chunk.location(position) == 0) {
+            return false;
+        }
+        chunk.set(position, id, location);
+        return true;
+    }
+
+    /**
+     * @return false if there is no entry for id
+     */
+    boolean remove(final long id) {
+        Chunk chunk = chunkFor(id);
+        int position = chunk == null ? -1 : chunk.indexOf(id);
+        if (position < 0 || chunk.location(position) == 0) {
+            return false;
+        }
+        chunk.set(position, id, 0);
+        --chunk.live;
+        --size;
+
+        if (chunk.live == 0) {
+            chunks.remove(chunk);
+        } else if (chunk.live < chunk.count / 2) {
+            chunk.squeeze();
+        }
+        return true;
+    }
+
+    /**
+     * Pass the locations of entries with ids after afterId to action, in id
+     * order, until it returns false.
+     */
+    void forEachAfter(final long afterId, final LongPredicate action) {
+        int chunkIndex = Math.max(chunkIndexFor(afterId), 0);
+        if (chunkIndex < chunks.size()) {
+            forEachFrom(chunkIndex,
+                        chunks.get(chunkIndex).indexAfter(afterId), action);
+        }
+    }
+
+    /**
+     * Pass the locations of entries from the offset-th in id order to
+     * action, until it returns false. Whole chunks are skipped by their
+     * count of live entries.
+     */
+    void forEachFromOffset(final long offset, final LongPredicate action) {
+        long skip = offset;
+        int chunkIndex = 0;
+        while (chunkIndex < chunks.size()
+                && skip >= chunks.get(chunkIndex).live) {
+            skip -= chunks.get(chunkIndex++).live;
+        }
+        if (chunkIndex == chunks.size()) {
+            return;
+        }
+
+        Chunk chunk = chunks.get(chunkIndex);
+        int position = 0;
+        for (; skip > 0 || chunk.location(position) == 0; ++position) {
+            if (chunk.location(position) != 0) {
+                --skip;
+            }
+        }
+        forEachFrom(chunkIndex, position, action);
+    }
+
+    long size() {
+        return size;
+    }
+
+    private void forEachFrom(final int fromChunk, final int fromPosition,
+                             final LongPredicate action) {
+        int position = fromPosition;
+        for (int i = fromChunk; i < chunks.size(); ++i) {
+            Chunk chunk = chunks.get(i);
+            for (; position < chunk.count; ++position) {
+                long location = chunk.location(position);
+                if (location != 0 && !action.test(location)) {
+                    return;
+                }
+            }
+            position = 0;
+        }
+    }
+
+    private Chunk chunkFor(final long id) {
+        int chunkIndex = chunkIndexFor(id);
+        return chunkIndex < 0 ? null : chunks.get(chunkIndex);
+    }
+
+    /**
+     * @return index of the last chunk whose first id is at most id, or -1
+     */
+    private int chunkIndexFor(final long id) {
+        int low = 0;
+        int high = chunks.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (chunks.get(middle).id(0) <= id) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Quicksort of the entries from..to, by position over all chunks.
+     */
+    private void sort(final long from, final long to) {
+        long low = from;
+        long high = to;
+        while (low < high) {
+            long pivot = id((low + high) >>> 1);
+            long i = low;
+            long j = high;
+            while (i <= j) {
+                while (id(i) < pivot) {
+                    ++i;
+                }
+                while (id(j) > pivot) {
+                    --j;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    ++i;
+                    --j;
+                }
+            }
+            // recurse into the smaller side to bound the stack depth
+            if (j - low < high - i) {
+                sort(low, j);
+                low = i;
+            } else {
+                sort(i, high);
+                high = j;
+            }
+        }
+    }
+
+    private long id(final long index) {
+        return chunks.get((int) (index / chunkEntries))
+                     .id((int) (index % chunkEntries));
+    }
+
+    private void swap(final long i, final long j) {
+        Chunk chunkI = chunks.get((int) (i / chunkEntries));
+        Chunk chunkJ = chunks.get((int) (j / chunkEntries));
+        int positionI = (int) (i % chunkEntries);
+        int positionJ = (int) (j % chunkEntries);
+        long id = chunkI.id(positionI);
+        long location = chunkI.location(positionI);
+
+        chunkI.set(positionI, chunkJ.id(positionJ),
+                   chunkJ.location(positionJ));
+        chunkJ.set(positionJ, id, location);
+    }
+
+    /**
+     * Entries in id order, count of them used of which live have a
+     * location.
+     */
+    private static final class Chunk {
+
+        private final ByteBuffer buffer;
+
+        private int count;
+
+        private int live;
+
+        Chunk(final int entries) {
+            buffer = ByteBuffer.allocateDirect(entries * ENTRY_SIZE)
+                               .order(ByteOrder.nativeOrder());
+        }
+
+        long id(final int position) {
+            return buffer.getLong(position * ENTRY_SIZE);
+        }
+
+        long location(final int position) {
+            return buffer.getLong(position * ENTRY_SIZE + 8);
+        }
+
+        void set(final int position, final long id, final long location) {
+            buffer.putLong(position * ENTRY_SIZE, id);
+            buffer.putLong(position * ENTRY_SIZE + 8, location);
+        }
+
+        /**
+         * @return position of the entry for id, or -1
+         */
+        int indexOf(final long id) {
+            int position = indexAfter(id) - 1;
+            return position >= 0 && id(position) == id ? position : -1;
+        }
+
+        /**
+         * @return position of the first entry with an id after id
+         */
+        int indexAfter(final long id) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (id(middle) <= id) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Move the live entries to the front, in order.
+         */
+        void squeeze() {
+            int kept = 0;
+            for (int position = 0; position < count; ++position) {
+                long location = location(position);
+                if (location != 0) {
+                    set(kept++, id(position), location);
+                }
+            }
+            count = kept;
+        }
+    }
+}
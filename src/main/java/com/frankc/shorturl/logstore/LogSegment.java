@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.logstore;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One memory-mapped file of a LogStore's log, which records are appended
+ * to until it is full.
+ *
+ * writePosition and liveBytes are guarded by the LogStore's lock.
+ *
+ * @author Frank Callaly
+ */
+final class LogSegment {
+
+    private static final String FILE_PREFIX = "segment-";
+
+    private static final String FILE_SUFFIX = ".log";
+
+    private final int number;
+
+    private final Path file;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    // end of the last valid record
+    int writePosition;
+
+    // bytes of records the index refers to
+    long liveBytes;
+
+    private LogSegment(final int number, final Path file,
+                       final FileChannel channel,
+                       final MappedByteBuffer buffer) {
+        this.number = number;
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Map a segment file, creating it with newSize bytes if it doesn't
+     * exist. An existing file is mapped at its own size.
+     */
+    static LogSegment open(final Path directory, final int number,
+                           final int newSize) throws IOException {
+        Path file = directory.resolve(
+                        String.format("%s%010d%s", FILE_PREFIX, number,
+                                      FILE_SUFFIX));
+        FileChannel channel = FileChannel.open(file,
+                                               StandardOpenOption.CREATE,
+                                               StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        try {
+            long size = channel.size() > 0 ? channel.size() : newSize;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Segment too large: " + file);
+            }
+            return new LogSegment(number, file, channel,
+                                  channel.map(FileChannel.MapMode.READ_WRITE,
+                                              0, size));
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return numbers of the segment files in directory, in order
+     */
+    static List<Integer> list(final Path directory) throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(
+                    directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                numbers.add(Integer.parseInt(name.substring(
+                        FILE_PREFIX.length(),
+                        name.length() - FILE_SUFFIX.length())));
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    int number() {
+        return number;
+    }
+
+    int size() {
+        return buffer.capacity();
+    }
+
+    MappedByteBuffer buffer() {
+        return buffer;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Close the file. The mapping stays valid until the buffer is garbage
+     * collected.
+     */
+    void close() throws IOException {
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    public String toString() {
+        return file + " [writePosition=" + writePosition + ", liveBytes="
+               + liveBytes + "]";
+    }
+}
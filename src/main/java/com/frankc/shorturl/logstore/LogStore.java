@@ -0,0 +1,677 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.logstore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongPredicate;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.frankc.shorturl.entities.ShortUrl;
+
+/**
+ * Embedded append-only store of ShortUrls, for running without a database.
+ *
+ * Every create and delete is appended as a record to a log of fixed size,
+ * memory-mapped segment files, and an OffHeapIndex maps a 64 bit hash of
+ * each live shortUrlPath to the location of its record. An IdIndex holds
+ * the same locations in id order, for paging by id. Neither the ShortUrls
+ * nor the indexes are held on the Java heap. A delete appends a tombstone
+ * record. Opening a store replays its segments in order to rebuild the
+ * indexes. Replay of a segment stops at the first record whose
+ * length or CRC is invalid, as left by a crash part way through a write,
+ * and nothing more is appended to that segment.
+ *
+ * compact() rewrites segments which are mostly superseded records and
+ * tombstones: their live records are appended again to the current
+ * segment and the old file deleted. A tombstone is appended again while
+ * an older segment may still hold a record it deletes.
+ *
+ * Lookups share a read lock; creates, deletes and compaction take the
+ * write lock. Records are written to the page cache, so survive the
+ * process being killed, and are written to disk by sync(), or by the
+ * operating system in its own time.
+ *
+ * @author Frank Callaly
+ */
+public class LogStore implements Closeable {
+
+    private static final byte PUT = 1;
+
+    private static final byte DELETE = 2;
+
+    // record layout: length, crc of the rest of the record, type, id,
+    // created, lastUpdated, cacheMaxAge, path length, path, redirectTo
+    // length, redirectTo
+    private static final int CRC_OFFSET = 4;
+    private static final int TYPE_OFFSET = 8;
+    private static final int ID_OFFSET = 9;
+    private static final int CREATED_OFFSET = 17;
+    private static final int UPDATED_OFFSET = 25;
+    private static final int MAX_AGE_OFFSET = 33;
+    private static final int PATH_LENGTH_OFFSET = 37;
+    private static final int HEADER_SIZE = 39;
+
+    private static final int NO_CACHE_MAX_AGE = Integer.MIN_VALUE;
+
+    private static final byte[] NO_REDIRECT_TO = new byte[0];
+
+    // records copied by compaction per hold of the write lock
+    private static final int COMPACTION_BATCH_RECORDS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final OffHeapIndex index;
+
+    private final IdIndex ids = new IdIndex();
+
+    private final TreeMap<Integer, LogSegment> segments = new TreeMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // segment appended to, null until the first append after opening if
+    // the last segment was full or damaged
+    private LogSegment active;
+
+    private long nextId = 1;
+
+    private long lastCreated;
+
+    /**
+     * Open the store in directory, replaying any segments it holds.
+     *
+     * @param directory to keep segment files in, created if need be
+     * @param segmentSize bytes of each new segment file
+     * @param expectedEntries number of ShortUrls to size the index for
+     * @throws IOException if a segment can't be read
+     */
+    public LogStore(final Path directory, final int segmentSize,
+                    final long expectedEntries) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException(
+                        "Segment size too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.index = new OffHeapIndex(expectedEntries);
+
+        long startTime = System.currentTimeMillis();
+        recover();
+        logger.info("Opened log store " + directory + " with "
+                    + index.size() + " ShortUrls in " + segments.size()
+                    + " segments in "
+                    + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * @return the ShortUrl with shortUrlPath, or null if there is none
+     */
+    public ShortUrl get(final String shortUrlPath) {
+        byte[] path = encodePath(shortUrlPath);
+
+        lock.readLock().lock();
+        try {
+            long location = index.get(hash(path), matcher(path));
+            return location == 0 ? null : decode(segments, location);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(final String shortUrlPath) {
+        byte[] path = encodePath(shortUrlPath);
+
+        lock.readLock().lock();
+        try {
+            return index.get(hash(path), matcher(path)) != 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add a ShortUrl, unless one with its shortUrlPath exists. Sets the id,
+     * created and lastUpdated of shortUrl when added.
+     *
+     * @param shortUrl with a shortUrlPath and redirectTo
+     * @return false if the shortUrlPath was already taken
+     * @throws IllegalArgumentException if the record can't fit a segment
+     */
+    public boolean putIfAbsent(final ShortUrl shortUrl) {
+        byte[] path = encodePath(shortUrl.getShortUrlPath());
+        byte[] redirectTo =
+                shortUrl.getRedirectTo().getBytes(StandardCharsets.UTF_8);
+        long hash = hash(path);
+        LongPredicate matches = matcher(path);
+
+        lock.writeLock().lock();
+        try {
+            if (index.get(hash, matches) != 0) {
+                return false;
+            }
+
+            // created never goes backwards, so it orders ShortUrls as ids do
+            long created = Math.max(System.currentTimeMillis(), lastCreated);
+            long id = nextId;
+            ByteBuffer record = encode(PUT, id, created,
+                                       shortUrl.getCacheMaxAge(), path,
+                                       redirectTo);
+            int length = record.remaining();
+            long location = append(record);
+
+            index.put(hash, location, matches);
+            ids.add(id, location);
+            active.liveBytes += length;
+            nextId = id + 1;
+            lastCreated = created;
+
+            shortUrl.setId(id);
+            shortUrl.setCreated(new Date(created));
+            shortUrl.setLastUpdated(new Date(created));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return false if there was no ShortUrl with shortUrlPath
+     */
+    public boolean delete(final String shortUrlPath) {
+        byte[] path = encodePath(shortUrlPath);
+        long hash = hash(path);
+        LongPredicate matches = matcher(path);
+
+        lock.writeLock().lock();
+        try {
+            if (index.get(hash, matches) == 0) {
+                return false;
+            }
+            append(encode(DELETE, 0, 0, null, path, NO_REDIRECT_TO));
+            long removed = index.remove(hash, matches);
+            ids.remove(readLong(segments, removed, ID_OFFSET));
+            release(removed);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the highest id assigned, 0 if none has been
+     */
+    public long lastId() {
+        lock.readLock().lock();
+        try {
+            return nextId - 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the ShortUrls with the lowest ids after afterId, by binary
+     * search of the IdIndex.
+     *
+     * @param afterId only ShortUrls with greater ids are found
+     * @param limit maximum number of ShortUrls to find
+     * @return up to limit ShortUrls in id order
+     */
+    public List<ShortUrl> findAfterId(final long afterId, final int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<ShortUrl> found = new ArrayList<>(Math.min(limit, 1000));
+
+        lock.readLock().lock();
+        try {
+            ids.forEachAfter(afterId, location -> {
+                found.add(decode(segments, location));
+                return found.size() < limit;
+            });
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the ShortUrls from the offset-th in id order. Skips whole
+     * chunks of the IdIndex at a time, but prefer findAfterId for paging
+     * through many ShortUrls.
+     *
+     * @param offset number of ShortUrls to skip
+     * @param limit maximum number of ShortUrls to find
+     * @return up to limit ShortUrls in id order
+     */
+    public List<ShortUrl> findFromOffset(final long offset,
+                                         final int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<ShortUrl> found = new ArrayList<>(Math.min(limit, 1000));
+
+        lock.readLock().lock();
+        try {
+            ids.forEachFromOffset(offset, location -> {
+                found.add(decode(segments, location));
+                return found.size() < limit;
+            });
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite each full segment whose live records are at most
+     * maxLiveRatio of its length.
+     *
+     * @param maxLiveRatio from 0 to 1
+     * @return number of segments removed
+     */
+    public int compact(final double maxLiveRatio) {
+        List<LogSegment> candidates = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            for (LogSegment segment : segments.values()) {
+                if (segment != active && segment.liveBytes
+                        <= maxLiveRatio * segment.writePosition) {
+                    candidates.add(segment);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        int numCompacted = 0;
+        for (LogSegment segment : candidates) {
+            long startTime = System.currentTimeMillis();
+            long liveBytes = segment.liveBytes;
+
+            compactSegment(segment);
+            ++numCompacted;
+            logger.info("Compacted " + segment + ", copied "
+                        + liveBytes + " live bytes in "
+                        + (System.currentTimeMillis() - startTime) + "ms");
+        }
+        return numCompacted;
+    }
+
+    /**
+     * Force records appended to the current segment to disk.
+     */
+    public void sync() {
+        lock.readLock().lock();
+        try {
+            if (active != null) {
+                active.force();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (LogSegment segment : segments.values()) {
+                segment.force();
+                segment.close();
+            }
+            segments.clear();
+            active = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        List<Integer> numbers = LogSegment.list(directory);
+        boolean lastComplete = true;
+
+        for (Integer number : numbers) {
+            LogSegment segment =
+                    LogSegment.open(directory, number, segmentSize);
+            segments.put(number, segment);
+            lastComplete = replay(segment);
+        }
+
+        if (!segments.isEmpty() && lastComplete) {
+            active = segments.lastEntry().getValue();
+        }
+
+        // records copied by compaction are out of id order in the log, so
+        // the IdIndex is built once the OffHeapIndex is complete
+        index.forEach(location ->
+                ids.add(readLong(segments, location, ID_OFFSET), location));
+        ids.sort();
+    }
+
+    /**
+     * @return false if replay stopped at a damaged record
+     */
+    private boolean replay(final LogSegment segment) {
+        ByteBuffer buffer = segment.buffer();
+        int position = 0;
+
+        while (position + HEADER_SIZE <= segment.size()) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < HEADER_SIZE + 4
+                    || length > segment.size() - position
+                    || !crcMatches(buffer, position, length)) {
+                logger.warn("Damaged record at " + position + " of "
+                            + segment + ", ignoring the rest of it");
+                segment.writePosition = position;
+                return false;
+            }
+
+            byte[] path = readPath(buffer, position);
+            long hash = hash(path);
+            long location = location(segment.number(), position);
+
+            if (buffer.get(position + TYPE_OFFSET) == PUT) {
+                segment.liveBytes += length;
+                release(index.put(hash, location, matcher(path)));
+                nextId = Math.max(nextId,
+                                  buffer.getLong(position + ID_OFFSET) + 1);
+                lastCreated = Math.max(lastCreated,
+                        buffer.getLong(position + CREATED_OFFSET));
+            } else {
+                release(index.remove(hash, matcher(path)));
+            }
+            position += length;
+        }
+        segment.writePosition = position;
+        return true;
+    }
+
+    /**
+     * Copy the live records, and needed tombstones, of a segment to the
+     * current one and delete it, holding the write lock for a batch of
+     * records at a time.
+     */
+    private void compactSegment(final LogSegment segment) {
+        ByteBuffer buffer = segment.buffer();
+        int position = 0;
+
+        while (position < segment.writePosition) {
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < COMPACTION_BATCH_RECORDS
+                        && position < segment.writePosition; ++i) {
+                    int length = buffer.getInt(position);
+                    copyIfNeeded(segment, position, length);
+                    position += length;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (active != null) {
+                active.force();
+            }
+            segments.remove(segment.number());
+            segment.delete();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void copyIfNeeded(final LogSegment segment, final int position,
+                              final int length) {
+        ByteBuffer buffer = segment.buffer();
+        byte[] path = readPath(buffer, position);
+        long hash = hash(path);
+        long location = location(segment.number(), position);
+        long current = index.get(hash, matcher(path));
+
+        ByteBuffer record = buffer.duplicate();
+        // Buffer's methods rather than ByteBuffer's covariant overrides,
+        // which don't exist on Java 8, when built by a later javac
+        ((Buffer) record).limit(position + length).position(position);
+
+        if (buffer.get(position + TYPE_OFFSET) == PUT) {
+            if (current == location) {
+                long copied = append(record);
+                index.replace(hash, location, copied);
+                ids.replace(buffer.getLong(position + ID_OFFSET), copied);
+                segment.liveBytes -= length;
+                active.liveBytes += length;
+            }
+        } else if (current == 0 && segments.firstKey() != segment.number()) {
+            // an older segment may hold a record this deletes
+            append(record);
+        }
+    }
+
+    private long append(final ByteBuffer record) {
+        int length = record.remaining();
+        if (length > segmentSize) {
+            throw new IllegalArgumentException(
+                        "Record of " + length + " bytes is larger than a "
+                        + "segment");
+        }
+        if (active == null || active.writePosition + length > active.size()) {
+            roll();
+        }
+
+        int position = active.writePosition;
+        ByteBuffer target = active.buffer().duplicate();
+        ((Buffer) target).position(position);
+        target.put(record);
+        active.writePosition = position + length;
+        return location(active.number(), position);
+    }
+
+    private void roll() {
+        int number = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        try {
+            if (active != null) {
+                active.force();
+            }
+            active = LogSegment.open(directory, number, segmentSize);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        segments.put(number, active);
+    }
+
+    /**
+     * Account for a record the index no longer refers to.
+     */
+    private void release(final long location) {
+        if (location != 0) {
+            LogSegment segment = segments.get(segment(location));
+            segment.liveBytes -=
+                    segment.buffer().getInt(position(location));
+        }
+    }
+
+    private LongPredicate matcher(final byte[] path) {
+        return location -> {
+            ByteBuffer buffer = segments.get(segment(location)).buffer();
+            int position = position(location);
+            if (buffer.getShort(position + PATH_LENGTH_OFFSET)
+                    != path.length) {
+                return false;
+            }
+            for (int i = 0; i < path.length; ++i) {
+                if (buffer.get(position + HEADER_SIZE + i) != path[i]) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private static ShortUrl decode(final Map<Integer, LogSegment> segments,
+                                   final long location) {
+        ByteBuffer buffer = segments.get(segment(location)).buffer();
+        int position = position(location);
+        byte[] path = readPath(buffer, position);
+        int redirectToPosition = position + HEADER_SIZE + path.length;
+
+        ShortUrl shortUrl = new ShortUrl(new String(
+                readBytes(buffer, redirectToPosition + 4,
+                          buffer.getInt(redirectToPosition)),
+                StandardCharsets.UTF_8));
+        shortUrl.setShortUrlPath(new String(path, StandardCharsets.UTF_8));
+        shortUrl.setId(buffer.getLong(position + ID_OFFSET));
+        shortUrl.setCreated(
+                new Date(buffer.getLong(position + CREATED_OFFSET)));
+        shortUrl.setLastUpdated(
+                new Date(buffer.getLong(position + UPDATED_OFFSET)));
+
+        int cacheMaxAge = buffer.getInt(position + MAX_AGE_OFFSET);
+        shortUrl.setCacheMaxAge(
+                cacheMaxAge == NO_CACHE_MAX_AGE ? null : cacheMaxAge);
+        return shortUrl;
+    }
+
+    private static ByteBuffer encode(final byte type, final long id,
+                                     final long created,
+                                     final Integer cacheMaxAge,
+                                     final byte[] path,
+                                     final byte[] redirectTo) {
+        int length = HEADER_SIZE + path.length + 4 + redirectTo.length;
+        ByteBuffer record = ByteBuffer.allocate(length);
+
+        record.putInt(length).putInt(0).put(type).putLong(id)
+              .putLong(created).putLong(created)
+              .putInt(cacheMaxAge == null ? NO_CACHE_MAX_AGE : cacheMaxAge)
+              .putShort((short) path.length).put(path)
+              .putInt(redirectTo.length).put(redirectTo);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), TYPE_OFFSET, length - TYPE_OFFSET);
+        record.putInt(CRC_OFFSET, (int) crc.getValue());
+        ((Buffer) record).flip();
+        return record;
+    }
+
+    private static boolean crcMatches(final ByteBuffer buffer,
+                                      final int position, final int length) {
+        ByteBuffer content = buffer.duplicate();
+        ((Buffer) content).limit(position + length)
+                          .position(position + TYPE_OFFSET);
+
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return (int) crc.getValue() == buffer.getInt(position + CRC_OFFSET);
+    }
+
+    private static byte[] encodePath(final String shortUrlPath) {
+        byte[] path = shortUrlPath.getBytes(StandardCharsets.UTF_8);
+        if (path.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("shortUrlPath too long");
+        }
+        return path;
+    }
+
+    private static byte[] readPath(final ByteBuffer buffer,
+                                   final int position) {
+        return readBytes(buffer, position + HEADER_SIZE,
+                         buffer.getShort(position + PATH_LENGTH_OFFSET));
+    }
+
+    private static byte[] readBytes(final ByteBuffer buffer,
+                                    final int position, final int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        ((Buffer) source).position(position);
+        source.get(bytes);
+        return bytes;
+    }
+
+    private static long readLong(final Map<Integer, LogSegment> segments,
+                                 final long location, final int offset) {
+        return segments.get(segment(location)).buffer()
+                       .getLong(position(location) + offset);
+    }
+
+    /**
+     * FNV-1a of the path bytes, with the MurmurHash3 finaliser so the low
+     * bits the index probes by depend on every byte.
+     */
+    static long hash(final byte[] path) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : path) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    // segment numbers start at 1, so no location is 0
+    private static long location(final int segment, final int position) {
+        return ((long) segment << 32) | position;
+    }
+
+    private static int segment(final long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int position(final long location) {
+        return (int) location;
+    }
+}
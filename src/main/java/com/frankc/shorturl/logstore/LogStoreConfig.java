@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.logstore;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Opens the LogStore for the logstore profile, and compacts and syncs it
+ * periodically. Fails startup if dedup, click counting or the reactive
+ * profile is enabled, as they need the database.
+ *
+ * @author Frank Callaly
+ */
+@Configuration
+@Profile("logstore")
+public class LogStoreConfig {
+
+    @Value("${com.frankc.shorturl.logstore.directory:logstore}")
+    private String directory;
+
+    @Value("${com.frankc.shorturl.logstore.segmentSize:67108864}")
+    private int segmentSize;
+
+    @Value("${com.frankc.shorturl.logstore.expectedEntries:1000000}")
+    private long expectedEntries;
+
+    @Value("${com.frankc.shorturl.logstore.compaction.maxLiveRatio:0.5}")
+    private double compactionMaxLiveRatio;
+
+    @Value("${com.frankc.shorturl.dedup.enabled:false}")
+    private boolean dedupEnabled;
+
+    @Value("${com.frankc.shorturl.clicks.enabled:true}")
+    private boolean clicksEnabled;
+
+    @Autowired
+    private Environment environment;
+
+    @PostConstruct
+    public void checkSupported() {
+        if (dedupEnabled) {
+            throw new IllegalStateException(
+                    "com.frankc.shorturl.dedup.enabled is not supported "
+                    + "with the logstore profile");
+        }
+        if (clicksEnabled) {
+            throw new IllegalStateException(
+                    "com.frankc.shorturl.clicks.enabled is not supported "
+                    + "with the logstore profile");
+        }
+        if (environment.acceptsProfiles(Profiles.of("reactive"))) {
+            throw new IllegalStateException(
+                    "The reactive profile is not supported with the "
+                    + "logstore profile");
+        }
+    }
+
+    @Bean(destroyMethod = "close")
+    public LogStore logStore() throws IOException {
+        return new LogStore(Paths.get(directory), segmentSize,
+                            expectedEntries);
+    }
+
+    @Scheduled(
+        initialDelayString =
+                "${com.frankc.shorturl.logstore.compaction.intervalMs:60000}",
+        fixedDelayString =
+                "${com.frankc.shorturl.logstore.compaction.intervalMs:60000}")
+    public void compact() throws IOException {
+        logStore().compact(compactionMaxLiveRatio);
+    }
+
+    @Scheduled(
+        initialDelayString =
+                "${com.frankc.shorturl.logstore.syncIntervalMs:1000}",
+        fixedDelayString =
+                "${com.frankc.shorturl.logstore.syncIntervalMs:1000}")
+    public void sync() throws IOException {
+        logStore().sync();
+    }
+}
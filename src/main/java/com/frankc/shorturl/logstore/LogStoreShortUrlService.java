@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.logstore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import com.frankc.shorturl.cache.ShortUrlCache;
+import com.frankc.shorturl.controllers.exceptions.MaxPathGenerationRetriesException;
+import com.frankc.shorturl.entities.ShortUrl;
+import com.frankc.shorturl.entities.ShortUrlRedirect;
+import com.frankc.shorturl.repositories.ShortUrlRepo.ExportRow;
+import com.frankc.shorturl.services.AbstractShortUrlService;
+import com.frankc.shorturl.services.BatchCreateResult;
+import com.frankc.shorturl.services.ClickCounter;
+import com.frankc.shorturl.services.ShortUrlCursor;
+
+/**
+ * ShortUrl Service layer over an embedded LogStore, for the logstore
+ * profile.
+ *
+ * Lookups are answered from the store's off-heap index, so no
+ * shortUrlPath filter is kept. Created ordering is the same as id
+ * ordering, as the store assigns both in order, so listings and exports
+ * page through the store's id index by the last id read. Dedup and click
+ * counting need the database, LogStoreConfig refuses to start with them
+ * enabled.
+ *
+ * @author Frank Callaly
+ */
+@Service
+@Profile("logstore")
+public class LogStoreShortUrlService extends AbstractShortUrlService {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private LogStore logStore;
+
+    @Autowired
+    private ShortUrlCache shortUrlCache;
+
+    @Autowired
+    private ClickCounter clickCounter;
+
+    // ShortUrls read under each hold of the store's read lock by an export
+    @Value("${com.frankc.shorturl.service.exportPageSize:1000}")
+    private int exportPageSize;
+
+    public List<ShortUrl> findAll(final Pageable pageRequest) {
+        return logStore.findFromOffset(pageRequest.getOffset(),
+                                       pageRequest.getPageSize());
+    }
+
+    public List<ShortUrl> findPage(final ShortUrlCursor cursor,
+                                   final int pageSize,
+                                   final int redirectToLength) {
+        List<ShortUrl> page =
+                logStore.findAfterId(cursor.getLastId(), pageSize);
+
+        for (ShortUrl shortUrl : page) {
+            String redirectTo = shortUrl.getRedirectTo();
+            if (redirectTo.length() > redirectToLength) {
+                shortUrl.setRedirectTo(
+                            redirectTo.substring(0, redirectToLength));
+            }
+        }
+        return page;
+    }
+
+    public long countShortUrls() {
+        return logStore.size();
+    }
+
+    public ShortUrl findByShortUrlPath(final String shortUrlPath)
+                                       throws NoSuchElementException {
+        ShortUrl foundShortUrl = logStore.get(shortUrlPath);
+
+        if (foundShortUrl == null) {
+            throw new NoSuchElementException();
+        }
+        return foundShortUrl;
+    }
+
+    public ShortUrlRedirect findRedirectByShortUrlPath(
+                                    final String shortUrlPath) {
+        return shortUrlCache.get(shortUrlPath, this::loadRedirect);
+    }
+
+    public ShortUrl createShortUrl(final String redirectTo,
+                                   final Integer cacheMaxAge)
+                                   throws IllegalArgumentException,
+                                          MaxPathGenerationRetriesException {
+        return saveWithUniquePath(newShortUrl(redirectTo, cacheMaxAge), true);
+    }
+
+    public List<BatchCreateResult> createShortUrls(
+                                            final List<String> redirectTos) {
+        List<BatchCreateResult> results = new ArrayList<>(redirectTos.size());
+
+        for (String redirectTo : redirectTos) {
+            ShortUrl newShortUrl;
+            try {
+                newShortUrl = new ShortUrl(normaliseRedirectTo(redirectTo));
+            } catch (IllegalArgumentException ex) {
+                results.add(BatchCreateResult.invalid(redirectTo));
+                continue;
+            }
+
+            try {
+                results.add(BatchCreateResult.created(
+                                saveWithUniquePath(newShortUrl, true)));
+            } catch (MaxPathGenerationRetriesException ex) {
+                results.add(BatchCreateResult.failed(
+                                newShortUrl.getRedirectTo()));
+            }
+        }
+        return results;
+    }
+
+    public List<BatchCreateResult> importShortUrls(
+                                            final List<ShortUrl> shortUrls) {
+        List<BatchCreateResult> results = new ArrayList<>(shortUrls.size());
+
+        for (ShortUrl shortUrl : shortUrls) {
+            // imported ShortUrls are mostly cold, keep them out of the
+            // cache rather than evicting the ones being used
+            if (shortUrl.getShortUrlPath() == null) {
+                try {
+                    results.add(BatchCreateResult.created(
+                                    saveWithUniquePath(shortUrl, false)));
+                } catch (MaxPathGenerationRetriesException ex) {
+                    results.add(BatchCreateResult.failed(
+                                    shortUrl.getRedirectTo()));
+                }
+            } else if (logStore.putIfAbsent(shortUrl)) {
+                results.add(BatchCreateResult.created(shortUrl));
+            } else {
+                logger.warn("ShortUrl with given path already exists : "
+                            + shortUrl.getShortUrlPath());
+                results.add(BatchCreateResult.duplicate(
+                                shortUrl.getRedirectTo(),
+                                shortUrl.getShortUrlPath()));
+            }
+        }
+        return results;
+    }
+
+    public long exportShortUrls(final Date createdFrom, final Date createdTo,
+                                final Date updatedFrom, final Date updatedTo,
+                                final ExportRowHandler handler)
+                                throws IOException {
+        // ShortUrls created after the export starts are left to the next one
+        long maxId = logStore.lastId();
+
+        long numRows = 0;
+        long afterId = 0;
+        while (true) {
+            List<ShortUrl> page =
+                    logStore.findAfterId(afterId, exportPageSize);
+            for (ShortUrl shortUrl : page) {
+                if (shortUrl.getId() > maxId) {
+                    return numRows;
+                }
+                if (inRange(shortUrl.getCreated(), createdFrom, createdTo)
+                        && inRange(shortUrl.getLastUpdated(),
+                                   updatedFrom, updatedTo)) {
+                    handler.handle(new ShortUrlExportRow(shortUrl));
+                    ++numRows;
+                }
+            }
+
+            if (page.size() < exportPageSize) {
+                return numRows;
+            }
+            afterId = page.get(page.size() - 1).getId();
+        }
+    }
+
+    public long countClicks(final String shortUrlPath)
+                            throws NoSuchElementException {
+        if (!logStore.contains(shortUrlPath)) {
+            throw new NoSuchElementException();
+        }
+        return clickCounter.getClicks(shortUrlPath);
+    }
+
+    public boolean deleteByShortUrlPath(final String shortUrlPath)
+                                        throws NoSuchElementException {
+        // creates are never deduplicated here, so there is one creator
+        if (!logStore.delete(shortUrlPath)) {
+            throw new NoSuchElementException();
+        }
+        shortUrlCache.invalidate(shortUrlPath);
+        clickCounter.remove(shortUrlPath);
+        return true;
+    }
+
+    protected ShortUrl saveIfPathFree(final ShortUrl newShortUrl,
+                                      final boolean cacheCreated) {
+        if (!logStore.putIfAbsent(newShortUrl)) {
+            return null;
+        }
+        if (cacheCreated) {
+            shortUrlCache.put(newShortUrl.getShortUrlPath(),
+                              toRedirect(newShortUrl));
+        }
+        return newShortUrl;
+    }
+
+    private ShortUrlRedirect loadRedirect(final String shortUrlPath) {
+        ShortUrl shortUrl = logStore.get(shortUrlPath);
+        return shortUrl == null ? null : toRedirect(shortUrl);
+    }
+
+    private static boolean inRange(final Date date, final Date from,
+                                   final Date to) {
+        return (from == null || !date.before(from))
+               && (to == null || date.before(to));
+    }
+
+    /**
+     * ExportRow of a ShortUrl read from the store.
+     */
+    private static final class ShortUrlExportRow implements ExportRow {
+
+        private final ShortUrl shortUrl;
+
+        ShortUrlExportRow(final ShortUrl shortUrl) {
+            this.shortUrl = shortUrl;
+        }
+
+        public String getShortUrlPath() {
+            return shortUrl.getShortUrlPath();
+        }
+
+        public String getRedirectTo() {
+            return shortUrl.getRedirectTo();
+        }
+
+        public Integer getCacheMaxAge() {
+            return shortUrl.getCacheMaxAge();
+        }
+
+        public Date getCreated() {
+            return shortUrl.getCreated();
+        }
+
+        public Date getLastUpdated() {
+            return shortUrl.getLastUpdated();
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.logstore;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Open addressing hash table from 64 bit key hashes to log locations, held
+ * in direct ByteBuffers outside the Java heap.
+ *
+ * Each slot is 16 bytes, the hash and the location, and a location of 0
+ * marks an empty slot. Collisions are resolved by linear probing, and a
+ * removal shifts later entries of its probe sequence back rather than
+ * leaving a tombstone. Different keys can have the same hash, so each
+ * operation is given a predicate to check whether the key stored at a
+ * location is the one wanted.
+ *
+ * When full the table doubles incrementally: a new table takes every put,
+ * and each put or remove moves a few runs of entries over from the old
+ * one, which lookups check as well until it is empty. No one write stalls
+ * lookups for a rehash of the whole table.
+ *
+ * Not thread safe, LogStore only uses it while holding its lock.
+ *
+ * @author Frank Callaly
+ */
+final class OffHeapIndex {
+
+    private static final int SLOT_SIZE = 16;
+
+    // 2^26 slots of 16 bytes, 1GB, per direct buffer
+    private static final int MAX_CHUNK_SLOTS_BITS = 26;
+
+    private static final double MAX_LOAD = 0.7;
+
+    private static final int MIN_CAPACITY = 16;
+
+    // old slots visited by each write during a resize, moving the last run
+    // reached may take a few more. The old table is empty long before the
+    // new one reaches MAX_LOAD
+    private static final int RESIZE_STEP_SLOTS = 64;
+
+    private Table table;
+
+    // table being moved into table, null unless resizing
+    private Table resizing;
+
+    // next slot of resizing to move, always the start of a run or empty
+    private long resizeSlot;
+
+    private long resizeSlotsLeft;
+
+    /**
+     * @param expectedEntries number of entries to size the table for, it
+     *                        grows beyond this as needed
+     */
+    OffHeapIndex(final long expectedEntries) {
+        table = new Table(
+                tableSizeFor((long) (expectedEntries / MAX_LOAD) + 1));
+    }
+
+    /**
+     * @return the location of the entry for hash that matches, or 0
+     */
+    long get(final long hash, final LongPredicate matches) {
+        long location = table.get(hash, matches);
+        if (location == 0 && resizing != null) {
+            location = resizing.get(hash, matches);
+        }
+        return location;
+    }
+
+    /**
+     * Add an entry, or replace the location of the entry that matches.
+     *
+     * @return the replaced location, or 0 if the entry was added
+     */
+    long put(final long hash, final long location,
+             final LongPredicate matches) {
+        long replaced;
+        if (resizing != null
+                && (replaced = resizing.remove(hash, matches)) != 0) {
+            table.insert(hash, location);
+        } else {
+            if (resizing == null
+                    && table.size + 1 > table.capacity * MAX_LOAD) {
+                startResize();
+            }
+            replaced = table.put(hash, location, matches);
+        }
+        resizeStep();
+        return replaced;
+    }
+
+    /**
+     * Move an entry from one location to another.
+     *
+     * @return false if no entry for hash is at expected
+     */
+    boolean replace(final long hash, final long expected,
+                    final long replacement) {
+        return table.replace(hash, expected, replacement)
+               || resizing != null
+                  && resizing.replace(hash, expected, replacement);
+    }
+
+    /**
+     * @return the location of the removed entry, or 0 if none matched
+     */
+    long remove(final long hash, final LongPredicate matches) {
+        long removed = table.remove(hash, matches);
+        if (removed == 0 && resizing != null) {
+            removed = resizing.remove(hash, matches);
+        }
+        resizeStep();
+        return removed;
+    }
+
+    void forEach(final LongConsumer action) {
+        table.forEach(action);
+        if (resizing != null) {
+            resizing.forEach(action);
+        }
+    }
+
+    long size() {
+        return resizing == null ? table.size : table.size + resizing.size;
+    }
+
+    long capacity() {
+        return table.capacity;
+    }
+
+    boolean isResizing() {
+        return resizing != null;
+    }
+
+    private void startResize() {
+        resizing = table;
+        table = new Table(resizing.capacity * 2);
+
+        // start after an empty slot, so no run is split between the tables
+        long empty = 0;
+        while (resizing.location(empty) != 0) {
+            ++empty;
+        }
+        resizeSlot = (empty + 1) & resizing.mask;
+        resizeSlotsLeft = resizing.capacity;
+    }
+
+    /**
+     * Move the entries of the next few runs of the old table to the new.
+     * A run is moved whole, an entry left behind could otherwise be cut
+     * off from its home slot by the emptied slots before it.
+     */
+    private void resizeStep() {
+        if (resizing == null) {
+            return;
+        }
+
+        for (int visited = 0; resizeSlotsLeft > 0
+                && (visited < RESIZE_STEP_SLOTS
+                    || resizing.location(resizeSlot) != 0); ++visited) {
+            long location = resizing.location(resizeSlot);
+            if (location != 0) {
+                table.insert(resizing.hash(resizeSlot), location);
+                resizing.set(resizeSlot, 0, 0);
+                --resizing.size;
+            }
+            resizeSlot = (resizeSlot + 1) & resizing.mask;
+            --resizeSlotsLeft;
+        }
+
+        if (resizeSlotsLeft == 0) {
+            resizing = null;
+        }
+    }
+
+    private static long tableSizeFor(final long minCapacity) {
+        long tableSize = MIN_CAPACITY;
+        while (tableSize < minCapacity) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    /**
+     * One table of slots, in chunks of at most 1GB.
+     */
+    private static final class Table {
+
+        private final ByteBuffer[] chunks;
+
+        private final int chunkSlotsBits;
+
+        private final long capacity;
+
+        private final long mask;
+
+        private long size;
+
+        Table(final long capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.chunkSlotsBits = Math.min(
+                    MAX_CHUNK_SLOTS_BITS, Long.numberOfTrailingZeros(capacity));
+            int chunkSlots = 1 << chunkSlotsBits;
+
+            chunks = new ByteBuffer[(int) (capacity >>> chunkSlotsBits)];
+            for (int i = 0; i < chunks.length; ++i) {
+                chunks[i] = ByteBuffer.allocateDirect(chunkSlots * SLOT_SIZE)
+                                      .order(ByteOrder.nativeOrder());
+            }
+        }
+
+        long get(final long hash, final LongPredicate matches) {
+            for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+                long location = location(slot);
+                if (location == 0) {
+                    return 0;
+                }
+                if (hash(slot) == hash && matches.test(location)) {
+                    return location;
+                }
+            }
+        }
+
+        long put(final long hash, final long location,
+                 final LongPredicate matches) {
+            for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+                long existing = location(slot);
+                if (existing == 0) {
+                    set(slot, hash, location);
+                    ++size;
+                    return 0;
+                }
+                if (hash(slot) == hash && matches.test(existing)) {
+                    set(slot, hash, location);
+                    return existing;
+                }
+            }
+        }
+
+        /**
+         * Add an entry known not to be in the table.
+         */
+        void insert(final long hash, final long location) {
+            long slot = hash & mask;
+            while (location(slot) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            set(slot, hash, location);
+            ++size;
+        }
+
+        boolean replace(final long hash, final long expected,
+                        final long replacement) {
+            for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+                long location = location(slot);
+                if (location == 0) {
+                    return false;
+                }
+                if (location == expected) {
+                    set(slot, hash, replacement);
+                    return true;
+                }
+            }
+        }
+
+        long remove(final long hash, final LongPredicate matches) {
+            long slot = hash & mask;
+            long removed;
+            while (true) {
+                removed = location(slot);
+                if (removed == 0) {
+                    return 0;
+                }
+                if (hash(slot) == hash && matches.test(removed)) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            // shift back each later entry of the run that may live in the
+            // hole
+            long hole = slot;
+            for (long next = (hole + 1) & mask; location(next) != 0;
+                    next = (next + 1) & mask) {
+                long home = hash(next) & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    set(hole, hash(next), location(next));
+                    hole = next;
+                }
+            }
+            set(hole, 0, 0);
+            --size;
+            return removed;
+        }
+
+        void forEach(final LongConsumer action) {
+            for (long slot = 0; slot < capacity; ++slot) {
+                long location = location(slot);
+                if (location != 0) {
+                    action.accept(location);
+                }
+            }
+        }
+
+        long hash(final long slot) {
+            return chunks[(int) (slot >>> chunkSlotsBits)]
+                        .getLong(offset(slot));
+        }
+
+        long location(final long slot) {
+            return chunks[(int) (slot >>> chunkSlotsBits)]
+                        .getLong(offset(slot) + 8);
+        }
+
+        void set(final long slot, final long hash, final long location) {
+            ByteBuffer chunk = chunks[(int) (slot >>> chunkSlotsBits)];
+            int offset = offset(slot);
+            chunk.putLong(offset, hash);
+            chunk.putLong(offset + 8, location);
+        }
+
+        private int offset(final long slot) {
+            return (int) (slot & ((1L << chunkSlotsBits) - 1)) * SLOT_SIZE;
+        }
+    }
+}
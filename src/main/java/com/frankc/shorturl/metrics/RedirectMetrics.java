@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Counts redirect outcomes, as the shorturl.redirects counter tagged with
+ * outcome redirected, not_found or invalid.
+ *
+ * The counters are registered once, so counting a redirect is a single
+ * increment with no registry lookup.
+ *
+ * @author Frank Callaly
+ */
+@Component
+public class RedirectMetrics {
+
+    public static final String COUNTER_NAME = "shorturl.redirects";
+
+    private final Counter redirected;
+
+    private final Counter notFound;
+
+    private final Counter invalid;
+
+    @Autowired
+    public RedirectMetrics(final MeterRegistry meterRegistry) {
+        redirected = counter(meterRegistry, "redirected");
+        notFound = counter(meterRegistry, "not_found");
+        invalid = counter(meterRegistry, "invalid");
+    }
+
+    public void redirected() {
+        redirected.increment();
+    }
+
+    /**
+     * Count a 404 for an unknown shortUrlPath.
+     */
+    public void notFound() {
+        notFound.increment();
+    }
+
+    /**
+     * Count a 422 for a ShortUrl holding an invalid redirectTo.
+     */
+    public void invalid() {
+        invalid.increment();
+    }
+
+    private static Counter counter(final MeterRegistry meterRegistry,
+                                   final String outcome) {
+        return Counter.builder(COUNTER_NAME)
+                      .description("Redirect requests by outcome")
+                      .tag("outcome", outcome)
+                      .register(meterRegistry);
+    }
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.metrics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Times every call to a repository method, as the shorturl.repository
+ * timer tagged with the repository, method and any exception thrown.
+ *
+ * Methods returning a Stream are timed until the Stream is returned, not
+ * until it has been read.
+ *
+ * Timers are registered once per method and exception and kept, so a call
+ * only looks its timer up in a map rather than building and registering
+ * one.
+ *
+ * @author Frank Callaly
+ */
+@Aspect
+@Component
+public class RepositoryMetricsAspect {
+
+    public static final String TIMER_NAME = "shorturl.repository";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // timers by method, then by the simple name of the exception thrown
+    private final ConcurrentHashMap<Method, ConcurrentHashMap<String, Timer>>
+            timers = new ConcurrentHashMap<>();
+
+    @Around("execution(* com.frankc.shorturl.repositories"
+            + ".ShortUrlRepo+.*(..))")
+    public Object timeShortUrlRepo(final ProceedingJoinPoint joinPoint)
+                                   throws Throwable {
+        return time("ShortUrlRepo", joinPoint);
+    }
+
+    @Around("execution(public * com.frankc.shorturl.repositories"
+            + ".ClickCountRepo.*(..))")
+    public Object timeClickCountRepo(final ProceedingJoinPoint joinPoint)
+                                     throws Throwable {
+        return time("ClickCountRepo", joinPoint);
+    }
+
+    private Object time(final String repository,
+                        final ProceedingJoinPoint joinPoint)
+                        throws Throwable {
+        String exception = "None";
+        long startTime = System.nanoTime();
+
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable ex) {
+            exception = ex.getClass().getSimpleName();
+            throw ex;
+        } finally {
+            timer(repository, joinPoint, exception)
+                .record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer timer(final String repository,
+                        final ProceedingJoinPoint joinPoint,
+                        final String exception) {
+        Method method = ((MethodSignature) joinPoint.getSignature())
+                        .getMethod();
+
+        ConcurrentHashMap<String, Timer> methodTimers = timers.get(method);
+        if (methodTimers == null) {
+            methodTimers = timers.computeIfAbsent(
+                    method, key -> new ConcurrentHashMap<>());
+        }
+        Timer timer = methodTimers.get(exception);
+        if (timer == null) {
+            timer = methodTimers.computeIfAbsent(exception, key ->
+                Timer.builder(TIMER_NAME)
+                     .description("Time taken by repository methods")
+                     .tag("repository", repository)
+                     .tag("method", method.getName())
+                     .tag("exception", exception)
+                     .register(meterRegistry));
+        }
+        return timer;
+    }
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.reactive;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.DELETE;
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.hateoas.core.DefaultRelProvider;
+import org.springframework.hateoas.hal.Jackson2HalModule;
+import org.springframework.hateoas.hal.Jackson2HalModule.HalHandlerInstantiator;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import com.frankc.shorturl.controllers.ShortUrlController;
+import com.frankc.shorturl.controllers.ShortUrlRedirectController;
+
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Configuration for the reactive runtime, enabled by the reactive profile.
+ *
+ * Requests are served by WebFlux on Netty, where an idle or slow client
+ * holds a connection but no thread. ShortUrlService and the JPA repository
+ * beneath it are blocking, so every call that may reach the database is
+ * moved onto a bounded scheduler sized to the connection pool. Requests
+ * arriving when that scheduler's queue is full are refused with a 503
+ * rather than queueing without bound.
+ *
+ * @author Frank Callaly
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveConfig {
+
+    public static final String SHORTURLPATH_VARIABLE = "shortUrlPath";
+
+    /**
+     * Scheduler for blocking ShortUrlService calls.
+     *
+     * @param poolSize number of threads, should match the JDBC pool size
+     * @param queueSize number of calls allowed to wait for a thread
+     * @return a Scheduler backed by a bounded thread pool
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler jdbcScheduler(
+            @Value("${com.frankc.shorturl.reactive.jdbcPoolSize:10}")
+                                                    final int poolSize,
+            @Value("${com.frankc.shorturl.reactive.jdbcQueueSize:10000}")
+                                                    final int queueSize) {
+        ThreadPoolExecutor executor =
+                new ThreadPoolExecutor(poolSize, poolSize,
+                                       0L, TimeUnit.MILLISECONDS,
+                                       new ArrayBlockingQueue<>(queueSize),
+                                       new CustomizableThreadFactory("jdbc-"));
+        return Schedulers.fromExecutorService(executor);
+    }
+
+    /**
+     * Prefer Netty over Tomcat, which is also on the classpath for the
+     * default servlet runtime.
+     *
+     * @return the server factory for the reactive runtime
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * Render ShortUrlResource links as HAL, as the servlet runtime does.
+     *
+     * @return customizer adding the HAL module to the WebFlux ObjectMapper
+     */
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer halObjectMapperCustomizer() {
+        return builder -> builder.modulesToInstall(new Jackson2HalModule())
+                                 .handlerInstantiator(
+                                     new HalHandlerInstantiator(
+                                         new DefaultRelProvider(),
+                                         null, null));
+    }
+
+    /**
+     * Routes matching the request mappings of ShortUrlController and
+     * ShortUrlRedirectController. Import and export are routed to a 501
+     * rather than falling through to the shortUrlPath routes.
+     *
+     * @param shortUrlHandler handles the ShortUrl API
+     * @param redirectHandler handles redirects
+     * @return the RouterFunction for the reactive runtime
+     */
+    @Bean
+    public RouterFunction<ServerResponse> shortUrlRoutes(
+                    final ShortUrlHandler shortUrlHandler,
+                    final ShortUrlRedirectHandler redirectHandler) {
+        String shortUrlPath = "{" + SHORTURLPATH_VARIABLE + "}";
+
+        return route(GET(ShortUrlController.BASE_PATH),
+                     shortUrlHandler::findAllShortUrls)
+            .andRoute(GET(ShortUrlController.BASE_PATH + "cache-stats"),
+                      shortUrlHandler::getCacheStats)
+            .andRoute(GET(ShortUrlController.BASE_PATH + "top-links"),
+                      shortUrlHandler::findTopLinks)
+            .andRoute(GET(ShortUrlController.BASE_PATH + "by-cursor"),
+                      shortUrlHandler::findShortUrlsByCursor)
+            .andRoute(GET(ShortUrlController.BASE_PATH + "export-ndjson"),
+                      shortUrlHandler::notImplemented)
+            .andRoute(POST(ShortUrlController.BASE_PATH + "import"),
+                      shortUrlHandler::notImplemented)
+            .andRoute(GET(ShortUrlController.BASE_PATH + shortUrlPath),
+                      shortUrlHandler::findShortUrl)
+            .andRoute(GET(ShortUrlController.BASE_PATH + shortUrlPath
+                          + "/clicks"),
+                      shortUrlHandler::countClicks)
+            .andRoute(POST(ShortUrlController.BASE_PATH),
+                      shortUrlHandler::createShortUrl)
+            .andRoute(POST(ShortUrlController.BASE_PATH + "batch"),
+                      shortUrlHandler::createShortUrls)
+            .andRoute(DELETE(ShortUrlController.BASE_PATH + shortUrlPath),
+                      shortUrlHandler::deleteShortUrl)
+            .andRoute(GET(ShortUrlRedirectController.BASE_PATH + "{"
+                          + SHORTURLPATH_VARIABLE + ":[a-zA-Z0-9]+}"),
+                      redirectHandler::redirectByShortUrl);
+    }
+}
@@ -0,0 +1,477 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.reactive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.MediaTypes;
+import org.springframework.hateoas.Resources;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.frankc.shorturl.cache.HotLinkTracker;
+import com.frankc.shorturl.cache.ShortUrlCache;
+import com.frankc.shorturl.controllers.ShortUrlController;
+import com.frankc.shorturl.controllers.exceptions.ImmutableShortUrlPathException;
+import com.frankc.shorturl.controllers.exceptions.InvalidRedirectToException;
+import com.frankc.shorturl.controllers.exceptions.ShortUrlNotFoundException;
+import com.frankc.shorturl.controllers.hateoas.ShortUrlCursorResources;
+import com.frankc.shorturl.controllers.hateoas.ShortUrlResource;
+import com.frankc.shorturl.entities.ShortUrl;
+import com.frankc.shorturl.services.ShortUrlCursor;
+import com.frankc.shorturl.services.ShortUrlService;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Reactive equivalent of ShortUrlController.
+ *
+ * Every ShortUrlService call is made on the jdbcScheduler, errors are
+ * mapped to the same exceptions, and so the same statuses, as the servlet
+ * runtime. Import and export read and write a stream through blocking
+ * I/O and are not available, they are refused with a 501.
+ *
+ * @author Frank Callaly
+ */
+@Component
+@Profile("reactive")
+public class ShortUrlHandler {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private ShortUrlService shortUrlService;
+
+    @Autowired
+    private ShortUrlCache shortUrlCache;
+
+    @Autowired
+    private HotLinkTracker hotLinkTracker;
+
+    @Autowired
+    private Scheduler jdbcScheduler;
+
+    private static final ParameterizedTypeReference<List<String>>
+            REDIRECTTO_LIST =
+                    new ParameterizedTypeReference<List<String>>() { };
+
+    @Value("${com.frankc.shorturl.controller.maxPageSize:50}")
+    private int maxPageSize;
+
+    @Value("${com.frankc.shorturl.controller.maxBatchSize:100000}")
+    private int maxBatchSize;
+
+    @Value("${com.frankc.shorturl.controller.maxCursorPageSize:1000}")
+    private int maxCursorPageSize;
+
+    @Value("${com.frankc.shorturl.controller.summaryRedirectToLength:100}")
+    private int summaryRedirectToLength;
+
+    /**
+     * Find a page of ShortUrls in the repository.
+     *
+     * @param request with optional pageNumber and pageSize parameters
+     * @return a HAL collection of ShortUrls
+     */
+    public Mono<ServerResponse> findAllShortUrls(final ServerRequest request) {
+        logger.debug("GET findAllShortUrls");
+        int pageNumber;
+        int pageSize;
+
+        try {
+            pageNumber = Integer.parseInt(
+                            request.queryParam("pageNumber").orElse("0"));
+            pageSize = Integer.parseInt(
+                            request.queryParam("pageSize").orElse("10"));
+        } catch (NumberFormatException ex) {
+            return ServerResponse.badRequest().build();
+        }
+
+        if (pageSize < 0 || pageNumber < 0) {
+            return ServerResponse.badRequest().build();
+        }
+
+        if (pageSize > maxPageSize) {
+            logger.warn("Truncating page size from " + pageSize
+                        + " to " + maxPageSize);
+            pageSize = maxPageSize;
+        }
+
+        UriComponentsBuilder baseUri = baseUri(request);
+        PageRequest pageRequest = PageRequest.of(pageNumber, pageSize);
+        Link selfLink = new Link(baseUri.cloneBuilder()
+                                        .path(request.path())
+                                        .queryParam("pageNumber", pageNumber)
+                                        .queryParam("pageSize", pageSize)
+                                        .toUriString());
+
+        return blocking(() -> shortUrlService.findAll(pageRequest))
+                .map(shortUrls -> toResources(shortUrls, baseUri, selfLink))
+                .flatMap(resources -> ServerResponse.ok()
+                                        .contentType(MediaTypes.HAL_JSON)
+                                        .syncBody(resources));
+    }
+
+    /**
+     * Find a page of ShortUrls after a cursor, keyset paged by id or
+     * created.
+     *
+     * @param request with optional cursor, orderBy, pageSize, view and
+     *                includeTotal parameters
+     * @return a HAL collection of ShortUrls with a next link while there
+     *         are more pages
+     */
+    public Mono<ServerResponse> findShortUrlsByCursor(
+                                        final ServerRequest request) {
+        String cursor = request.queryParam("cursor").orElse(null);
+        String orderBy = request.queryParam("orderBy").orElse("id");
+        String view = request.queryParam("view")
+                             .orElse(ShortUrlController.VIEW_FULL);
+        boolean includeTotal = Boolean.parseBoolean(
+                request.queryParam("includeTotal").orElse("false"));
+        logger.debug("GET findShortUrlsByCursor: " + cursor);
+
+        int requestedPageSize;
+        ShortUrlCursor pageCursor;
+        try {
+            requestedPageSize = Integer.parseInt(
+                            request.queryParam("pageSize").orElse("10"));
+            pageCursor = cursor != null
+                ? ShortUrlCursor.decode(cursor)
+                : ShortUrlCursor.first(ShortUrlCursor.Order.parse(orderBy));
+        } catch (IllegalArgumentException ex) {
+            logger.warn("Invalid cursor, orderBy or pageSize: " + cursor
+                        + ", " + orderBy);
+            return ServerResponse.badRequest().build();
+        }
+
+        if (requestedPageSize < 1
+                || !(ShortUrlController.VIEW_FULL.equals(view)
+                     || ShortUrlController.VIEW_SUMMARY.equals(view))) {
+            return ServerResponse.badRequest().build();
+        }
+
+        if (requestedPageSize > maxCursorPageSize) {
+            logger.warn("Truncating page size from " + requestedPageSize
+                        + " to " + maxCursorPageSize);
+        }
+        int pageSize = Math.min(requestedPageSize, maxCursorPageSize);
+        int redirectToLength = ShortUrlController.VIEW_SUMMARY.equals(view)
+                                        ? summaryRedirectToLength
+                                        : Integer.MAX_VALUE;
+        UriComponentsBuilder baseUri = baseUri(request);
+        UriComponentsBuilder pageUri = baseUri.cloneBuilder()
+                                              .path(request.path())
+                                              .queryParam("pageSize", pageSize)
+                                              .queryParam("view", view)
+                                              .queryParam("includeTotal",
+                                                          includeTotal);
+
+        return blocking(() -> {
+                    // one extra row shows whether there is a next page
+                    List<ShortUrl> page = shortUrlService.findPage(
+                                    pageCursor, pageSize + 1,
+                                    redirectToLength);
+                    boolean hasNext = page.size() > pageSize;
+                    if (hasNext) {
+                        page = page.subList(0, pageSize);
+                    }
+
+                    List<Link> links = new ArrayList<>(2);
+                    UriComponentsBuilder selfUri = pageUri.cloneBuilder()
+                                    .queryParam("orderBy", orderBy);
+                    if (cursor != null) {
+                        selfUri.queryParam("cursor", cursor);
+                    }
+                    links.add(new Link(selfUri.toUriString()));
+                    if (hasNext) {
+                        links.add(new Link(pageUri.cloneBuilder()
+                                    .queryParam("cursor",
+                                        pageCursor.after(page.get(
+                                                pageSize - 1)).encode())
+                                    .toUriString(),
+                                Link.REL_NEXT));
+                    }
+
+                    return new ShortUrlCursorResources(
+                            page.stream()
+                                .map(shortUrl -> new ShortUrlResource(
+                                                    shortUrl, baseUri))
+                                .collect(Collectors.toList()),
+                            includeTotal ? shortUrlService.countShortUrls()
+                                         : null,
+                            links.toArray(new Link[links.size()]));
+                })
+                .flatMap(resources -> ServerResponse.ok()
+                                        .contentType(MediaTypes.HAL_JSON)
+                                        .syncBody(resources));
+    }
+
+    /**
+     * Refuse a request the servlet runtime serves but this one doesn't.
+     *
+     * @param request for import or export
+     * @return a 501
+     */
+    public Mono<ServerResponse> notImplemented(final ServerRequest request) {
+        logger.warn(request.methodName() + " " + request.path()
+                    + " is not available in the reactive runtime");
+        return ServerResponse.status(HttpStatus.NOT_IMPLEMENTED).build();
+    }
+
+    /**
+     * Find a single particular ShortUrl in the repository.
+     *
+     * @param request with the shortUrlPath of ShortUrl to find
+     * @return a ShortUrlResource, or a 404 if shortUrlPath is not known
+     */
+    public Mono<ServerResponse> findShortUrl(final ServerRequest request) {
+        String shortUrlPath =
+                request.pathVariable(ReactiveConfig.SHORTURLPATH_VARIABLE);
+        logger.debug("GET findShortUrl: " + shortUrlPath);
+
+        return blocking(() -> shortUrlService.findByShortUrlPath(shortUrlPath))
+                .onErrorMap(NoSuchElementException.class, ex -> {
+                    logger.warn("Failed attempt to find short url: "
+                                + shortUrlPath);
+                    return new ShortUrlNotFoundException();
+                })
+                .flatMap(shortUrl -> ServerResponse.ok()
+                                        .contentType(MediaTypes.HAL_JSON)
+                                        .syncBody(new ShortUrlResource(
+                                            shortUrl, baseUri(request))));
+    }
+
+    /**
+     * Create a new ShortUrl and add to the repository.
+     *
+     * @param request with a ShortUrl in its body
+     * @return a ShortUrlResource for the object that has been added
+     */
+    public Mono<ServerResponse> createShortUrl(final ServerRequest request) {
+        if (!isJson(request)) {
+            return ServerResponse.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+                                 .build();
+        }
+
+        return request.bodyToMono(ShortUrl.class)
+                .flatMap(newShortUrl -> {
+                    logger.debug("POST createShortUrl: " + newShortUrl);
+
+                    if (newShortUrl.getShortUrlPath() != null) {
+                        return Mono.error(
+                                new ImmutableShortUrlPathException());
+                    }
+
+                    return blocking(() -> shortUrlService.createShortUrl(
+                                            newShortUrl.getRedirectTo(),
+                                            newShortUrl.getCacheMaxAge()))
+                        .onErrorMap(IllegalArgumentException.class, ex -> {
+                            logger.warn("Service refused to create ShortUrl "
+                                        + "for redirect: "
+                                        + newShortUrl.getRedirectTo());
+                            return new InvalidRedirectToException();
+                        });
+                })
+                .flatMap(createdShortUrl -> ServerResponse
+                                        .status(HttpStatus.CREATED)
+                                        .contentType(MediaTypes.HAL_JSON)
+                                        .syncBody(new ShortUrlResource(
+                                            createdShortUrl,
+                                            baseUri(request))));
+    }
+
+    /**
+     * Create a ShortUrl for each of a list of redirectTo URLs.
+     *
+     * @param request with a list of redirectTos in its body
+     * @return a result per redirectTo, in the same order
+     */
+    public Mono<ServerResponse> createShortUrls(final ServerRequest request) {
+        if (!isJson(request)) {
+            return ServerResponse.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+                                 .build();
+        }
+
+        return request.bodyToMono(REDIRECTTO_LIST)
+                .flatMap(redirectTos -> {
+                    logger.debug("POST createShortUrls: "
+                                 + redirectTos.size());
+
+                    if (redirectTos.size() > maxBatchSize) {
+                        logger.warn("Refusing batch of " + redirectTos.size()
+                                    + " ShortUrls, maximum is "
+                                    + maxBatchSize);
+                        return ServerResponse.badRequest().build();
+                    }
+
+                    return blocking(() -> shortUrlService
+                                            .createShortUrls(redirectTos))
+                        .flatMap(results -> ServerResponse.ok()
+                                    .contentType(MediaType.APPLICATION_JSON)
+                                    .syncBody(results));
+                });
+    }
+
+    /**
+     * Delete a single particular ShortUrl from the repository.
+     *
+     * @param request with the shortUrlPath of ShortUrl to delete
+     * @return the shortUrlPath and whether it was deleted, with a 200 if it
+     *         was, a 202 if other creators remain, or a 404 if shortUrlPath
+     *         is not known
+     */
+    public Mono<ServerResponse> deleteShortUrl(final ServerRequest request) {
+        String shortUrlPath =
+                request.pathVariable(ReactiveConfig.SHORTURLPATH_VARIABLE);
+        logger.debug("DELETE deleteShortUrl: " + shortUrlPath);
+
+        return blocking(() -> shortUrlService.deleteByShortUrlPath(
+                                                            shortUrlPath))
+                .onErrorMap(NoSuchElementException.class, ex -> {
+                    logger.warn("Failed to find short url for deletion: "
+                                + shortUrlPath);
+                    return new ShortUrlNotFoundException();
+                })
+                .flatMap(deleted -> ServerResponse.status(
+                                deleted ? HttpStatus.OK : HttpStatus.ACCEPTED)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .syncBody(ShortUrlController.deleteSummary(
+                                                    shortUrlPath, deleted)));
+    }
+
+    /**
+     * Find the number of redirects made by a ShortUrl.
+     *
+     * @param request with the shortUrlPath of ShortUrl to count
+     * @return the shortUrlPath and its count of clicks, or a 404 if
+     *         shortUrlPath is not known
+     */
+    public Mono<ServerResponse> countClicks(final ServerRequest request) {
+        String shortUrlPath =
+                request.pathVariable(ReactiveConfig.SHORTURLPATH_VARIABLE);
+        logger.debug("GET countClicks: " + shortUrlPath);
+
+        return blocking(() -> shortUrlService.countClicks(shortUrlPath))
+                .onErrorMap(NoSuchElementException.class, ex -> {
+                    logger.warn("Failed attempt to find short url: "
+                                + shortUrlPath);
+                    return new ShortUrlNotFoundException();
+                })
+                .flatMap(clicks -> ServerResponse.ok()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .syncBody(ShortUrlController.clicksSummary(
+                                                    shortUrlPath, clicks)));
+    }
+
+    /**
+     * Find the shortUrls with the most redirects in the last few minutes.
+     *
+     * @param request with optional minutes and limit query parameters
+     * @return a List of HotLinks, most clicks first
+     */
+    public Mono<ServerResponse> findTopLinks(final ServerRequest request) {
+        int minutes;
+        int limit;
+
+        try {
+            minutes = Integer.parseInt(
+                            request.queryParam("minutes").orElse("5"));
+            limit = Integer.parseInt(
+                            request.queryParam("limit").orElse("10"));
+        } catch (NumberFormatException ex) {
+            return ServerResponse.badRequest().build();
+        }
+        logger.debug("GET findTopLinks: " + minutes + ", " + limit);
+
+        if (minutes < 0 || limit < 1) {
+            return ServerResponse.badRequest().build();
+        }
+        return ServerResponse.ok()
+                             .contentType(MediaType.APPLICATION_JSON)
+                             .syncBody(hotLinkTracker.topLinks(minutes,
+                                                               limit));
+    }
+
+    /**
+     * Report hit, miss and eviction counters for the ShortUrl lookup cache.
+     *
+     * @param request unused
+     * @return a Map of cache statistic names to values
+     */
+    public Mono<ServerResponse> getCacheStats(final ServerRequest request) {
+        logger.debug("GET getCacheStats");
+        return ServerResponse.ok()
+                             .contentType(MediaType.APPLICATION_JSON)
+                             .syncBody(shortUrlCache.statsSummary());
+    }
+
+    /**
+     * Run a blocking ShortUrlService call on the jdbcScheduler, refusing
+     * with a 503 if its queue is full.
+     */
+    private <T> Mono<T> blocking(final Callable<T> serviceCall) {
+        return Mono.fromCallable(serviceCall)
+                   .subscribeOn(jdbcScheduler)
+                   .onErrorMap(RejectedExecutionException.class,
+                               ex -> new ResponseStatusException(
+                                       HttpStatus.SERVICE_UNAVAILABLE));
+    }
+
+    private static boolean isJson(final ServerRequest request) {
+        return request.headers().contentType()
+                      .filter(MediaType.APPLICATION_JSON::includes)
+                      .isPresent();
+    }
+
+    private static Resources<ShortUrlResource> toResources(
+                                final List<ShortUrl> shortUrls,
+                                final UriComponentsBuilder baseUri,
+                                final Link selfLink) {
+        List<ShortUrlResource> collection =
+                shortUrls.stream()
+                         .map(shortUrl -> new ShortUrlResource(shortUrl,
+                                                               baseUri))
+                         .collect(Collectors.toList());
+        return new Resources<>(collection, selfLink);
+    }
+
+    private static UriComponentsBuilder baseUri(final ServerRequest request) {
+        return UriComponentsBuilder.fromUri(request.uri())
+                                   .replacePath(null)
+                                   .replaceQuery(null);
+    }
+}
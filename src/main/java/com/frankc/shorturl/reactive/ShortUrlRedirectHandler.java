@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.reactive;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import com.frankc.shorturl.cache.HotLinkTracker;
+import com.frankc.shorturl.cache.RedirectCacheControl;
+import com.frankc.shorturl.cache.ShortUrlCache;
+import com.frankc.shorturl.cache.ShortUrlPathFilter;
+import com.frankc.shorturl.entities.ShortUrlRedirect;
+import com.frankc.shorturl.metrics.RedirectMetrics;
+import com.frankc.shorturl.services.ClickCounter;
+import com.frankc.shorturl.services.ShortUrlService;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Reactive equivalent of ShortUrlRedirectController.
+ *
+ * Paths ruled out by the shortUrlPath filter, which only reads memory, and
+ * redirects already in the cache are answered on the event loop. Only cache
+ * misses are handed to the blocking ShortUrlService on the jdbcScheduler.
+ *
+ * @author Frank Callaly
+ */
+@Component
+@Profile("reactive")
+public class ShortUrlRedirectHandler {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private ShortUrlService shortUrlService;
+
+    @Autowired
+    private ShortUrlCache shortUrlCache;
+
+    // not available in the logstore profile
+    @Autowired(required = false)
+    private ShortUrlPathFilter shortUrlPathFilter;
+
+    @Autowired
+    private RedirectCacheControl redirectCacheControl;
+
+    @Autowired
+    private ClickCounter clickCounter;
+
+    @Autowired
+    private HotLinkTracker hotLinkTracker;
+
+    @Autowired
+    private RedirectMetrics redirectMetrics;
+
+    @Autowired
+    private Scheduler jdbcScheduler;
+
+    /**
+     * Redirect to the redirectTo field of a ShortUrl.
+     *
+     * @param request with the shortUrlPath of shortUrl to be redirected by
+     * @return a 301 redirect, or a 404 if shortUrlPath is not known
+     */
+    public Mono<ServerResponse> redirectByShortUrl(
+                                        final ServerRequest request) {
+        String shortUrlPath =
+                request.pathVariable(ReactiveConfig.SHORTURLPATH_VARIABLE);
+
+        boolean mightExist = shortUrlPathFilter != null
+                ? shortUrlPathFilter.mightContain(shortUrlPath)
+                : ShortUrlPathFilter.isStorable(shortUrlPath);
+        if (!mightExist) {
+            // a path created on another node since the last sync must not
+            // get a cacheable 404
+            return notFound(shortUrlPath,
+                    ShortUrlPathFilter.isStorable(shortUrlPath)
+                        ? redirectCacheControl.getUnsyncedNotFoundResponse()
+                        : redirectCacheControl.getNotFoundResponse());
+        }
+
+        // a miss here is counted again by the service's own cache lookup
+        ShortUrlRedirect cachedRedirect =
+                shortUrlCache.getIfPresent(shortUrlPath);
+        if (cachedRedirect != null) {
+            return redirect(shortUrlPath, cachedRedirect);
+        }
+
+        return Mono.fromCallable(() -> shortUrlService
+                                 .findRedirectByShortUrlPath(shortUrlPath))
+                   .subscribeOn(jdbcScheduler)
+                   .flatMap(found -> redirect(shortUrlPath, found))
+                   .switchIfEmpty(Mono.defer(() -> notFound(shortUrlPath,
+                           redirectCacheControl.getNotFoundResponse())))
+                   .onErrorResume(RejectedExecutionException.class,
+                                  ex -> ServerResponse.status(
+                                          HttpStatus.SERVICE_UNAVAILABLE)
+                                          .build());
+    }
+
+    private Mono<ServerResponse> redirect(
+                                    final String shortUrlPath,
+                                    final ShortUrlRedirect requestedRedirect) {
+        // redirectTo is validated on creation, this only catches rows
+        // stored before that validation existed
+        if (!requestedRedirect.isValid()) {
+            logger.error("Invalid URI in shortUrl: " + requestedRedirect);
+            redirectMetrics.invalid();
+            return ServerResponse.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                                 .build();
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Redirecting From [" + shortUrlPath + "] to ["
+                         + requestedRedirect.getRedirectTo() + "]");
+        }
+        // none of these block, so are safe to call on the event loop
+        clickCounter.increment(shortUrlPath);
+        hotLinkTracker.record(shortUrlPath);
+        redirectMetrics.redirected();
+        return fromResponseEntity(requestedRedirect.getResponse());
+    }
+
+    private Mono<ServerResponse> notFound(
+                                    final String shortUrlPath,
+                                    final ResponseEntity<Void> response) {
+        // misses are counted by redirectMetrics, a flood of unknown paths
+        // would otherwise also be a flood of log lines
+        if (logger.isDebugEnabled()) {
+            logger.debug("Failed attempt to find short url: " + shortUrlPath);
+        }
+        redirectMetrics.notFound();
+        return fromResponseEntity(response);
+    }
+
+    private static Mono<ServerResponse> fromResponseEntity(
+                                    final ResponseEntity<Void> response) {
+        return ServerResponse.status(response.getStatusCode())
+                             .headers(headers ->
+                                        headers.putAll(response.getHeaders()))
+                             .build();
+    }
+}
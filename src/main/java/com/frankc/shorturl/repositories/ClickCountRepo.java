@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.repositories;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Reads and adds to the persisted click counts of shortUrlPaths.
+ *
+ * Uses JdbcTemplate rather than JPA so that a flush of many counts is sent
+ * as JDBC batches of plain UPDATEs and INSERTs, with no entities loaded.
+ *
+ * @author Frank Callaly
+ */
+@Repository
+@Profile("!logstore")
+public class ClickCountRepo {
+
+    private static final String ADD_SQL =
+            "update short_url_click_count set clicks = clicks + ?"
+            + " where short_url_path = ?";
+
+    private static final String INSERT_SQL =
+            "insert into short_url_click_count (short_url_path, clicks)"
+            + " select short_url_path, ? from short_url"
+            + " where short_url_path = ?";
+
+    private static final String FIND_SQL =
+            "select clicks from short_url_click_count"
+            + " where short_url_path = ?";
+
+    private static final String DELETE_SQL =
+            "delete from short_url_click_count where short_url_path = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Add clicks to the persisted counts, inserting counts for paths which
+     * have none yet.
+     *
+     * Every delta is first applied as a batch of UPDATEs, then the paths no
+     * UPDATE matched are inserted as a second batch. Counts are only
+     * inserted for paths still in short_url, so a delta flushed after its
+     * path was deleted is dropped rather than recreating the count. If
+     * another node inserts one of those paths first the insert fails with
+     * a DuplicateKeyException and the whole transaction rolls back, so the
+     * caller can retry all of the deltas, which will then all update.
+     *
+     * @param deltas clicks to add by shortUrlPath
+     */
+    @Transactional
+    public void addClicks(final Map<String, Long> deltas) {
+        List<Object[]> updates = new ArrayList<>(deltas.size());
+        for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+            updates.add(new Object[] {delta.getValue(), delta.getKey()});
+        }
+
+        int[] updated = jdbcTemplate.batchUpdate(ADD_SQL, updates);
+
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                Object[] update = updates.get(i);
+                inserts.add(update);
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, inserts);
+        }
+    }
+
+    /**
+     * Find the persisted click count of a shortUrlPath.
+     *
+     * @param shortUrlPath to find the count of
+     * @return the count, 0 if none has been persisted
+     */
+    public long findClicks(final String shortUrlPath) {
+        List<Long> clicks = jdbcTemplate.queryForList(FIND_SQL, Long.class,
+                                                      shortUrlPath);
+        return clicks.isEmpty() ? 0 : clicks.get(0);
+    }
+
+    /**
+     * Delete the persisted click count of a shortUrlPath.
+     *
+     * @param shortUrlPath to delete the count of
+     */
+    public void deleteByShortUrlPath(final String shortUrlPath) {
+        jdbcTemplate.update(DELETE_SQL, shortUrlPath);
+    }
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.repositories;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Reads and adds to the redirect_prefix table of scheme and host prefixes.
+ *
+ * Uses JdbcTemplate rather than JPA so that the RedirectToConverter, which
+ * reads the prefixes through RedirectPrefixDictionary, never needs an
+ * EntityManager while Hibernate is converting a ShortUrl.
+ *
+ * @author Frank Callaly
+ */
+@Repository
+@Profile("!logstore")
+public class RedirectPrefixRepo {
+
+    private static final String FIND_ALL_SQL =
+            "select id, prefix from redirect_prefix";
+
+    private static final String INSERT_SQL =
+            "insert into redirect_prefix (prefix) values (?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * @return every prefix by id
+     */
+    public Map<Integer, String> findAll() {
+        Map<Integer, String> prefixes = new HashMap<>();
+        jdbcTemplate.query(FIND_ALL_SQL,
+                rs -> {
+                    prefixes.put(rs.getInt(1), rs.getString(2));
+                });
+        return prefixes;
+    }
+
+    /**
+     * Add a prefix, unless another node added it first.
+     *
+     * @param prefix scheme and host to add
+     */
+    public void insertIfAbsent(final String prefix) {
+        try {
+            jdbcTemplate.update(INSERT_SQL, prefix);
+        } catch (DuplicateKeyException ex) {
+            // already added, its id is read by the next findAll
+        }
+    }
+}
@@ -16,7 +16,15 @@
  ******************************************************************************/
 package com.frankc.shorturl.repositories;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -29,12 +37,106 @@ import com.frankc.shorturl.entities.ShortUrl;
  */
 @Repository
 public interface ShortUrlRepo
-                 extends JpaRepository<ShortUrl, Long> {
+                 extends JpaRepository<ShortUrl, Long>, ShortUrlRepoCustom {
 
+    @Transactional(readOnly = true)
     ShortUrl findShortUrlByShortUrlPath(String shortUrlPath);
 
+    /**
+     * Projection of the fields needed to serve a redirect.
+     */
+    interface RedirectTarget {
+        String getRedirectTo();
+
+        Integer getCacheMaxAge();
+    }
+
+    @Transactional(readOnly = true)
     boolean existsByShortUrlPath(String shortUrlPath);
 
+    /**
+     * Find the ShortUrl created with dedup enabled for a redirectTo and
+     * cacheMaxAge.
+     *
+     * @param redirectToHash from RedirectUrlCanonicaliser.hash(url, maxAge)
+     * @return the ShortUrl with that hash, or null if there is none
+     */
+    @Transactional(readOnly = true)
+    ShortUrl findByRedirectToHash(byte[] redirectToHash);
+
+    /**
+     * As findByRedirectToHash for several hashes in one query.
+     */
+    @Transactional(readOnly = true)
+    List<ShortUrl> findByRedirectToHashIn(
+                            Collection<byte[]> redirectToHashes);
+
+    /**
+     * Projection of the fields written by an export.
+     */
+    interface ExportRow {
+        String getShortUrlPath();
+
+        String getRedirectTo();
+
+        Integer getCacheMaxAge();
+
+        Date getCreated();
+
+        Date getLastUpdated();
+    }
+
+    /**
+     * @return the highest id in use, or null if there are no ShortUrls
+     */
+    @Transactional(readOnly = true)
+    @Query("select max(s.id) from ShortUrl s")
+    Long findMaxId();
+
+    @Query("select s.shortUrlPath from ShortUrl s"
+           + " where s.shortUrlPath > :after order by s.shortUrlPath")
+    List<String> findShortUrlPathsAfter(@Param("after") String after,
+                                        Pageable pageable);
+
+    /**
+     * Find the shortUrlPaths created at or after a time, a range scan of the
+     * created index.
+     */
+    @Query("select s.shortUrlPath from ShortUrl s where s.created >= :since")
+    List<String> findShortUrlPathsCreatedSince(@Param("since") Date since);
+
+    /**
+     * Projection of the fields listed by a keyset paged listing.
+     */
+    interface PageRow extends ExportRow {
+        long getId();
+    }
+
+    /**
+     * Count more creates as having returned a dedup ShortUrl.
+     *
+     * @param id of the ShortUrl
+     * @param count of creates to add
+     * @return 1, or 0 if the ShortUrl has been deleted
+     */
+    @Transactional
+    @Modifying
+    @Query("update ShortUrl s set s.creators = s.creators + :count"
+           + " where s.id = :id")
+    int addCreators(@Param("id") long id, @Param("count") int count);
+
+    /**
+     * Take one create away from a ShortUrl returned by more than one.
+     *
+     * @param shortUrlPath of the ShortUrl
+     * @return 1, or 0 if the ShortUrl has one creator left, or none
+     */
+    @Transactional
+    @Modifying
+    @Query("update ShortUrl s set s.creators = s.creators - 1"
+           + " where s.shortUrlPath = :shortUrlPath and s.creators > 1")
+    int removeCreator(@Param("shortUrlPath") String shortUrlPath);
+
     @Transactional
     Long deleteByShortUrlPath(String shortUrlPath);
 }
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.repositories;
+
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+
+import com.frankc.shorturl.repositories.ShortUrlRepo.PageRow;
+import com.frankc.shorturl.repositories.ShortUrlRepo.RedirectTarget;
+
+/**
+ * ShortUrlRepo queries that are built at runtime or read a redirectTo
+ * without loading the entity, implemented by ShortUrlRepoImpl.
+ *
+ * A redirectTo is stored in one of two columns, inline or overflow, see
+ * ShortUrl. These queries read both and return the one that is set, so
+ * callers only see a redirectTo.
+ *
+ * @author Frank Callaly
+ */
+public interface ShortUrlRepoCustom {
+
+    /**
+     * Find only the fields needed to redirect, for the redirect hot path.
+     *
+     * Runs as a single query in a read-only transaction, so no entity is
+     * loaded into the persistence context or dirty checked and the
+     * connection is released as soon as the query completes.
+     *
+     * @param shortUrlPath of ShortUrl to find
+     * @return the RedirectTarget, or null if the shortUrlPath does not exist
+     */
+    RedirectTarget findRedirectTargetByShortUrlPath(String shortUrlPath);
+
+    /**
+     * Find the first rows after afterId in id order, with each redirectTo
+     * cut to redirectToLength characters. An overflow redirectTo is cut by
+     * the query, so a listing needn't read every long URL in full. Each
+     * page is a range scan of the primary key, however far into the table
+     * it starts, and no count is run.
+     *
+     * @param afterId id of the last row of the previous page, or 0
+     * @param redirectToLength maximum length of each redirectTo
+     * @param pageable only the page size is used, page number must be 0
+     * @return a page of rows
+     */
+    List<PageRow> findPageRowsAfterId(long afterId, int redirectToLength,
+                                      Pageable pageable);
+
+    /**
+     * As findPageRowsAfterId for the first page in created order, ties
+     * ordered by id.
+     */
+    List<PageRow> findFirstPageRowsByCreated(int redirectToLength,
+                                             Pageable pageable);
+
+    /**
+     * As findPageRowsAfterId for rows after (afterCreated, afterId) in
+     * created order, ties ordered by id, a range scan of the created index.
+     */
+    List<PageRow> findPageRowsAfterCreated(Date afterCreated, long afterId,
+                                           int redirectToLength,
+                                           Pageable pageable);
+
+    /**
+     * Find the first rows after afterId, up to maxId, in id order,
+     * optionally within created and lastUpdated ranges, each from
+     * inclusive and to exclusive.
+     *
+     * Only the bounds that are set are added to the query, so the optimiser
+     * sees plain range predicates it can use an index for. Each call is a
+     * separate short read-only transaction.
+     *
+     * @param afterId id of the last row of the previous page, or 0
+     * @param maxId highest id to return
+     * @param createdFrom inclusive, or null
+     * @param createdTo exclusive, or null
+     * @param updatedFrom inclusive, or null
+     * @param updatedTo exclusive, or null
+     * @param pageSize maximum number of rows to return
+     * @return a page of rows, fewer than pageSize only for the last page
+     */
+    List<PageRow> findExportPage(long afterId, long maxId,
+                                 Date createdFrom, Date createdTo,
+                                 Date updatedFrom, Date updatedTo,
+                                 int pageSize);
+}
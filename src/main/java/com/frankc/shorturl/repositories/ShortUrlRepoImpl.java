@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.repositories;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.frankc.shorturl.repositories.ShortUrlRepo.PageRow;
+import com.frankc.shorturl.repositories.ShortUrlRepo.RedirectTarget;
+
+/**
+ * Implementation of the ShortUrlRepoCustom fragment of ShortUrlRepo.
+ *
+ * @author Frank Callaly
+ */
+public class ShortUrlRepoImpl implements ShortUrlRepoCustom {
+
+    private static final String REDIRECT_TARGET_SELECT = "select"
+            + " s.redirectTo, s.redirectToOverflow, s.cacheMaxAge"
+            + " from ShortUrl s where s.shortUrlPath = :shortUrlPath";
+
+    private static final String EXPORT_SELECT = "select s.id,"
+            + " s.shortUrlPath, s.redirectTo, s.redirectToOverflow,"
+            + " s.cacheMaxAge, s.created, s.lastUpdated from ShortUrl s"
+            + " where s.id > :afterId and s.id <= :maxId";
+
+    // as EXPORT_SELECT with the overflow redirectTo cut by the query
+    private static final String PAGE_SELECT = "select s.id,"
+            + " s.shortUrlPath, s.redirectTo,"
+            + " substring(s.redirectToOverflow, 1, :redirectToLength),"
+            + " s.cacheMaxAge, s.created, s.lastUpdated from ShortUrl s";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    public RedirectTarget findRedirectTargetByShortUrlPath(
+                                            final String shortUrlPath) {
+        List<Object[]> results = entityManager
+                .createQuery(REDIRECT_TARGET_SELECT, Object[].class)
+                .setParameter("shortUrlPath", shortUrlPath)
+                .getResultList();
+        if (results.isEmpty()) {
+            return null;
+        }
+
+        Object[] columns = results.get(0);
+        String redirectTo = redirectTo(columns[0], columns[1],
+                                       Integer.MAX_VALUE);
+        Integer cacheMaxAge = (Integer) columns[2];
+        return new RedirectTarget() {
+            @Override
+            public String getRedirectTo() {
+                return redirectTo;
+            }
+
+            @Override
+            public Integer getCacheMaxAge() {
+                return cacheMaxAge;
+            }
+        };
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<PageRow> findPageRowsAfterId(final long afterId,
+                                             final int redirectToLength,
+                                             final Pageable pageable) {
+        return toPageRows(
+                entityManager.createQuery(
+                        PAGE_SELECT + " where s.id > :afterId order by s.id",
+                        Object[].class)
+                    .setParameter("afterId", afterId)
+                    .setParameter("redirectToLength", redirectToLength),
+                redirectToLength, pageable.getPageSize());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<PageRow> findFirstPageRowsByCreated(
+                                            final int redirectToLength,
+                                            final Pageable pageable) {
+        return toPageRows(
+                entityManager.createQuery(
+                        PAGE_SELECT + " where s.created is not null"
+                        + " order by s.created, s.id",
+                        Object[].class)
+                    .setParameter("redirectToLength", redirectToLength),
+                redirectToLength, pageable.getPageSize());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<PageRow> findPageRowsAfterCreated(final Date afterCreated,
+                                                  final long afterId,
+                                                  final int redirectToLength,
+                                                  final Pageable pageable) {
+        return toPageRows(
+                entityManager.createQuery(
+                        PAGE_SELECT + " where s.created >= :afterCreated"
+                        + " and (s.created > :afterCreated"
+                        + " or s.id > :afterId)"
+                        + " order by s.created, s.id",
+                        Object[].class)
+                    .setParameter("afterCreated", afterCreated)
+                    .setParameter("afterId", afterId)
+                    .setParameter("redirectToLength", redirectToLength),
+                redirectToLength, pageable.getPageSize());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<PageRow> findExportPage(final long afterId, final long maxId,
+                                        final Date createdFrom,
+                                        final Date createdTo,
+                                        final Date updatedFrom,
+                                        final Date updatedTo,
+                                        final int pageSize) {
+        StringBuilder jpql = new StringBuilder(EXPORT_SELECT);
+        if (createdFrom != null) {
+            jpql.append(" and s.created >= :createdFrom");
+        }
+        if (createdTo != null) {
+            jpql.append(" and s.created < :createdTo");
+        }
+        if (updatedFrom != null) {
+            jpql.append(" and s.lastUpdated >= :updatedFrom");
+        }
+        if (updatedTo != null) {
+            jpql.append(" and s.lastUpdated < :updatedTo");
+        }
+        jpql.append(" order by s.id");
+
+        TypedQuery<Object[]> query =
+                entityManager.createQuery(jpql.toString(), Object[].class)
+                             .setParameter("afterId", afterId)
+                             .setParameter("maxId", maxId);
+        if (createdFrom != null) {
+            query.setParameter("createdFrom", createdFrom);
+        }
+        if (createdTo != null) {
+            query.setParameter("createdTo", createdTo);
+        }
+        if (updatedFrom != null) {
+            query.setParameter("updatedFrom", updatedFrom);
+        }
+        if (updatedTo != null) {
+            query.setParameter("updatedTo", updatedTo);
+        }
+
+        return toPageRows(query, Integer.MAX_VALUE, pageSize);
+    }
+
+    private static List<PageRow> toPageRows(final TypedQuery<Object[]> query,
+                                            final int redirectToLength,
+                                            final int pageSize) {
+        List<Object[]> results = query.setMaxResults(pageSize)
+                                      .getResultList();
+        List<PageRow> rows = new ArrayList<>(results.size());
+        for (Object[] result : results) {
+            rows.add(new StoredPageRow(result, redirectToLength));
+        }
+        return rows;
+    }
+
+    /**
+     * @return whichever of the inline and overflow redirectTo is set, cut
+     *         to maxLength characters
+     */
+    private static String redirectTo(final Object inline,
+                                     final Object overflow,
+                                     final int maxLength) {
+        String redirectTo = (String) (inline != null ? inline : overflow);
+        if (redirectTo != null && redirectTo.length() > maxLength) {
+            return redirectTo.substring(0, maxLength);
+        }
+        return redirectTo;
+    }
+
+    /**
+     * PageRow of the columns selected by EXPORT_SELECT or PAGE_SELECT.
+     */
+    private static final class StoredPageRow implements PageRow {
+
+        private final Object[] columns;
+
+        private final String redirectTo;
+
+        StoredPageRow(final Object[] columns, final int redirectToLength) {
+            this.columns = columns;
+            this.redirectTo = redirectTo(columns[2], columns[3],
+                                         redirectToLength);
+        }
+
+        @Override
+        public long getId() {
+            return (Long) columns[0];
+        }
+
+        @Override
+        public String getShortUrlPath() {
+            return (String) columns[1];
+        }
+
+        @Override
+        public String getRedirectTo() {
+            return redirectTo;
+        }
+
+        @Override
+        public Integer getCacheMaxAge() {
+            return (Integer) columns[4];
+        }
+
+        @Override
+        public Date getCreated() {
+            return (Date) columns[5];
+        }
+
+        @Override
+        public Date getLastUpdated() {
+            return (Date) columns[6];
+        }
+    }
+}
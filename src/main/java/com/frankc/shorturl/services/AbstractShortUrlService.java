@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.services;
+
+import java.net.MalformedURLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.frankc.shorturl.cache.RedirectCacheControl;
+import com.frankc.shorturl.controllers.exceptions.MaxPathGenerationRetriesException;
+import com.frankc.shorturl.entities.ShortUrl;
+import com.frankc.shorturl.entities.ShortUrlRedirect;
+import com.frankc.shorturl.utils.RedirectUrlValidator;
+import com.frankc.shorturl.utils.ShortUrlPathStrategy;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * ShortUrl Service layer logic shared by the implementations over each
+ * kind of store: validating new ShortUrls, generating their paths and
+ * building their redirects.
+ *
+ * @author Frank Callaly
+ */
+public abstract class AbstractShortUrlService implements ShortUrlService {
+
+    // a generated shortUrlPath was already in use, and a create gave up
+    // after maxShortUrlPathGenRetries such collisions
+    public static final String COLLISIONS_COUNTER =
+            "shorturl.create.path.collisions";
+
+    public static final String RETRIES_EXHAUSTED_COUNTER =
+            "shorturl.create.path.retries.exhausted";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private RedirectCacheControl redirectCacheControl;
+
+    @Autowired
+    private ShortUrlPathStrategy shortUrlPathStrategy;
+
+    @Autowired
+    private RedirectUrlValidator redirectUrlValidator;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${com.frankc.shorturl.service.maxShortUrlPathGenRetries:3}")
+    private int maxShortUrlPathGenerationRetries;
+
+    public ShortUrl createShortUrl(final String redirectTo)
+                                   throws IllegalArgumentException,
+                                          MaxPathGenerationRetriesException {
+        return createShortUrl(redirectTo, null);
+    }
+
+    /**
+     * Save a new ShortUrl under shortUrlPath if no ShortUrl has it.
+     *
+     * @param newShortUrl with its shortUrlPath set
+     * @param cacheCreated whether to cache the redirect of the saved
+     *                     ShortUrl
+     * @return the saved ShortUrl, or null if shortUrlPath was taken
+     */
+    protected abstract ShortUrl saveIfPathFree(ShortUrl newShortUrl,
+                                               boolean cacheCreated);
+
+    /**
+     * @return a ShortUrl to be created for redirectTo
+     * @throws IllegalArgumentException if redirectTo or cacheMaxAge is
+     *                                  invalid
+     */
+    protected ShortUrl newShortUrl(final String redirectTo,
+                                   final Integer cacheMaxAge)
+                                   throws IllegalArgumentException {
+        if (cacheMaxAge != null && cacheMaxAge < 0) {
+            logger.error("Request to create shortUrl with invalid "
+                         + "cacheMaxAge:" + cacheMaxAge);
+            throw new IllegalArgumentException();
+        }
+
+        ShortUrl newShortUrl = new ShortUrl(normaliseRedirectTo(redirectTo));
+        newShortUrl.setCacheMaxAge(cacheMaxAge);
+        return newShortUrl;
+    }
+
+    /**
+     * Validate a redirectTo, including as a URI, so a stored redirectTo can
+     * always be sent as a Location header without further checks.
+     *
+     * @param redirectTo as given by the client
+     * @return redirectTo with a protocol and lower case scheme
+     * @throws IllegalArgumentException if redirectTo is not a valid URL
+     */
+    protected String normaliseRedirectTo(final String redirectTo)
+                                         throws IllegalArgumentException {
+        if (redirectTo == null) {
+            throw new IllegalArgumentException();
+        }
+
+        try {
+            return redirectUrlValidator.normaliseUrl(redirectTo);
+        } catch (MalformedURLException ex) {
+            logger.error("Request to create shortUrl with invalid redirectTo:"
+                         + redirectTo);
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Save a new ShortUrl under a generated shortUrlPath, generating
+     * another while the one tried is taken, up to
+     * maxShortUrlPathGenRetries times.
+     */
+    protected ShortUrl saveWithUniquePath(final ShortUrl newShortUrl,
+                                          final boolean cacheCreated)
+                                throws MaxPathGenerationRetriesException {
+        // with the unique strategy a retry is only needed if the path
+        // matches one stored by the random strategy or a misconfigured node
+        for (int numAttempts = 1; ; ++numAttempts) {
+            newShortUrl.setShortUrlPath(
+                            shortUrlPathStrategy.generateShortUrlPath());
+
+            ShortUrl savedShortUrl = saveIfPathFree(newShortUrl, cacheCreated);
+            if (savedShortUrl != null) {
+                return savedShortUrl;
+            }
+
+            logger.warn("Short URL Path generation failed to create unique "
+                        + "path : " + numAttempts + " of "
+                        + maxShortUrlPathGenerationRetries + " attempts");
+            meterRegistry.counter(COLLISIONS_COUNTER).increment();
+            if (numAttempts >= maxShortUrlPathGenerationRetries) {
+                meterRegistry.counter(RETRIES_EXHAUSTED_COUNTER).increment();
+                throw new MaxPathGenerationRetriesException();
+            }
+        }
+    }
+
+    protected String generateShortUrlPath() {
+        return shortUrlPathStrategy.generateShortUrlPath();
+    }
+
+    protected ShortUrlRedirect toRedirect(final ShortUrl shortUrl) {
+        return toRedirect(shortUrl.getShortUrlPath(),
+                          shortUrl.getRedirectTo(),
+                          shortUrl.getCacheMaxAge());
+    }
+
+    protected ShortUrlRedirect toRedirect(final String shortUrlPath,
+                                          final String redirectTo,
+                                          final Integer cacheMaxAge) {
+        return new ShortUrlRedirect(
+                    shortUrlPath, redirectTo,
+                    redirectCacheControl.forRedirect(cacheMaxAge));
+    }
+}
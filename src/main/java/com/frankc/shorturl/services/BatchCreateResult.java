@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.services;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.frankc.shorturl.entities.ShortUrl;
+
+/**
+ * Outcome of creating one ShortUrl in a batch.
+ *
+ * @author Frank Callaly
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class BatchCreateResult {
+
+    public enum Status {
+        CREATED, INVALID, DUPLICATE, FAILED
+    }
+
+    private final Status status;
+
+    private final String redirectTo;
+
+    private final String shortUrlPath;
+
+    private final String error;
+
+    private BatchCreateResult(final Status status, final String redirectTo,
+                              final String shortUrlPath, final String error) {
+        this.status = status;
+        this.redirectTo = redirectTo;
+        this.shortUrlPath = shortUrlPath;
+        this.error = error;
+    }
+
+    public static BatchCreateResult created(final ShortUrl shortUrl) {
+        return new BatchCreateResult(Status.CREATED, shortUrl.getRedirectTo(),
+                                     shortUrl.getShortUrlPath(), null);
+    }
+
+    public static BatchCreateResult invalid(final String redirectTo) {
+        return new BatchCreateResult(Status.INVALID, redirectTo, null,
+                                     "The given redirectTo is an invalid URL");
+    }
+
+    public static BatchCreateResult invalidShortUrlPath(
+                                                final String redirectTo,
+                                                final String shortUrlPath) {
+        return new BatchCreateResult(Status.INVALID, redirectTo, shortUrlPath,
+                                     "The given shortUrlPath is invalid");
+    }
+
+    public static BatchCreateResult duplicate(final String redirectTo,
+                                              final String shortUrlPath) {
+        return new BatchCreateResult(Status.DUPLICATE, redirectTo,
+                                     shortUrlPath,
+                                     "The given shortUrlPath already exists");
+    }
+
+    public static BatchCreateResult failed(final String redirectTo) {
+        return new BatchCreateResult(Status.FAILED, redirectTo, null,
+                                     "Failed to generate a unique "
+                                     + "shortUrlPath");
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getRedirectTo() {
+        return redirectTo;
+    }
+
+    public String getShortUrlPath() {
+        return shortUrlPath;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchCreateResult [status=" + status + ", redirectTo="
+               + redirectTo + ", shortUrlPath=" + shortUrlPath + "]";
+    }
+}
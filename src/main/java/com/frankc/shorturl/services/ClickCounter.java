@@ -0,0 +1,366 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.frankc.shorturl.repositories.ClickCountRepo;
+
+/**
+ * Write-behind counts of redirects made by each shortUrlPath.
+ *
+ * A redirect only increments an in-memory LongAdder for its path, which
+ * spreads concurrent increments over striped cells rather than contending
+ * on one value. Counts are written to the database periodically by
+ * flush(), as aggregated deltas, and once more when the application shuts
+ * down. Clicks counted since the last flush are lost if the process is
+ * killed without a graceful shutdown.
+ *
+ * Counters are never reset, each remembers how much of its sum has been
+ * flushed, so an increment racing with a flush is written by the next one
+ * rather than lost. Counters of paths with no clicks since the last flush
+ * are retired from the map to bound it to recently used paths, and checked
+ * for late increments one flush later before being dropped.
+ *
+ * @author Frank Callaly
+ */
+@Component
+public class ClickCounter implements DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    // absent with the logstore profile, which requires counting to be
+    // disabled
+    @Autowired(required = false)
+    private ClickCountRepo clickCountRepo;
+
+    @Value("${com.frankc.shorturl.clicks.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${com.frankc.shorturl.clicks.flushBatchSize:1000}")
+    private int flushBatchSize = 1000;
+
+    private final ConcurrentHashMap<String, Counter> counters =
+            new ConcurrentHashMap<>();
+
+    // only read and replaced while holding flushLock
+    private Map<String, Counter> retired = new HashMap<>();
+
+    // guards the in-memory state flushes share with getClicks and remove
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    // signalled when a flush transaction completes
+    private final Condition written = flushLock.newCondition();
+
+    private final ReentrantLock flushRunLock = new ReentrantLock();
+
+    /**
+     * Count a redirect. Never blocks on the database or on a flush.
+     *
+     * @param shortUrlPath that has been redirected by
+     */
+    public void increment(final String shortUrlPath) {
+        if (!enabled) {
+            return;
+        }
+
+        Counter counter = counters.get(shortUrlPath);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(shortUrlPath,
+                                               path -> new Counter());
+        }
+        counter.clicks.increment();
+    }
+
+    /**
+     * Find the number of redirects made by a shortUrlPath, including those
+     * counted on this node and not yet flushed.
+     *
+     * The persisted count is read without holding flushLock. If a flush
+     * writes deltas of the path in the meantime, those deltas may or may
+     * not be in what was read, so the read is repeated.
+     *
+     * @param shortUrlPath to count redirects of
+     * @return the persisted count plus clicks pending on this node
+     */
+    public long getClicks(final String shortUrlPath) {
+        while (true) {
+            Counter live;
+            Counter old;
+            long liveWrites;
+            long oldWrites;
+            long pendingClicks;
+
+            flushLock.lock();
+            try {
+                live = counters.get(shortUrlPath);
+                old = retired.get(shortUrlPath);
+                while (writing(live) || writing(old)) {
+                    written.awaitUninterruptibly();
+                    live = counters.get(shortUrlPath);
+                    old = retired.get(shortUrlPath);
+                }
+                liveWrites = writes(live);
+                oldWrites = writes(old);
+                pendingClicks = pending(live) + pending(old);
+            } finally {
+                flushLock.unlock();
+            }
+
+            long persisted = clickCountRepo == null
+                             ? 0 : clickCountRepo.findClicks(shortUrlPath);
+
+            flushLock.lock();
+            try {
+                if (!writing(live) && !writing(old)
+                        && writes(live) == liveWrites
+                        && writes(old) == oldWrites) {
+                    return persisted + pendingClicks;
+                }
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Discard all counts of a shortUrlPath, pending and persisted.
+     *
+     * Called once the shortUrlPath has been deleted. A flush already
+     * writing its deltas then adds nothing, as counts are only written for
+     * paths that exist.
+     *
+     * @param shortUrlPath that has been deleted
+     */
+    public void remove(final String shortUrlPath) {
+        flushLock.lock();
+        try {
+            counters.remove(shortUrlPath);
+            retired.remove(shortUrlPath);
+        } finally {
+            flushLock.unlock();
+        }
+        if (clickCountRepo != null) {
+            clickCountRepo.deleteByShortUrlPath(shortUrlPath);
+        }
+    }
+
+    /**
+     * Write clicks counted since the last flush to the database.
+     *
+     * Deltas are written in transactions of flushBatchSize paths. If a
+     * transaction fails its deltas, and any after it, stay pending and are
+     * retried by the next flush. flushLock is only held to snapshot and
+     * record counters, never while a transaction is in progress.
+     */
+    @Scheduled(
+        initialDelayString = "${com.frankc.shorturl.clicks.flushIntervalMs:"
+                             + "10000}",
+        fixedDelayString = "${com.frankc.shorturl.clicks.flushIntervalMs:"
+                           + "10000}")
+    public void flush() {
+        if (clickCountRepo == null) {
+            return;
+        }
+        // one flush at a time, a scheduled flush may overlap shutdown
+        flushRunLock.lock();
+        try {
+            long startTime = System.currentTimeMillis();
+            Map<String, Counter> idle = new HashMap<>();
+            List<Snapshot> snapshots = new ArrayList<>();
+
+            flushLock.lock();
+            try {
+                for (Map.Entry<String, Counter> entry
+                        : counters.entrySet()) {
+                    Counter counter = entry.getValue();
+                    long sum = counter.clicks.sum();
+
+                    if (sum > counter.flushed) {
+                        snapshots.add(
+                                new Snapshot(entry.getKey(), counter, sum));
+                    } else if (counters.remove(entry.getKey(), counter)) {
+                        idle.put(entry.getKey(), counter);
+                    }
+                }
+                for (Map.Entry<String, Counter> entry : retired.entrySet()) {
+                    Counter counter = entry.getValue();
+                    long sum = counter.clicks.sum();
+
+                    if (sum > counter.flushed) {
+                        snapshots.add(
+                                new Snapshot(entry.getKey(), counter, sum));
+                    }
+                }
+            } finally {
+                flushLock.unlock();
+            }
+
+            long numClicks = write(snapshots);
+
+            flushLock.lock();
+            try {
+                // retired counters are kept until their late increments,
+                // if any, have been written. One that failed to write takes
+                // the place of a newly idle counter for the same path
+                for (Map.Entry<String, Counter> entry : retired.entrySet()) {
+                    Counter counter = entry.getValue();
+                    if (counter.clicks.sum() > counter.flushed) {
+                        idle.put(entry.getKey(), counter);
+                    }
+                }
+                retired = idle;
+            } finally {
+                flushLock.unlock();
+            }
+
+            if (numClicks > 0) {
+                logger.debug("Flushed " + numClicks + " clicks for "
+                             + snapshots.size() + " shortUrlPaths in "
+                             + (System.currentTimeMillis() - startTime)
+                             + "ms");
+            }
+        } finally {
+            flushRunLock.unlock();
+        }
+    }
+
+    /**
+     * Flush remaining counts on shutdown.
+     */
+    @Override
+    public void destroy() {
+        flush();
+    }
+
+    private long write(final List<Snapshot> snapshots) {
+        long numClicks = 0;
+
+        for (int from = 0; from < snapshots.size(); from += flushBatchSize) {
+            List<Snapshot> batch = snapshots.subList(
+                    from, Math.min(from + flushBatchSize, snapshots.size()));
+
+            // a path may have both a live and a retired counter
+            Map<String, Long> deltas = new LinkedHashMap<>();
+            for (Snapshot snapshot : batch) {
+                deltas.merge(snapshot.shortUrlPath,
+                             snapshot.sum - snapshot.counter.flushed,
+                             Long::sum);
+            }
+
+            flushLock.lock();
+            try {
+                for (Snapshot snapshot : batch) {
+                    snapshot.counter.writing = true;
+                }
+            } finally {
+                flushLock.unlock();
+            }
+
+            boolean committed = false;
+            try {
+                clickCountRepo.addClicks(deltas);
+                committed = true;
+            } catch (RuntimeException ex) {
+                logger.error("Failed to flush click counts, "
+                             + (snapshots.size() - from)
+                             + " paths will be retried : " + ex);
+            } finally {
+                flushLock.lock();
+                try {
+                    for (Snapshot snapshot : batch) {
+                        Counter counter = snapshot.counter;
+                        if (committed) {
+                            numClicks += snapshot.sum - counter.flushed;
+                            counter.flushed = snapshot.sum;
+                        }
+                        counter.writing = false;
+                        counter.writes++;
+                    }
+                    written.signalAll();
+                } finally {
+                    flushLock.unlock();
+                }
+            }
+            if (!committed) {
+                break;
+            }
+        }
+        return numClicks;
+    }
+
+    private static long pending(final Counter counter) {
+        return counter == null ? 0 : counter.clicks.sum() - counter.flushed;
+    }
+
+    private static boolean writing(final Counter counter) {
+        return counter != null && counter.writing;
+    }
+
+    private static long writes(final Counter counter) {
+        return counter == null ? 0 : counter.writes;
+    }
+
+    private static final class Counter {
+
+        private final LongAdder clicks = new LongAdder();
+
+        // the remaining fields are only accessed while holding flushLock
+
+        // clicks already written
+        private long flushed;
+
+        // whether a flush is writing a delta of this counter
+        private boolean writing;
+
+        // number of flush transactions that have written, or tried to
+        // write, a delta of this counter
+        private long writes;
+    }
+
+    private static final class Snapshot {
+
+        private final String shortUrlPath;
+
+        private final Counter counter;
+
+        private final long sum;
+
+        private Snapshot(final String shortUrlPath, final Counter counter,
+                         final long sum) {
+            this.shortUrlPath = shortUrlPath;
+            this.counter = counter;
+            this.sum = sum;
+        }
+    }
+}
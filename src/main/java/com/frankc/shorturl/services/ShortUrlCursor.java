@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Locale;
+
+import com.frankc.shorturl.entities.ShortUrl;
+
+/**
+ * Position in a keyset paged listing of ShortUrls, after the last row of
+ * the previous page. Pages are ordered by id, or by created then id, and
+ * each continues with a range query from the cursor rather than skipping
+ * an OFFSET of rows.
+ *
+ * Clients see the cursor as an opaque token.
+ *
+ * @author Frank Callaly
+ */
+public final class ShortUrlCursor {
+
+    public enum Order {
+        ID, CREATED;
+
+        /**
+         * @param name of an order, in any case
+         * @return the Order
+         * @throws IllegalArgumentException if there is no such Order
+         */
+        public static Order parse(final String name)
+                                  throws IllegalArgumentException {
+            return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+        }
+    }
+
+    private static final char SEPARATOR = '.';
+
+    private final Order order;
+
+    private final long lastId;
+
+    private final Date lastCreated;
+
+    private ShortUrlCursor(final Order order, final long lastId,
+                           final Date lastCreated) {
+        this.order = order;
+        this.lastId = lastId;
+        this.lastCreated = lastCreated;
+    }
+
+    /**
+     * @param order of the listing
+     * @return a cursor before the first page
+     */
+    public static ShortUrlCursor first(final Order order) {
+        return new ShortUrlCursor(order, 0, null);
+    }
+
+    /**
+     * @param lastShortUrl last ShortUrl of a page
+     * @return a cursor for the page after lastShortUrl, in the same order
+     */
+    public ShortUrlCursor after(final ShortUrl lastShortUrl) {
+        return new ShortUrlCursor(order, lastShortUrl.getId(),
+                                  order == Order.CREATED
+                                      ? lastShortUrl.getCreated()
+                                      : null);
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public long getLastId() {
+        return lastId;
+    }
+
+    /**
+     * @return created of the last row, or null before the first page or
+     *         when ordered by id
+     */
+    public Date getLastCreated() {
+        return lastCreated;
+    }
+
+    /**
+     * @return the cursor as a URL safe token
+     */
+    public String encode() {
+        StringBuilder token = new StringBuilder()
+                .append(order.name().charAt(0)).append(lastId);
+        if (lastCreated != null) {
+            token.append(SEPARATOR).append(lastCreated.getTime());
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                        token.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @param token as returned by encode
+     * @return the cursor
+     * @throws IllegalArgumentException if token is not a valid cursor
+     */
+    public static ShortUrlCursor decode(final String token)
+                                        throws IllegalArgumentException {
+        String decoded = new String(Base64.getUrlDecoder().decode(token),
+                                    StandardCharsets.US_ASCII);
+        if (decoded.isEmpty()) {
+            throw new IllegalArgumentException("Empty cursor");
+        }
+
+        int separator = decoded.indexOf(SEPARATOR);
+        switch (decoded.charAt(0)) {
+            case 'I':
+                return new ShortUrlCursor(Order.ID,
+                                          Long.parseLong(decoded.substring(1)),
+                                          null);
+            case 'C':
+                if (separator < 0) {
+                    return new ShortUrlCursor(
+                                Order.CREATED,
+                                Long.parseLong(decoded.substring(1)), null);
+                }
+                return new ShortUrlCursor(
+                    Order.CREATED,
+                    Long.parseLong(decoded.substring(1, separator)),
+                    new Date(Long.parseLong(
+                                    decoded.substring(separator + 1))));
+            default:
+                throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "order: " + order + ", lastId: " + lastId
+               + ", lastCreated: " + lastCreated;
+    }
+}
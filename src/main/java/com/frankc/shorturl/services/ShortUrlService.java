@@ -16,6 +16,8 @@
  ******************************************************************************/
 package com.frankc.shorturl.services;
 
+import java.io.IOException;
+import java.util.Date;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -28,18 +30,121 @@ import com.frankc.shorturl.controllers.exceptions.MaxPathGenerationRetriesExcept
  * @author Frank Callaly
  */
 import com.frankc.shorturl.entities.ShortUrl;
+import com.frankc.shorturl.entities.ShortUrlRedirect;
+import com.frankc.shorturl.repositories.ShortUrlRepo.ExportRow;
 
 public interface ShortUrlService {
 
     List<ShortUrl> findAll(Pageable pageRequest);
 
+    /**
+     * Find the page of ShortUrls after cursor, in the cursor's order.
+     *
+     * @param cursor after the last ShortUrl of the previous page
+     * @param pageSize maximum number of ShortUrls to find
+     * @param redirectToLength maximum length of each redirectTo, longer
+     *                         ones are truncated
+     * @return up to pageSize ShortUrls, detached from the repository
+     */
+    List<ShortUrl> findPage(ShortUrlCursor cursor, int pageSize,
+                            int redirectToLength);
+
+    /**
+     * @return the number of ShortUrls, which may be out of date by up to
+     *         the configured count cache time
+     */
+    long countShortUrls();
+
     ShortUrl findByShortUrlPath(String shortUrlPath)
                                 throws NoSuchElementException;
 
+    /**
+     * Find the redirect of a ShortUrl, for the redirect path. A path that
+     * does not exist is not exceptional here, it is what a client probing
+     * for paths sends, so is reported without throwing.
+     *
+     * @param shortUrlPath of ShortUrl to redirect by
+     * @return the redirect, or null if no such ShortUrl exists
+     */
+    ShortUrlRedirect findRedirectByShortUrlPath(String shortUrlPath);
+
     ShortUrl createShortUrl(String redirectTo)
                             throws IllegalArgumentException,
                                    MaxPathGenerationRetriesException;
 
-    void deleteByShortUrlPath(String shortUrlPath)
-                              throws NoSuchElementException;
+    ShortUrl createShortUrl(String redirectTo, Integer cacheMaxAge)
+                            throws IllegalArgumentException,
+                                   MaxPathGenerationRetriesException;
+
+    /**
+     * Create a ShortUrl for each redirectTo, as few transactions of batched
+     * inserts. An invalid redirectTo or a failure to find a unique path
+     * only fails that item.
+     *
+     * @param redirectTos URLs to create ShortUrls for
+     * @return a result for each redirectTo, in the same order
+     */
+    List<BatchCreateResult> createShortUrls(List<String> redirectTos);
+
+    /**
+     * Insert ShortUrls as for createShortUrls, for callers which have
+     * already normalised each redirectTo with RedirectUrlValidator. A
+     * ShortUrl with a shortUrlPath keeps it, and is a DUPLICATE result if
+     * that path is taken, others are given a generated path.
+     *
+     * @param shortUrls new ShortUrls with normalised redirectTos
+     * @return a result for each ShortUrl, in the same order
+     */
+    List<BatchCreateResult> importShortUrls(List<ShortUrl> shortUrls);
+
+    /**
+     * Receives each row of an export.
+     */
+    @FunctionalInterface
+    interface ExportRowHandler {
+        void handle(ExportRow row) throws IOException;
+    }
+
+    /**
+     * Pass every ShortUrl, optionally within created and lastUpdated
+     * ranges, to handler in id order, one row at a time. Rows are read a
+     * page at a time, each page in its own short read-only transaction, so
+     * a slow handler holds no connection. The export is not a snapshot:
+     * ShortUrls created after it starts are left out, and ones deleted or
+     * updated while it runs may or may not be included.
+     *
+     * @param createdFrom inclusive, or null
+     * @param createdTo exclusive, or null
+     * @param updatedFrom inclusive, or null
+     * @param updatedTo exclusive, or null
+     * @param handler to pass each row to
+     * @return the number of rows exported
+     * @throws IOException if thrown by handler, which ends the export
+     */
+    long exportShortUrls(Date createdFrom, Date createdTo,
+                         Date updatedFrom, Date updatedTo,
+                         ExportRowHandler handler) throws IOException;
+
+    /**
+     * Find the number of redirects made by a ShortUrl, including clicks
+     * counted on this node and not yet written to the database.
+     *
+     * @param shortUrlPath of ShortUrl to count redirects of
+     * @return the number of redirects
+     * @throws NoSuchElementException if no such ShortUrl exists
+     */
+    long countClicks(String shortUrlPath) throws NoSuchElementException;
+
+    /**
+     * Delete a ShortUrl. A ShortUrl that dedup returned to more than one
+     * create is shared by them, so is only deleted once each of them has
+     * deleted it, earlier deletes just remove one of its creators.
+     *
+     * @param shortUrlPath of ShortUrl to delete
+     * @return true if the ShortUrl was deleted, false if other creators
+     *         remain and it still redirects
+     * @throws NoSuchElementException if no such ShortUrl exists
+     */
+    boolean deleteByShortUrlPath(String shortUrlPath)
+                                 throws NoSuchElementException;
 }
@@ -16,24 +16,49 @@
  ******************************************************************************/
 package com.frankc.shorturl.services;
 
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.frankc.shorturl.cache.ShortUrlCache;
+import com.frankc.shorturl.cache.ShortUrlPathFilter;
 import com.frankc.shorturl.controllers.exceptions.MaxPathGenerationRetriesException;
+import com.frankc.shorturl.datasource.ReplicaRoutingDataSource;
 import com.frankc.shorturl.entities.ShortUrl;
+import com.frankc.shorturl.entities.ShortUrlRedirect;
 import com.frankc.shorturl.repositories.ShortUrlRepo;
-import com.frankc.shorturl.utils.RedirectUrlValidator;
-import com.frankc.shorturl.utils.ShortUrlPathGenerator;
+import com.frankc.shorturl.repositories.ShortUrlRepo.PageRow;
+import com.frankc.shorturl.repositories.ShortUrlRepo.RedirectTarget;
+import com.frankc.shorturl.utils.RedirectUrlCanonicaliser;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 /**
  * ShortUrl Service layer default implementation.
@@ -41,7 +66,12 @@ import com.frankc.shorturl.utils.ShortUrlPathGenerator;
  * @author Frank Callaly
  */
 @Service
-public class ShortUrlServiceImpl implements ShortUrlService {
+@Profile("!logstore")
+public class ShortUrlServiceImpl extends AbstractShortUrlService {
+
+    // a create returned an existing ShortUrl for the same redirectTo
+    public static final String DEDUPLICATED_COUNTER =
+            "shorturl.create.deduplicated";
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -49,22 +79,121 @@ public class ShortUrlServiceImpl implements ShortUrlService {
     private ShortUrlRepo shortUrlRepo;
 
     @Autowired
-    private ShortUrlPathGenerator shortUrlGenerator;
+    private ShortUrlCache shortUrlCache;
+
+    @Autowired
+    private ShortUrlPathFilter shortUrlPathFilter;
+
+    @Autowired
+    private RedirectUrlCanonicaliser redirectUrlCanonicaliser;
+
+    @Autowired
+    private ClickCounter clickCounter;
 
     @Autowired
-    private RedirectUrlValidator redirectUrlValidator;
+    private MeterRegistry meterRegistry;
+
+    // return the existing ShortUrl when a redirectTo, in canonical form,
+    // was already shortened with the same cacheMaxAge
+    @Value("${com.frankc.shorturl.dedup.enabled:false}")
+    private boolean dedupEnabled;
+
+    // dedup creates in progress on this node, concurrent creates of the
+    // same redirectTo wait for the first and return its ShortUrl
+    private final ConcurrentMap<DedupKey, CompletableFuture<ShortUrl>>
+            dedupCreates = new ConcurrentHashMap<>();
+
+    // lookups are read from a replica, which may not yet have a ShortUrl
+    // just created, so one which finds nothing is repeated on the primary
+    @Value("${com.frankc.shorturl.replicas.enabled:false}")
+    private boolean replicasEnabled;
+
+    // ShortUrls inserted per transaction by createShortUrls, each
+    // transaction is sent as JDBC batches of hibernate.jdbc.batch_size
+    @Value("${com.frankc.shorturl.service.batchTransactionSize:1000}")
+    private int batchTransactionSize;
+
+    // rows read in each transaction of an export
+    @Value("${com.frankc.shorturl.service.exportPageSize:1000}")
+    private int exportPageSize;
+
+    // how long countShortUrls reuses a count, counting InnoDB rows scans
+    // a whole index
+    @Value("${com.frankc.shorturl.service.countCacheMs:60000}")
+    private long countCacheMs;
+
+    private static final String COUNT_KEY = "shortUrls";
+
+    private LoadingCache<String, Long> countCache;
 
-    @Value("${com.frankc.shorturl.service.maxShortUrlPathGenRetries:3}")
-    private int maxShortUrlPathGenerationRetries;
+    /**
+     * Cache the row count so concurrent callers share one query. Once
+     * countCacheMs old the count is refreshed in the background while
+     * callers keep getting the previous one, only a count unused for
+     * twice that is reloaded while callers wait.
+     */
+    @PostConstruct
+    public void buildCountCache() {
+        countCache = Caffeine.newBuilder()
+                             .refreshAfterWrite(countCacheMs,
+                                                TimeUnit.MILLISECONDS)
+                             .expireAfterWrite(2 * countCacheMs,
+                                               TimeUnit.MILLISECONDS)
+                             .build(key -> shortUrlRepo.count());
+    }
 
     public List<ShortUrl> findAll(final Pageable pageRequest) {
         return shortUrlRepo.findAll(pageRequest).getContent();
     }
 
+    public List<ShortUrl> findPage(final ShortUrlCursor cursor,
+                                   final int pageSize,
+                                   final int redirectToLength) {
+        Pageable firstRows = PageRequest.of(0, pageSize);
+        List<PageRow> rows;
+
+        if (cursor.getOrder() == ShortUrlCursor.Order.ID) {
+            rows = shortUrlRepo.findPageRowsAfterId(
+                        cursor.getLastId(), redirectToLength, firstRows);
+        } else if (cursor.getLastCreated() == null) {
+            rows = shortUrlRepo.findFirstPageRowsByCreated(
+                        redirectToLength, firstRows);
+        } else {
+            rows = shortUrlRepo.findPageRowsAfterCreated(
+                        cursor.getLastCreated(), cursor.getLastId(),
+                        redirectToLength, firstRows);
+        }
+
+        List<ShortUrl> page = new ArrayList<>(rows.size());
+        for (PageRow row : rows) {
+            ShortUrl shortUrl = new ShortUrl(row.getRedirectTo());
+            shortUrl.setId(row.getId());
+            shortUrl.setShortUrlPath(row.getShortUrlPath());
+            shortUrl.setCacheMaxAge(row.getCacheMaxAge());
+            shortUrl.setCreated(row.getCreated());
+            shortUrl.setLastUpdated(row.getLastUpdated());
+            page.add(shortUrl);
+        }
+        return page;
+    }
+
+    public long countShortUrls() {
+        return countCache.get(COUNT_KEY);
+    }
+
     public ShortUrl findByShortUrlPath(final String shortUrlPath)
                                        throws NoSuchElementException {
+        if (!shortUrlPathFilter.mightContain(shortUrlPath)) {
+            throw new NoSuchElementException();
+        }
+
         ShortUrl foundShortUrl =
                     shortUrlRepo.findShortUrlByShortUrlPath(shortUrlPath);
+        if (foundShortUrl == null && replicasEnabled) {
+            foundShortUrl = ReplicaRoutingDataSource.onPrimary(
+                    () -> shortUrlRepo.findShortUrlByShortUrlPath(
+                                                        shortUrlPath));
+        }
 
         if (foundShortUrl == null) {
             throw new NoSuchElementException();
@@ -72,47 +201,426 @@ public class ShortUrlServiceImpl implements ShortUrlService {
         return foundShortUrl;
     }
 
-    public ShortUrl createShortUrl(final String redirectTo)
+    public ShortUrlRedirect findRedirectByShortUrlPath(
+                                    final String shortUrlPath) {
+        if (!shortUrlPathFilter.mightContain(shortUrlPath)) {
+            return null;
+        }
+
+        return shortUrlCache.get(shortUrlPath, this::loadRedirect);
+    }
+
+    public ShortUrl createShortUrl(final String redirectTo,
+                                   final Integer cacheMaxAge)
                                    throws IllegalArgumentException,
                                           MaxPathGenerationRetriesException {
-        String fixedRedirectTo =
-                            redirectUrlValidator.fixUrlProtocol(redirectTo);
+        ShortUrl newShortUrl = newShortUrl(redirectTo, cacheMaxAge);
 
-        try {
-            new URL(fixedRedirectTo);
-            redirectUrlValidator.validateUrl(fixedRedirectTo);
-        } catch (MalformedURLException ex) {
-            logger.error("Request to create shortUrl with invalid redirectTo:"
-                         + fixedRedirectTo);
-            throw new IllegalArgumentException();
+        if (dedupEnabled) {
+            return createDeduplicated(newShortUrl);
         }
+        return saveWithUniquePath(newShortUrl, true);
+    }
 
-        ShortUrl newShortUrl = new ShortUrl(fixedRedirectTo);
+    public List<BatchCreateResult> createShortUrls(
+                                            final List<String> redirectTos) {
+        BatchCreateResult[] results =
+                new BatchCreateResult[redirectTos.size()];
+        List<ShortUrl> chunk = new ArrayList<>(batchTransactionSize);
+        List<Integer> chunkIndexes = new ArrayList<>(batchTransactionSize);
 
-        int numAttempts = 1;
-        while (true) {
-            newShortUrl.setShortUrlPath(shortUrlGenerator.generateBase62());
+        for (int i = 0; i < redirectTos.size(); ++i) {
+            String redirectTo = redirectTos.get(i);
 
             try {
-                return shortUrlRepo.save(newShortUrl);
-            } catch (DataIntegrityViolationException ex) {
-                logger.warn("Short URL Path generation failed to create unique "
-                            + "path : " + numAttempts + " of "
-                            + maxShortUrlPathGenerationRetries + " attempts"
-                            + " : " + ex);
+                chunk.add(new ShortUrl(normaliseRedirectTo(redirectTo)));
+                chunkIndexes.add(i);
+            } catch (IllegalArgumentException ex) {
+                results[i] = BatchCreateResult.invalid(redirectTo);
+                continue;
             }
-            if (numAttempts >= maxShortUrlPathGenerationRetries) {
-                throw new MaxPathGenerationRetriesException();
+
+            if (chunk.size() >= batchTransactionSize) {
+                saveNewChunk(chunk, chunkIndexes, results);
+                chunk.clear();
+                chunkIndexes.clear();
             }
-            ++numAttempts;
         }
+        if (!chunk.isEmpty()) {
+            saveNewChunk(chunk, chunkIndexes, results);
+        }
+
+        return Arrays.asList(results);
     }
 
-    public void deleteByShortUrlPath(final String shortUrlPath)
-                                     throws NoSuchElementException {
-        if (!shortUrlRepo.existsByShortUrlPath(shortUrlPath)) {
+    public List<BatchCreateResult> importShortUrls(
+                                            final List<ShortUrl> shortUrls) {
+        BatchCreateResult[] results = new BatchCreateResult[shortUrls.size()];
+        List<Integer> chunkIndexes = new ArrayList<>(batchTransactionSize);
+
+        for (int start = 0; start < shortUrls.size();
+                start += batchTransactionSize) {
+            int end = Math.min(start + batchTransactionSize, shortUrls.size());
+
+            chunkIndexes.clear();
+            for (int i = start; i < end; ++i) {
+                chunkIndexes.add(i);
+            }
+            // imported ShortUrls are mostly cold, keep them out of the
+            // cache rather than evicting the ones being used
+            saveChunk(shortUrls.subList(start, end), chunkIndexes, results,
+                      false);
+        }
+
+        return Arrays.asList(results);
+    }
+
+    public long exportShortUrls(final Date createdFrom, final Date createdTo,
+                                final Date updatedFrom, final Date updatedTo,
+                                final ExportRowHandler handler)
+                                throws IOException {
+        // rows created after the export starts are left to the next one
+        Long maxId = shortUrlRepo.findMaxId();
+        if (maxId == null) {
+            return 0;
+        }
+
+        long numRows = 0;
+        long afterId = 0;
+        while (true) {
+            List<PageRow> page = shortUrlRepo.findExportPage(
+                        afterId, maxId, createdFrom, createdTo,
+                        updatedFrom, updatedTo, exportPageSize);
+            for (PageRow row : page) {
+                handler.handle(row);
+            }
+            numRows += page.size();
+
+            if (page.size() < exportPageSize) {
+                return numRows;
+            }
+            afterId = page.get(page.size() - 1).getId();
+        }
+    }
+
+    public long countClicks(final String shortUrlPath)
+                            throws NoSuchElementException {
+        if (!shortUrlPathFilter.mightContain(shortUrlPath)
+                || !exists(shortUrlPath)) {
+            throw new NoSuchElementException();
+        }
+        return clickCounter.getClicks(shortUrlPath);
+    }
+
+    public boolean deleteByShortUrlPath(final String shortUrlPath)
+                                        throws NoSuchElementException {
+        if (!ReplicaRoutingDataSource.onPrimary(
+                    () -> shortUrlRepo.existsByShortUrlPath(shortUrlPath))) {
             throw new NoSuchElementException();
         }
+        // a dedup ShortUrl returned to several creates is only deleted by
+        // the last of them to delete it
+        if (shortUrlRepo.removeCreator(shortUrlPath) > 0) {
+            return false;
+        }
         shortUrlRepo.deleteByShortUrlPath(shortUrlPath);
+        shortUrlCache.invalidate(shortUrlPath);
+        clickCounter.remove(shortUrlPath);
+        return true;
+    }
+
+    protected ShortUrl saveIfPathFree(final ShortUrl newShortUrl,
+                                      final boolean cacheCreated) {
+        try {
+            ShortUrl savedShortUrl = shortUrlRepo.save(newShortUrl);
+            addCreated(newShortUrl.getShortUrlPath(), savedShortUrl,
+                       cacheCreated);
+            return savedShortUrl;
+        } catch (DataIntegrityViolationException ex) {
+            // or a dedup create on another node inserted the same
+            // redirectTo first
+            if (newShortUrl.getRedirectToHash() != null) {
+                ShortUrl duplicate = addToDuplicate(newShortUrl);
+                if (duplicate != null) {
+                    return duplicate;
+                }
+            }
+            logger.debug("Insert of " + newShortUrl.getShortUrlPath()
+                         + " failed : " + ex);
+            return null;
+        }
+    }
+
+    /**
+     * Return the stored ShortUrl with the redirectTo and cacheMaxAge of
+     * newShortUrl, or save newShortUrl if there is none.
+     *
+     * Only one create per redirectTo runs at a time on this node, others
+     * started meanwhile wait for its ShortUrl rather than each finding
+     * none and inserting their own. Creates on different nodes are kept
+     * from both inserting by the unique redirect_to_hash index, the one
+     * that fails returns the other's ShortUrl.
+     */
+    private ShortUrl createDeduplicated(final ShortUrl newShortUrl)
+                                throws MaxPathGenerationRetriesException {
+        byte[] hash = redirectUrlCanonicaliser.hash(
+                newShortUrl.getRedirectTo(), newShortUrl.getCacheMaxAge());
+        newShortUrl.setRedirectToHash(hash);
+        DedupKey key = new DedupKey(hash);
+
+        while (true) {
+            CompletableFuture<ShortUrl> created = new CompletableFuture<>();
+            CompletableFuture<ShortUrl> inProgress =
+                    dedupCreates.putIfAbsent(key, created);
+
+            if (inProgress == null) {
+                try {
+                    ShortUrl shortUrl = addToDuplicate(newShortUrl);
+                    if (shortUrl == null) {
+                        shortUrl = saveWithUniquePath(newShortUrl, true);
+                    }
+                    created.complete(shortUrl);
+                    return shortUrl;
+                } catch (RuntimeException ex) {
+                    created.completeExceptionally(ex);
+                    throw ex;
+                } finally {
+                    dedupCreates.remove(key, created);
+                }
+            }
+
+            try {
+                ShortUrl shortUrl = inProgress.join();
+                // unless deleted since, then make our own attempt
+                if (shortUrlRepo.addCreators(shortUrl.getId(), 1) > 0) {
+                    meterRegistry.counter(DEDUPLICATED_COUNTER).increment();
+                    return shortUrl;
+                }
+            } catch (CompletionException | CancellationException ex) {
+                // the create waited for failed, make our own attempt
+                logger.debug("Waited for create failed, retrying : " + ex);
+            }
+        }
+    }
+
+    /**
+     * Count the creators of newShortUrl as creators of the stored ShortUrl
+     * with its redirectToHash.
+     *
+     * @return the stored ShortUrl, or null if there is none
+     */
+    private ShortUrl addToDuplicate(final ShortUrl newShortUrl) {
+        // read the primary, a replica may not have the latest creates
+        ShortUrl duplicate = ReplicaRoutingDataSource.onPrimary(
+                () -> shortUrlRepo.findByRedirectToHash(
+                                        newShortUrl.getRedirectToHash()));
+        if (duplicate == null
+                || shortUrlRepo.addCreators(duplicate.getId(),
+                                            newShortUrl.getCreators()) == 0) {
+            return null;
+        }
+        meterRegistry.counter(DEDUPLICATED_COUNTER)
+                     .increment(newShortUrl.getCreators());
+        return duplicate;
+    }
+
+    /**
+     * saveChunk for new ShortUrls without paths, first matching each against
+     * the stored ShortUrls and the rest of the chunk if dedup is enabled.
+     */
+    private void saveNewChunk(final List<ShortUrl> chunk,
+                              final List<Integer> chunkIndexes,
+                              final BatchCreateResult[] results) {
+        if (!dedupEnabled) {
+            saveChunk(chunk, chunkIndexes, results, true);
+            return;
+        }
+
+        // positions in the chunk of the ShortUrls with each key
+        Map<DedupKey, List<Integer>> groups = new LinkedHashMap<>();
+        List<byte[]> hashes = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); ++i) {
+            ShortUrl shortUrl = chunk.get(i);
+            shortUrl.setRedirectToHash(redirectUrlCanonicaliser.hash(
+                    shortUrl.getRedirectTo(), shortUrl.getCacheMaxAge()));
+            List<Integer> group = groups.computeIfAbsent(
+                    new DedupKey(shortUrl.getRedirectToHash()),
+                    key -> new ArrayList<>());
+            if (group.isEmpty()) {
+                hashes.add(shortUrl.getRedirectToHash());
+            }
+            group.add(i);
+        }
+
+        Map<DedupKey, ShortUrl> stored = new HashMap<>();
+        for (ShortUrl shortUrl : ReplicaRoutingDataSource.onPrimary(
+                () -> shortUrlRepo.findByRedirectToHashIn(hashes))) {
+            stored.put(new DedupKey(shortUrl.getRedirectToHash()), shortUrl);
+        }
+
+        List<ShortUrl> newShortUrls = new ArrayList<>(groups.size());
+        List<Integer> newIndexes = new ArrayList<>(groups.size());
+        int numDeduplicated = 0;
+
+        for (Map.Entry<DedupKey, List<Integer>> group : groups.entrySet()) {
+            List<Integer> positions = group.getValue();
+            ShortUrl storedShortUrl = stored.get(group.getKey());
+
+            if (storedShortUrl != null
+                    && shortUrlRepo.addCreators(storedShortUrl.getId(),
+                                                positions.size()) > 0) {
+                for (int position : positions) {
+                    results[chunkIndexes.get(position)] =
+                            BatchCreateResult.created(storedShortUrl);
+                }
+                numDeduplicated += positions.size();
+            } else {
+                // the first is saved on behalf of the rest
+                ShortUrl shortUrl = chunk.get(positions.get(0));
+                shortUrl.setCreators(positions.size());
+                newShortUrls.add(shortUrl);
+                newIndexes.add(chunkIndexes.get(positions.get(0)));
+                numDeduplicated += positions.size() - 1;
+            }
+        }
+
+        if (!newShortUrls.isEmpty()) {
+            saveChunk(newShortUrls, newIndexes, results, true);
+        }
+        for (List<Integer> positions : groups.values()) {
+            for (int position : positions) {
+                results[chunkIndexes.get(position)] =
+                        results[chunkIndexes.get(positions.get(0))];
+            }
+        }
+        meterRegistry.counter(DEDUPLICATED_COUNTER)
+                     .increment(numDeduplicated);
+    }
+
+    private BatchCreateResult saveWithGivenPath(final ShortUrl newShortUrl,
+                                                final boolean cacheCreated) {
+        try {
+            ShortUrl savedShortUrl = shortUrlRepo.save(newShortUrl);
+            addCreated(newShortUrl.getShortUrlPath(), savedShortUrl,
+                       cacheCreated);
+            return BatchCreateResult.created(savedShortUrl);
+        } catch (DataIntegrityViolationException ex) {
+            logger.warn("ShortUrl with given path already exists : "
+                        + newShortUrl.getShortUrlPath());
+            return BatchCreateResult.duplicate(newShortUrl.getRedirectTo(),
+                                               newShortUrl.getShortUrlPath());
+        }
+    }
+
+    /**
+     * Insert a chunk of new ShortUrls as JDBC batches in one transaction,
+     * falling back to one insert per ShortUrl if any path collides. Paths
+     * are generated for those without one.
+     */
+    private void saveChunk(final List<ShortUrl> chunk,
+                           final List<Integer> chunkIndexes,
+                           final BatchCreateResult[] results,
+                           final boolean cacheCreated) {
+        boolean[] givenPaths = new boolean[chunk.size()];
+        for (int i = 0; i < chunk.size(); ++i) {
+            givenPaths[i] = chunk.get(i).getShortUrlPath() != null;
+            if (!givenPaths[i]) {
+                chunk.get(i).setShortUrlPath(generateShortUrlPath());
+            }
+        }
+
+        try {
+            List<ShortUrl> savedShortUrls = shortUrlRepo.saveAll(chunk);
+            for (int i = 0; i < savedShortUrls.size(); ++i) {
+                addCreated(chunk.get(i).getShortUrlPath(),
+                           savedShortUrls.get(i), cacheCreated);
+                results[chunkIndexes.get(i)] =
+                        BatchCreateResult.created(savedShortUrls.get(i));
+            }
+            return;
+        } catch (DataIntegrityViolationException ex) {
+            logger.warn("Batch insert of " + chunk.size() + " ShortUrls "
+                        + "failed, inserting individually : " + ex);
+        }
+
+        for (int i = 0; i < chunk.size(); ++i) {
+            // the rolled back entities may have been assigned ids
+            ShortUrl newShortUrl = new ShortUrl(chunk.get(i).getRedirectTo());
+            newShortUrl.setCacheMaxAge(chunk.get(i).getCacheMaxAge());
+            newShortUrl.setRedirectToHash(chunk.get(i).getRedirectToHash());
+            newShortUrl.setCreators(chunk.get(i).getCreators());
+
+            if (givenPaths[i]) {
+                newShortUrl.setShortUrlPath(chunk.get(i).getShortUrlPath());
+                results[chunkIndexes.get(i)] =
+                            saveWithGivenPath(newShortUrl, cacheCreated);
+                continue;
+            }
+
+            try {
+                results[chunkIndexes.get(i)] = BatchCreateResult.created(
+                            saveWithUniquePath(newShortUrl, cacheCreated));
+            } catch (MaxPathGenerationRetriesException ex) {
+                results[chunkIndexes.get(i)] =
+                        BatchCreateResult.failed(newShortUrl.getRedirectTo());
+            }
+        }
+    }
+
+    private void addCreated(final String shortUrlPath,
+                            final ShortUrl savedShortUrl,
+                            final boolean cacheCreated) {
+        shortUrlPathFilter.put(shortUrlPath);
+        if (!cacheCreated) {
+            return;
+        }
+        shortUrlCache.put(shortUrlPath, toRedirect(savedShortUrl));
+    }
+
+    private boolean exists(final String shortUrlPath) {
+        return shortUrlRepo.existsByShortUrlPath(shortUrlPath)
+               || replicasEnabled && ReplicaRoutingDataSource.onPrimary(
+                    () -> shortUrlRepo.existsByShortUrlPath(shortUrlPath));
+    }
+
+    private ShortUrlRedirect loadRedirect(final String shortUrlPath) {
+        RedirectTarget redirectTarget =
+                shortUrlRepo.findRedirectTargetByShortUrlPath(shortUrlPath);
+        if (redirectTarget == null && replicasEnabled) {
+            redirectTarget = ReplicaRoutingDataSource.onPrimary(
+                    () -> shortUrlRepo.findRedirectTargetByShortUrlPath(
+                                                        shortUrlPath));
+        }
+
+        if (redirectTarget == null) {
+            return null;
+        }
+        return toRedirect(shortUrlPath, redirectTarget.getRedirectTo(),
+                          redirectTarget.getCacheMaxAge());
+    }
+
+    /**
+     * Identifies ShortUrls that a dedup create may return, by the hash of
+     * their redirectTo and cacheMaxAge.
+     */
+    private static final class DedupKey {
+
+        private final byte[] redirectToHash;
+
+        DedupKey(final byte[] redirectToHash) {
+            this.redirectToHash = redirectToHash;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof DedupKey
+                   && Arrays.equals(redirectToHash,
+                                    ((DedupKey) other).redirectToHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(redirectToHash);
+        }
     }
 }
@@ -18,6 +18,7 @@ package com.frankc.shorturl.swagger;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 
 import com.frankc.shorturl.controllers.ShortUrlController;
 import com.frankc.shorturl.controllers.ShortUrlRedirectController;
@@ -34,9 +35,13 @@ import springfox.documentation.swagger2.annotations.EnableSwagger2;
 /**
  * Configuration for swagger2.
  *
+ * Springfox only documents Spring MVC handlers, so it is disabled in the
+ * reactive profile.
+ *
  * @author Frank Callaly
  */
 @Configuration
+@Profile("!reactive")
 @EnableSwagger2
 public class SwaggerConfig {
 
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.frankc.shorturl.entities.RedirectPrefix;
+import com.frankc.shorturl.repositories.RedirectPrefixRepo;
+
+/**
+ * Dictionary of common scheme and host prefixes, so a stored redirectTo
+ * can refer to its prefix by a short id rather than repeat it in every row.
+ *
+ * A redirectTo starting with a prefix in the dictionary is stored as
+ * "~" + base 36 id + "~" + the rest of the URL. A normalised URL always
+ * starts with its scheme, so a stored value not starting with "~" is
+ * the URL itself, as are rows stored before a prefix was added.
+ *
+ * Prefixes are configured with com.frankc.shorturl.storage.redirectPrefixes
+ * and added to the redirect_prefix table at startup, so every node uses the
+ * same id for a prefix. A prefix must never be removed from the table while
+ * any row may refer to it.
+ *
+ * @author Frank Callaly
+ */
+@Component
+@Profile("!logstore")
+public class RedirectPrefixDictionary {
+
+    public static final char MARKER = '~';
+
+    private static final String SCHEME_SEPARATOR = "://";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Value("${com.frankc.shorturl.storage.redirectPrefixes:}")
+    private String[] configuredPrefixes;
+
+    @Autowired
+    private RedirectPrefixRepo redirectPrefixRepo;
+
+    private volatile Prefixes prefixes;
+
+    /**
+     * Add any configured prefixes missing from redirect_prefix, then load
+     * the whole table. Runs once the EntityManagerFactory has created or
+     * validated the schema, and before any CommandLineRunner.
+     *
+     * @throws IllegalArgumentException if a configured prefix has a path
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void addConfiguredPrefixes() {
+        Map<Integer, String> stored = redirectPrefixRepo.findAll();
+
+        for (String prefix : configuredPrefixes) {
+            prefix = prefix.trim();
+            if (prefix.isEmpty() || stored.containsValue(prefix)) {
+                continue;
+            }
+            if (prefixEnd(prefix) != prefix.length()
+                    || prefix.length() > RedirectPrefix.PREFIX_FIELD_SIZE) {
+                throw new IllegalArgumentException(
+                        "Redirect prefix must be only a scheme and host: "
+                        + prefix);
+            }
+            logger.info("Adding redirect prefix " + prefix);
+            redirectPrefixRepo.insertIfAbsent(prefix);
+        }
+        reload();
+    }
+
+    /**
+     * @param redirectTo a normalised URL, or null
+     * @return redirectTo with its prefix replaced by an id if the
+     *         dictionary has it, else redirectTo, never longer
+     */
+    public String encode(final String redirectTo) {
+        if (redirectTo == null) {
+            return null;
+        }
+        Prefixes current = loaded();
+        if (current.idsByPrefix.isEmpty()) {
+            return redirectTo;
+        }
+
+        int prefixEnd = prefixEnd(redirectTo);
+        if (prefixEnd < 0) {
+            return redirectTo;
+        }
+        Integer id = current.idsByPrefix.get(
+                                redirectTo.substring(0, prefixEnd));
+        if (id == null) {
+            return redirectTo;
+        }
+        return MARKER + Integer.toString(id, Character.MAX_RADIX) + MARKER
+               + redirectTo.substring(prefixEnd);
+    }
+
+    /**
+     * @param stored a value returned by encode, or null
+     * @return the URL it encodes
+     * @throws IllegalStateException if it refers to an unknown prefix
+     */
+    public String decode(final String stored) {
+        if (stored == null || stored.isEmpty()
+                || stored.charAt(0) != MARKER) {
+            return stored;
+        }
+
+        int idEnd = stored.indexOf(MARKER, 1);
+        if (idEnd < 0) {
+            throw new IllegalStateException(
+                        "Malformed stored redirectTo: " + stored);
+        }
+        int id = Integer.parseInt(stored.substring(1, idEnd),
+                                  Character.MAX_RADIX);
+
+        String prefix = loaded().prefixesById.get(id);
+        if (prefix == null) {
+            // added by another node since this one loaded the table
+            prefix = reload().prefixesById.get(id);
+            if (prefix == null) {
+                throw new IllegalStateException(
+                            "Unknown redirect prefix id: " + id);
+            }
+        }
+        return prefix + stored.substring(idEnd + 1);
+    }
+
+    /**
+     * @return number of prefixes loaded
+     */
+    public int size() {
+        return loaded().prefixesById.size();
+    }
+
+    /**
+     * @param url to find the scheme and host prefix of
+     * @return index of the first character after the scheme, user info,
+     *         host and port of url, or -1 if url has no scheme
+     */
+    static int prefixEnd(final String url) {
+        int schemeEnd = url.indexOf(SCHEME_SEPARATOR);
+        if (schemeEnd <= 0) {
+            return -1;
+        }
+
+        for (int i = schemeEnd + SCHEME_SEPARATOR.length();
+                i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                return i;
+            }
+        }
+        return url.length();
+    }
+
+    private Prefixes loaded() {
+        Prefixes current = prefixes;
+        return current == null ? reload() : current;
+    }
+
+    private synchronized Prefixes reload() {
+        Prefixes loaded = new Prefixes(redirectPrefixRepo.findAll());
+        prefixes = loaded;
+        return loaded;
+    }
+
+    /**
+     * Immutable snapshot of the table, replaced whole on reload.
+     */
+    private static final class Prefixes {
+        private final Map<Integer, String> prefixesById;
+        private final Map<String, Integer> idsByPrefix;
+
+        Prefixes(final Map<Integer, String> prefixesById) {
+            Map<String, Integer> ids = new HashMap<>();
+            for (Map.Entry<Integer, String> entry
+                    : prefixesById.entrySet()) {
+                ids.put(entry.getValue(), entry.getKey());
+            }
+            this.prefixesById =
+                    Collections.unmodifiableMap(new HashMap<>(prefixesById));
+            this.idsByPrefix = Collections.unmodifiableMap(ids);
+        }
+    }
+}
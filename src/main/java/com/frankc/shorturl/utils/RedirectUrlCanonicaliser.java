@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.utils;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Reduces a normalised redirectTo to a canonical form, and hashes that, so
+ * that URLs which only differ in ways that can't change the page they lead
+ * to are recognised as the same.
+ *
+ * The canonical form has a lower case scheme and host, no port where it is
+ * the scheme's default and a path of "/" rather than none. The path, query
+ * and fragment are otherwise kept as they are, as a server may treat
+ * "/page" and "/page/" differently.
+ *
+ * @author Frank Callaly
+ */
+@Component
+public class RedirectUrlCanonicaliser {
+
+    public static final String HASH_ALGORITHM = "SHA-256";
+
+    public static final int HASH_LENGTH = 32;
+
+    private static final ThreadLocal<MessageDigest> DIGEST =
+            ThreadLocal.withInitial(RedirectUrlCanonicaliser::newDigest);
+
+    /**
+     * @param url as returned by RedirectUrlValidator.normaliseUrl
+     * @return canonical form of url
+     */
+    public String canonicalUrl(final String url) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException ex) {
+            return url;
+        }
+        if (uri.getScheme() == null || uri.getHost() == null) {
+            return url;
+        }
+
+        String scheme = uri.getScheme().toLowerCase(Locale.ENGLISH);
+        StringBuilder canonical = new StringBuilder(url.length())
+                .append(scheme).append("://");
+        if (uri.getRawUserInfo() != null) {
+            canonical.append(uri.getRawUserInfo()).append('@');
+        }
+        canonical.append(uri.getHost().toLowerCase(Locale.ENGLISH));
+        if (uri.getPort() != -1 && uri.getPort() != defaultPort(scheme)) {
+            canonical.append(':').append(uri.getPort());
+        }
+
+        String path = uri.getRawPath();
+        canonical.append(path == null || path.isEmpty() ? "/" : path);
+        if (uri.getRawQuery() != null) {
+            canonical.append('?').append(uri.getRawQuery());
+        }
+        if (uri.getRawFragment() != null) {
+            canonical.append('#').append(uri.getRawFragment());
+        }
+        return canonical.toString();
+    }
+
+    /**
+     * Hash identifying ShortUrls a dedup create may return, those with the
+     * same canonical redirectTo and cacheMaxAge.
+     *
+     * @param url as returned by RedirectUrlValidator.normaliseUrl
+     * @param cacheMaxAge of the ShortUrl, may be null
+     * @return HASH_LENGTH byte SHA-256 hash of the canonical form of url
+     *         and cacheMaxAge
+     */
+    public byte[] hash(final String url, final Integer cacheMaxAge) {
+        String canonical = canonicalUrl(url);
+        // a valid URI has no spaces, so can't run into the cacheMaxAge
+        StringBuilder key = new StringBuilder(canonical.length() + 12)
+                .append(canonical).append(' ');
+        if (cacheMaxAge != null) {
+            key.append(cacheMaxAge);
+        }
+        return DIGEST.get().digest(
+                key.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int defaultPort(final String scheme) {
+        switch (scheme) {
+            case "http":
+                return 80;
+            case "https":
+                return 443;
+            case "ftp":
+                return 21;
+            default:
+                return -1;
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+}
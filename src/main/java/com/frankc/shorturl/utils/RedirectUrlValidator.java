@@ -17,11 +17,35 @@
 package com.frankc.shorturl.utils;
 
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Locale;
 import java.util.regex.Pattern;
 
+import org.apache.commons.validator.routines.DomainValidator;
+import org.apache.commons.validator.routines.InetAddressValidator;
 import org.apache.commons.validator.routines.UrlValidator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Validates and normalises the redirectTo of new short URLs.
+ *
+ * A URL is checked by java.net.URL, commons-validator's UrlValidator and
+ * java.net.URI, each parsing it with its own regexes. Most URLs are plain
+ * http(s) links though, so normaliseUrl first makes a single hand written
+ * pass that accepts or rejects those with the same result, looking up the
+ * host's domain and TLD verdict in a bounded cache. Anything that pass does
+ * not handle, such as user info, IP v6 hosts, non ASCII characters or dot
+ * segments, goes through the full checks.
+ *
+ * @author Frank Callaly
+ */
 @Component
 public class RedirectUrlValidator {
 
@@ -29,9 +53,41 @@ public class RedirectUrlValidator {
 
     public static final String DEFAULT_URL_PROTOCOL = "http://";
 
+    public static final long DEFAULT_HOST_CACHE_SIZE = 10000;
+
     private static final Pattern URL_WITH_PROTOCOL =
             Pattern.compile("(?i)^(https?|ftp|file)://.*$");
 
+    // schemes of URL_VALIDATOR handled by the single pass
+    private static final String[] FAST_SCHEMES = {"https", "http", "ftp"};
+
+    private static final String SCHEME_SEPARATOR = "://";
+
+    private static final int MAX_PORT_DIGITS = 5;
+
+    private static final int MAX_PORT = 65535;
+
+    // characters allowed by both URL_VALIDATOR and URI, other than
+    // alphanumerics and percent escapes
+    private static final String PATH_CHARS = "-_.!~*'():@&=+$,;/";
+
+    private static final String QUERY_CHARS = PATH_CHARS + "?[]";
+
+    private final Cache<String, Boolean> hostVerdicts;
+
+    public RedirectUrlValidator() {
+        this(DEFAULT_HOST_CACHE_SIZE);
+    }
+
+    @Autowired
+    public RedirectUrlValidator(
+            @Value("${com.frankc.shorturl.validator.hostCacheSize:10000}")
+                                                final long hostCacheSize) {
+        hostVerdicts = Caffeine.newBuilder()
+                               .maximumSize(hostCacheSize)
+                               .build();
+    }
+
     public String fixUrlProtocol(final String url) {
         if (URL_WITH_PROTOCOL.matcher(url).matches()) {
             return url;
@@ -45,4 +101,207 @@ public class RedirectUrlValidator {
             throw new MalformedURLException();
         }
     }
+
+    /**
+     * Validate a URL, including as a URI, so a stored URL can always be sent
+     * as a Location header without further checks. Thread safe, so may be
+     * used to validate many URLs in parallel.
+     *
+     * @param url as given by the client
+     * @return url with a protocol and lower case scheme
+     * @throws MalformedURLException if url is not a valid URL
+     */
+    public String normaliseUrl(final String url)
+                               throws MalformedURLException {
+        String normalisedUrl = fastNormaliseUrl(url);
+
+        return normalisedUrl != null ? normalisedUrl : fullNormaliseUrl(url);
+    }
+
+    /**
+     * normaliseUrl using only java.net.URL, URL_VALIDATOR and java.net.URI.
+     */
+    String fullNormaliseUrl(final String url) throws MalformedURLException {
+        String fixedUrl = fixUrlProtocol(url);
+
+        new URL(fixedUrl);
+        validateUrl(fixedUrl);
+        try {
+            URI uri = new URI(fixedUrl);
+            return uri.getScheme().toLowerCase(Locale.ENGLISH)
+                   + uri.toASCIIString().substring(uri.getScheme().length());
+        } catch (URISyntaxException ex) {
+            throw new MalformedURLException(ex.getMessage());
+        }
+    }
+
+    /**
+     * normaliseUrl in a single pass over url, for URLs of the form
+     * [scheme://]host[:port][/path][?query][#fragment] in printable ASCII.
+     *
+     * @param url as given by the client
+     * @return url with a protocol and lower case scheme, or null if url
+     *         needs the full checks
+     * @throws MalformedURLException if url is not a valid URL
+     */
+    String fastNormaliseUrl(final String url) throws MalformedURLException {
+        int length = url.length();
+        for (int i = 0; i < length; i++) {
+            char c = url.charAt(i);
+            if (c <= ' ' || c > '~') {
+                return null;
+            }
+        }
+
+        String scheme = null;
+        for (String fastScheme : FAST_SCHEMES) {
+            if (startsWithScheme(url, fastScheme)) {
+                scheme = fastScheme;
+                break;
+            }
+        }
+        if (scheme == null && startsWithScheme(url, "file")) {
+            return null;
+        }
+        int i = scheme == null ? 0
+                               : scheme.length() + SCHEME_SEPARATOR.length();
+
+        // host, up to an optional port
+        int hostStart = i;
+        while (i < length && isHostChar(url.charAt(i))) {
+            i++;
+        }
+        if (i == hostStart) {
+            return null;
+        }
+        String host = url.substring(hostStart, i);
+
+        if (i < length && url.charAt(i) == ':') {
+            int portStart = ++i;
+            while (i < length && isDigit(url.charAt(i))) {
+                i++;
+            }
+            if (i == portStart || i - portStart > MAX_PORT_DIGITS) {
+                return null;
+            }
+            if (Integer.parseInt(url.substring(portStart, i)) > MAX_PORT) {
+                throw new MalformedURLException("Invalid port: " + url);
+            }
+        }
+        if (i < length && "/?#".indexOf(url.charAt(i)) < 0) {
+            return null;
+        }
+
+        // path, with no empty, "." or ".." segments
+        if (i < length && url.charAt(i) == '/') {
+            int segmentStart = ++i;
+            for (; i < length; i++) {
+                char c = url.charAt(i);
+                if (c == '/' || c == '?' || c == '#') {
+                    if (c == '/' && i == segmentStart) {
+                        throw new MalformedURLException(
+                                "Empty path segment: " + url);
+                    }
+                    if (isDotSegment(url, segmentStart, i)) {
+                        return null;
+                    }
+                    if (c != '/') {
+                        break;
+                    }
+                    segmentStart = i + 1;
+                } else {
+                    i = checkChar(url, i, PATH_CHARS);
+                }
+            }
+            if (i == length && isDotSegment(url, segmentStart, i)) {
+                return null;
+            }
+        }
+
+        // query, then fragment
+        if (i < length && url.charAt(i) == '?') {
+            for (i++; i < length && url.charAt(i) != '#'; i++) {
+                i = checkChar(url, i, QUERY_CHARS);
+            }
+        }
+        if (i < length) {
+            for (i++; i < length; i++) {
+                i = checkChar(url, i, QUERY_CHARS);
+            }
+        }
+
+        if (!isValidHost(host)) {
+            throw new MalformedURLException("Invalid host: " + url);
+        }
+
+        return scheme == null ? DEFAULT_URL_PROTOCOL + url
+                              : scheme + url.substring(scheme.length());
+    }
+
+    private boolean isValidHost(final String host) {
+        // the domain and TLD checks don't depend on case
+        return hostVerdicts.get(host.toLowerCase(Locale.ENGLISH),
+                h -> DomainValidator.getInstance(false).isValid(h)
+                     || InetAddressValidator.getInstance()
+                                            .isValidInet4Address(h));
+    }
+
+    private static boolean startsWithScheme(final String url,
+                                            final String scheme) {
+        int schemeLength = scheme.length();
+        if (!url.startsWith(SCHEME_SEPARATOR, schemeLength)) {
+            return false;
+        }
+        for (int i = 0; i < schemeLength; i++) {
+            // ASCII only case insensitive match, as URL_WITH_PROTOCOL
+            if ((url.charAt(i) | 0x20) != scheme.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check the character, or percent escape, at index i of url.
+     *
+     * @return index of the last character checked
+     * @throws MalformedURLException if the character is not allowed
+     */
+    private static int checkChar(final String url, final int i,
+                                 final String allowedChars)
+                                 throws MalformedURLException {
+        char c = url.charAt(i);
+        if (isAlphanumeric(c) || allowedChars.indexOf(c) >= 0) {
+            return i;
+        }
+        if (c == '%' && i + 2 < url.length()
+                && isHexDigit(url.charAt(i + 1))
+                && isHexDigit(url.charAt(i + 2))) {
+            return i + 2;
+        }
+        throw new MalformedURLException(
+                "Illegal character at index " + i + ": " + url);
+    }
+
+    private static boolean isDotSegment(final String url, final int start,
+                                        final int end) {
+        return (end - start == 1 || end - start == 2)
+               && url.startsWith("..".substring(0, end - start), start);
+    }
+
+    private static boolean isHostChar(final char c) {
+        return isAlphanumeric(c) || c == '-' || c == '.';
+    }
+
+    private static boolean isAlphanumeric(final char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHexDigit(final char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
 }
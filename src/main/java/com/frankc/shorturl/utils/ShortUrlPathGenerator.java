@@ -16,63 +16,147 @@
  ******************************************************************************/
 package com.frankc.shorturl.utils;
 
-import java.util.UUID;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 /**
  * Generates short URL paths.
- * 
- * Supports for different charsets as String[], includes Base62 charset.
- * 
- * Basic operation generates shortUrl for {@link java.util.UUID#randomUUID}.
+ *
+ * Each path is a fixed number of characters drawn uniformly from the
+ * charset, Base62 by default. Characters come from ThreadLocalRandom, so
+ * concurrent creates share no state. In secure mode each thread instead
+ * has its own SecureRandom, making paths unguessable without contending
+ * on a shared generator.
+ *
+ * Paths are only unique with high probability, ShortUrlServiceImpl relies
+ * on the unique index and retries on a collision.
  *
  * @author Frank Callaly
  */
 @Component
-public class ShortUrlPathGenerator {
+@ConditionalOnProperty(name = "com.frankc.shorturl.generator.strategy",
+                       havingValue = "random", matchIfMissing = true)
+public class ShortUrlPathGenerator implements ShortUrlPathStrategy {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    private static final String[] BASE62_CHARSET = {
-            "0", "1", "2", "3", "4", "5", "6", "7", "8", "9",
-            "A", "B", "C", "D", "E", "F", "G", "H", "I", "J",
-            "K", "L", "M", "N", "O", "P", "Q", "R", "S", "T",
-            "U", "V", "W", "X", "Y", "Z", "a", "b", "c", "d",
-            "e", "f", "g", "h", "i", "j", "k", "l", "m", "n",
-            "o", "p", "q", "r", "s", "t", "u", "v", "w", "x",
-            "y", "z"
-    };
+    // 11 Base62 characters hold just over 64 bits
+    public static final int DEFAULT_LENGTH = 11;
+
+    // width of the shortUrlPath column
+    public static final int MAX_LENGTH = 36;
+
+    // paths the redirect route matches and the ascii_bin shortUrlPath
+    // column holds, compared case sensitively
+    public static final Pattern PATH_PATTERN =
+            Pattern.compile("[a-zA-Z0-9]{1," + MAX_LENGTH + "}");
+
+    static final char[] BASE62_CHARSET =
+            ("0123456789"
+             + "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+             + "abcdefghijklmnopqrstuvwxyz").toCharArray();
+
+    private static final ThreadLocal<SecureRandom> SECURE_RANDOM =
+            ThreadLocal.withInitial(ShortUrlPathGenerator::newSecureRandom);
+
+    private final int length;
+
+    private final boolean secure;
+
+    public ShortUrlPathGenerator() {
+        this(DEFAULT_LENGTH, false);
+    }
+
+    @Autowired
+    public ShortUrlPathGenerator(
+            @Value("${com.frankc.shorturl.generator.length:11}")
+                                                final int length,
+            @Value("${com.frankc.shorturl.generator.secure:false}")
+                                                final boolean secure) {
+        if (length < 1 || length > MAX_LENGTH) {
+            throw new IllegalArgumentException(
+                    "Path length must be between 1 and " + MAX_LENGTH
+                    + ": " + length);
+        }
+        this.length = length;
+        this.secure = secure;
+
+        logger.info("Generating " + length + " character shortUrlPaths"
+                    + (secure ? " from SecureRandom" : ""));
+    }
+
+    @Override
+    public String generateShortUrlPath() {
+        return generateBase62();
+    }
 
     public String generateBase62() {
         return generateRandomForCharset(BASE62_CHARSET);
     }
 
-    public String generateRandomForCharset(final String[] charset) {
-        UUID uuid = UUID.randomUUID();
+    /**
+     * Generate a random path of the configured length.
+     *
+     * Characters are taken from successive bit fields of random longs,
+     * rejecting any field past the end of the charset so every character
+     * is equally likely. A Base62 path of the default length needs two
+     * longs, which matters in secure mode where each draw is expensive.
+     *
+     * @param charset characters to draw from
+     * @return a new path
+     */
+    public String generateRandomForCharset(final char[] charset) {
+        Random random = secure ? SECURE_RANDOM.get()
+                               : ThreadLocalRandom.current();
+        int bitsPerChar =
+                Integer.SIZE - Integer.numberOfLeadingZeros(charset.length - 1);
+        int mask = (1 << bitsPerChar) - 1;
+        char[] path = new char[length];
+        long bits = 0;
+        int bitsLeft = 0;
 
-        return longToBaseXString(uuid.getMostSignificantBits(), charset);
-    }
+        for (int i = 0; i < length;) {
+            if (bitsLeft < bitsPerChar) {
+                bits = random.nextLong();
+                bitsLeft = Long.SIZE;
+            }
 
-    private String longToBaseXString(final long toConvert,
-                                     final String[] charset) {
+            int index = (int) bits & mask;
+            bits >>>= bitsPerChar;
+            bitsLeft -= bitsPerChar;
 
-        logger.debug("Converting Long [" + toConvert + "]"
-                     + " to base " + charset.length);
+            if (index < charset.length) {
+                path[i++] = charset[index];
+            }
+        }
 
-        long stillToConvert = Long.divideUnsigned(toConvert, charset.length);
-        long modulus = Long.remainderUnsigned(toConvert, charset.length);
+        return new String(path);
+    }
 
-        logger.debug("stillToConvert: [" + stillToConvert + "], "
-                     + "Adding index: [" + modulus + "], "
-                     + "char: [" + charset[(int) modulus] + "]");
+    public int getLength() {
+        return length;
+    }
 
-        if (stillToConvert > 0) {
-            return longToBaseXString(stillToConvert, charset)
-                   + charset[(int) modulus];
-        } else {
-            return charset[(int) modulus];
+    private static SecureRandom newSecureRandom() {
+        // The default NativePRNG serialises every caller on a global lock,
+        // a per-thread DRBG (JDK 9+) or SHA1PRNG instance does not
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException ex) {
+            try {
+                return SecureRandom.getInstance("SHA1PRNG");
+            } catch (NoSuchAlgorithmException ex2) {
+                return new SecureRandom();
+            }
         }
     }
 }
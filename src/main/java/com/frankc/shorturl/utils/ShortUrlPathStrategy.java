@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.utils;
+
+/**
+ * Source of shortUrlPaths for new ShortUrls.
+ *
+ * Selected by com.frankc.shorturl.generator.strategy, either random
+ * (ShortUrlPathGenerator) or unique (UniqueShortUrlPathGenerator).
+ *
+ * @author Frank Callaly
+ */
+public interface ShortUrlPathStrategy {
+
+    /**
+     * @return a new shortUrlPath
+     */
+    String generateShortUrlPath();
+}
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Generates shortUrlPaths that are unique by construction.
+ *
+ * Each path encodes a 63 bit id of 41 bits of milliseconds since 2019,
+ * a 10 bit node id and a 12 bit per-millisecond sequence, so nodes with
+ * distinct node ids never produce the same id and need no coordination.
+ * The sequence is advanced with a CAS on a single AtomicLong. Ids are only
+ * issued for milliseconds the clock has reached: if the sequence overflows,
+ * or the clock goes backwards and the sequence of the last millisecond
+ * issued runs out, nextId waits for the clock to pass it. A restart while
+ * the clock is behind the last id issued before it can repeat ids, so
+ * nodes should only be restarted with a monotonic, NTP slewed clock.
+ *
+ * The node id and key have no defaults, startup fails if either is unset.
+ *
+ * The id is passed through a keyed Feistel permutation of all 64 bit
+ * values before being written as 11 Base62 characters. Consecutive ids
+ * therefore give unrelated paths, and without the key the next path
+ * can't be derived from earlier ones. The round function is a fast mixer
+ * rather than a cipher, so this hides the sequence from casual
+ * enumeration, it isn't a cryptographic guarantee.
+ *
+ * @author Frank Callaly
+ */
+@Component
+@ConditionalOnProperty(name = "com.frankc.shorturl.generator.strategy",
+                       havingValue = "unique")
+public class UniqueShortUrlPathGenerator implements ShortUrlPathStrategy {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public static final int NODE_ID_BITS = 10;
+
+    public static final int MAX_NODE_ID = (1 << NODE_ID_BITS) - 1;
+
+    // 62^11 > 2^64, so every id fits in 11 Base62 characters
+    public static final int LENGTH = 11;
+
+    private static final int SEQUENCE_BITS = 12;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    // 2019-01-01T00:00:00Z
+    private static final long EPOCH_MILLIS = 1546300800000L;
+
+    private static final int FEISTEL_ROUNDS = 8;
+
+    private static final long UINT_MASK = 0xffffffffL;
+
+    // longest single wait for the clock, so a clock stepped back
+    // is noticed catching up promptly
+    private static final long MAX_CLOCK_WAIT_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long nodeId;
+
+    private final int[] roundKeys;
+
+    private final LongSupplier clock;
+
+    // milliseconds since EPOCH_MILLIS << SEQUENCE_BITS | sequence
+    private final AtomicLong lastTimeAndSequence = new AtomicLong();
+
+    // lastMillis of the last wait for the clock that was logged
+    private final AtomicLong warnedMillis = new AtomicLong();
+
+    @Autowired
+    public UniqueShortUrlPathGenerator(
+            @Value("${com.frankc.shorturl.generator.nodeId:-1}")
+                                                final int nodeId,
+            @Value("${com.frankc.shorturl.generator.key:}")
+                                                final String key) {
+        this(nodeId, key, System::currentTimeMillis);
+    }
+
+    UniqueShortUrlPathGenerator(final int nodeId, final String key,
+                                final LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException(
+                    "com.frankc.shorturl.generator.nodeId must be set, "
+                    + "between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        if (key.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "com.frankc.shorturl.generator.key must be set, "
+                    + "otherwise generated shortUrlPaths can be predicted");
+        }
+
+        this.nodeId = nodeId;
+        this.roundKeys = deriveRoundKeys(key);
+        this.clock = clock;
+
+        logger.info("Generating unique shortUrlPaths for node " + nodeId);
+    }
+
+    @Override
+    public String generateShortUrlPath() {
+        return toBase62(permute(nextId()));
+    }
+
+    /**
+     * @return a new id, unique for this node id
+     */
+    long nextId() {
+        while (true) {
+            long last = lastTimeAndSequence.get();
+            long lastMillis = last >>> SEQUENCE_BITS;
+            long now = clock.getAsLong() - EPOCH_MILLIS;
+            long timeAndSequence;
+
+            if (now > lastMillis) {
+                timeAndSequence = now << SEQUENCE_BITS;
+            } else if ((last & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                // the clock has reached lastMillis, even if it has
+                // since gone back
+                timeAndSequence = last + 1;
+            } else {
+                waitForClock(lastMillis, now);
+                continue;
+            }
+
+            if (lastTimeAndSequence.compareAndSet(last, timeAndSequence)) {
+                return ((timeAndSequence >>> SEQUENCE_BITS)
+                            << (NODE_ID_BITS + SEQUENCE_BITS))
+                       | (nodeId << SEQUENCE_BITS)
+                       | (timeAndSequence & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    static long millisOf(final long id) {
+        return (id >>> (NODE_ID_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    private void waitForClock(final long millis, final long now) {
+        if (millis - now > 1 && warnedMillis.getAndSet(millis) != millis) {
+            logger.warn("Clock is " + (millis - now) + "ms behind the last "
+                        + "shortUrlPath id, waiting for it to catch up");
+        }
+        LockSupport.parkNanos(Math.min(MAX_CLOCK_WAIT_NANOS,
+                TimeUnit.MILLISECONDS.toNanos(millis - now + 1)));
+    }
+
+    long permute(final long id) {
+        int left = (int) (id >>> Integer.SIZE);
+        int right = (int) id;
+
+        for (int round = 0; round < FEISTEL_ROUNDS; ++round) {
+            int newRight = left ^ roundFunction(right, roundKeys[round]);
+            left = right;
+            right = newRight;
+        }
+
+        return ((left & UINT_MASK) << Integer.SIZE) | (right & UINT_MASK);
+    }
+
+    long unpermute(final long permuted) {
+        int left = (int) (permuted >>> Integer.SIZE);
+        int right = (int) permuted;
+
+        for (int round = FEISTEL_ROUNDS - 1; round >= 0; --round) {
+            int newLeft = right ^ roundFunction(left, roundKeys[round]);
+            right = left;
+            left = newLeft;
+        }
+
+        return ((left & UINT_MASK) << Integer.SIZE) | (right & UINT_MASK);
+    }
+
+    static String toBase62(final long value) {
+        char[] charset = ShortUrlPathGenerator.BASE62_CHARSET;
+        char[] path = new char[LENGTH];
+        long remaining = value;
+
+        for (int i = LENGTH - 1; i >= 0; --i) {
+            path[i] = charset[
+                    (int) Long.remainderUnsigned(remaining, charset.length)];
+            remaining = Long.divideUnsigned(remaining, charset.length);
+        }
+
+        return new String(path);
+    }
+
+    private static int roundFunction(final int half, final int roundKey) {
+        // murmur3 fmix64 of the half and round key
+        long x = ((long) roundKey << Integer.SIZE) | (half & UINT_MASK);
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return (int) x;
+    }
+
+    private static int[] deriveRoundKeys(final String key) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(
+                                    key.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException ex) {
+            // every JRE is required to provide SHA-256
+            throw new IllegalStateException(ex);
+        }
+
+        ByteBuffer digestBuffer = ByteBuffer.wrap(digest);
+        int[] keys = new int[FEISTEL_ROUNDS];
+        for (int round = 0; round < FEISTEL_ROUNDS; ++round) {
+            keys[round] = digestBuffer.getInt();
+        }
+        return keys;
+    }
+}
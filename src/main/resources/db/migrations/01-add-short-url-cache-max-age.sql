@@ -0,0 +1,7 @@
+-- Per-link Cache-Control max-age override for redirects.
+--
+-- schema.sql only creates missing tables, run this against databases created
+-- before the cache_max_age column was added.
+
+ALTER TABLE `short_url`
+  ADD COLUMN `cache_max_age` int(11) DEFAULT NULL AFTER `id`;
@@ -0,0 +1,12 @@
+-- Ids are now allocated in blocks from hibernate_sequence (see
+-- PooledIdGenerator), each node reserves next_val .. next_val + 49 and moves
+-- next_val on by 50. Existing ids are unchanged and nodes still running the
+-- previous version, which take one id at a time, can share the table safely.
+--
+-- next_val is already past every existing id unless rows were inserted with
+-- explicit ids, make sure of it before the first block is handed out.
+
+UPDATE `hibernate_sequence`
+  SET `next_val` = GREATEST(`next_val`,
+                            (SELECT COALESCE(MAX(`id`), 0) + 1
+                               FROM `short_url`));
@@ -0,0 +1,7 @@
+-- Index for listing ShortUrls in created order a page at a time, where each
+-- page continues from the (created, id) of the last row of the one before.
+-- InnoDB secondary indexes already end with the primary key, so this index
+-- is ordered by (created, id).
+
+ALTER TABLE `short_url`
+  ADD INDEX `idx_short_url_created` (`created`);
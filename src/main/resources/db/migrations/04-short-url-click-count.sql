@@ -0,0 +1,9 @@
+-- Redirect counts per shortUrlPath. Redirects are counted in memory and each
+-- node adds its counts here periodically, so the hot short_url rows are
+-- never updated by a redirect.
+
+CREATE TABLE IF NOT EXISTS `short_url_click_count` (
+  `short_url_path` varchar(36) NOT NULL,
+  `clicks` bigint(20) NOT NULL,
+  PRIMARY KEY (`short_url_path`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
@@ -0,0 +1,21 @@
+-- SHA-256 of the canonical redirectTo and cacheMaxAge, set on ShortUrls
+-- created with com.frankc.shorturl.dedup.enabled=true so a create can find
+-- an existing ShortUrl for the same URL. The index is unique so that dedup
+-- holds across nodes, two nodes creating the same URL at once can't both
+-- insert. Rows created before, or with dedup disabled, are left NULL and
+-- are never matched.
+--
+-- creators counts the creates a dedup ShortUrl was returned to, a delete
+-- takes one away and only the last deletes the row.
+--
+-- Both statements run online: the columns are added instantly, and the
+-- index, over a column that is NULL in every row, is built with LOCK=NONE.
+
+ALTER TABLE `short_url`
+  ADD COLUMN `redirect_to_hash` binary(32) DEFAULT NULL,
+  ADD COLUMN `creators` int(11) NOT NULL DEFAULT 1,
+  ALGORITHM=INSTANT;
+
+ALTER TABLE `short_url`
+  ADD UNIQUE INDEX `uk_short_url_redirect_to_hash` (`redirect_to_hash`),
+  ALGORITHM=INPLACE, LOCK=NONE;
@@ -0,0 +1,101 @@
+-- Keep redirect_to inline in the short_url row as a varchar of up to 2048
+-- characters, rather than a longtext InnoDB may store off page, with the
+-- rare longer URLs moved to redirect_to_overflow. Adds the redirect_prefix
+-- dictionary of scheme and host prefixes that redirect_to may refer to by
+-- id, filled at startup from com.frankc.shorturl.storage.redirectPrefixes.
+-- Existing rows keep their URLs in full and are read as they are.
+--
+-- Changing redirect_to's type in place would copy the table and block
+-- writes, so this runs online instead, while ShortUrls are created and
+-- redirected as usual:
+--
+--   1. add the new columns, a metadata only change
+--   2. add triggers so that rows written by nodes of the previous version
+--      fill the new columns too
+--   3. fill the new columns of existing rows in committed batches
+--   4. once no node of the previous version is left, swap the new column
+--      in for redirect_to under a lock held only for the metadata changes
+--   5. drop the old column, which rebuilds the table with LOCK=NONE and
+--      can be left until off peak
+--
+-- This script is steps 1 to 3. Steps 4 and 5 are in
+-- after-rollout/06-compact-redirect-to-after-rollout.sql, run by hand once
+-- the rollout is complete. Run earlier, nodes of the previous version
+-- would fail to insert redirectTos over 2048 characters into the swapped in
+-- varchar(2048) redirect_to, and read a NULL redirect_to for rows whose
+-- URL is in redirect_to_overflow.
+--
+-- Nodes of this version may be deployed any time after step 2, but must
+-- run with com.frankc.shorturl.storage.redirectPrefixes empty until every
+-- node runs this version. With prefixes configured they store a redirectTo
+-- as a prefix id reference, which a node of the previous version would
+-- serve as the literal redirect target.
+
+CREATE TABLE IF NOT EXISTS `redirect_prefix` (
+  `id` int(11) NOT NULL AUTO_INCREMENT,
+  `prefix` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_redirect_prefix_prefix` (`prefix`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+-- 1.
+ALTER TABLE `short_url`
+  ADD COLUMN `redirect_to_inline` varchar(2048) DEFAULT NULL,
+  ADD COLUMN `redirect_to_overflow` longtext,
+  ALGORITHM=INSTANT;
+
+-- 2. a node of this version writes a long URL to redirect_to_overflow
+-- with redirect_to NULL, which these leave as it is
+DROP TRIGGER IF EXISTS `short_url_split_redirect_to_insert`;
+DROP TRIGGER IF EXISTS `short_url_split_redirect_to_update`;
+
+CREATE TRIGGER `short_url_split_redirect_to_insert`
+  BEFORE INSERT ON `short_url` FOR EACH ROW
+  SET NEW.`redirect_to_inline` =
+        IF(CHAR_LENGTH(NEW.`redirect_to`) <= 2048, NEW.`redirect_to`, NULL),
+      NEW.`redirect_to_overflow` =
+        IF(CHAR_LENGTH(NEW.`redirect_to`) > 2048, NEW.`redirect_to`,
+           NEW.`redirect_to_overflow`);
+
+CREATE TRIGGER `short_url_split_redirect_to_update`
+  BEFORE UPDATE ON `short_url` FOR EACH ROW
+  SET NEW.`redirect_to_inline` =
+        IF(CHAR_LENGTH(NEW.`redirect_to`) <= 2048, NEW.`redirect_to`, NULL),
+      NEW.`redirect_to_overflow` =
+        IF(CHAR_LENGTH(NEW.`redirect_to`) > 2048, NEW.`redirect_to`,
+           NEW.`redirect_to_overflow`);
+
+-- 3. batches of 10000 rows by id, each its own transaction, so no lock is
+-- held for long and replicas keep up
+DROP PROCEDURE IF EXISTS `short_url_split_redirect_to`;
+
+DELIMITER ;;
+CREATE PROCEDURE `short_url_split_redirect_to`()
+BEGIN
+  DECLARE from_id bigint(20) DEFAULT -1;
+  DECLARE to_id bigint(20);
+
+  split: LOOP
+    SELECT MAX(`id`) INTO to_id FROM (
+      SELECT `id` FROM `short_url` WHERE `id` > from_id
+        ORDER BY `id` LIMIT 10000) AS batch;
+    IF to_id IS NULL THEN
+      LEAVE split;
+    END IF;
+
+    UPDATE `short_url`
+      SET `redirect_to_inline` =
+            IF(CHAR_LENGTH(`redirect_to`) <= 2048, `redirect_to`, NULL),
+          `redirect_to_overflow` =
+            IF(CHAR_LENGTH(`redirect_to`) > 2048, `redirect_to`,
+               `redirect_to_overflow`)
+      WHERE `id` > from_id AND `id` <= to_id;
+    COMMIT;
+
+    SET from_id = to_id;
+  END LOOP;
+END;;
+DELIMITER ;
+
+CALL `short_url_split_redirect_to`();
+DROP PROCEDURE `short_url_split_redirect_to`;
@@ -0,0 +1,153 @@
+-- Store short_url_path as ascii with binary collation. Paths are base62, so
+-- need one byte a character rather than utf8mb4's four in the unique index,
+-- and must compare case sensitively: under utf8mb4_0900_ai_ci aB3 and Ab3
+-- are the same key, so a create of one collides with the other and a
+-- lookup of one finds the other.
+--
+-- Paths that differ only in case couldn't be stored before, so the unique
+-- keys can't fail. Check nothing else is stored first, this should return
+-- no rows:
+--
+--   SELECT `short_url_path` FROM `short_url`
+--     WHERE `short_url_path` NOT REGEXP '^[a-zA-Z0-9]+$';
+--
+-- Changing a column's character set in place copies the table and blocks
+-- writes, so this runs online instead, while ShortUrls are created and
+-- redirected as usual, by nodes of either version:
+--
+--   1. add an ascii_bin copy of the column, a metadata only change
+--   2. add triggers so that every row written fills the copy
+--   3. fill the copy for existing rows in committed batches
+--   4. build its unique index with LOCK=NONE
+--   5. swap the copy in for short_url_path under a lock held only for the
+--      metadata changes
+--   6. drop the old column, which rebuilds the table with LOCK=NONE and
+--      can be left until off peak
+--
+-- short_url_click_count is swapped for a new table and its counts merged
+-- in afterwards, see below.
+
+-- 1.
+ALTER TABLE `short_url`
+  ADD COLUMN `short_url_path_bin` varchar(36)
+    CHARACTER SET ascii COLLATE ascii_bin DEFAULT NULL,
+  ALGORITHM=INSTANT;
+
+-- 2.
+DROP TRIGGER IF EXISTS `short_url_path_bin_insert`;
+DROP TRIGGER IF EXISTS `short_url_path_bin_update`;
+
+CREATE TRIGGER `short_url_path_bin_insert`
+  BEFORE INSERT ON `short_url` FOR EACH ROW
+  SET NEW.`short_url_path_bin` = NEW.`short_url_path`;
+
+CREATE TRIGGER `short_url_path_bin_update`
+  BEFORE UPDATE ON `short_url` FOR EACH ROW
+  SET NEW.`short_url_path_bin` = NEW.`short_url_path`;
+
+-- 3. batches of 10000 rows by id, each its own transaction, so no lock is
+-- held for long and replicas keep up
+DROP PROCEDURE IF EXISTS `short_url_copy_path_bin`;
+
+DELIMITER ;;
+CREATE PROCEDURE `short_url_copy_path_bin`()
+BEGIN
+  DECLARE from_id bigint(20) DEFAULT -1;
+  DECLARE to_id bigint(20);
+
+  copy: LOOP
+    SELECT MAX(`id`) INTO to_id FROM (
+      SELECT `id` FROM `short_url` WHERE `id` > from_id
+        ORDER BY `id` LIMIT 10000) AS batch;
+    IF to_id IS NULL THEN
+      LEAVE copy;
+    END IF;
+
+    UPDATE `short_url` SET `short_url_path_bin` = `short_url_path`
+      WHERE `id` > from_id AND `id` <= to_id;
+    COMMIT;
+
+    SET from_id = to_id;
+  END LOOP;
+END;;
+DELIMITER ;
+
+CALL `short_url_copy_path_bin`();
+DROP PROCEDURE `short_url_copy_path_bin`;
+
+-- 4.
+ALTER TABLE `short_url`
+  ADD UNIQUE INDEX `uk_short_url_path_bin` (`short_url_path_bin`),
+  ALGORITHM=INPLACE, LOCK=NONE;
+
+-- 5. the lock keeps writes out between dropping the triggers and the
+-- rename, only for as long as the metadata changes take. Both versions
+-- write short_url_path by name, so either keeps running after the swap
+LOCK TABLES `short_url` WRITE;
+DROP TRIGGER `short_url_path_bin_insert`;
+DROP TRIGGER `short_url_path_bin_update`;
+ALTER TABLE `short_url`
+  RENAME COLUMN `short_url_path` TO `short_url_path_old`,
+  RENAME COLUMN `short_url_path_bin` TO `short_url_path`,
+  ALGORITHM=INPLACE;
+UNLOCK TABLES;
+
+-- 6. and give the index the name schema.sql has
+ALTER TABLE `short_url` DROP COLUMN `short_url_path_old`,
+  ALGORITHM=INPLACE, LOCK=NONE;
+ALTER TABLE `short_url`
+  RENAME INDEX `uk_short_url_path_bin` TO `UK_lpfgbrakqk6qmv1xtj3y0lc3v`,
+  ALGORITHM=INPLACE, LOCK=NONE;
+
+-- short_url_click_count has short_url_path as its primary key, which
+-- can't be changed without a rebuild. Instead a new table is swapped in,
+-- atomically, and flushes add their deltas to it from then on. The counts
+-- in the old table are then merged into the new one in batches, with
+-- getClicks reporting only the clicks since the swap for paths not yet
+-- merged. RENAME TABLE waits for any flush in progress and holds no lock
+-- beyond that.
+CREATE TABLE IF NOT EXISTS `short_url_click_count_bin` (
+  `short_url_path` varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+  `clicks` bigint(20) NOT NULL,
+  PRIMARY KEY (`short_url_path`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+RENAME TABLE `short_url_click_count` TO `short_url_click_count_old`,
+             `short_url_click_count_bin` TO `short_url_click_count`;
+
+DROP PROCEDURE IF EXISTS `short_url_merge_click_counts`;
+
+DELIMITER ;;
+CREATE PROCEDURE `short_url_merge_click_counts`()
+BEGIN
+  -- in the old table's collation, the order its primary key is read in
+  DECLARE from_path varchar(36)
+    CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci DEFAULT '';
+  DECLARE to_path varchar(36)
+    CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci;
+
+  merge: LOOP
+    SET to_path = NULL;
+    SELECT MAX(`short_url_path`) INTO to_path FROM (
+      SELECT `short_url_path` FROM `short_url_click_count_old`
+        WHERE `short_url_path` > from_path
+        ORDER BY `short_url_path` LIMIT 10000) AS batch;
+    IF to_path IS NULL THEN
+      LEAVE merge;
+    END IF;
+
+    INSERT INTO `short_url_click_count` (`short_url_path`, `clicks`)
+      SELECT `short_url_path`, `clicks` FROM `short_url_click_count_old`
+        WHERE `short_url_path` > from_path AND `short_url_path` <= to_path
+      ON DUPLICATE KEY UPDATE
+        `clicks` = `short_url_click_count`.`clicks` + VALUES(`clicks`);
+    COMMIT;
+
+    SET from_path = to_path;
+  END LOOP;
+END;;
+DELIMITER ;
+
+CALL `short_url_merge_click_counts`();
+DROP PROCEDURE `short_url_merge_click_counts`;
+DROP TABLE `short_url_click_count_old`;
@@ -0,0 +1,20 @@
+-- Steps 4 and 5 of migration 06, see ../06-compact-redirect-to.sql. Run
+-- only after 06 itself and once every node runs a version with migration
+-- 06: nodes of the previous version write redirectTos of any length to
+-- redirect_to, which this makes a varchar(2048), and don't read
+-- redirect_to_overflow.
+
+-- 4. the lock keeps writes out between dropping the triggers and the
+-- rename, only for as long as the two metadata changes take
+LOCK TABLES `short_url` WRITE;
+DROP TRIGGER `short_url_split_redirect_to_insert`;
+DROP TRIGGER `short_url_split_redirect_to_update`;
+ALTER TABLE `short_url`
+  RENAME COLUMN `redirect_to` TO `redirect_to_old`,
+  RENAME COLUMN `redirect_to_inline` TO `redirect_to`,
+  ALGORITHM=INPLACE;
+UNLOCK TABLES;
+
+-- 5.
+ALTER TABLE `short_url` DROP COLUMN `redirect_to_old`,
+  ALGORITHM=INPLACE, LOCK=NONE;
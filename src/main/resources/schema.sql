@@ -35,12 +35,45 @@ AS SELECT 1 AS `next_val`;
  SET character_set_client = utf8mb4 ;
 CREATE TABLE IF NOT EXISTS `short_url` (
   `id` bigint(20) NOT NULL,
+  `cache_max_age` int(11) DEFAULT NULL,
   `created` datetime DEFAULT NULL,
   `last_updated` datetime DEFAULT NULL,
-  `redirect_to` longtext,
-  `short_url_path` varchar(36) DEFAULT NULL,
+  `redirect_to` varchar(2048) DEFAULT NULL,
+  `redirect_to_overflow` longtext,
+  `short_url_path` varchar(36) CHARACTER SET ascii COLLATE ascii_bin DEFAULT NULL,
+  `redirect_to_hash` binary(32) DEFAULT NULL,
+  `creators` int(11) NOT NULL DEFAULT 1,
   PRIMARY KEY (`id`),
-  UNIQUE KEY `UK_lpfgbrakqk6qmv1xtj3y0lc3v` (`short_url_path`)
+  UNIQUE KEY `UK_lpfgbrakqk6qmv1xtj3y0lc3v` (`short_url_path`),
+  KEY `idx_short_url_created` (`created`),
+  UNIQUE KEY `uk_short_url_redirect_to_hash` (`redirect_to_hash`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `redirect_prefix`
+--
+
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+ SET character_set_client = utf8mb4 ;
+CREATE TABLE IF NOT EXISTS `redirect_prefix` (
+  `id` int(11) NOT NULL AUTO_INCREMENT,
+  `prefix` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_redirect_prefix_prefix` (`prefix`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `short_url_click_count`
+--
+
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+ SET character_set_client = utf8mb4 ;
+CREATE TABLE IF NOT EXISTS `short_url_click_count` (
+  `short_url_path` varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+  `clicks` bigint(20) NOT NULL,
+  PRIMARY KEY (`short_url_path`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 /*!40101 SET character_set_client = @saved_cs_client */;
 
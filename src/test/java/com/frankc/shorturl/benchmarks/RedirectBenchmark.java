@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ch.qos.logback.classic.Level;
+
+import com.frankc.shorturl.cache.HotLinkTracker;
+import com.frankc.shorturl.cache.RedirectCacheControl;
+import com.frankc.shorturl.cache.ShortUrlCache;
+import com.frankc.shorturl.controllers.ShortUrlRedirectController;
+import com.frankc.shorturl.entities.ShortUrlRedirect;
+import com.frankc.shorturl.metrics.RedirectMetrics;
+import com.frankc.shorturl.services.ClickCounter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Time and allocation per call of the redirect controller, with the service
+ * lookup stubbed out so only the per-click controller work is measured.
+ *
+ * Run with the gc profiler to report gc.alloc.rate.norm (bytes per redirect),
+ * e.g. java -cp &lt;test classpath&gt; org.openjdk.jmh.Main RedirectBenchmark
+ * -prof gc
+ *
+ * @author Frank Callaly
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedirectBenchmark {
+
+    private static final String SHORTURLPATH = "abcdABCD1234";
+
+    private ShortUrlRedirectController controller;
+
+    @Setup
+    public void setUp() {
+        // logback defaults to DEBUG without the spring config, use the
+        // same level as the deployed profiles
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(
+                Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+
+        ShortUrlRedirect redirect = new ShortUrlRedirect(SHORTURLPATH,
+                "https://www.example.com/some/landing/page?utm_source=x");
+
+        controller = new ShortUrlRedirectController();
+        ReflectionTestUtils.setField(controller, "redirectCacheControl",
+                                     new RedirectCacheControl(-1, -1, -1));
+        ReflectionTestUtils.setField(controller, "clickCounter",
+                                     new ClickCounter());
+        ReflectionTestUtils.setField(controller, "hotLinkTracker",
+                                     new HotLinkTracker(
+                                             new ShortUrlCache(100, 0, 0),
+                                             true, 1000, 15, 100, 1));
+        ReflectionTestUtils.setField(controller, "redirectMetrics",
+                                     new RedirectMetrics(
+                                             new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(controller, "shortUrlService",
+                                     new StubShortUrlService(redirect));
+    }
+
+    @Benchmark
+    public HttpEntity<Void> redirectByShortUrl() {
+        return controller.redirectByShortUrl(SHORTURLPATH);
+    }
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.benchmarks;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.frankc.shorturl.utils.RedirectUrlValidator;
+
+/**
+ * Time and allocation to validate a redirectTo as done on every create,
+ * for a short URL without a protocol and a typical tracking link.
+ *
+ * e.g. java -cp &lt;test classpath&gt; org.openjdk.jmh.Main
+ * RedirectUrlValidatorBenchmark -prof gc
+ *
+ * @author Frank Callaly
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedirectUrlValidatorBenchmark {
+
+    @Param({"www.example.com/page",
+            "https://www.example.com/some/landing/page?utm_source=x"
+            + "&utm_medium=email&utm_campaign=launch"})
+    private String url;
+
+    private String fixedUrl;
+
+    private RedirectUrlValidator validator;
+
+    @Setup
+    public void setUp() {
+        validator = new RedirectUrlValidator();
+        fixedUrl = validator.fixUrlProtocol(url);
+    }
+
+    @Benchmark
+    public String fixUrlProtocol() {
+        return validator.fixUrlProtocol(url);
+    }
+
+    @Benchmark
+    public String validateUrl() throws MalformedURLException {
+        validator.validateUrl(fixedUrl);
+        return fixedUrl;
+    }
+
+    @Benchmark
+    public String normaliseUrl() throws MalformedURLException {
+        return validator.normaliseUrl(url);
+    }
+}
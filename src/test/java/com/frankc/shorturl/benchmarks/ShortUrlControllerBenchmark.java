@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.frankc.shorturl.ShortUrlApplication;
+import com.frankc.shorturl.controllers.ShortUrlController;
+import com.frankc.shorturl.controllers.ShortUrlRedirectController;
+import com.frankc.shorturl.controllers.hateoas.ShortUrlResource;
+import com.frankc.shorturl.entities.ShortUrl;
+
+/**
+ * Time and allocation of the create and redirect controller methods, with
+ * every bean they use, against the embedded in-memory H2 database.
+ *
+ * With cacheMaximumSize 0 every redirect queries the repository, otherwise
+ * redirects are served from the lookup cache. HTTP handling itself is not
+ * included.
+ *
+ * e.g. java -cp &lt;test classpath&gt; org.openjdk.jmh.Main
+ * ShortUrlControllerBenchmark -prof gc
+ *
+ * @author Frank Callaly
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShortUrlControllerBenchmark {
+
+    private static final String REDIRECTTO =
+            "https://www.example.com/some/landing/page?utm_source=x";
+
+    @Param({"0", "100000"})
+    private int cacheMaximumSize;
+
+    private ConfigurableApplicationContext context;
+
+    private ShortUrlController controller;
+
+    private ShortUrlRedirectController redirectController;
+
+    private String shortUrlPath;
+
+    @Setup
+    public void setUp() throws Exception {
+        context = new SpringApplicationBuilder(ShortUrlApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                    "logging.level.root=INFO",
+                    "com.frankc.shorturl.cache.maximumSize="
+                        + cacheMaximumSize,
+                    "com.frankc.shorturl.filter.initialDelayMs=3600000")
+                .run();
+
+        controller = context.getBean(ShortUrlController.class);
+        redirectController = context.getBean(ShortUrlRedirectController.class);
+
+        bindRequest();
+        shortUrlPath = controller.createShortUrl(new ShortUrl(REDIRECTTO))
+                                 .getBody().getShortUrl().getShortUrlPath();
+    }
+
+    /**
+     * Bind a request to each benchmark thread, which the HAL links of
+     * created ShortUrls are built from.
+     */
+    @State(Scope.Thread)
+    public static class RequestState {
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            bindRequest();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        context.close();
+    }
+
+    @Benchmark
+    public HttpEntity<ShortUrlResource> createShortUrl(
+                                        final RequestState requestState)
+                                        throws Exception {
+        return controller.createShortUrl(new ShortUrl(REDIRECTTO));
+    }
+
+    @Benchmark
+    public HttpEntity<Void> redirectByShortUrl() {
+        return redirectController.redirectByShortUrl(shortUrlPath);
+    }
+
+    private static void bindRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setServerName("sho.rt");
+        RequestContextHolder.setRequestAttributes(
+                new ServletRequestAttributes(request));
+    }
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.frankc.shorturl.ShortUrlApplication;
+import com.frankc.shorturl.entities.PooledIdGenerator;
+import com.frankc.shorturl.services.ShortUrlService;
+
+/**
+ * Create throughput with several threads creating at once, allocating ids
+ * one per sequence call versus a block of 50 per call.
+ *
+ * Runs the service against the embedded H2 database, so the sequence call
+ * is far cheaper than the MySQL round trip it stands in for. The number of
+ * statements per create is logged at the end of each trial.
+ *
+ * e.g. java -cp &lt;test classpath&gt; org.openjdk.jmh.Main
+ * ShortUrlCreateBenchmark
+ *
+ * @author Frank Callaly
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class ShortUrlCreateBenchmark {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(ShortUrlCreateBenchmark.class);
+
+    private static final String REDIRECTTO =
+            "https://www.example.com/some/landing/page?utm_source=x";
+
+    @Param({"1", "50"})
+    private int allocationSize;
+
+    private ConfigurableApplicationContext context;
+
+    private ShortUrlService shortUrlService;
+
+    private Statistics statistics;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(ShortUrlApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                    "logging.level.root=INFO",
+                    "spring.jpa.properties."
+                        + PooledIdGenerator.ALLOCATION_SIZE_SETTING
+                        + "=" + allocationSize,
+                    "spring.jpa.properties.hibernate.generate_statistics=true",
+                    "com.frankc.shorturl.filter.initialDelayMs=3600000")
+                .run();
+
+        shortUrlService = context.getBean(ShortUrlService.class);
+        statistics = context.getBean(EntityManagerFactory.class)
+                            .unwrap(SessionFactory.class)
+                            .getStatistics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        LOG.info("allocationSize {}: {} creates, {} statements prepared",
+                 allocationSize, statistics.getEntityInsertCount(),
+                 statistics.getPrepareStatementCount());
+        context.close();
+    }
+
+    @Benchmark
+    public Object createShortUrl() {
+        return shortUrlService.createShortUrl(REDIRECTTO);
+    }
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.benchmarks;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+
+import com.frankc.shorturl.utils.ShortUrlPathGenerator;
+
+/**
+ * Time and allocation per generated shortUrlPath with several threads
+ * creating at once, against the previous UUID based generator.
+ *
+ * e.g. java -cp &lt;test classpath&gt; org.openjdk.jmh.Main
+ * ShortUrlPathGeneratorBenchmark -prof gc
+ *
+ * @author Frank Callaly
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class ShortUrlPathGeneratorBenchmark {
+
+    private static final String[] LEGACY_BASE62_CHARSET =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz"
+            .split("");
+
+    private static final Logger LEGACY_LOGGER =
+            LoggerFactory.getLogger(ShortUrlPathGeneratorBenchmark.class);
+
+    @Param({"false", "true"})
+    private boolean secure;
+
+    private ShortUrlPathGenerator generator;
+
+    @Setup
+    public void setUp() {
+        // logback defaults to DEBUG without the spring config, use the
+        // same level as the deployed profiles
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(
+                Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+
+        generator = new ShortUrlPathGenerator(
+                            ShortUrlPathGenerator.DEFAULT_LENGTH, secure);
+    }
+
+    @Benchmark
+    public String generateBase62() {
+        return generator.generateBase62();
+    }
+
+    @Benchmark
+    public String legacyGenerateBase62() {
+        return legacyLongToBaseXString(
+                    UUID.randomUUID().getMostSignificantBits(),
+                    LEGACY_BASE62_CHARSET);
+    }
+
+    // the generator as it was, for comparison
+    private static String legacyLongToBaseXString(final long toConvert,
+                                                  final String[] charset) {
+        LEGACY_LOGGER.debug("Converting Long [" + toConvert + "]"
+                            + " to base " + charset.length);
+
+        long stillToConvert = Long.divideUnsigned(toConvert, charset.length);
+        long modulus = Long.remainderUnsigned(toConvert, charset.length);
+
+        LEGACY_LOGGER.debug("stillToConvert: [" + stillToConvert + "], "
+                            + "Adding index: [" + modulus + "], "
+                            + "char: [" + charset[(int) modulus] + "]");
+
+        if (stillToConvert > 0) {
+            return legacyLongToBaseXString(stillToConvert, charset)
+                   + charset[(int) modulus];
+        } else {
+            return charset[(int) modulus];
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.hateoas.core.DefaultRelProvider;
+import org.springframework.hateoas.hal.Jackson2HalModule;
+import org.springframework.hateoas.hal.Jackson2HalModule.HalHandlerInstantiator;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.frankc.shorturl.controllers.hateoas.ShortUrlResource;
+import com.frankc.shorturl.entities.ShortUrl;
+
+/**
+ * Time and allocation to render a ShortUrl response: building the HAL links
+ * of a ShortUrlResource from the current request, and serializing the
+ * ShortUrl alone and as HAL+JSON.
+ *
+ * e.g. java -cp &lt;test classpath&gt; org.openjdk.jmh.Main
+ * ShortUrlResourceBenchmark -prof gc
+ *
+ * @author Frank Callaly
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShortUrlResourceBenchmark {
+
+    private ShortUrl shortUrl;
+
+    private ShortUrlResource resource;
+
+    private ObjectMapper objectMapper;
+
+    private ObjectMapper halObjectMapper;
+
+    @Setup
+    public void setUp() {
+        shortUrl = new ShortUrl(
+                "https://www.example.com/some/landing/page?utm_source=x");
+        shortUrl.setShortUrlPath("abcdABCD123");
+
+        // linkTo reads the host and context path from the current request,
+        // bound to this benchmark thread as the servlet container would
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setServerName("sho.rt");
+        RequestContextHolder.setRequestAttributes(
+                new ServletRequestAttributes(request));
+
+        resource = new ShortUrlResource(shortUrl);
+        objectMapper = new ObjectMapper();
+        halObjectMapper = new ObjectMapper();
+        halObjectMapper.registerModule(new Jackson2HalModule());
+        halObjectMapper.setHandlerInstantiator(new HalHandlerInstantiator(
+                new DefaultRelProvider(), null, null));
+    }
+
+    @TearDown
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Benchmark
+    public byte[] serializeShortUrl() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(shortUrl);
+    }
+
+    @Benchmark
+    public ShortUrlResource buildResource() {
+        return new ShortUrlResource(shortUrl);
+    }
+
+    @Benchmark
+    public byte[] serializeResource() throws JsonProcessingException {
+        return halObjectMapper.writeValueAsBytes(resource);
+    }
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.benchmarks;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.springframework.data.domain.Pageable;
+
+import com.frankc.shorturl.entities.ShortUrl;
+import com.frankc.shorturl.entities.ShortUrlRedirect;
+import com.frankc.shorturl.services.BatchCreateResult;
+import com.frankc.shorturl.services.ShortUrlCursor;
+import com.frankc.shorturl.services.ShortUrlService;
+
+/**
+ * ShortUrlService for benchmarks that only measure the controller, every
+ * lookup returns the same redirect and writes are unsupported.
+ *
+ * A plain class rather than a Mockito mock, so that no mock bookkeeping is
+ * included in the time and allocation measured per call.
+ *
+ * @author Frank Callaly
+ */
+class StubShortUrlService implements ShortUrlService {
+
+    private final ShortUrlRedirect redirect;
+
+    StubShortUrlService(final ShortUrlRedirect redirect) {
+        this.redirect = redirect;
+    }
+
+    public List<ShortUrl> findAll(final Pageable pageRequest) {
+        return Collections.emptyList();
+    }
+
+    public List<ShortUrl> findPage(final ShortUrlCursor cursor,
+                                   final int pageSize,
+                                   final int redirectToLength) {
+        return Collections.emptyList();
+    }
+
+    public long countShortUrls() {
+        return 0;
+    }
+
+    public long countClicks(final String shortUrlPath) {
+        return 0;
+    }
+
+    public ShortUrl findByShortUrlPath(final String shortUrlPath) {
+        throw new NoSuchElementException();
+    }
+
+    public ShortUrlRedirect findRedirectByShortUrlPath(
+                                            final String shortUrlPath) {
+        return redirect;
+    }
+
+    public ShortUrl createShortUrl(final String redirectTo) {
+        throw new UnsupportedOperationException();
+    }
+
+    public ShortUrl createShortUrl(final String redirectTo,
+                                   final Integer cacheMaxAge) {
+        throw new UnsupportedOperationException();
+    }
+
+    public List<BatchCreateResult> createShortUrls(
+                                        final List<String> redirectTos) {
+        throw new UnsupportedOperationException();
+    }
+
+    public List<BatchCreateResult> importShortUrls(
+                                        final List<ShortUrl> shortUrls) {
+        throw new UnsupportedOperationException();
+    }
+
+    public long exportShortUrls(final Date createdFrom, final Date createdTo,
+                                final Date updatedFrom, final Date updatedTo,
+                                final ExportRowHandler handler) {
+        throw new UnsupportedOperationException();
+    }
+
+    public boolean deleteByShortUrlPath(final String shortUrlPath) {
+        throw new NoSuchElementException();
+    }
+}
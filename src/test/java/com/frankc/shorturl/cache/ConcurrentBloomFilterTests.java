@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit Tests for ConcurrentBloomFilter.
+ *
+ * @author Frank Callaly
+ */
+public class ConcurrentBloomFilterTests {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final int NUM_INSERTIONS = 20000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    @Test
+    public void mightContain_noFalseNegatives() {
+        ConcurrentBloomFilter filter =
+                new ConcurrentBloomFilter(NUM_INSERTIONS, FALSE_POSITIVE_RATE);
+
+        for (int i = 0; i < NUM_INSERTIONS; ++i) {
+            filter.put("path" + i);
+        }
+        for (int i = 0; i < NUM_INSERTIONS; ++i) {
+            assertTrue("Inserted path must be found: path" + i,
+                       filter.mightContain("path" + i));
+        }
+    }
+
+    @Test
+    public void mightContain_falsePositiveRateNearConfigured() {
+        ConcurrentBloomFilter filter =
+                new ConcurrentBloomFilter(NUM_INSERTIONS, FALSE_POSITIVE_RATE);
+
+        for (int i = 0; i < NUM_INSERTIONS; ++i) {
+            filter.put("path" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < NUM_INSERTIONS; ++i) {
+            if (filter.mightContain("other" + i)) {
+                ++falsePositives;
+            }
+        }
+        double rate = (double) falsePositives / NUM_INSERTIONS;
+        logger.info("False positive rate: " + rate);
+
+        assertTrue("False positive rate too high: " + rate,
+                   rate < 2 * FALSE_POSITIVE_RATE);
+    }
+
+    @Test
+    public void put_concurrentInsertsAreAllFound() throws Exception {
+        int numThreads = 4;
+        ConcurrentBloomFilter filter = new ConcurrentBloomFilter(
+                NUM_INSERTIONS * numThreads, FALSE_POSITIVE_RATE);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < numThreads; ++t) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < NUM_INSERTIONS; ++i) {
+                    filter.put("path" + thread + "-" + i);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        for (int t = 0; t < numThreads; ++t) {
+            for (int i = 0; i < NUM_INSERTIONS; ++i) {
+                assertTrue(filter.mightContain("path" + t + "-" + i));
+            }
+        }
+    }
+
+    @Test
+    public void put_countsDistinctValues() {
+        ConcurrentBloomFilter filter =
+                new ConcurrentBloomFilter(NUM_INSERTIONS, FALSE_POSITIVE_RATE);
+
+        assertTrue(filter.put("path"));
+        assertFalse(filter.put("path"));
+        assertTrue(filter.put("otherPath"));
+
+        assertEquals(2, filter.approximateCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_invalidRateThrowsIllegalArg() {
+        new ConcurrentBloomFilter(NUM_INSERTIONS, 1.5);
+    }
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.frankc.shorturl.entities.ShortUrlRedirect;
+
+/**
+ * Unit Tests for HotLinkTracker.
+ *
+ * @author Frank Callaly
+ */
+public class HotLinkTrackerTests {
+
+    private static final long MINUTE_MS = 60000;
+
+    private static final long NOW = 1000 * MINUTE_MS;
+
+    @Test
+    public void topLinks_returnsMostRecordedFirst() {
+        HotLinkTracker tracker = createTracker(new ShortUrlCache(10, 0, 0));
+
+        record(tracker, "warm", 2);
+        record(tracker, "hot", 5);
+        record(tracker, "cold", 1);
+        tracker.drain(NOW);
+
+        List<HotLink> top = tracker.topLinks(0, 2, NOW);
+
+        assertEquals(2, top.size());
+        assertEquals("hot", top.get(0).getShortUrlPath());
+        assertEquals(5, top.get(0).getClicks());
+        assertEquals("warm", top.get(1).getShortUrlPath());
+    }
+
+    @Test
+    public void topLinks_mergesMinutesInWindow() {
+        HotLinkTracker tracker = createTracker(new ShortUrlCache(10, 0, 0));
+
+        record(tracker, "hot", 3);
+        tracker.drain(NOW - 2 * MINUTE_MS);
+        record(tracker, "hot", 4);
+        tracker.drain(NOW - MINUTE_MS);
+        record(tracker, "hot", 5);
+        tracker.drain(NOW);
+
+        assertEquals(5, tracker.topLinks(0, 1, NOW).get(0).getClicks());
+        assertEquals(9, tracker.topLinks(1, 1, NOW).get(0).getClicks());
+        assertEquals(12, tracker.topLinks(15, 1, NOW).get(0).getClicks());
+    }
+
+    @Test
+    public void topLinks_dropsMinutesOutsideWindow() {
+        HotLinkTracker tracker = createTracker(new ShortUrlCache(10, 0, 0));
+
+        record(tracker, "old", 3);
+        tracker.drain(NOW - 20 * MINUTE_MS);
+        record(tracker, "new", 1);
+        tracker.drain(NOW);
+
+        List<HotLink> top = tracker.topLinks(15, 10, NOW);
+
+        assertEquals(1, top.size());
+        assertEquals("new", top.get(0).getShortUrlPath());
+    }
+
+    @Test
+    public void pinHotLinks_pinsCachedHottest() {
+        ShortUrlCache cache = new ShortUrlCache(10, 0, Runnable::run);
+        cache.put("hot", new ShortUrlRedirect("hot", "http://www.hot.com"));
+        cache.put("cold", new ShortUrlRedirect("cold", "http://www.cold.com"));
+        HotLinkTracker tracker = createTracker(cache);
+
+        record(tracker, "hot", 5);
+        record(tracker, "cold", 1);
+        tracker.drain();
+        tracker.pinHotLinks();
+
+        assertEquals(1, cache.pinnedSize());
+        for (int i = 0; i < 100; ++i) {
+            cache.put("other" + i,
+                      new ShortUrlRedirect("other" + i, "http://www.o.com"));
+        }
+        assertNotNull(cache.get("hot", path -> null));
+        assertNull(cache.get("cold", path -> null));
+    }
+
+    private static HotLinkTracker createTracker(final ShortUrlCache cache) {
+        return new HotLinkTracker(cache, true, 100, 15, 1, 1);
+    }
+
+    private static void record(final HotLinkTracker tracker,
+                               final String shortUrlPath, final int times) {
+        for (int i = 0; i < times; i++) {
+            tracker.record(shortUrlPath);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Unit Tests for RedirectCacheControl.
+ *
+ * @author Frank Callaly
+ */
+public class RedirectCacheControlTests {
+
+    @Test
+    public void forRedirect_noConfigOmitsHeader() {
+        RedirectCacheControl cacheControl =
+                new RedirectCacheControl(-1, -1, -1);
+
+        assertNull(cacheControl.forRedirect(null).getHeaderValue());
+        assertNull(cacheControl.getNotFoundResponse().getHeaders()
+                               .getCacheControl());
+    }
+
+    @Test
+    public void forRedirect_usesConfiguredMaxAges() {
+        RedirectCacheControl cacheControl =
+                new RedirectCacheControl(300, 86400, 30);
+
+        assertEquals("max-age=300, s-maxage=86400",
+                     cacheControl.forRedirect(null).getHeaderValue());
+    }
+
+    @Test
+    public void forRedirect_linkMaxAgeOverridesConfig() {
+        RedirectCacheControl cacheControl =
+                new RedirectCacheControl(300, 86400, 30);
+
+        assertEquals("max-age=10",
+                     cacheControl.forRedirect(10).getHeaderValue());
+    }
+
+    @Test
+    public void getNotFoundResponse_hasNegativeTtl() {
+        RedirectCacheControl cacheControl =
+                new RedirectCacheControl(300, 86400, 30);
+
+        assertEquals(HttpStatus.NOT_FOUND,
+                     cacheControl.getNotFoundResponse().getStatusCode());
+        assertEquals("max-age=30",
+                     cacheControl.getNotFoundResponse().getHeaders()
+                                 .getCacheControl());
+    }
+
+    @Test
+    public void getUnsyncedNotFoundResponse_isNotCached() {
+        RedirectCacheControl cacheControl =
+                new RedirectCacheControl(300, 86400, 30);
+
+        assertEquals(HttpStatus.NOT_FOUND,
+                     cacheControl.getUnsyncedNotFoundResponse()
+                                 .getStatusCode());
+        assertEquals("no-store",
+                     cacheControl.getUnsyncedNotFoundResponse().getHeaders()
+                                 .getCacheControl());
+    }
+}
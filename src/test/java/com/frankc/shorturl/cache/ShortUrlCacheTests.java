@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.frankc.shorturl.entities.ShortUrlRedirect;
+
+/**
+ * Unit Tests for ShortUrlCache.
+ *
+ * @author Frank Callaly
+ */
+public class ShortUrlCacheTests {
+
+    private static final String TEST_SHORTURLPATH = "abcdABCD1234";
+
+    @Test
+    public void get_missLoadsThenHits() {
+        ShortUrlCache cache = new ShortUrlCache(10, 0, Runnable::run);
+        AtomicInteger loads = new AtomicInteger();
+        ShortUrlRedirect testRedirect =
+                new ShortUrlRedirect(TEST_SHORTURLPATH, "http://www.cached.com");
+
+        for (int i = 0; i < 3; ++i) {
+            cache.get(TEST_SHORTURLPATH, path -> {
+                loads.incrementAndGet();
+                return testRedirect;
+            });
+        }
+
+        assertEquals("Loader should be called once", 1, loads.get());
+        assertEquals("Two hits expected", 2, cache.stats().hitCount());
+        assertEquals("One miss expected", 1, cache.stats().missCount());
+    }
+
+    @Test
+    public void statsSummary_reportsCounters() {
+        ShortUrlCache cache = new ShortUrlCache(10, 0, Runnable::run);
+        cache.getIfPresent(TEST_SHORTURLPATH);
+
+        Map<String, Object> statsSummary = cache.statsSummary();
+
+        assertEquals(1L, statsSummary.get("requestCount"));
+        assertEquals(1L, statsSummary.get("missCount"));
+        assertEquals(0L, statsSummary.get("size"));
+    }
+
+    @Test
+    public void get_nullFromLoaderIsNotCached() {
+        ShortUrlCache cache = new ShortUrlCache(10, 0, Runnable::run);
+
+        assertNull(cache.get(TEST_SHORTURLPATH, path -> null));
+        assertNull(cache.getIfPresent(TEST_SHORTURLPATH));
+    }
+
+    @Test
+    public void invalidate_removesEntry() {
+        ShortUrlCache cache = new ShortUrlCache(10, 0, Runnable::run);
+        cache.put(TEST_SHORTURLPATH,
+                  new ShortUrlRedirect(TEST_SHORTURLPATH,
+                                       "http://www.cached.com"));
+
+        cache.invalidate(TEST_SHORTURLPATH);
+
+        assertNull(cache.getIfPresent(TEST_SHORTURLPATH));
+    }
+
+    @Test
+    public void put_overMaximumSizeEvicts() {
+        ShortUrlCache cache = new ShortUrlCache(10, 0, Runnable::run);
+
+        for (int i = 0; i < 100; ++i) {
+            cache.put(TEST_SHORTURLPATH + i,
+                      new ShortUrlRedirect(TEST_SHORTURLPATH + i,
+                                           "http://www.cached" + i + ".com"));
+        }
+
+        assertTrue("Cache should be bounded", cache.estimatedSize() <= 10);
+        assertTrue("Evictions should be counted",
+                   cache.stats().evictionCount() > 0);
+    }
+
+    @Test
+    public void put_overMaximumWeightEvicts() {
+        ShortUrlCache cache = new ShortUrlCache(0, 4096, Runnable::run);
+
+        for (int i = 0; i < 100; ++i) {
+            cache.put(TEST_SHORTURLPATH + i,
+                      new ShortUrlRedirect(TEST_SHORTURLPATH + i,
+                                           "http://www.cached" + i + ".com"));
+        }
+
+        assertTrue("Cache should be bounded by weight",
+                   cache.estimatedSize() < 100);
+        assertTrue("Evictions should be counted",
+                   cache.stats().evictionWeight() > 0);
+    }
+
+    @Test
+    public void pinOnly_pinnedEntrySurvivesEviction() {
+        ShortUrlCache cache = new ShortUrlCache(10, 0, Runnable::run);
+        ShortUrlRedirect testRedirect =
+                new ShortUrlRedirect(TEST_SHORTURLPATH, "http://www.hot.com");
+        cache.put(TEST_SHORTURLPATH, testRedirect);
+        cache.pinOnly(Collections.singletonList(TEST_SHORTURLPATH));
+
+        for (int i = 0; i < 100; ++i) {
+            cache.put(TEST_SHORTURLPATH + i,
+                      new ShortUrlRedirect(TEST_SHORTURLPATH + i,
+                                           "http://www.cached" + i + ".com"));
+        }
+
+        assertEquals("Pinned redirect should be found without loading",
+                     testRedirect,
+                     cache.get(TEST_SHORTURLPATH, path -> null));
+        assertEquals(1, cache.pinnedSize());
+    }
+
+    @Test
+    public void pinOnly_unpinsOthersAndSkipsUncached() {
+        ShortUrlCache cache = new ShortUrlCache(10, 0, Runnable::run);
+        cache.put(TEST_SHORTURLPATH,
+                  new ShortUrlRedirect(TEST_SHORTURLPATH, "http://www.hot.com"));
+        cache.pinOnly(Collections.singletonList(TEST_SHORTURLPATH));
+
+        cache.pinOnly(Collections.singletonList("notCached"));
+
+        assertEquals(0, cache.pinnedSize());
+    }
+
+    @Test
+    public void invalidate_unpinsEntry() {
+        ShortUrlCache cache = new ShortUrlCache(10, 0, Runnable::run);
+        cache.put(TEST_SHORTURLPATH,
+                  new ShortUrlRedirect(TEST_SHORTURLPATH, "http://www.hot.com"));
+        cache.pinOnly(Collections.singletonList(TEST_SHORTURLPATH));
+
+        cache.invalidate(TEST_SHORTURLPATH);
+
+        assertNull(cache.getIfPresent(TEST_SHORTURLPATH));
+        assertEquals(0, cache.pinnedSize());
+    }
+
+    @Test
+    public void get_reloadsAfterExpiry() {
+        AtomicLong nanos = new AtomicLong();
+        ShortUrlCache cache =
+                new ShortUrlCache(10, 0, 1000, Runnable::run, nanos::get);
+        cache.put(TEST_SHORTURLPATH,
+                  new ShortUrlRedirect(TEST_SHORTURLPATH, "http://www.old.com"));
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        assertNull(cache.getIfPresent(TEST_SHORTURLPATH));
+        assertEquals("http://www.new.com",
+                     cache.get(TEST_SHORTURLPATH,
+                               path -> new ShortUrlRedirect(
+                                       path, "http://www.new.com"))
+                          .getRedirectTo());
+    }
+
+    @Test
+    public void pinOnly_pinnedEntryExpiresWithCachedEntry() {
+        AtomicLong nanos = new AtomicLong();
+        ShortUrlCache cache =
+                new ShortUrlCache(10, 0, 1000, Runnable::run, nanos::get);
+        cache.put(TEST_SHORTURLPATH,
+                  new ShortUrlRedirect(TEST_SHORTURLPATH, "http://www.hot.com"));
+
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        cache.pinOnly(Collections.singletonList(TEST_SHORTURLPATH));
+        assertEquals(1, cache.pinnedSize());
+
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(400));
+
+        AtomicInteger loads = new AtomicInteger();
+        cache.get(TEST_SHORTURLPATH, path -> {
+            loads.incrementAndGet();
+            return new ShortUrlRedirect(path, "http://www.hot.com");
+        });
+        assertEquals("Expired pinned redirect should be reloaded",
+                     1, loads.get());
+    }
+}
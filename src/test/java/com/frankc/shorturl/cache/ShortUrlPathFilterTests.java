@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.frankc.shorturl.repositories.ShortUrlRepo;
+import com.frankc.shorturl.utils.ShortUrlPathGenerator;
+
+/**
+ * Unit Tests for ShortUrlPathFilter.
+ *
+ * @author Frank Callaly
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ShortUrlPathFilterTests {
+
+    @Mock
+    private ShortUrlRepo mockShortUrlRepo;
+
+    @InjectMocks
+    private ShortUrlPathFilter shortUrlPathFilter;
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(shortUrlPathFilter, "enabled", true);
+        ReflectionTestUtils.setField(shortUrlPathFilter,
+                                     "expectedInsertions", 1000L);
+        ReflectionTestUtils.setField(shortUrlPathFilter,
+                                     "falsePositiveRate", 0.001);
+        ReflectionTestUtils.setField(shortUrlPathFilter,
+                                     "rebuildPageSize", 2);
+    }
+
+    @Test
+    public void mightContain_trueBeforeFirstBuild() {
+        assertTrue(shortUrlPathFilter.mightContain("anything"));
+    }
+
+    @Test
+    public void mightContain_falseForUnstorablePaths() {
+        assertFalse(shortUrlPathFilter.mightContain(""));
+        assertFalse(shortUrlPathFilter.mightContain("not-base62"));
+        assertFalse(shortUrlPathFilter.mightContain("\u00e9t\u00e9"));
+        assertFalse(shortUrlPathFilter.mightContain(
+                    String.join("", Collections.nCopies(37, "a"))));
+    }
+
+    @Test
+    public void isStorable_agreesWithPathPattern() {
+        for (char c = 0; c < 256; c++) {
+            String path = "a" + c;
+            assertEquals(path,
+                         ShortUrlPathGenerator.PATH_PATTERN.matcher(path)
+                                                           .matches(),
+                         ShortUrlPathFilter.isStorable(path));
+        }
+        assertTrue(ShortUrlPathFilter.isStorable("Z"));
+        assertTrue(ShortUrlPathFilter.isStorable(
+                    String.join("", Collections.nCopies(36, "9"))));
+    }
+
+    @Test
+    public void rebuild_readsAllPages() {
+        when(mockShortUrlRepo.findShortUrlPathsAfter(eq(""),
+                                                     any(Pageable.class)))
+            .thenReturn(Arrays.asList("aaa", "bbb"));
+        when(mockShortUrlRepo.findShortUrlPathsAfter(eq("bbb"),
+                                                     any(Pageable.class)))
+            .thenReturn(Arrays.asList("ccc", "ddd"));
+        when(mockShortUrlRepo.findShortUrlPathsAfter(eq("ddd"),
+                                                     any(Pageable.class)))
+            .thenReturn(Collections.singletonList("eee"));
+
+        shortUrlPathFilter.rebuild();
+
+        for (String path : Arrays.asList("aaa", "bbb", "ccc", "ddd", "eee")) {
+            assertTrue("Path should be in filter: " + path,
+                       shortUrlPathFilter.mightContain(path));
+        }
+        assertFalse(shortUrlPathFilter.mightContain("zzzzzzzzzzz"));
+    }
+
+    @Test
+    public void put_addsToBuiltFilter() {
+        when(mockShortUrlRepo.findShortUrlPathsAfter(eq(""),
+                                                     any(Pageable.class)))
+            .thenReturn(Collections.emptyList());
+        shortUrlPathFilter.rebuild();
+        assertFalse(shortUrlPathFilter.mightContain("newPath"));
+
+        shortUrlPathFilter.put("newPath");
+
+        assertTrue(shortUrlPathFilter.mightContain("newPath"));
+    }
+
+    @Test
+    public void mightContain_missDoesNotQuery() {
+        when(mockShortUrlRepo.findShortUrlPathsAfter(eq(""),
+                                                     any(Pageable.class)))
+            .thenReturn(Collections.emptyList());
+        shortUrlPathFilter.rebuild();
+
+        assertFalse(shortUrlPathFilter.mightContain("unknownPath"));
+
+        verify(mockShortUrlRepo, never())
+            .findShortUrlPathsCreatedSince(any(Date.class));
+    }
+
+    @Test
+    public void sync_addsPathsCreatedOnOtherNodes() {
+        when(mockShortUrlRepo.findShortUrlPathsAfter(eq(""),
+                                                     any(Pageable.class)))
+            .thenReturn(Collections.emptyList());
+        shortUrlPathFilter.rebuild();
+        when(mockShortUrlRepo.findShortUrlPathsCreatedSince(any(Date.class)))
+            .thenReturn(Collections.singletonList("otherNodePath"));
+        assertFalse(shortUrlPathFilter.mightContain("otherNodePath"));
+
+        shortUrlPathFilter.sync();
+
+        assertTrue(shortUrlPathFilter.mightContain("otherNodePath"));
+        assertFalse(shortUrlPathFilter.mightContain("unknownPath"));
+    }
+
+    @Test
+    public void sync_rebuildsWhenFull() {
+        ReflectionTestUtils.setField(shortUrlPathFilter,
+                                     "expectedInsertions", 1L);
+        when(mockShortUrlRepo.findShortUrlPathsAfter(eq(""),
+                                                     any(Pageable.class)))
+            .thenReturn(Collections.emptyList());
+        shortUrlPathFilter.rebuild();
+        when(mockShortUrlRepo.findShortUrlPathsCreatedSince(any(Date.class)))
+            .thenReturn(Arrays.asList("aaa", "bbb"));
+
+        shortUrlPathFilter.sync();
+
+        // the rebuild runs on the rebuild thread
+        verify(mockShortUrlRepo, timeout(5000).times(2))
+            .findShortUrlPathsAfter(eq(""), any(Pageable.class));
+    }
+
+    @Test
+    public void requestRebuild_doesNotRunOnCallingThread()
+                                            throws InterruptedException {
+        Thread caller = Thread.currentThread();
+        AtomicReference<Thread> rebuildThread = new AtomicReference<>();
+        CountDownLatch rebuilt = new CountDownLatch(1);
+        when(mockShortUrlRepo.findShortUrlPathsAfter(eq(""),
+                                                     any(Pageable.class)))
+            .thenAnswer(invocation -> {
+                rebuildThread.set(Thread.currentThread());
+                rebuilt.countDown();
+                return Collections.singletonList("aaa");
+            });
+
+        shortUrlPathFilter.requestRebuild();
+
+        assertTrue(rebuilt.await(5, TimeUnit.SECONDS));
+        assertNotSame(caller, rebuildThread.get());
+        shortUrlPathFilter.destroy();
+    }
+}
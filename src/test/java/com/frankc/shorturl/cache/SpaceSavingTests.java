@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+/**
+ * Unit Tests for SpaceSaving.
+ *
+ * @author Frank Callaly
+ */
+public class SpaceSavingTests {
+
+    @Test
+    public void offer_countsExactlyUnderCapacity() {
+        SpaceSaving summary = new SpaceSaving(10);
+
+        for (int i = 0; i < 5; i++) {
+            summary.offer("a");
+        }
+        summary.offer("b");
+
+        Map<String, HotLink> links = byPath(summary);
+        assertEquals(5, links.get("a").getClicks());
+        assertEquals(5, links.get("a").getMinClicks());
+        assertEquals(1, links.get("b").getClicks());
+        assertEquals(0, summary.minCount());
+    }
+
+    @Test
+    public void offer_keepsHeavyHittersOverCapacity() {
+        SpaceSaving summary = new SpaceSaving(20);
+        Random random = new Random(1);
+        int total = 100000;
+        int heavyCount = 0;
+
+        for (int i = 0; i < total; i++) {
+            // one path in ten is "hot", the rest spread over 10000 paths
+            if (random.nextInt(10) == 0) {
+                summary.offer("hot");
+                heavyCount++;
+            } else {
+                summary.offer("cold" + random.nextInt(10000));
+            }
+        }
+
+        HotLink hot = byPath(summary).get("hot");
+        assertEquals(20, summary.size());
+        assertEquals(total, summary.total());
+        assertTrue("count should not understate frequency",
+                   hot.getClicks() >= heavyCount);
+        assertTrue("minClicks should not overstate frequency",
+                   hot.getMinClicks() <= heavyCount);
+        assertTrue("error should be at most total / capacity",
+                   hot.getClicks() - hot.getMinClicks() <= total / 20);
+    }
+
+    @Test
+    public void clear_forgetsItems() {
+        SpaceSaving summary = new SpaceSaving(2);
+        summary.offer("a");
+        summary.offer("b");
+        summary.offer("c");
+
+        summary.clear();
+
+        assertEquals(0, summary.size());
+        assertEquals(0, summary.total());
+        assertTrue(summary.snapshot().isEmpty());
+    }
+
+    private static Map<String, HotLink> byPath(final SpaceSaving summary) {
+        return summary.snapshot().stream()
+                      .collect(Collectors.toMap(HotLink::getShortUrlPath,
+                                                Function.identity()));
+    }
+}
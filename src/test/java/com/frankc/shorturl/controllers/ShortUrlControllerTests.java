@@ -16,19 +16,34 @@
  ******************************************************************************/
 package com.frankc.shorturl.controllers;
 
+import static org.hamcrest.CoreMatchers.startsWith;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -39,15 +54,29 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.frankc.shorturl.cache.HotLink;
+import com.frankc.shorturl.cache.HotLinkTracker;
+import com.frankc.shorturl.cache.ShortUrlCache;
 import com.frankc.shorturl.entities.ShortUrl;
+import com.frankc.shorturl.importer.ImportFormat;
+import com.frankc.shorturl.importer.ImportListener;
+import com.frankc.shorturl.importer.ShortUrlImporter;
+import com.frankc.shorturl.repositories.ShortUrlRepo.ExportRow;
+import com.frankc.shorturl.services.BatchCreateResult;
+import com.frankc.shorturl.services.ShortUrlCursor;
 import com.frankc.shorturl.services.ShortUrlService;
+import com.frankc.shorturl.services.ShortUrlService.ExportRowHandler;
 
 /**
  * Unit Tests for ShortUrlController.
@@ -55,7 +84,9 @@ import com.frankc.shorturl.services.ShortUrlService;
  * @author Frank Callaly
  */
 @RunWith(SpringRunner.class)
-@WebMvcTest
+@WebMvcTest(ShortUrlController.class)
+@TestPropertySource(properties = {
+        "com.frankc.shorturl.controller.maxBatchSize=3"})
 @ActiveProfiles("nojpa")
 public class ShortUrlControllerTests {
 
@@ -72,6 +103,15 @@ public class ShortUrlControllerTests {
     @MockBean
     private ShortUrlService mockShortUrlService;
 
+    @MockBean
+    private HotLinkTracker mockHotLinkTracker;
+
+    @MockBean
+    private ShortUrlCache mockShortUrlCache;
+
+    @MockBean
+    private ShortUrlImporter mockShortUrlImporter;
+
     @Test
     public void findAllShortUrls_returnsList() throws Exception {
         when(mockShortUrlService.findAll(any()))
@@ -141,6 +181,20 @@ public class ShortUrlControllerTests {
                                .value(testShortUrl.getShortUrlPath()));
     }
 
+    @Test
+    public void findShortUrl_exportIsAShortUrlPath() throws Exception {
+        ShortUrl testShortUrl = new ShortUrl("http://www.testfind.com");
+        testShortUrl.setShortUrlPath("export");
+
+        when(mockShortUrlService.findByShortUrlPath("export"))
+            .thenReturn(testShortUrl);
+
+        this.mockMvc.perform(get(ShortUrlController.BASE_PATH + "export"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.shortUrl.shortUrlPath")
+                               .value("export"));
+    }
+
     @Test
     public void findShortUrl_unknownReturnsNotFound() throws Exception {
         when(mockShortUrlService.findByShortUrlPath(TEST_SHORTURLPATH))
@@ -157,7 +211,7 @@ public class ShortUrlControllerTests {
         ShortUrl testShortUrl = new ShortUrl("http://www.testcreate.com");
 
         when(mockShortUrlService
-                .createShortUrl(testShortUrl.getRedirectTo()))
+                .createShortUrl(testShortUrl.getRedirectTo(), null))
             .thenReturn(testShortUrl);
 
         this.mockMvc.perform(
@@ -169,13 +223,30 @@ public class ShortUrlControllerTests {
                     .value(testShortUrl.getShortUrlPath()));
     }
 
+    @Test
+    public void createShortUrl_passesCacheMaxAge() throws Exception {
+        ShortUrl testShortUrl = new ShortUrl("http://www.testcreate.com");
+        testShortUrl.setCacheMaxAge(60);
+
+        when(mockShortUrlService
+                .createShortUrl(testShortUrl.getRedirectTo(), 60))
+            .thenReturn(testShortUrl);
+
+        this.mockMvc.perform(
+                post(ShortUrlController.BASE_PATH)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(testShortUrl)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.shortUrl.cacheMaxAge").value(60));
+    }
+
     @Test
     public void createShortUrl_withPathReturnsImmutable() throws Exception {
         ShortUrl testShortUrl = new ShortUrl("http://www.testcreate.com");
         testShortUrl.setShortUrlPath(TEST_SHORTURLPATH);
 
         when(mockShortUrlService
-                .createShortUrl(testShortUrl.getRedirectTo()))
+                .createShortUrl(testShortUrl.getRedirectTo(), null))
             .thenReturn(testShortUrl);
 
         this.mockMvc.perform(
@@ -191,7 +262,7 @@ public class ShortUrlControllerTests {
         ShortUrl testShortUrl = new ShortUrl("adf;ksie");
 
         when(mockShortUrlService
-                .createShortUrl(testShortUrl.getRedirectTo()))
+                .createShortUrl(testShortUrl.getRedirectTo(), null))
             .thenThrow(new IllegalArgumentException());
 
         this.mockMvc.perform(
@@ -201,11 +272,71 @@ public class ShortUrlControllerTests {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    public void countClicks_returnsClicks() throws Exception {
+        when(mockShortUrlService.countClicks(TEST_SHORTURLPATH))
+            .thenReturn(42L);
+
+        this.mockMvc.perform(get(ShortUrlController.BASE_PATH
+                                 + TEST_SHORTURLPATH + "/clicks"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.shortUrlPath")
+                                    .value(TEST_SHORTURLPATH))
+                    .andExpect(jsonPath("$.clicks").value(42));
+    }
+
+    @Test
+    public void countClicks_unknownReturnsNotFound() throws Exception {
+        when(mockShortUrlService.countClicks(TEST_SHORTURLPATH))
+            .thenThrow(new NoSuchElementException());
+
+        this.mockMvc.perform(get(ShortUrlController.BASE_PATH
+                                 + TEST_SHORTURLPATH + "/clicks"))
+                    .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void findTopLinks_returnsLinks() throws Exception {
+        when(mockHotLinkTracker.topLinks(5, 10))
+            .thenReturn(Arrays.asList(new HotLink(TEST_SHORTURLPATH, 9, 7)));
+
+        this.mockMvc.perform(get(ShortUrlController.BASE_PATH + "top-links"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$[0].shortUrlPath")
+                                    .value(TEST_SHORTURLPATH))
+                    .andExpect(jsonPath("$[0].clicks").value(9))
+                    .andExpect(jsonPath("$[0].minClicks").value(7));
+    }
+
+    @Test
+    public void findTopLinks_invalidLimitReturnsBadRequest() throws Exception {
+        this.mockMvc.perform(get(ShortUrlController.BASE_PATH + "top-links")
+                                .param("limit", "0"))
+                    .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void test_deleteShortUrl_returnsOk() throws Exception {
+        when(mockShortUrlService.deleteByShortUrlPath(TEST_SHORTURLPATH))
+             .thenReturn(true);
+
         this.mockMvc.perform(delete(ShortUrlController.BASE_PATH
                                     + TEST_SHORTURLPATH))
-                    .andExpect(status().isOk());
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.deleted").value(true));
+    }
+
+    @Test
+    public void test_deleteShortUrl_sharedReturnsAccepted() throws Exception {
+        when(mockShortUrlService.deleteByShortUrlPath(TEST_SHORTURLPATH))
+             .thenReturn(false);
+
+        this.mockMvc.perform(delete(ShortUrlController.BASE_PATH
+                                    + TEST_SHORTURLPATH))
+                    .andExpect(status().isAccepted())
+                    .andExpect(jsonPath("$.shortUrlPath")
+                                    .value(TEST_SHORTURLPATH))
+                    .andExpect(jsonPath("$.deleted").value(false));
     }
 
     @Test
@@ -218,4 +349,235 @@ public class ShortUrlControllerTests {
                                     + TEST_SHORTURLPATH))
                     .andExpect(status().isNotFound());
     }
+
+    @Test
+    public void createShortUrls_returnsResults() throws Exception {
+        List<String> redirectTos =
+                Arrays.asList("http://www.batch.com", "notAUrl");
+        ShortUrl created = new ShortUrl("http://www.batch.com");
+        created.setShortUrlPath(TEST_SHORTURLPATH);
+
+        when(mockShortUrlService.createShortUrls(redirectTos))
+            .thenReturn(Arrays.asList(BatchCreateResult.created(created),
+                                      BatchCreateResult.invalid("notAUrl")));
+
+        this.mockMvc.perform(
+                post(ShortUrlController.BASE_PATH + "batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(redirectTos)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("CREATED"))
+                .andExpect(jsonPath("$[0].shortUrlPath")
+                                .value(TEST_SHORTURLPATH))
+                .andExpect(jsonPath("$[1].status").value("INVALID"))
+                .andExpect(jsonPath("$[1].error").isString());
+    }
+
+    @Test
+    public void createShortUrls_overMaxBatchSizeReturnsBadRequest()
+                                                        throws Exception {
+        List<String> redirectTos =
+                Arrays.asList("http://www.batch1.com", "http://www.batch2.com",
+                              "http://www.batch3.com", "http://www.batch4.com");
+
+        this.mockMvc.perform(
+                post(ShortUrlController.BASE_PATH + "batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(redirectTos)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void importShortUrls_streamsCsvToImporter() throws Exception {
+        this.mockMvc.perform(
+                post(ShortUrlController.BASE_PATH + "import")
+                    .param("keepShortUrlPaths", "true")
+                    .contentType(ImportFormat.CSV_VALUE)
+                    .content("http://www.import.com," + TEST_SHORTURLPATH))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(ImportFormat.NDJSON_VALUE));
+
+        verify(mockShortUrlImporter).importShortUrls(
+                any(Reader.class), eq(ImportFormat.CSV), eq(true),
+                any(ImportListener.class));
+    }
+
+    @Test
+    public void importShortUrls_unsupportedTypeReturnsUnsupported()
+                                                        throws Exception {
+        this.mockMvc.perform(
+                post(ShortUrlController.BASE_PATH + "import")
+                    .contentType(MediaType.APPLICATION_XML)
+                    .content("<redirectTo/>"))
+                .andExpect(status().isUnsupportedMediaType());
+    }
+
+    @Test
+    public void findShortUrlsByCursor_linksNextPage() throws Exception {
+        List<ShortUrl> page = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            ShortUrl shortUrl = new ShortUrl("http://www.cursor.com");
+            shortUrl.setId(i + 1);
+            shortUrl.setShortUrlPath(TEST_SHORTURLPATH + i);
+            page.add(shortUrl);
+        }
+        when(mockShortUrlService.findPage(any(), eq(3), eq(100)))
+            .thenReturn(page);
+        when(mockShortUrlService.countShortUrls()).thenReturn(1000L);
+
+        MvcResult result = this.mockMvc
+                .perform(get(ShortUrlController.BASE_PATH + "by-cursor")
+                    .param("pageSize", "2")
+                    .param("view", ShortUrlController.VIEW_SUMMARY)
+                    .param("includeTotal", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$._embedded.shortUrlResourceList.size()")
+                                .value(2))
+                .andExpect(jsonPath("$.totalCount").value(1000))
+                .andExpect(jsonPath("$._links.next.href").isString())
+                .andReturn();
+
+        String next = objectMapper.readTree(
+                            result.getResponse().getContentAsString())
+                        .path("_links").path("next").path("href").asText();
+        String cursor = UriComponentsBuilder.fromUriString(next).build()
+                            .getQueryParams().getFirst("cursor");
+        assertTrue("Next cursor should follow the last row: " + next,
+                   ShortUrlCursor.decode(cursor).getLastId() == 2);
+    }
+
+    @Test
+    public void findShortUrlsByCursor_lastPageHasNoNext() throws Exception {
+        when(mockShortUrlService.findPage(any(), eq(11),
+                                          eq(Integer.MAX_VALUE)))
+            .thenReturn(new ArrayList<ShortUrl>());
+
+        this.mockMvc
+                .perform(get(ShortUrlController.BASE_PATH + "by-cursor")
+                    .param("orderBy", "created"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$._links.next").doesNotExist())
+                .andExpect(jsonPath("$.totalCount").doesNotExist());
+    }
+
+    @Test
+    public void findShortUrlsByCursor_invalidCursorReturnsBadRequest()
+                                                        throws Exception {
+        this.mockMvc
+                .perform(get(ShortUrlController.BASE_PATH + "by-cursor")
+                    .param("cursor", "notACursor"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void exportShortUrls_writesRowPerLine() throws Exception {
+        stubExport();
+
+        MvcResult result = this.mockMvc
+                .perform(get(ShortUrlController.BASE_PATH + "export-ndjson")
+                    .param("createdFrom", "2019-01-01T00:00:00.000Z"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(ImportFormat.NDJSON_VALUE))
+                .andReturn();
+
+        String[] lines = result.getResponse().getContentAsString()
+                               .split("\n");
+        assertTrue("Export should have a line per row", lines.length == 2);
+        assertTrue(lines[1], objectMapper.readTree(lines[1])
+                                .path("shortUrlPath").asText()
+                                .equals(TEST_SHORTURLPATH + 1));
+        verify(mockShortUrlService).exportShortUrls(
+                any(Date.class), isNull(), isNull(), isNull(), any());
+    }
+
+    @Test
+    public void exportShortUrls_gzipsWhenAccepted() throws Exception {
+        stubExport();
+
+        MvcResult result = this.mockMvc
+                .perform(get(ShortUrlController.BASE_PATH + "export-ndjson")
+                    .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING,
+                                           "gzip"))
+                .andReturn();
+
+        try (GZIPInputStream in = new GZIPInputStream(
+                    new ByteArrayInputStream(
+                            result.getResponse().getContentAsByteArray()))) {
+            String export = StreamUtils.copyToString(
+                                            in, StandardCharsets.UTF_8);
+            assertTrue(export, export.startsWith("{\"shortUrlPath\":\""
+                                                 + TEST_SHORTURLPATH + 0));
+        }
+    }
+
+    @Test
+    public void exportShortUrls_noGzipWhenRefused() throws Exception {
+        stubExport();
+
+        this.mockMvc
+                .perform(get(ShortUrlController.BASE_PATH + "export-ndjson")
+                    .header(HttpHeaders.ACCEPT_ENCODING,
+                            "x-gzip, gzip;q=0, identity"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(
+                                        HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().string(startsWith(
+                        "{\"shortUrlPath\":\"" + TEST_SHORTURLPATH + 0)));
+    }
+
+    @Test
+    public void getCacheStats_returnsCounters() throws Exception {
+        Map<String, Object> statsSummary = new LinkedHashMap<>();
+        statsSummary.put("hitCount", 7L);
+        statsSummary.put("missCount", 3L);
+        statsSummary.put("evictionCount", 2L);
+        when(mockShortUrlCache.statsSummary()).thenReturn(statsSummary);
+
+        this.mockMvc.perform(get(ShortUrlController.BASE_PATH
+                                 + "cache-stats"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.hitCount").value(7))
+                    .andExpect(jsonPath("$.missCount").value(3))
+                    .andExpect(jsonPath("$.evictionCount").value(2));
+    }
+
+    private void stubExport() throws IOException {
+        when(mockShortUrlService.exportShortUrls(any(), any(), any(), any(),
+                                                 any()))
+            .thenAnswer(invocation -> {
+                ExportRowHandler handler = invocation.getArgument(4);
+                for (int i = 0; i < 2; ++i) {
+                    ShortUrl shortUrl = new ShortUrl("http://www.export.com");
+                    shortUrl.setShortUrlPath(TEST_SHORTURLPATH + i);
+                    handler.handle(toExportRow(shortUrl));
+                }
+                return 2L;
+            });
+    }
+
+    private ExportRow toExportRow(final ShortUrl shortUrl) {
+        return new ExportRow() {
+            public String getShortUrlPath() {
+                return shortUrl.getShortUrlPath();
+            }
+
+            public String getRedirectTo() {
+                return shortUrl.getRedirectTo();
+            }
+
+            public Integer getCacheMaxAge() {
+                return shortUrl.getCacheMaxAge();
+            }
+
+            public Date getCreated() {
+                return shortUrl.getCreated();
+            }
+
+            public Date getLastUpdated() {
+                return shortUrl.getLastUpdated();
+            }
+        };
+    }
 }
@@ -16,12 +16,15 @@
  ******************************************************************************/
 package com.frankc.shorturl.controllers;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-import java.util.NoSuchElementException;
-
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.Logger;
@@ -29,11 +32,18 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 
-import com.frankc.shorturl.entities.ShortUrl;
+import com.frankc.shorturl.cache.HotLinkTracker;
+import com.frankc.shorturl.cache.RedirectCacheControl;
+import com.frankc.shorturl.cache.ShortUrlPathFilter;
+import com.frankc.shorturl.entities.ShortUrlRedirect;
+import com.frankc.shorturl.metrics.RedirectMetrics;
+import com.frankc.shorturl.services.ClickCounter;
 import com.frankc.shorturl.services.ShortUrlService;
 
 /**
@@ -42,7 +52,10 @@ import com.frankc.shorturl.services.ShortUrlService;
  * @author Frank Callaly
  */
 @RunWith(SpringRunner.class)
-@WebMvcTest
+@WebMvcTest(ShortUrlRedirectController.class)
+@Import(RedirectCacheControl.class)
+@TestPropertySource(properties = {
+        "com.frankc.shorturl.redirect.notFoundMaxAge=30"})
 @ActiveProfiles("nojpa")
 public class ShortUrlRedirectControllerTests {
 
@@ -54,37 +67,95 @@ public class ShortUrlRedirectControllerTests {
     @MockBean
     private ShortUrlService mockShortUrlService;
 
+    @MockBean
+    private ShortUrlPathFilter mockShortUrlPathFilter;
+
+    @MockBean
+    private HotLinkTracker mockHotLinkTracker;
+
+    @MockBean
+    private RedirectMetrics mockRedirectMetrics;
+
+    @MockBean
+    private ClickCounter mockClickCounter;
+
+    @Before
+    public void setUp() {
+        when(mockShortUrlPathFilter.mightContain(any())).thenReturn(true);
+    }
+
     @Test
     public void findAllShortUrls_returnsMovedPermanently() throws Exception {
-        when(mockShortUrlService.findByShortUrlPath(TEST_SHORTURLPATH))
-            .thenReturn(new ShortUrl("http://www.redirectto.ie"));
+        when(mockShortUrlService.findRedirectByShortUrlPath(TEST_SHORTURLPATH))
+            .thenReturn(new ShortUrlRedirect(TEST_SHORTURLPATH,
+                                             "http://www.redirectto.ie"));
+
+        this.mockMvc
+                .perform(get(ShortUrlRedirectController.BASE_PATH
+                             + TEST_SHORTURLPATH))
+                .andExpect(status().isMovedPermanently())
+                .andExpect(header().string("Location",
+                                           "http://www.redirectto.ie"));
+    }
+
+    @Test
+    public void findAllShortUrls_countsClick() throws Exception {
+        when(mockShortUrlService.findRedirectByShortUrlPath(TEST_SHORTURLPATH))
+            .thenReturn(new ShortUrlRedirect(TEST_SHORTURLPATH,
+                                             "http://www.redirectto.ie"));
 
         this.mockMvc
                 .perform(get(ShortUrlRedirectController.BASE_PATH
                              + TEST_SHORTURLPATH))
                 .andExpect(status().isMovedPermanently());
+
+        verify(mockClickCounter).increment(TEST_SHORTURLPATH);
     }
 
     @Test
     public void findAllShortUrls_unknownReturnsNotFound() throws Exception {
-        when(mockShortUrlService.findByShortUrlPath(TEST_SHORTURLPATH))
-            .thenThrow(new NoSuchElementException());
+        when(mockShortUrlService.findRedirectByShortUrlPath(TEST_SHORTURLPATH))
+            .thenReturn(null);
 
         this.mockMvc
                 .perform(get(ShortUrlRedirectController.BASE_PATH
                              + TEST_SHORTURLPATH))
-                .andExpect(status().isNotFound());
+                .andExpect(status().isNotFound())
+                .andExpect(header().string("Cache-Control", "max-age=30"));
+
+        verify(mockClickCounter, never()).increment(any());
+        verify(mockRedirectMetrics).notFound();
+    }
+
+    @Test
+    public void findAllShortUrls_filteredOutNotFoundIsNotCached()
+                                                         throws Exception {
+        when(mockShortUrlPathFilter.mightContain(TEST_SHORTURLPATH))
+            .thenReturn(false);
+
+        this.mockMvc
+                .perform(get(ShortUrlRedirectController.BASE_PATH
+                             + TEST_SHORTURLPATH))
+                .andExpect(status().isNotFound())
+                .andExpect(header().string("Cache-Control", "no-store"));
+
+        verify(mockShortUrlService, never())
+                .findRedirectByShortUrlPath(any());
+        verify(mockRedirectMetrics).notFound();
     }
 
     @Test
     public void findAllShortUrls_invalidRedirectReturnsUnprocessable()
                                                          throws Exception {
-        when(mockShortUrlService.findByShortUrlPath(TEST_SHORTURLPATH))
-            .thenReturn(new ShortUrl("spaces 1nval1D"));
+        when(mockShortUrlService.findRedirectByShortUrlPath(TEST_SHORTURLPATH))
+            .thenReturn(new ShortUrlRedirect(TEST_SHORTURLPATH,
+                                             "spaces 1nval1D"));
 
         this.mockMvc
                 .perform(get(ShortUrlRedirectController.BASE_PATH
                              + TEST_SHORTURLPATH))
                 .andExpect(status().isUnprocessableEntity());
+
+        verify(mockRedirectMetrics).invalid();
     }
 }
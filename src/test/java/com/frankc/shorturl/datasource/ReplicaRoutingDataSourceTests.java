@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.datasource;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Unit Tests for ReplicaRoutingDataSource, with embedded databases standing
+ * in for the primary and two replicas.
+ *
+ * @author Frank Callaly
+ */
+public class ReplicaRoutingDataSourceTests {
+
+    private FailingDataSource replica1;
+
+    private ReplicaRoutingDataSource routingDataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate readOnlyTemplate;
+
+    private TransactionTemplate readWriteTemplate;
+
+    @Before
+    public void setUp() {
+        replica1 = new FailingDataSource(database("replica1"));
+        routingDataSource = new ReplicaRoutingDataSource(
+                    database("primary"),
+                    Arrays.asList(replica1, database("replica2")));
+
+        DataSource dataSource =
+                new LazyConnectionDataSourceProxy(routingDataSource);
+        DataSourceTransactionManager transactionManager =
+                new DataSourceTransactionManager(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        readOnlyTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTemplate.setReadOnly(true);
+        readWriteTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    public void readOnlyTransactions_useEachReplicaInTurn() {
+        Set<String> found = new HashSet<>();
+        found.add(readOnlyTemplate.execute(status -> nodeName()));
+        found.add(readOnlyTemplate.execute(status -> nodeName()));
+
+        assertEquals(new HashSet<>(Arrays.asList("replica1", "replica2")),
+                     found);
+    }
+
+    @Test
+    public void otherConnections_usePrimary() {
+        assertEquals("primary",
+                     readWriteTemplate.execute(status -> nodeName()));
+        assertEquals("primary", nodeName());
+    }
+
+    @Test
+    public void onPrimary_usesPrimaryInReadOnlyTransaction() {
+        assertEquals("primary", ReplicaRoutingDataSource.onPrimary(
+                    () -> readOnlyTemplate.execute(status -> nodeName())));
+    }
+
+    @Test
+    public void failedReplica_isSkippedUntilHealthCheckPasses() {
+        replica1.failing = true;
+        for (int i = 0; i < 4; ++i) {
+            assertEquals("replica2",
+                         readOnlyTemplate.execute(status -> nodeName()));
+        }
+        assertEquals(1, routingDataSource.countHealthy());
+
+        routingDataSource.checkReplicas(1);
+        assertEquals(1, routingDataSource.countHealthy());
+
+        replica1.failing = false;
+        routingDataSource.checkReplicas(1);
+        assertEquals(2, routingDataSource.countHealthy());
+    }
+
+    @Test
+    public void noHealthyReplica_usesPrimary() {
+        replica1.failing = true;
+        ReplicaRoutingDataSource singleReplica =
+                new ReplicaRoutingDataSource(database("primary"),
+                                             Arrays.asList(replica1));
+        DataSource dataSource =
+                new LazyConnectionDataSourceProxy(singleReplica);
+        TransactionTemplate template = new TransactionTemplate(
+                    new DataSourceTransactionManager(dataSource));
+        template.setReadOnly(true);
+
+        assertEquals("primary", template.execute(
+                    status -> new JdbcTemplate(dataSource).queryForObject(
+                                "select name from node", String.class)));
+    }
+
+    private String nodeName() {
+        return jdbcTemplate.queryForObject("select name from node",
+                                           String.class);
+    }
+
+    private static DataSource database(final String name) {
+        DataSource dataSource = new DriverManagerDataSource(
+                    "jdbc:h2:mem:routing-" + name + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.execute("create table if not exists node "
+                         + "(name varchar(16))");
+        template.execute("delete from node");
+        template.update("insert into node values (?)", name);
+        return dataSource;
+    }
+
+    /**
+     * DataSource which can be made to fail to connect, like a replica that
+     * is down.
+     */
+    private static final class FailingDataSource extends DelegatingDataSource {
+
+        private volatile boolean failing;
+
+        FailingDataSource(final DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (failing) {
+                throw new SQLException("Connection refused");
+            }
+            return super.getConnection();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.frankc.shorturl.cache.ShortUrlPathFilter;
+import com.frankc.shorturl.entities.ShortUrl;
+import com.frankc.shorturl.services.ShortUrlService;
+
+/**
+ * Tests that ShortUrlService reads from a replica and writes to the primary
+ * with com.frankc.shorturl.replicas.enabled, against two embedded databases
+ * with no replication between them. The path filter is built by each test,
+ * rows inserted directly into the primary stand in for shortUrls created by
+ * another node, and are added to the filter by syncing it as the scheduled
+ * sync would.
+ *
+ * @author Frank Callaly
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+    "spring.datasource.url=" + ReplicaRoutingTests.PRIMARY_URL,
+    "spring.jpa.hibernate.ddl-auto=create-drop",
+    "com.frankc.shorturl.replicas.enabled=true",
+    "com.frankc.shorturl.replicas.urls=" + ReplicaRoutingTests.REPLICA_URL,
+    "com.frankc.shorturl.filter.initialDelayMs=3600000"
+})
+@DirtiesContext
+public class ReplicaRoutingTests {
+
+    static final String PRIMARY_URL =
+            "jdbc:h2:mem:replicaRoutingPrimary;DB_CLOSE_DELAY=-1";
+
+    static final String REPLICA_URL =
+            "jdbc:h2:mem:replicaRoutingReplica;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private ShortUrlService shortUrlService;
+
+    @Autowired
+    private ShortUrlPathFilter shortUrlPathFilter;
+
+    // the embedded database default user, as the application connects with
+    private final JdbcTemplate primary = new JdbcTemplate(
+                new DriverManagerDataSource(PRIMARY_URL, "sa", ""));
+
+    private final JdbcTemplate replica = new JdbcTemplate(
+                new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+
+    @Before
+    public void setUp() {
+        // give the replica the short_url table Hibernate created on the
+        // primary
+        List<String> ddl = primary.queryForList(
+                    "script nodata table short_url", String.class);
+        for (String statement : ddl) {
+            if (statement.startsWith("CREATE MEMORY TABLE")) {
+                replica.execute(statement.replaceFirst(
+                            "TABLE", "TABLE IF NOT EXISTS"));
+            }
+        }
+        shortUrlPathFilter.rebuild();
+    }
+
+    @After
+    public void tearDown() {
+        primary.update("delete from short_url");
+        replica.update("delete from short_url");
+    }
+
+    @Test
+    public void createShortUrl_writesToPrimary() {
+        ShortUrl created =
+                shortUrlService.createShortUrl("http://www.example.com/new");
+
+        assertEquals(1, count(primary, created.getShortUrlPath()));
+        assertEquals(0, count(replica, created.getShortUrlPath()));
+    }
+
+    @Test
+    public void lookups_readReplica() {
+        insert(primary, "onReplica", "http://www.example.com/primary");
+        insert(replica, "onReplica", "http://www.example.com/replica");
+        shortUrlPathFilter.sync();
+
+        assertEquals("http://www.example.com/replica",
+                     shortUrlService.findByShortUrlPath("onReplica")
+                                    .getRedirectTo());
+        assertEquals("http://www.example.com/replica",
+                     shortUrlService.findRedirectByShortUrlPath("onReplica")
+                                    .getRedirectTo());
+        assertEquals(0, shortUrlService.countClicks("onReplica"));
+    }
+
+    @Test
+    public void listing_readsReplica() {
+        shortUrlService.createShortUrl("http://www.example.com/new");
+        insert(replica, "onReplica", "http://www.example.com/replica");
+
+        List<String> paths = shortUrlService.findAll(PageRequest.of(0, 10))
+                .stream()
+                .map(ShortUrl::getShortUrlPath)
+                .collect(Collectors.toList());
+
+        assertEquals(1, paths.size());
+        assertEquals("onReplica", paths.get(0));
+    }
+
+    @Test
+    public void lookupAfterCreate_fallsBackToPrimary() {
+        String path = shortUrlService.createShortUrl(
+                    "http://www.example.com/new").getShortUrlPath();
+
+        assertEquals("http://www.example.com/new",
+                     shortUrlService.findByShortUrlPath(path)
+                                    .getRedirectTo());
+        assertEquals(0, shortUrlService.countClicks(path));
+
+        shortUrlService.deleteByShortUrlPath(path);
+        assertEquals(0, count(primary, path));
+    }
+
+    @Test
+    public void lookupOfPathCreatedOnAnotherNode_findsIt() {
+        insert(primary, "otherNode", "http://www.example.com/other");
+        shortUrlPathFilter.sync();
+
+        assertEquals("http://www.example.com/other",
+                     shortUrlService.findRedirectByShortUrlPath("otherNode")
+                                    .getRedirectTo());
+        assertEquals("http://www.example.com/other",
+                     shortUrlService.findByShortUrlPath("otherNode")
+                                    .getRedirectTo());
+        assertEquals(0, shortUrlService.countClicks("otherNode"));
+    }
+
+    @Test
+    public void lookupOfPathNeverCreated_findsNothing() {
+        insert(primary, "otherNode", "http://www.example.com/other");
+        shortUrlPathFilter.sync();
+
+        assertNull(shortUrlService.findRedirectByShortUrlPath("neverCreated"));
+    }
+
+    private static void insert(final JdbcTemplate database, final String path,
+                               final String redirectTo) {
+        Date now = new Date();
+        database.update("insert into short_url (id, short_url_path,"
+                       + " redirect_to, created, last_updated)"
+                       + " values (1000000, ?, ?, ?, ?)",
+                       path, redirectTo, now, now);
+    }
+
+    private static int count(final JdbcTemplate database,
+                             final String path) {
+        return database.queryForObject(
+                    "select count(*) from short_url where short_url_path = ?",
+                    Integer.class, path);
+    }
+}
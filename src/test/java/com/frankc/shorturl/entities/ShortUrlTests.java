@@ -72,4 +72,20 @@ public class ShortUrlTests {
         assertTrue("Invalid redirectTo returned",
                 newShortUrl.getRedirectTo().equals(TEST_REDIRECTTO));
     }
+
+    @Test
+    public void setRedirectTo_keepsOnlyLongUrlsOutOfLine() throws Exception {
+        StringBuilder longUrl = new StringBuilder(TEST_REDIRECTTO + "/?q=");
+        while (longUrl.length() <= ShortUrl.MAX_INLINE_REDIRECT_TO_LENGTH) {
+            longUrl.append('a');
+        }
+        ShortUrl newShortUrl = new ShortUrl(longUrl.toString());
+
+        assertTrue("Long redirectTo should be returned",
+                   newShortUrl.getRedirectTo().equals(longUrl.toString()));
+
+        newShortUrl.setRedirectTo(TEST_REDIRECTTO);
+        assertTrue("Short redirectTo should replace the long one",
+                   newShortUrl.getRedirectTo().equals(TEST_REDIRECTTO));
+    }
 }
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.importer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+/**
+ * Unit Tests for ImportRecordReader.
+ *
+ * @author Frank Callaly
+ */
+public class ImportRecordReaderTests {
+
+    @Test
+    public void next_readsCsvSkippingHeaderAndBlankLines()
+                                                    throws IOException {
+        ImportRecordReader reader = new ImportRecordReader(
+                new StringReader("redirectTo,shortUrlPath\r\n"
+                                 + "http://www.csv1.com,abc123\r\n"
+                                 + "\r\n"
+                                 + "\"http://www.csv2.com/?a=1,b=\"\"2\"\"\"\n"
+                                 + "http://www.csv3.com,"),
+                ImportFormat.CSV);
+
+        ImportRecord first = reader.next();
+        assertEquals(2, first.getLineNumber());
+        assertEquals("http://www.csv1.com", first.getRedirectTo());
+        assertEquals("abc123", first.getShortUrlPath());
+
+        ImportRecord second = reader.next();
+        assertEquals(4, second.getLineNumber());
+        assertEquals("http://www.csv2.com/?a=1,b=\"2\"",
+                     second.getRedirectTo());
+        assertNull(second.getShortUrlPath());
+
+        ImportRecord third = reader.next();
+        assertEquals("http://www.csv3.com", third.getRedirectTo());
+        assertNull(third.getShortUrlPath());
+
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void next_readsNdjsonObjectsAndStrings() throws IOException {
+        ImportRecordReader reader = new ImportRecordReader(
+                new StringReader("{\"redirectTo\":\"http://www.json1.com\","
+                                 + "\"shortUrlPath\":\"abc123\"}\n"
+                                 + "\"http://www.json2.com\"\n"
+                                 + "{not json\n"),
+                ImportFormat.NDJSON);
+
+        ImportRecord first = reader.next();
+        assertEquals("http://www.json1.com", first.getRedirectTo());
+        assertEquals("abc123", first.getShortUrlPath());
+
+        ImportRecord second = reader.next();
+        assertEquals("http://www.json2.com", second.getRedirectTo());
+        assertNull(second.getShortUrlPath());
+
+        ImportRecord malformed = reader.next();
+        assertEquals(3, malformed.getLineNumber());
+        assertNull(malformed.getRedirectTo());
+
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void next_overlongLineIsMalformed() throws IOException {
+        StringBuilder input = new StringBuilder("http://www.long.com/");
+        for (int i = 0; i < ImportRecordReader.MAX_LINE_LENGTH; ++i) {
+            input.append('a');
+        }
+        input.append("\nhttp://www.short.com\n");
+
+        ImportRecordReader reader = new ImportRecordReader(
+                new StringReader(input.toString()), ImportFormat.CSV);
+
+        assertNull(reader.next().getRedirectTo());
+        assertEquals("http://www.short.com", reader.next().getRedirectTo());
+        assertNull(reader.next());
+    }
+}
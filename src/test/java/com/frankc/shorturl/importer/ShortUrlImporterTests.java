@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.importer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.frankc.shorturl.repositories.ClickCountRepo;
+import com.frankc.shorturl.repositories.RedirectPrefixRepo;
+import com.frankc.shorturl.repositories.ShortUrlRepo;
+
+/**
+ * Unit Tests for ShortUrlImporter.
+ *
+ * @author Frank Callaly
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@TestPropertySource(properties = {
+        "com.frankc.shorturl.importer.batchSize="
+            + ShortUrlImporterTests.BATCH_SIZE,
+        "com.frankc.shorturl.importer.maxBatchesInFlight="
+            + ShortUrlImporterTests.MAX_BATCHES_IN_FLIGHT})
+@ActiveProfiles("nojpa")
+public class ShortUrlImporterTests {
+
+    static final int BATCH_SIZE = 10;
+
+    static final int MAX_BATCHES_IN_FLIGHT = 2;
+
+    @Autowired
+    private ShortUrlImporter shortUrlImporter;
+
+    @MockBean
+    private ShortUrlRepo mockShortUrlRepo;
+
+    @MockBean
+    private ClickCountRepo mockClickCountRepo;
+
+    @MockBean
+    private RedirectPrefixRepo mockRedirectPrefixRepo;
+
+    @Test
+    public void importShortUrls_reportsEachFailureAndSummary()
+                                                    throws IOException {
+        when(mockShortUrlRepo.saveAll(any()))
+             .thenAnswer(invocation -> invocation.getArgument(0));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        ImportProgress progress;
+        try (ImportReportWriter report = new ImportReportWriter(out, false)) {
+            progress = shortUrlImporter.importShortUrls(
+                    new StringReader("http://www.import1.com,keepMe1\n"
+                                     + "notAUrl\n"
+                                     + "http://www.import2.com,bad-path\n"
+                                     + "www.import3.com\n"),
+                    ImportFormat.CSV, true, report);
+        }
+
+        assertEquals(4, progress.getRead());
+        assertEquals(2, progress.getCreated());
+        assertEquals(2, progress.getInvalid());
+
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8)
+                                .split("\n");
+        assertEquals("Two failures, one progress and a summary line",
+                     4, lines.length);
+        assertTrue(lines[0], lines[0].contains("\"line\":2"));
+        assertTrue(lines[1],
+                   lines[1].contains("\"shortUrlPath\":\"bad-path\""));
+        assertTrue(lines[3], lines[3].startsWith("{\"type\":\"summary\""));
+    }
+
+    @Test
+    public void importShortUrls_boundsRecordsReadAheadOfWrites()
+                                                    throws IOException {
+        int numRecords = 50 * BATCH_SIZE;
+        AtomicInteger linesRead = new AtomicInteger();
+        AtomicInteger linesWritten = new AtomicInteger();
+        AtomicInteger maxReadAhead = new AtomicInteger();
+
+        when(mockShortUrlRepo.saveAll(any())).thenAnswer(invocation -> {
+            Iterable<?> batch = invocation.getArgument(0);
+            batch.forEach(shortUrl -> linesWritten.incrementAndGet());
+            return batch;
+        });
+
+        Reader in = new Reader() {
+            private final char[] line = "http://www.example.com\n"
+                                                .toCharArray();
+            private int pos = line.length;
+
+            public int read(final char[] buf, final int off, final int len) {
+                if (pos == line.length) {
+                    if (linesRead.get() == numRecords) {
+                        return -1;
+                    }
+                    linesRead.incrementAndGet();
+                    maxReadAhead.accumulateAndGet(
+                            linesRead.get() - linesWritten.get(), Math::max);
+                    pos = 0;
+                }
+                int n = Math.min(len, line.length - pos);
+                System.arraycopy(line, pos, buf, off, n);
+                pos += n;
+                return n;
+            }
+
+            public void close() { }
+        };
+
+        ImportProgress progress = shortUrlImporter.importShortUrls(
+                in, ImportFormat.CSV, false, new ImportReportWriter(
+                                        new ByteArrayOutputStream(), false));
+
+        assertEquals(numRecords, progress.getCreated());
+        verify(mockShortUrlRepo, times(50)).saveAll(any());
+        assertTrue("Read ahead of writes should be bounded: "
+                   + maxReadAhead.get(),
+                   maxReadAhead.get()
+                        <= (MAX_BATCHES_IN_FLIGHT + 1) * BATCH_SIZE + 1);
+    }
+}
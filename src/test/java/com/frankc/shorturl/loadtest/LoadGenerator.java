@@ -0,0 +1,445 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.frankc.shorturl.ShortUrlApplication;
+import com.frankc.shorturl.cache.ShortUrlPathFilter;
+import com.frankc.shorturl.controllers.ShortUrlController;
+
+/**
+ * End to end load test that starts the application on an in-memory H2
+ * database (the loadtest profile), seeds it with short URLs and then drives
+ * a mix of redirects, misses and creates over HTTP.
+ *
+ * Requests are started at a fixed rate whether or not earlier ones have
+ * completed (an open model), and each latency is measured from when the
+ * request was due to start rather than when a connection became free, so a
+ * stall shows up in the percentiles instead of lowering the request rate.
+ * Redirects pick seeded short URLs with a Zipf distribution, misses use
+ * paths that do not exist and creates POST a new redirect.
+ *
+ * Options, all optional, are given as --load.name=value and any other
+ * arguments are passed to the application, e.g.
+ *
+ * java -cp &lt;test classpath&gt; com.frankc.shorturl.loadtest.LoadGenerator
+ * --load.seed=1000000 --load.rate=5000 --load.durationSeconds=60
+ * --com.frankc.shorturl.cache.maximumSize=10000
+ *
+ * <ul>
+ * <li>load.seed - number of short URLs to insert before starting</li>
+ * <li>load.rate - requests started per second</li>
+ * <li>load.warmupSeconds - seconds run before recording latencies</li>
+ * <li>load.durationSeconds - seconds of recorded load</li>
+ * <li>load.missRatio - fraction of requests for unknown paths</li>
+ * <li>load.createRatio - fraction of requests creating a short URL</li>
+ * <li>load.zipfExponent - skew of the redirect popularity</li>
+ * <li>load.connections - concurrent requests before requests queue</li>
+ * <li>load.histogramDir - directory to write each operation's latency
+ * distribution to as an HdrHistogram .hgrm file</li>
+ * </ul>
+ *
+ * @author Frank Callaly
+ */
+public final class LoadGenerator {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(LoadGenerator.class);
+
+    public static final String PROFILE = "loadtest";
+
+    private static final String SEED_PATH_PREFIX = "s";
+
+    private static final String MISS_PATH_PREFIX = "m";
+
+    private static final String REDIRECT_TO = "https://www.example.com/";
+
+    private static final int SEED_BATCH_SIZE = 10000;
+
+    // spreads popular ranks over the seeded paths instead of the first few
+    private static final long RANK_SCRAMBLE = 2654435761L;
+
+    private static final int HISTOGRAM_DIGITS = 3;
+
+    private static final double NANOS_PER_MS = 1e6;
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+    /** Operations in the request mix. */
+    enum Operation {
+        REDIRECT(HttpURLConnection.HTTP_MOVED_PERM),
+        MISS(HttpURLConnection.HTTP_NOT_FOUND),
+        CREATE(HttpURLConnection.HTTP_CREATED);
+
+        private final int expectedStatus;
+
+        Operation(final int expectedStatus) {
+            this.expectedStatus = expectedStatus;
+        }
+    }
+
+    /** Latencies and errors of one operation. */
+    private static final class OperationStats {
+
+        private final Recorder latencies = new Recorder(HISTOGRAM_DIGITS);
+
+        private final LongAdder errors = new LongAdder();
+    }
+
+    private final long seed;
+
+    private final int rate;
+
+    private final int warmupSeconds;
+
+    private final int durationSeconds;
+
+    private final double missRatio;
+
+    private final double createRatio;
+
+    private final int connections;
+
+    private final String histogramDir;
+
+    private final ZipfSampler zipfSampler;
+
+    private final Map<Operation, OperationStats> stats =
+            new EnumMap<>(Operation.class);
+
+    private String baseUrl;
+
+    private LoadGenerator(final PropertySource<?> options) {
+        seed = Long.parseLong(option(options, "seed", "1000000"));
+        rate = Integer.parseInt(option(options, "rate", "1000"));
+        warmupSeconds =
+                Integer.parseInt(option(options, "warmupSeconds", "10"));
+        durationSeconds =
+                Integer.parseInt(option(options, "durationSeconds", "60"));
+        missRatio = Double.parseDouble(option(options, "missRatio", "0.05"));
+        createRatio =
+                Double.parseDouble(option(options, "createRatio", "0.05"));
+        connections = Integer.parseInt(option(options, "connections", "200"));
+        histogramDir = option(options, "histogramDir", null);
+        zipfSampler = new ZipfSampler(seed, Double.parseDouble(
+                option(options, "zipfExponent", "1.0")));
+
+        if (seed < 1 || rate < 1 || connections < 1
+                || missRatio < 0 || createRatio < 0
+                || missRatio + createRatio > 1) {
+            throw new IllegalArgumentException(
+                    "seed, rate and connections must be at least 1 and "
+                    + "missRatio + createRatio between 0 and 1");
+        }
+
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+    }
+
+    private static String option(final PropertySource<?> options,
+                                 final String name,
+                                 final String defaultValue) {
+        Object value = options.getProperty("load." + name);
+        return value == null ? defaultValue : value.toString();
+    }
+
+    public static void main(final String[] args) throws Exception {
+        LoadGenerator loadGenerator = new LoadGenerator(
+                new SimpleCommandLinePropertySource(args));
+
+        // HttpURLConnection only keeps 5 idle connections per host by default
+        System.setProperty("http.maxConnections",
+                           String.valueOf(loadGenerator.connections));
+
+        ConfigurableApplicationContext context =
+                new SpringApplicationBuilder(ShortUrlApplication.class)
+                    .profiles(PROFILE)
+                    .properties("server.port=0")
+                    .run(args);
+
+        // exit explicitly as the embedded Tomcat's await thread can outlive
+        // the closed context
+        try {
+            loadGenerator.baseUrl = "http://localhost:" + context
+                    .getEnvironment().getProperty("local.server.port");
+
+            loadGenerator.seed(context.getBean(JdbcTemplate.class));
+            context.getBean(ShortUrlPathFilter.class).rebuild();
+
+            loadGenerator.run();
+            loadGenerator.report();
+        } catch (Exception e) {
+            LOG.error("Load test failed", e);
+            System.exit(SpringApplication.exit(context, () -> 1));
+        }
+        System.exit(SpringApplication.exit(context));
+    }
+
+    /**
+     * Insert the seed short URLs directly, far faster than creating them
+     * through the API, then move the id sequence past them.
+     */
+    private void seed(final JdbcTemplate jdbcTemplate) {
+        long startTime = System.currentTimeMillis();
+        Timestamp created = new Timestamp(startTime);
+
+        for (long first = 1; first <= seed; first += SEED_BATCH_SIZE) {
+            final long batchFirst = first;
+            final int batchSize =
+                    (int) Math.min(SEED_BATCH_SIZE, seed - first + 1);
+
+            jdbcTemplate.batchUpdate(
+                "INSERT INTO short_url (id, short_url_path, redirect_to, "
+                + "created, last_updated) VALUES (?, ?, ?, ?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(final PreparedStatement ps,
+                                          final int i) throws SQLException {
+                        long id = batchFirst + i;
+                        ps.setLong(1, id);
+                        ps.setString(2, seedPath(id - 1));
+                        ps.setString(3, REDIRECT_TO + id);
+                        ps.setTimestamp(4, created);
+                        ps.setTimestamp(5, created);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return batchSize;
+                    }
+                });
+        }
+        jdbcTemplate.execute("ALTER SEQUENCE hibernate_sequence RESTART WITH "
+                             + (seed + 1));
+
+        LOG.info("Seeded {} short URLs in {}ms",
+                 seed, System.currentTimeMillis() - startTime);
+    }
+
+    private static String seedPath(final long index) {
+        return SEED_PATH_PREFIX + Long.toString(index, Character.MAX_RADIX);
+    }
+
+    /**
+     * Start requests at the configured rate until the warmup and duration
+     * have passed, then wait for those in flight to complete.
+     */
+    private void run() throws InterruptedException {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                connections, connections, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long startTime = System.nanoTime();
+        long recordFrom = startTime + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long endTime = recordFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        int maxQueued = 0;
+
+        LOG.info("Running {} requests/s for {}s warmup and {}s recorded",
+                 rate, warmupSeconds, durationSeconds);
+
+        for (long i = 0;; i++) {
+            long intendedStart = startTime + i * intervalNanos;
+            if (intendedStart >= endTime) {
+                break;
+            }
+
+            long delay = intendedStart - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+
+            executor.execute(newRequest(intendedStart,
+                                        intendedStart >= recordFrom));
+            maxQueued = Math.max(maxQueued, executor.getQueue().size());
+        }
+
+        executor.shutdown();
+        if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS,
+                                       TimeUnit.SECONDS)) {
+            LOG.warn("Requests still running after {}s",
+                     SHUTDOWN_TIMEOUT_SECONDS);
+            executor.shutdownNow();
+        }
+
+        if (maxQueued > 0) {
+            LOG.info("Up to {} requests waited for one of the {} connections",
+                     maxQueued, connections);
+        }
+    }
+
+    private Runnable newRequest(final long intendedStart,
+                                final boolean record) {
+        Random random = ThreadLocalRandom.current();
+        double choice = random.nextDouble();
+
+        final Operation operation;
+        final String path;
+        if (choice < missRatio) {
+            operation = Operation.MISS;
+            path = MISS_PATH_PREFIX + Long.toString(
+                    random.nextLong() & Long.MAX_VALUE, Character.MAX_RADIX);
+        } else if (choice < missRatio + createRatio) {
+            operation = Operation.CREATE;
+            path = null;
+        } else {
+            operation = Operation.REDIRECT;
+            long rank = zipfSampler.sample(random);
+            path = seedPath((rank - 1) * RANK_SCRAMBLE % seed);
+        }
+
+        return () -> {
+            OperationStats operationStats = stats.get(operation);
+            boolean ok;
+            try {
+                ok = send(operation, path) == operation.expectedStatus;
+            } catch (IOException e) {
+                ok = false;
+            }
+
+            if (record) {
+                operationStats.latencies.recordValue(
+                        System.nanoTime() - intendedStart);
+                if (!ok) {
+                    operationStats.errors.increment();
+                }
+            }
+        };
+    }
+
+    private int send(final Operation operation, final String path)
+                     throws IOException {
+        HttpURLConnection connection;
+        if (operation == Operation.CREATE) {
+            connection = (HttpURLConnection) new URL(
+                    baseUrl + ShortUrlController.BASE_PATH).openConnection();
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
+        } else {
+            connection = (HttpURLConnection) new URL(
+                    baseUrl + "/" + path).openConnection();
+            connection.setInstanceFollowRedirects(false);
+        }
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+
+        if (operation == Operation.CREATE) {
+            byte[] body = ("{\"redirectTo\":\"" + REDIRECT_TO
+                           + ThreadLocalRandom.current().nextLong() + "\"}")
+                          .getBytes(StandardCharsets.UTF_8);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+
+        int status = connection.getResponseCode();
+
+        // read the whole response so the connection can be reused
+        InputStream in = status < HttpURLConnection.HTTP_BAD_REQUEST
+                         ? connection.getInputStream()
+                         : connection.getErrorStream();
+        if (in != null) {
+            try {
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer) != -1) {
+                    continue;
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return status;
+    }
+
+    private void report() throws IOException {
+        PrintStream out = System.out;
+        out.printf("%n%-9s %10s %8s %10s %9s %9s %9s %9s %9s %9s%n",
+                   "operation", "count", "errors", "ops/s", "p50 ms",
+                   "p90 ms", "p99 ms", "p99.9 ms", "p99.99 ms", "max ms");
+
+        for (Operation operation : Operation.values()) {
+            OperationStats operationStats = stats.get(operation);
+            Histogram histogram =
+                    operationStats.latencies.getIntervalHistogram();
+
+            out.printf("%-9s %10d %8d %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f "
+                       + "%9.3f%n",
+                       operation.name().toLowerCase(),
+                       histogram.getTotalCount(),
+                       operationStats.errors.sum(),
+                       (double) histogram.getTotalCount() / durationSeconds,
+                       percentile(histogram, 50),
+                       percentile(histogram, 90),
+                       percentile(histogram, 99),
+                       percentile(histogram, 99.9),
+                       percentile(histogram, 99.99),
+                       histogram.getMaxValue() / NANOS_PER_MS);
+
+            if (histogramDir != null) {
+                File file = new File(histogramDir,
+                        operation.name().toLowerCase() + ".hgrm");
+                try (PrintStream hgrm = new PrintStream(file, "UTF-8")) {
+                    histogram.outputPercentileDistribution(hgrm,
+                                                           NANOS_PER_MS);
+                }
+            }
+        }
+    }
+
+    private static double percentile(final Histogram histogram,
+                                     final double percentile) {
+        return histogram.getValueAtPercentile(percentile) / NANOS_PER_MS;
+    }
+}
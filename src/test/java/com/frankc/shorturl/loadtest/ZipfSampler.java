@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.loadtest;
+
+import java.util.Random;
+
+/**
+ * Samples ranks 1 to n with probability proportional to 1 / rank^exponent,
+ * so that a few short URLs take most of the redirects as they do in
+ * practice.
+ *
+ * Uses the rejection-inversion method of Hörmann and Derflinger, which
+ * needs constant time and memory per sample however large n is.
+ *
+ * @author Frank Callaly
+ */
+public class ZipfSampler {
+
+    private static final double TAYLOR_THRESHOLD = 1e-8;
+
+    private final long numberOfElements;
+
+    private final double exponent;
+
+    private final double hIntegralX1;
+
+    private final double hIntegralNumberOfElements;
+
+    private final double s;
+
+    /**
+     * @param numberOfElements number of ranks to sample from
+     * @param exponent of the distribution, greater than 0
+     */
+    public ZipfSampler(final long numberOfElements, final double exponent) {
+        if (numberOfElements < 1) {
+            throw new IllegalArgumentException(
+                    "numberOfElements must be at least 1");
+        }
+        if (exponent <= 0) {
+            throw new IllegalArgumentException(
+                    "exponent must be greater than 0");
+        }
+
+        this.numberOfElements = numberOfElements;
+        this.exponent = exponent;
+        hIntegralX1 = hIntegral(1.5) - 1;
+        hIntegralNumberOfElements = hIntegral(numberOfElements + 0.5);
+        s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    /**
+     * @param random source of uniform values
+     * @return a rank from 1 to numberOfElements, 1 being the most likely
+     */
+    public long sample(final Random random) {
+        while (true) {
+            double u = hIntegralNumberOfElements + random.nextDouble()
+                       * (hIntegralX1 - hIntegralNumberOfElements);
+            double x = hIntegralInverse(u);
+            long k = Math.max(1, Math.min(numberOfElements,
+                                          (long) (x + 0.5)));
+
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                return k;
+            }
+        }
+    }
+
+    private double hIntegral(final double x) {
+        double logX = Math.log(x);
+        return helper2((1 - exponent) * logX) * logX;
+    }
+
+    private double h(final double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    private double hIntegralInverse(final double x) {
+        double t = Math.max(-1, x * (1 - exponent));
+        return Math.exp(helper1(t) * x);
+    }
+
+    /** log(1 + x) / x, accurate for x near 0. */
+    private static double helper1(final double x) {
+        if (Math.abs(x) > TAYLOR_THRESHOLD) {
+            return Math.log1p(x) / x;
+        }
+        return 1 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+    }
+
+    /** (exp(x) - 1) / x, accurate for x near 0. */
+    private static double helper2(final double x) {
+        if (Math.abs(x) > TAYLOR_THRESHOLD) {
+            return Math.expm1(x) / x;
+        }
+        return 1 + x * 0.5 * (1 + x * 1.0 / 3.0 * (1 + 0.25 * x));
+    }
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.logstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Unit Tests for IdIndex.
+ *
+ * @author Frank Callaly
+ */
+public class IdIndexTests {
+
+    // 4 entries per chunk, so chunks are squeezed and dropped often
+    private static final int CHUNK_ENTRIES_BITS = 2;
+
+    @Test
+    public void addRemove_pageLikeTreeMap() {
+        IdIndex index = new IdIndex(CHUNK_ENTRIES_BITS);
+        TreeMap<Long, Long> expected = new TreeMap<>();
+        Random random = new Random(42);
+        long nextId = 1;
+
+        for (int i = 0; i < 5000; ++i) {
+            if (random.nextInt(3) == 0 && !expected.isEmpty()) {
+                long id = 1 + random.nextInt((int) nextId);
+                assertEquals(expected.remove(id) != null, index.remove(id));
+            } else {
+                expected.put(nextId, nextId * 10);
+                index.add(nextId, nextId * 10);
+                ++nextId;
+            }
+        }
+
+        assertEquals(expected.size(), index.size());
+        for (long afterId = 0; afterId < nextId; afterId += 97) {
+            assertEquals(firstAfter(expected, afterId, 20),
+                         collectAfter(index, afterId, 20));
+        }
+        List<Long> all = collectAfter(index, 0, expected.size() + 1);
+        for (int offset = 0; offset < expected.size(); offset += 37) {
+            assertEquals(all.subList(offset,
+                                     Math.min(offset + 5, all.size())),
+                         collectFromOffset(index, offset, 5));
+        }
+    }
+
+    @Test
+    public void sort_ordersEntriesAddedOutOfOrder() {
+        IdIndex index = new IdIndex(CHUNK_ENTRIES_BITS);
+        List<Long> ids = new ArrayList<>();
+        Random random = new Random(42);
+        for (long id = 1; id <= 100; ++id) {
+            ids.add(id);
+        }
+        Collections.shuffle(ids, random);
+        for (long id : ids) {
+            index.add(id, id * 10);
+        }
+
+        index.sort();
+
+        List<Long> locations = collectAfter(index, 50, 100);
+        assertEquals(50, locations.size());
+        for (int i = 0; i < 50; ++i) {
+            assertEquals(Long.valueOf((51 + i) * 10), locations.get(i));
+        }
+    }
+
+    @Test
+    public void replace_movesOnlyLiveEntries() {
+        IdIndex index = new IdIndex(CHUNK_ENTRIES_BITS);
+        index.add(1, 10);
+        index.add(2, 20);
+        index.remove(2);
+
+        assertTrue(index.replace(1, 11));
+        assertFalse(index.replace(2, 21));
+        assertFalse(index.replace(3, 31));
+        assertEquals(Long.valueOf(11), collectAfter(index, 0, 5).get(0));
+    }
+
+    private static List<Long> firstAfter(final TreeMap<Long, Long> map,
+                                         final long afterId,
+                                         final int limit) {
+        List<Long> locations = new ArrayList<>();
+        for (long location : map.tailMap(afterId, false).values()) {
+            if (locations.size() == limit) {
+                break;
+            }
+            locations.add(location);
+        }
+        return locations;
+    }
+
+    private static List<Long> collectAfter(final IdIndex index,
+                                           final long afterId,
+                                           final int limit) {
+        List<Long> locations = new ArrayList<>();
+        index.forEachAfter(afterId, location -> {
+            locations.add(location);
+            return locations.size() < limit;
+        });
+        return locations;
+    }
+
+    private static List<Long> collectFromOffset(final IdIndex index,
+                                                final long offset,
+                                                final int limit) {
+        List<Long> locations = new ArrayList<>();
+        index.forEachFromOffset(offset, location -> {
+            locations.add(location);
+            return locations.size() < limit;
+        });
+        return locations;
+    }
+}
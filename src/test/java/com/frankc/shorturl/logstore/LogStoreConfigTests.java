@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.logstore;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Unit Tests for LogStoreConfig.
+ *
+ * @author Frank Callaly
+ */
+public class LogStoreConfigTests {
+
+    private LogStoreConfig logStoreConfig;
+
+    private MockEnvironment environment;
+
+    @Before
+    public void setUp() {
+        logStoreConfig = new LogStoreConfig();
+        environment = new MockEnvironment();
+        environment.setActiveProfiles("logstore");
+        ReflectionTestUtils.setField(logStoreConfig, "environment",
+                                     environment);
+    }
+
+    @Test
+    public void checkSupported_allowsDefaults() {
+        logStoreConfig.checkSupported();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void checkSupported_failsWithDedup() {
+        ReflectionTestUtils.setField(logStoreConfig, "dedupEnabled", true);
+        logStoreConfig.checkSupported();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void checkSupported_failsWithClicks() {
+        ReflectionTestUtils.setField(logStoreConfig, "clicksEnabled", true);
+        logStoreConfig.checkSupported();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void checkSupported_failsWithReactive() {
+        environment.setActiveProfiles("logstore", "reactive");
+        logStoreConfig.checkSupported();
+    }
+}
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.logstore;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.frankc.shorturl.services.ShortUrlServiceContractTests;
+
+/**
+ * Unit Tests for LogStoreShortUrlService, running the ShortUrlService
+ * contract against a LogStore.
+ *
+ * @author Frank Callaly
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+    "com.frankc.shorturl.logstore.directory="
+        + "target/logstore-tests/${random.uuid}",
+    "com.frankc.shorturl.logstore.segmentSize=4096",
+    "com.frankc.shorturl.service.exportPageSize=2"
+})
+@ActiveProfiles("logstore")
+@DirtiesContext
+public class LogStoreShortUrlServiceTests
+        extends ShortUrlServiceContractTests {
+
+    @Test
+    public void countShortUrls_isNotCached() {
+        shortUrlService.createShortUrl("http://www.example.com/1");
+        assertEquals(1, shortUrlService.countShortUrls());
+
+        shortUrlService.createShortUrl("http://www.example.com/2");
+        assertEquals(2, shortUrlService.countShortUrls());
+    }
+}
@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.logstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.frankc.shorturl.entities.ShortUrl;
+
+/**
+ * Unit Tests for LogStore.
+ *
+ * @author Frank Callaly
+ */
+public class LogStoreTests {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    private LogStore logStore;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.getRoot().toPath();
+        logStore = new LogStore(directory, SEGMENT_SIZE, 16);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        logStore.close();
+    }
+
+    @Test
+    public void putIfAbsent_storesOnlyFirstShortUrlForPath() {
+        ShortUrl first = put("abc", "http://www.example.com/1", 60);
+        ShortUrl second = createShortUrl("abc", "http://www.example.com/2");
+
+        assertFalse("Taken path should be refused",
+                    logStore.putIfAbsent(second));
+        ShortUrl found = logStore.get("abc");
+        assertEquals("http://www.example.com/1", found.getRedirectTo());
+        assertEquals(Integer.valueOf(60), found.getCacheMaxAge());
+        assertEquals(first.getId(), found.getId());
+        assertEquals(first.getCreated(), found.getCreated());
+        assertNull(logStore.get("abd"));
+    }
+
+    @Test
+    public void delete_removesShortUrl() {
+        put("abc", "http://www.example.com/1", null);
+
+        assertTrue(logStore.delete("abc"));
+        assertFalse(logStore.delete("abc"));
+        assertNull(logStore.get("abc"));
+        assertEquals(0, logStore.size());
+    }
+
+    @Test
+    public void reopen_replaysCreatesAndDeletes() throws IOException {
+        for (int i = 0; i < 200; ++i) {
+            put("p" + i, "http://www.example.com/" + i, i);
+        }
+        for (int i = 0; i < 200; i += 2) {
+            logStore.delete("p" + i);
+        }
+        ShortUrl recreated = put("p0", "http://www.example.com/again", null);
+
+        reopen();
+
+        assertEquals(101, logStore.size());
+        assertEquals("http://www.example.com/again",
+                     logStore.get("p0").getRedirectTo());
+        assertNull(logStore.get("p2"));
+        assertEquals(Integer.valueOf(3), logStore.get("p3").getCacheMaxAge());
+        assertTrue("Ids should continue after the replayed ones",
+                   put("new", "http://www.example.com/new", null).getId()
+                   > recreated.getId());
+    }
+
+    @Test
+    public void reopen_ignoresRecordDamagedByCrash() throws IOException {
+        put("a", "http://www.example.com/a", null);
+        put("b", "http://www.example.com/b", null);
+        logStore.close();
+
+        // corrupt the last byte of b's record, as a torn write would
+        Path segment = segmentFiles().get(0);
+        int end = 2 * recordLength("a", "http://www.example.com/a") - 1;
+        try (RandomAccessFile file =
+                    new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(end);
+            int last = file.read();
+            file.seek(end);
+            file.write(last ^ 0xff);
+        }
+
+        logStore = new LogStore(directory, SEGMENT_SIZE, 16);
+        assertEquals("http://www.example.com/a",
+                     logStore.get("a").getRedirectTo());
+        assertNull("Damaged record should be ignored", logStore.get("b"));
+
+        put("c", "http://www.example.com/c", null);
+        reopen();
+        assertEquals("Appends should go to a new segment",
+                     2, segmentFiles().size());
+        assertTrue(logStore.get("a") != null && logStore.get("c") != null);
+        assertNull(logStore.get("b"));
+    }
+
+    @Test
+    public void compact_keepsLiveShortUrlsAndDeletes() throws IOException {
+        for (int i = 0; i < 300; ++i) {
+            put("p" + i, "http://www.example.com/" + i, null);
+        }
+        for (int i = 0; i < 300; ++i) {
+            if (i % 10 != 0) {
+                logStore.delete("p" + i);
+            }
+        }
+        int numSegments = segmentFiles().size();
+
+        assertTrue("Mostly dead segments should be compacted",
+                   logStore.compact(0.5) > 0);
+        assertTrue(segmentFiles().size() < numSegments);
+
+        reopen();
+        assertEquals(30, logStore.size());
+        for (int i = 0; i < 300; ++i) {
+            assertEquals("Only live ShortUrls should remain: p" + i,
+                         i % 10 == 0, logStore.get("p" + i) != null);
+        }
+    }
+
+    @Test
+    public void reopen_pagesInIdOrderAfterCompaction() throws IOException {
+        for (int i = 0; i < 100; ++i) {
+            put("p" + i, "http://www.example.com/" + i, null);
+        }
+        for (int i = 0; i < 100; ++i) {
+            if (i % 10 != 0) {
+                logStore.delete("p" + i);
+            }
+        }
+        assertTrue(logStore.compact(0.5) > 0);
+        put("late", "http://www.example.com/late", null);
+
+        reopen();
+        List<ShortUrl> found = logStore.findAfterId(0, 100);
+
+        assertEquals(11, found.size());
+        for (int i = 0; i < 10; ++i) {
+            assertEquals("p" + (i * 10), found.get(i).getShortUrlPath());
+        }
+        assertEquals("late", found.get(10).getShortUrlPath());
+        assertEquals(logStore.get("late").getId(), logStore.lastId());
+    }
+
+    @Test
+    public void findAfterId_returnsLowestIdsInOrder() {
+        for (int i = 0; i < 50; ++i) {
+            put("p" + i, "http://www.example.com/" + i, null);
+        }
+        long afterId = logStore.get("p9").getId();
+
+        List<ShortUrl> found = logStore.findAfterId(afterId, 5);
+
+        assertEquals(5, found.size());
+        for (int i = 0; i < 5; ++i) {
+            assertEquals("p" + (10 + i), found.get(i).getShortUrlPath());
+        }
+        assertTrue(logStore.findAfterId(
+                    logStore.get("p49").getId(), 5).isEmpty());
+    }
+
+    @Test
+    public void findFromOffset_skipsDeletedShortUrls() {
+        for (int i = 0; i < 50; ++i) {
+            put("p" + i, "http://www.example.com/" + i, null);
+        }
+        for (int i = 0; i < 20; ++i) {
+            logStore.delete("p" + i);
+        }
+
+        List<ShortUrl> found = logStore.findFromOffset(10, 3);
+
+        assertEquals(3, found.size());
+        assertEquals("p30", found.get(0).getShortUrlPath());
+        assertEquals("p32", found.get(2).getShortUrlPath());
+        assertTrue(logStore.findFromOffset(30, 3).isEmpty());
+    }
+
+    private ShortUrl put(final String path, final String redirectTo,
+                         final Integer cacheMaxAge) {
+        ShortUrl shortUrl = createShortUrl(path, redirectTo);
+        shortUrl.setCacheMaxAge(cacheMaxAge);
+        assertTrue(logStore.putIfAbsent(shortUrl));
+        return shortUrl;
+    }
+
+    private ShortUrl createShortUrl(final String path,
+                                    final String redirectTo) {
+        ShortUrl shortUrl = new ShortUrl(redirectTo);
+        shortUrl.setShortUrlPath(path);
+        return shortUrl;
+    }
+
+    private void reopen() throws IOException {
+        logStore.close();
+        logStore = new LogStore(directory, SEGMENT_SIZE, 16);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static int recordLength(final String path,
+                                    final String redirectTo) {
+        return 39 + path.length() + 4 + redirectTo.length();
+    }
+}
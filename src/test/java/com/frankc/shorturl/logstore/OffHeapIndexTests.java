@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.logstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.LongPredicate;
+
+import org.junit.Test;
+
+/**
+ * Unit Tests for OffHeapIndex.
+ *
+ * @author Frank Callaly
+ */
+public class OffHeapIndexTests {
+
+    // few distinct hashes, so most keys collide and share probe runs
+    private static long hashOf(final long key) {
+        return key % 7;
+    }
+
+    // locations are key + 1, so the predicate can check the key
+    private static LongPredicate matches(final long key) {
+        return location -> location == key + 1;
+    }
+
+    @Test
+    public void putGetRemove_matchHashMapWithCollisionsAndGrowth() {
+        OffHeapIndex index = new OffHeapIndex(4);
+        long initialCapacity = index.capacity();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20000; ++i) {
+            long key = random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                Long removed = expected.remove(key);
+                assertEquals(removed == null ? 0L : (long) removed,
+                             index.remove(hashOf(key), matches(key)));
+            } else {
+                Long replaced = expected.put(key, key + 1);
+                assertEquals(replaced == null ? 0L : (long) replaced,
+                             index.put(hashOf(key), key + 1, matches(key)));
+            }
+        }
+
+        assertEquals(expected.size(), index.size());
+        assertTrue("Index should have grown",
+                   index.capacity() > initialCapacity);
+        for (long key = 0; key < 2000; ++key) {
+            assertEquals(expected.containsKey(key) ? key + 1 : 0,
+                         index.get(hashOf(key), matches(key)));
+        }
+
+        long[] count = new long[1];
+        index.forEach(location -> {
+            assertTrue(expected.containsKey(location - 1));
+            ++count[0];
+        });
+        assertEquals(expected.size(), count[0]);
+    }
+
+    @Test
+    public void put_resizesIncrementallyKeepingEntriesFound() {
+        OffHeapIndex index = new OffHeapIndex(100);
+        long initialCapacity = index.capacity();
+        long key = 0;
+        while (!index.isResizing()) {
+            index.put(key, key + 1, matches(key));
+            ++key;
+        }
+        assertEquals(initialCapacity * 2, index.capacity());
+
+        // entries are found in either table until the old one is emptied
+        long numKeys = key;
+        while (index.isResizing()) {
+            for (long k = 0; k < numKeys; ++k) {
+                assertEquals(k + 1, index.get(k, matches(k)));
+            }
+            assertEquals(1, index.remove(0, matches(0)));
+            assertEquals(0, index.put(0, 1, matches(0)));
+        }
+
+        assertEquals(numKeys, index.size());
+        for (long k = 0; k < numKeys; ++k) {
+            assertEquals(k + 1, index.get(k, matches(k)));
+        }
+    }
+
+    @Test
+    public void replace_movesOnlyExpectedLocation() {
+        OffHeapIndex index = new OffHeapIndex(16);
+        index.put(hashOf(1), 2, matches(1));
+        index.put(hashOf(8), 9, matches(8));
+
+        assertTrue(index.replace(hashOf(8), 9, 100));
+        assertTrue(!index.replace(hashOf(8), 9, 200));
+        assertEquals(100, index.get(hashOf(8), location -> location == 100));
+        assertEquals(2, index.get(hashOf(1), matches(1)));
+    }
+}
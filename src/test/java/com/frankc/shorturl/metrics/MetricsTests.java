@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.metrics;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.frankc.shorturl.controllers.ShortUrlController;
+
+/**
+ * Tests that request, repository, redirect and connection pool metrics are
+ * exported in Prometheus format, against the embedded database.
+ *
+ * @author Frank Callaly
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+public class MetricsTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void prometheus_exportsTimingsAndCounters() throws Exception {
+        mockMvc.perform(post(ShortUrlController.BASE_PATH)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"redirectTo\":\"http://www.m.com\"}"))
+               .andExpect(status().isCreated());
+        mockMvc.perform(get("/NONEXISTINGPATH"))
+               .andExpect(status().isNotFound());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+               .andExpect(status().isOk())
+               .andExpect(content().string(containsString(
+                       "http_server_requests_seconds{exception=\"None\","
+                       + "method=\"POST\",outcome=\"SUCCESS\","
+                       + "status=\"201\",uri=\"/short-urls/\","
+                       + "quantile=\"0.99\",}")))
+               .andExpect(content().string(containsString(
+                       "http_server_requests_seconds_bucket{")))
+               .andExpect(content().string(containsString(
+                       "shorturl_repository_seconds_count{exception=\"None\","
+                       + "method=\"save\",repository=\"ShortUrlRepo\",}")))
+               .andExpect(content().string(containsString(
+                       "shorturl_redirects_total{outcome=\"not_found\",}")))
+               .andExpect(content().string(containsString(
+                       "hikaricp_connections_active{")))
+               .andExpect(content().string(containsString(
+                       "hikaricp_connections_acquire_seconds{")));
+    }
+}
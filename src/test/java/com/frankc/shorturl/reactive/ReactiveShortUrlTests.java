@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.reactive;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import com.frankc.shorturl.controllers.ShortUrlController;
+import com.frankc.shorturl.entities.ShortUrl;
+
+/**
+ * Tests for the reactive runtime, running end to end on Netty against the
+ * embedded database.
+ *
+ * @author Frank Callaly
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+                properties = "spring.main.web-application-type=reactive")
+@ActiveProfiles("reactive")
+public class ReactiveShortUrlTests {
+
+    private static final String TEST_REDIRECTTO = "http://www.reactive.com";
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Test
+    public void createShortUrl_thenRedirects() {
+        String shortUrlPath = createShortUrl(TEST_REDIRECTTO);
+
+        webTestClient.get().uri("/" + shortUrlPath)
+                     .exchange()
+                     .expectStatus().isEqualTo(301)
+                     .expectHeader().valueEquals("Location", TEST_REDIRECTTO);
+    }
+
+    @Test
+    public void redirectByShortUrl_unknownPathReturnsNotFound() {
+        webTestClient.get().uri("/NONEXISTINGPATH")
+                     .exchange()
+                     .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void findShortUrl_returnsHalResource() {
+        String shortUrlPath = createShortUrl(TEST_REDIRECTTO);
+
+        webTestClient.get().uri(ShortUrlController.BASE_PATH + shortUrlPath)
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectBody()
+                     .jsonPath("$.shortUrl.redirectTo")
+                         .isEqualTo(TEST_REDIRECTTO)
+                     .jsonPath("$._links.exec-redirect.href")
+                         .value(href -> assertTrue(
+                                 href.toString().endsWith("/"
+                                                          + shortUrlPath)));
+    }
+
+    @Test
+    public void findShortUrl_unknownPathReturnsNotFound() {
+        webTestClient.get()
+                     .uri(ShortUrlController.BASE_PATH + "NONEXISTINGPATH")
+                     .exchange()
+                     .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void findAllShortUrls_returnsCollection() {
+        createShortUrl(TEST_REDIRECTTO);
+
+        webTestClient.get().uri(ShortUrlController.BASE_PATH)
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectBody()
+                     .jsonPath("$._embedded").exists()
+                     .jsonPath("$._links.self.href").exists();
+    }
+
+    @Test
+    public void findAllShortUrls_negativePageSizeReturnsBadRequest() {
+        webTestClient.get()
+                     .uri(ShortUrlController.BASE_PATH + "?pageSize=-1")
+                     .exchange()
+                     .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void createShortUrl_invalidRedirectReturnsBadRequest() {
+        webTestClient.post().uri(ShortUrlController.BASE_PATH)
+                     .contentType(MediaType.APPLICATION_JSON)
+                     .syncBody(new ShortUrl("notAUrl"))
+                     .exchange()
+                     .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void createShortUrl_withPathReturnsConflict() {
+        ShortUrl shortUrl = new ShortUrl(TEST_REDIRECTTO);
+        shortUrl.setShortUrlPath("abcd");
+
+        webTestClient.post().uri(ShortUrlController.BASE_PATH)
+                     .contentType(MediaType.APPLICATION_JSON)
+                     .syncBody(shortUrl)
+                     .exchange()
+                     .expectStatus().isEqualTo(409);
+    }
+
+    @Test
+    public void deleteShortUrl_thenNotFound() {
+        String shortUrlPath = createShortUrl(TEST_REDIRECTTO);
+
+        webTestClient.delete()
+                     .uri(ShortUrlController.BASE_PATH + shortUrlPath)
+                     .exchange()
+                     .expectStatus().isOk();
+
+        webTestClient.get().uri("/" + shortUrlPath)
+                     .exchange()
+                     .expectStatus().isNotFound();
+        webTestClient.delete()
+                     .uri(ShortUrlController.BASE_PATH + shortUrlPath)
+                     .exchange()
+                     .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void createShortUrls_insertsBatch() {
+        webTestClient.post().uri(ShortUrlController.BASE_PATH + "batch")
+                     .contentType(MediaType.APPLICATION_JSON)
+                     .syncBody(Arrays.asList("http://www.batch1.com",
+                                             "notAUrl",
+                                             "http://www.batch2.com"))
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectBody()
+                     .jsonPath("$[0].status").isEqualTo("CREATED")
+                     .jsonPath("$[1].status").isEqualTo("INVALID")
+                     .jsonPath("$[2].status").isEqualTo("CREATED")
+                     .jsonPath("$[2].shortUrlPath").isNotEmpty();
+    }
+
+    @Test
+    public void findShortUrlsByCursor_followsNextLink() {
+        for (int i = 0; i < 3; ++i) {
+            createShortUrl(TEST_REDIRECTTO + "/" + i);
+        }
+
+        String[] next = new String[1];
+        webTestClient.get()
+                     .uri(ShortUrlController.BASE_PATH
+                          + "by-cursor?pageSize=2&includeTotal=true")
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectBody()
+                     .jsonPath("$._embedded.shortUrlResourceList.length()")
+                         .isEqualTo(2)
+                     .jsonPath("$.totalCount").isNumber()
+                     .jsonPath("$._links.next.href")
+                         .value(href -> next[0] = (String) href);
+
+        webTestClient.get().uri(next[0])
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectBody()
+                     .jsonPath("$._embedded.shortUrlResourceList").isArray()
+                     .jsonPath("$._links.self.href").exists();
+    }
+
+    @Test
+    public void findShortUrlsByCursor_invalidCursorReturnsBadRequest() {
+        webTestClient.get()
+                     .uri(ShortUrlController.BASE_PATH
+                          + "by-cursor?cursor=notACursor")
+                     .exchange()
+                     .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void exportShortUrls_notImplemented() {
+        webTestClient.get().uri(ShortUrlController.BASE_PATH + "export-ndjson")
+                     .exchange()
+                     .expectStatus().isEqualTo(501);
+    }
+
+    @Test
+    public void importShortUrls_notImplemented() {
+        webTestClient.post().uri(ShortUrlController.BASE_PATH + "import")
+                     .contentType(MediaType.TEXT_PLAIN)
+                     .syncBody(TEST_REDIRECTTO)
+                     .exchange()
+                     .expectStatus().isEqualTo(501);
+    }
+
+    @Test
+    public void getCacheStats_returnsCounters() {
+        webTestClient.get()
+                     .uri(ShortUrlController.BASE_PATH + "cache-stats")
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectBody()
+                     .jsonPath("$.hitCount").exists();
+    }
+
+    private String createShortUrl(final String redirectTo) {
+        Map<String, Map<String, Object>> created =
+                webTestClient.post().uri(ShortUrlController.BASE_PATH)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .syncBody(new ShortUrl(redirectTo))
+                    .exchange()
+                    .expectStatus().isCreated()
+                    .expectBody(new ParameterizedTypeReference<
+                                    Map<String, Map<String, Object>>>() { })
+                    .returnResult()
+                    .getResponseBody();
+
+        return (String) created.get("shortUrl").get("shortUrlPath");
+    }
+}
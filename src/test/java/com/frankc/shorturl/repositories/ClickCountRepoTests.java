@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.repositories;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Import(ClickCountRepo.class)
+public class ClickCountRepoTests {
+
+    @Autowired
+    private ClickCountRepo clickCountRepo;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // counts are only added for paths in short_url
+    @Before
+    public void createShortUrls() {
+        String[] paths = {"clickPath1", "clickPath2", "clickPath3"};
+        for (int i = 0; i < paths.length; i++) {
+            jdbcTemplate.update("insert into short_url (id, short_url_path)"
+                                + " values (?, ?)", i + 1, paths[i]);
+        }
+    }
+
+    @Test
+    public void addClicks_insertsThenAdds() {
+        Map<String, Long> deltas = new HashMap<>();
+        deltas.put("clickPath1", 3L);
+        deltas.put("clickPath2", 1L);
+        clickCountRepo.addClicks(deltas);
+
+        deltas.put("clickPath1", 4L);
+        deltas.remove("clickPath2");
+        deltas.put("clickPath3", 5L);
+        clickCountRepo.addClicks(deltas);
+
+        assertEquals(7L, clickCountRepo.findClicks("clickPath1"));
+        assertEquals(1L, clickCountRepo.findClicks("clickPath2"));
+        assertEquals(5L, clickCountRepo.findClicks("clickPath3"));
+        assertEquals(0L, clickCountRepo.findClicks("clickPathNone"));
+    }
+
+    @Test
+    public void deleteByShortUrlPath_removesCount() {
+        Map<String, Long> deltas = new HashMap<>();
+        deltas.put("clickPath1", 3L);
+        clickCountRepo.addClicks(deltas);
+
+        clickCountRepo.deleteByShortUrlPath("clickPath1");
+
+        assertEquals(0L, clickCountRepo.findClicks("clickPath1"));
+    }
+
+    @Test
+    public void addClicks_ignoresPathsNotInShortUrl() {
+        Map<String, Long> deltas = new HashMap<>();
+        deltas.put("clickPath1", 3L);
+        deltas.put("clickPathDeleted", 2L);
+        clickCountRepo.addClicks(deltas);
+
+        assertEquals(3L, clickCountRepo.findClicks("clickPath1"));
+        assertEquals(0L, clickCountRepo.findClicks("clickPathDeleted"));
+    }
+}
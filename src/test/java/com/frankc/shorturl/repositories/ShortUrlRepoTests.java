@@ -16,11 +16,15 @@
  ******************************************************************************/
 package com.frankc.shorturl.repositories;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.hibernate.Session;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.Logger;
@@ -28,16 +32,27 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import com.frankc.shorturl.entities.PooledIdGenerator;
 import com.frankc.shorturl.entities.ShortUrl;
+import com.frankc.shorturl.repositories.ShortUrlRepo.PageRow;
+import com.frankc.shorturl.repositories.ShortUrlRepo.RedirectTarget;
+import com.frankc.shorturl.utils.RedirectPrefixDictionary;
 
 @RunWith(SpringRunner.class)
-@DataJpaTest
+@DataJpaTest(properties = "com.frankc.shorturl.storage.redirectPrefixes="
+                          + ShortUrlRepoTests.TEST_PREFIX)
+@Import({RedirectPrefixDictionary.class, RedirectPrefixRepo.class})
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 public class ShortUrlRepoTests {
 
+    static final String TEST_PREFIX = "https://www.prefixed.com";
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     @Autowired
@@ -48,6 +63,132 @@ public class ShortUrlRepoTests {
 
     private final AtomicLong counter = new AtomicLong();
 
+    @Test
+    public void persist_allocatesIdsInBlocks() {
+        ShortUrl first = testEntityManager.persistAndFlush(createShortUrl());
+        ShortUrl second = testEntityManager.persistAndFlush(createShortUrl());
+        ShortUrl third = testEntityManager.persistAndFlush(createShortUrl());
+
+        Number nextBlock = (Number) testEntityManager.getEntityManager()
+                .createNativeQuery("call next value for hibernate_sequence")
+                .getSingleResult();
+
+        assertTrue("Ids should be consecutive",
+                   second.getId() == first.getId() + 1
+                   && third.getId() == second.getId() + 1);
+        assertTrue("Three inserts should take one block from the sequence",
+                   nextBlock.longValue() == first.getId()
+                       + PooledIdGenerator.DEFAULT_ALLOCATION_SIZE);
+    }
+
+    @Test
+    public void findExportPage_filtersByCreatedInIdOrder() {
+        ShortUrl first = testEntityManager.persistAndFlush(createShortUrl());
+        ShortUrl second = testEntityManager.persistAndFlush(createShortUrl());
+        ShortUrl third = testEntityManager.persistAndFlush(createShortUrl());
+        Date afterCreates = new Date(third.getCreated().getTime() + 1);
+
+        List<PageRow> firstPage = shortUrlRepo.findExportPage(
+                        0, second.getId(), null, null, null, null, 1);
+        List<PageRow> secondPage = shortUrlRepo.findExportPage(
+                        firstPage.get(0).getId(), second.getId(),
+                        null, null, null, null, 10);
+        List<PageRow> laterRows = shortUrlRepo.findExportPage(
+                        0, third.getId(), afterCreates, null, null, null, 10);
+
+        assertTrue("Export should be in id order",
+                   firstPage.size() == 1
+                   && firstPage.get(0).getShortUrlPath()
+                        .equals(first.getShortUrlPath()));
+        assertTrue("Export should stop at maxId",
+                   secondPage.size() == 1
+                   && secondPage.get(0).getRedirectTo()
+                        .equals(second.getRedirectTo()));
+        assertTrue("Export should filter by created", laterRows.isEmpty());
+        assertTrue("Max id should be the last ShortUrl",
+                   shortUrlRepo.findMaxId() == third.getId());
+    }
+
+    @Test
+    public void findPageRows_continuesAfterCursor() {
+        for (int i = 0; i < 5; ++i) {
+            testEntityManager.persistAndFlush(createShortUrl());
+        }
+
+        List<PageRow> firstPage = shortUrlRepo.findPageRowsAfterId(
+                                        0, 10, PageRequest.of(0, 3));
+        List<PageRow> secondPage = shortUrlRepo.findPageRowsAfterId(
+                                        firstPage.get(2).getId(), 10,
+                                        PageRequest.of(0, 3));
+        List<PageRow> byCreated = shortUrlRepo.findFirstPageRowsByCreated(
+                                        1000, PageRequest.of(0, 2));
+        List<PageRow> afterCreated = shortUrlRepo.findPageRowsAfterCreated(
+                                        byCreated.get(1).getCreated(),
+                                        byCreated.get(1).getId(), 1000,
+                                        PageRequest.of(0, 10));
+
+        assertTrue("Pages should be 3 then 2 rows",
+                   firstPage.size() == 3 && secondPage.size() == 2);
+        assertTrue("Second page should follow the first",
+                   secondPage.get(0).getId() > firstPage.get(2).getId());
+        assertTrue("Created order should continue after the cursor",
+                   afterCreated.size() == 3
+                   && afterCreated.get(0).getRedirectTo().endsWith(".co.nz"));
+    }
+
+    @Test
+    public void redirectTo_storesPrefixAsIdAndLongUrlsOutOfLine() {
+        StringBuilder longUrl = new StringBuilder(TEST_PREFIX + "/?q=");
+        while (longUrl.length() <= ShortUrl.MAX_INLINE_REDIRECT_TO_LENGTH) {
+            longUrl.append('a');
+        }
+        ShortUrl prefixed = createShortUrl();
+        prefixed.setRedirectTo(TEST_PREFIX + "/page?q=1");
+        ShortUrl overflowed = createShortUrl();
+        overflowed.setRedirectTo(longUrl.toString());
+        testEntityManager.persist(prefixed);
+        testEntityManager.persistAndFlush(overflowed);
+        testEntityManager.clear();
+
+        Object[] prefixedColumns = selectRedirectToColumns(prefixed);
+        Object[] overflowedColumns = selectRedirectToColumns(overflowed);
+        assertTrue("Prefix should be stored as an id: "
+                   + prefixedColumns[0],
+                   ((String) prefixedColumns[0]).matches("~\\w+~/page\\?q=1")
+                   && prefixedColumns[1] == null);
+        assertTrue("Long redirectTo should be stored out of line",
+                   overflowedColumns[0] == null
+                   && overflowedColumns[1] != null);
+
+        RedirectTarget prefixedTarget =
+                shortUrlRepo.findRedirectTargetByShortUrlPath(
+                                            prefixed.getShortUrlPath());
+        RedirectTarget overflowedTarget =
+                shortUrlRepo.findRedirectTargetByShortUrlPath(
+                                            overflowed.getShortUrlPath());
+        assertTrue("Projection should decode the prefix",
+                   prefixedTarget.getRedirectTo()
+                                 .equals(prefixed.getRedirectTo()));
+        assertTrue("Projection should return the long redirectTo",
+                   overflowedTarget.getRedirectTo()
+                                   .equals(longUrl.toString()));
+        assertTrue("Entity should decode the prefix",
+                   shortUrlRepo.findShortUrlByShortUrlPath(
+                                   prefixed.getShortUrlPath())
+                               .getRedirectTo()
+                               .equals(prefixed.getRedirectTo()));
+
+        List<PageRow> page = shortUrlRepo.findPageRowsAfterId(
+                                        0, 10, PageRequest.of(0, 2));
+        assertTrue("Inline redirectTo should be truncated",
+                   page.get(0).getRedirectTo()
+                              .equals(prefixed.getRedirectTo()
+                                              .substring(0, 10)));
+        assertTrue("Long redirectTo should be truncated",
+                   page.get(1).getRedirectTo()
+                              .equals(longUrl.substring(0, 10)));
+    }
+
     @Test
     public void findAll_returnsShortUrl() {
         ShortUrl newShortUrl = createShortUrl();
@@ -104,6 +245,111 @@ public class ShortUrlRepoTests {
                                            newShortUrl.getShortUrlPath()));
     }
 
+    @Test
+    public void findRedirectTargetByShortUrlPath_returnsOnlyTarget() {
+        ShortUrl newShortUrl = createShortUrl();
+        newShortUrl.setCacheMaxAge(60);
+
+        testEntityManager.persistAndFlush(newShortUrl);
+        testEntityManager.clear();
+
+        ShortUrlRepo.RedirectTarget redirectTarget =
+                shortUrlRepo.findRedirectTargetByShortUrlPath(
+                                            newShortUrl.getShortUrlPath());
+
+        assertTrue("Projection should return redirectTo",
+                   newShortUrl.getRedirectTo().equals(
+                                            redirectTarget.getRedirectTo()));
+        assertTrue("Projection should return cacheMaxAge",
+                   redirectTarget.getCacheMaxAge() == 60);
+        assertTrue("No entity should be loaded by the projection",
+                   testEntityManager.getEntityManager()
+                                    .unwrap(Session.class)
+                                    .getStatistics().getEntityCount() == 0);
+        assertTrue("Projection should return null for unknown path",
+                   shortUrlRepo.findRedirectTargetByShortUrlPath(
+                                       "NONEXISTINGPATH") == null);
+    }
+
+    @Test
+    public void findShortUrlPathsAfter_returnsOrderedPages() {
+        ShortUrl firstShortUrl = createShortUrl();
+        ShortUrl secondShortUrl = createShortUrl();
+        ShortUrl thirdShortUrl = createShortUrl();
+
+        testEntityManager.persist(thirdShortUrl);
+        testEntityManager.persist(firstShortUrl);
+        testEntityManager.persist(secondShortUrl);
+
+        List<String> firstPage = shortUrlRepo.findShortUrlPathsAfter(
+                                        "", PageRequest.of(0, 2));
+        assertTrue("First page should have 2 paths", firstPage.size() == 2);
+        assertTrue("Paths should be ordered",
+                   firstPage.get(0).equals(firstShortUrl.getShortUrlPath())
+                   && firstPage.get(1)
+                               .equals(secondShortUrl.getShortUrlPath()));
+
+        List<String> secondPage = shortUrlRepo.findShortUrlPathsAfter(
+                                        firstPage.get(1), PageRequest.of(0, 2));
+        assertTrue("Second page should have last path",
+                   secondPage.size() == 1
+                   && secondPage.get(0)
+                                .equals(thirdShortUrl.getShortUrlPath()));
+    }
+
+    @Test
+    public void findByRedirectToHash_findsOnlyMatchingHashes() {
+        byte[] hash = new byte[32];
+        hash[0] = 1;
+        byte[] otherHash = new byte[32];
+        otherHash[0] = 2;
+
+        ShortUrl hashed = createShortUrl();
+        hashed.setRedirectToHash(hash);
+        ShortUrl otherHashed = createShortUrl();
+        otherHashed.setRedirectToHash(otherHash);
+        testEntityManager.persist(hashed);
+        testEntityManager.persist(otherHashed);
+        testEntityManager.persistAndFlush(createShortUrl());
+
+        ShortUrl found = shortUrlRepo.findByRedirectToHash(hash.clone());
+        assertTrue("Only the ShortUrl with the hash should be found",
+                   found.getShortUrlPath().equals(hashed.getShortUrlPath()));
+
+        List<ShortUrl> foundIn = shortUrlRepo.findByRedirectToHashIn(
+                                Arrays.asList(hash.clone(), new byte[32]));
+        assertTrue("Only ShortUrls with a listed hash should be found",
+                   foundIn.size() == 1 && foundIn.get(0).getShortUrlPath()
+                                        .equals(hashed.getShortUrlPath()));
+    }
+
+    @Test(expected = DataIntegrityViolationException.class)
+    public void save_duplicateRedirectToHashFails() {
+        byte[] hash = new byte[32];
+        ShortUrl hashed = createShortUrl();
+        hashed.setRedirectToHash(hash);
+        ShortUrl sameHash = createShortUrl();
+        sameHash.setRedirectToHash(hash.clone());
+
+        shortUrlRepo.saveAndFlush(hashed);
+        shortUrlRepo.saveAndFlush(sameHash);
+    }
+
+    @Test
+    public void removeCreator_onlyWhileSharedByOthers() {
+        ShortUrl shared = createShortUrl();
+        shared.setCreators(2);
+        testEntityManager.persistAndFlush(shared);
+
+        assertEquals(1, shortUrlRepo.removeCreator(shared.getShortUrlPath()));
+        assertEquals(0, shortUrlRepo.removeCreator(shared.getShortUrlPath()));
+        assertEquals(1, shortUrlRepo.addCreators(shared.getId(), 2));
+        testEntityManager.clear();
+
+        assertEquals(3, shortUrlRepo.findById(shared.getId()).get()
+                                    .getCreators());
+    }
+
     private ShortUrl createShortUrl() {
         ShortUrl newShortUrl = new ShortUrl("http://www.testdomainname"
                                             + counter.incrementAndGet()
@@ -111,4 +357,12 @@ public class ShortUrlRepoTests {
         newShortUrl.setShortUrlPath("efgHIJK456" + counter.incrementAndGet());
         return newShortUrl;
     }
+
+    private Object[] selectRedirectToColumns(final ShortUrl shortUrl) {
+        return (Object[]) testEntityManager.getEntityManager()
+                .createNativeQuery("select redirect_to, redirect_to_overflow"
+                                   + " from short_url where id = ?")
+                .setParameter(1, shortUrl.getId())
+                .getSingleResult();
+    }
 }
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.frankc.shorturl.repositories.ClickCountRepo;
+
+/**
+ * Unit Tests for ClickCounter.
+ *
+ * @author Frank Callaly
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = ClickCounter.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ClickCounterTests {
+
+    private static final String TEST_SHORTURLPATH = "abcdABCD1234";
+
+    private static final String OTHER_SHORTURLPATH = "efghEFGH5678";
+
+    @Autowired
+    private ClickCounter clickCounter;
+
+    @MockBean
+    private ClickCountRepo mockClickCountRepo;
+
+    @Test
+    public void flush_writesAggregatedDeltas() {
+        clickCounter.increment(TEST_SHORTURLPATH);
+        clickCounter.increment(TEST_SHORTURLPATH);
+        clickCounter.increment(TEST_SHORTURLPATH);
+        clickCounter.increment(OTHER_SHORTURLPATH);
+
+        clickCounter.flush();
+
+        Map<String, Long> expected = new HashMap<>();
+        expected.put(TEST_SHORTURLPATH, 3L);
+        expected.put(OTHER_SHORTURLPATH, 1L);
+        verify(mockClickCountRepo).addClicks(expected);
+    }
+
+    @Test
+    public void flush_writesNothingWithoutNewClicks() {
+        clickCounter.increment(TEST_SHORTURLPATH);
+        clickCounter.flush();
+        clickCounter.flush();
+
+        verify(mockClickCountRepo)
+            .addClicks(Collections.singletonMap(TEST_SHORTURLPATH, 1L));
+    }
+
+    @Test
+    public void flush_retriesFailedDeltas() {
+        doThrow(new DataAccessResourceFailureException("down"))
+            .when(mockClickCountRepo)
+            .addClicks(Collections.singletonMap(TEST_SHORTURLPATH, 2L));
+
+        clickCounter.increment(TEST_SHORTURLPATH);
+        clickCounter.increment(TEST_SHORTURLPATH);
+        clickCounter.flush();
+        clickCounter.increment(TEST_SHORTURLPATH);
+        clickCounter.flush();
+
+        verify(mockClickCountRepo)
+            .addClicks(Collections.singletonMap(TEST_SHORTURLPATH, 3L));
+    }
+
+    @Test
+    public void flush_countsClicksAfterCounterRetired() {
+        clickCounter.increment(TEST_SHORTURLPATH);
+        clickCounter.flush();
+        // no clicks since the last flush, so this retires the counter
+        clickCounter.flush();
+        clickCounter.increment(TEST_SHORTURLPATH);
+        clickCounter.increment(TEST_SHORTURLPATH);
+        clickCounter.flush();
+
+        verify(mockClickCountRepo)
+            .addClicks(Collections.singletonMap(TEST_SHORTURLPATH, 2L));
+    }
+
+    @Test
+    public void increment_countsConcurrentClicks() throws Exception {
+        int numThreads = 8;
+        int clicksPerThread = 10000;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+        for (int i = 0; i < numThreads; i++) {
+            executor.execute(() -> {
+                for (int j = 0; j < clicksPerThread; j++) {
+                    clickCounter.increment(TEST_SHORTURLPATH);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        clickCounter.flush();
+
+        verify(mockClickCountRepo).addClicks(Collections.singletonMap(
+                TEST_SHORTURLPATH, (long) numThreads * clicksPerThread));
+    }
+
+    @Test
+    public void getClicks_addsPendingToPersisted() {
+        when(mockClickCountRepo.findClicks(TEST_SHORTURLPATH))
+            .thenReturn(10L);
+
+        clickCounter.increment(TEST_SHORTURLPATH);
+        clickCounter.increment(TEST_SHORTURLPATH);
+
+        assertEquals("getClicks should include pending clicks",
+                     12L, clickCounter.getClicks(TEST_SHORTURLPATH));
+
+        clickCounter.flush();
+
+        assertEquals("getClicks should not count flushed clicks twice",
+                     10L, clickCounter.getClicks(TEST_SHORTURLPATH));
+    }
+
+    @Test
+    public void getClicks_waitsForFlushOfPathOnly() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return null;
+        }).when(mockClickCountRepo).addClicks(any());
+        when(mockClickCountRepo.findClicks(TEST_SHORTURLPATH))
+            .thenReturn(1L);
+
+        clickCounter.increment(TEST_SHORTURLPATH);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.execute(clickCounter::flush);
+        writing.await();
+
+        // a path not being flushed is counted, and removed, meanwhile
+        clickCounter.increment(OTHER_SHORTURLPATH);
+        assertEquals(1L, clickCounter.getClicks(OTHER_SHORTURLPATH));
+        clickCounter.remove(OTHER_SHORTURLPATH);
+
+        release.countDown();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        assertEquals("getClicks should not count flushed clicks twice",
+                     1L, clickCounter.getClicks(TEST_SHORTURLPATH));
+    }
+
+    @Test
+    public void remove_discardsPendingClicks() {
+        clickCounter.increment(TEST_SHORTURLPATH);
+        clickCounter.remove(TEST_SHORTURLPATH);
+        clickCounter.flush();
+
+        verify(mockClickCountRepo).deleteByShortUrlPath(TEST_SHORTURLPATH);
+        verify(mockClickCountRepo, never()).addClicks(any());
+    }
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.frankc.shorturl.entities.ShortUrl;
+
+/**
+ * Unit Tests for ShortUrlCursor.
+ *
+ * @author Frank Callaly
+ */
+public class ShortUrlCursorTests {
+
+    @Test
+    public void decode_readsEncodedCursor() {
+        ShortUrl lastShortUrl = new ShortUrl("http://www.cursor.com");
+        lastShortUrl.setId(1234);
+        lastShortUrl.setCreated(new Date(1546300800000L));
+
+        ShortUrlCursor byId = ShortUrlCursor.decode(
+                ShortUrlCursor.first(ShortUrlCursor.Order.ID)
+                              .after(lastShortUrl).encode());
+        ShortUrlCursor byCreated = ShortUrlCursor.decode(
+                ShortUrlCursor.first(ShortUrlCursor.Order.CREATED)
+                              .after(lastShortUrl).encode());
+
+        assertEquals(ShortUrlCursor.Order.ID, byId.getOrder());
+        assertEquals(1234, byId.getLastId());
+        assertNull(byId.getLastCreated());
+        assertEquals(ShortUrlCursor.Order.CREATED, byCreated.getOrder());
+        assertEquals(1234, byCreated.getLastId());
+        assertEquals(lastShortUrl.getCreated(), byCreated.getLastCreated());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_invalidTokenThrowsIllegalArg() {
+        ShortUrlCursor.decode("bm90IGEgY3Vyc29y");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_unknownOrderThrowsIllegalArg() {
+        ShortUrlCursor.Order.parse("redirectTo");
+    }
+}
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.reset;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.data.domain.PageRequest;
+
+import com.frankc.shorturl.controllers.exceptions.MaxPathGenerationRetriesException;
+import com.frankc.shorturl.entities.ShortUrl;
+import com.frankc.shorturl.utils.ShortUrlPathStrategy;
+
+/**
+ * Behaviour every ShortUrlService must have, run against a real store by
+ * a subclass for each implementation.
+ *
+ * @author Frank Callaly
+ */
+public abstract class ShortUrlServiceContractTests {
+
+    @Autowired
+    protected ShortUrlService shortUrlService;
+
+    @SpyBean
+    private ShortUrlPathStrategy shortUrlPathStrategy;
+
+    @After
+    public void tearDown() {
+        for (ShortUrl shortUrl
+                : shortUrlService.findAll(PageRequest.of(0, 1000))) {
+            shortUrlService.deleteByShortUrlPath(shortUrl.getShortUrlPath());
+        }
+        reset(shortUrlPathStrategy);
+    }
+
+    @Test
+    public void createShortUrl_canBeFoundAndRedirected() {
+        ShortUrl created = shortUrlService.createShortUrl(
+                    "http://www.example.com/page", 120);
+
+        ShortUrl found =
+                shortUrlService.findByShortUrlPath(created.getShortUrlPath());
+        assertEquals("http://www.example.com/page", found.getRedirectTo());
+        assertEquals(Integer.valueOf(120), found.getCacheMaxAge());
+        assertEquals("http://www.example.com/page",
+                     shortUrlService.findRedirectByShortUrlPath(
+                            created.getShortUrlPath()).getRedirectTo());
+        assertEquals(0, shortUrlService.countClicks(
+                            created.getShortUrlPath()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createShortUrl_throwsOnInvalidRedirectTo() {
+        shortUrlService.createShortUrl("not a url");
+    }
+
+    @Test
+    public void createShortUrl_retriesPathCollisions() {
+        ShortUrl first =
+                shortUrlService.createShortUrl("http://www.example.com/1");
+        doReturn(first.getShortUrlPath()).doCallRealMethod()
+            .when(shortUrlPathStrategy).generateShortUrlPath();
+
+        ShortUrl second =
+                shortUrlService.createShortUrl("http://www.example.com/2");
+
+        assertNotEquals(first.getShortUrlPath(), second.getShortUrlPath());
+    }
+
+    @Test(expected = MaxPathGenerationRetriesException.class)
+    public void createShortUrl_throwsWhenRetriesExhausted() {
+        ShortUrl first =
+                shortUrlService.createShortUrl("http://www.example.com/1");
+        doReturn(first.getShortUrlPath())
+            .when(shortUrlPathStrategy).generateShortUrlPath();
+
+        shortUrlService.createShortUrl("http://www.example.com/2");
+    }
+
+    @Test
+    public void importShortUrls_reportsDuplicatePaths() {
+        ShortUrl given = new ShortUrl("http://www.example.com/1");
+        given.setShortUrlPath("given");
+        ShortUrl duplicate = new ShortUrl("http://www.example.com/2");
+        duplicate.setShortUrlPath("given");
+
+        List<BatchCreateResult> results = shortUrlService.importShortUrls(
+                    Arrays.asList(given, duplicate,
+                                  new ShortUrl("http://www.example.com/3")));
+
+        assertEquals(BatchCreateResult.Status.CREATED,
+                     results.get(0).getStatus());
+        assertEquals(BatchCreateResult.Status.DUPLICATE,
+                     results.get(1).getStatus());
+        assertEquals(BatchCreateResult.Status.CREATED,
+                     results.get(2).getStatus());
+        assertEquals("http://www.example.com/1",
+                     shortUrlService.findByShortUrlPath("given")
+                                    .getRedirectTo());
+    }
+
+    @Test
+    public void findPage_pagesInIdOrder() {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            paths.add(shortUrlService.createShortUrl(
+                        "http://www.example.com/" + i).getShortUrlPath());
+        }
+
+        ShortUrlCursor cursor = ShortUrlCursor.first(ShortUrlCursor.Order.ID);
+        List<ShortUrl> firstPage = shortUrlService.findPage(cursor, 3, 20);
+        List<ShortUrl> secondPage = shortUrlService.findPage(
+                    cursor.after(firstPage.get(2)), 3, 20);
+
+        assertEquals(3, firstPage.size());
+        assertEquals(2, secondPage.size());
+        assertEquals(paths.get(0), firstPage.get(0).getShortUrlPath());
+        assertEquals(paths.get(3), secondPage.get(0).getShortUrlPath());
+        assertEquals("Long redirectTos should be truncated",
+                     20, firstPage.get(0).getRedirectTo().length());
+        assertEquals(paths.get(4), shortUrlService.findAll(
+                    PageRequest.of(2, 2)).get(0).getShortUrlPath());
+    }
+
+    @Test
+    public void exportShortUrls_passesEveryShortUrlInIdOrder()
+                                throws IOException {
+        ShortUrl first =
+                shortUrlService.createShortUrl("http://www.example.com/1");
+        ShortUrl second =
+                shortUrlService.createShortUrl("http://www.example.com/2");
+        List<String> exported = new ArrayList<>();
+
+        long numRows = shortUrlService.exportShortUrls(
+                    null, null, null, null,
+                    row -> exported.add(row.getShortUrlPath()));
+
+        assertEquals(2, numRows);
+        assertEquals(Arrays.asList(first.getShortUrlPath(),
+                                   second.getShortUrlPath()), exported);
+        assertEquals(0, shortUrlService.exportShortUrls(
+                    null, first.getCreated(), null, null, row -> { }));
+    }
+
+    @Test
+    public void deleteByShortUrlPath_removesShortUrlAndRedirect() {
+        ShortUrl created =
+                shortUrlService.createShortUrl("http://www.example.com/1");
+        String path = created.getShortUrlPath();
+        shortUrlService.findRedirectByShortUrlPath(path);
+
+        assertTrue(shortUrlService.deleteByShortUrlPath(path));
+
+        assertNull(shortUrlService.findRedirectByShortUrlPath(path));
+        assertThrows(() -> shortUrlService.findByShortUrlPath(path));
+        assertThrows(() -> shortUrlService.deleteByShortUrlPath(path));
+        assertThrows(() -> shortUrlService.countClicks(path));
+    }
+
+    private static void assertThrows(final Runnable call) {
+        try {
+            call.run();
+        } catch (NoSuchElementException ex) {
+            return;
+        }
+        throw new AssertionError("Expected NoSuchElementException");
+    }
+}
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.services;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.frankc.shorturl.entities.ShortUrl;
+import com.frankc.shorturl.repositories.ClickCountRepo;
+import com.frankc.shorturl.repositories.RedirectPrefixRepo;
+import com.frankc.shorturl.repositories.ShortUrlRepo;
+import com.frankc.shorturl.utils.RedirectUrlCanonicaliser;
+
+/**
+ * Unit Tests for ShortUrlServiceImpl creates with dedup enabled.
+ *
+ * @author Frank Callaly
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "com.frankc.shorturl.dedup.enabled=true")
+@ActiveProfiles("nojpa")
+public class ShortUrlServiceDedupTests {
+
+    private static final String REDIRECTTO = "http://www.example.com/page";
+
+    @Autowired
+    private ShortUrlService shortUrlService;
+
+    @Autowired
+    private RedirectUrlCanonicaliser redirectUrlCanonicaliser;
+
+    @MockBean
+    private ShortUrlRepo mockShortUrlRepo;
+
+    @MockBean
+    private ClickCountRepo mockClickCountRepo;
+
+    @MockBean
+    private RedirectPrefixRepo mockRedirectPrefixRepo;
+
+    @Test
+    public void createShortUrl_returnsExistingShortUrl() {
+        ShortUrl existing = storedShortUrl(REDIRECTTO, null);
+        when(mockShortUrlRepo.findByRedirectToHash(
+                        existing.getRedirectToHash()))
+             .thenReturn(existing);
+        when(mockShortUrlRepo.addCreators(existing.getId(), 1)).thenReturn(1);
+
+        ShortUrl created = shortUrlService.createShortUrl(
+                                        "HTTP://WWW.EXAMPLE.COM:80/page");
+
+        assertEquals(existing.getShortUrlPath(), created.getShortUrlPath());
+        verify(mockShortUrlRepo).addCreators(existing.getId(), 1);
+        verify(mockShortUrlRepo, never()).save(isA(ShortUrl.class));
+    }
+
+    @Test
+    public void createShortUrl_savesHashWhenNoneStored() {
+        when(mockShortUrlRepo.save(isA(ShortUrl.class)))
+             .thenAnswer(invocation -> invocation.getArgument(0));
+
+        ShortUrl created = shortUrlService.createShortUrl(REDIRECTTO);
+
+        assertArrayEquals(redirectUrlCanonicaliser.hash(REDIRECTTO, null),
+                          created.getRedirectToHash());
+        verify(mockShortUrlRepo, times(1)).save(isA(ShortUrl.class));
+    }
+
+    @Test
+    public void createShortUrl_differentCacheMaxAgeCreatesNew() {
+        ShortUrl existing = storedShortUrl(REDIRECTTO, null);
+        when(mockShortUrlRepo.findByRedirectToHash(
+                        existing.getRedirectToHash()))
+             .thenReturn(existing);
+        when(mockShortUrlRepo.save(isA(ShortUrl.class)))
+             .thenAnswer(invocation -> invocation.getArgument(0));
+
+        ShortUrl created = shortUrlService.createShortUrl(REDIRECTTO, 60);
+
+        assertNotEquals(existing.getShortUrlPath(), created.getShortUrlPath());
+        verify(mockShortUrlRepo, times(1)).save(isA(ShortUrl.class));
+    }
+
+    @Test
+    public void createShortUrl_returnsShortUrlInsertedByOtherNode() {
+        ShortUrl existing = storedShortUrl(REDIRECTTO, null);
+        // not found before the insert, which the unique hash index fails
+        when(mockShortUrlRepo.findByRedirectToHash(any()))
+             .thenReturn(null, existing);
+        when(mockShortUrlRepo.save(isA(ShortUrl.class)))
+             .thenThrow(new DataIntegrityViolationException("duplicate"));
+        when(mockShortUrlRepo.addCreators(existing.getId(), 1)).thenReturn(1);
+
+        ShortUrl created = shortUrlService.createShortUrl(REDIRECTTO);
+
+        assertEquals(existing.getShortUrlPath(), created.getShortUrlPath());
+        verify(mockShortUrlRepo, times(1)).save(isA(ShortUrl.class));
+    }
+
+    @Test
+    public void createShortUrl_coalescesConcurrentCreates() throws Exception {
+        CountDownLatch saveStarted = new CountDownLatch(1);
+        CountDownLatch releaseSave = new CountDownLatch(1);
+        when(mockShortUrlRepo.addCreators(anyLong(), anyInt())).thenReturn(1);
+        when(mockShortUrlRepo.save(isA(ShortUrl.class)))
+             .thenAnswer(invocation -> {
+                 saveStarted.countDown();
+                 releaseSave.await(10, TimeUnit.SECONDS);
+                 return invocation.getArgument(0);
+             });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<ShortUrl> first = executor.submit(
+                    () -> shortUrlService.createShortUrl(REDIRECTTO));
+            saveStarted.await(10, TimeUnit.SECONDS);
+
+            Future<ShortUrl> second = executor.submit(
+                    () -> shortUrlService.createShortUrl(REDIRECTTO));
+            Future<ShortUrl> third = executor.submit(
+                    () -> shortUrlService.createShortUrl(
+                                            "http://WWW.example.com/page"));
+            // give the later creates time to start waiting
+            Thread.sleep(200);
+            releaseSave.countDown();
+
+            String shortUrlPath = first.get().getShortUrlPath();
+            assertEquals(shortUrlPath, second.get().getShortUrlPath());
+            assertEquals(shortUrlPath, third.get().getShortUrlPath());
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(mockShortUrlRepo, times(1)).save(isA(ShortUrl.class));
+        verify(mockShortUrlRepo, times(2)).addCreators(anyLong(), eq(1));
+    }
+
+    @Test
+    public void createShortUrls_dedupsWithinBatchAndAgainstStored() {
+        ShortUrl existing = storedShortUrl("http://www.stored.com/", null);
+        when(mockShortUrlRepo.findByRedirectToHashIn(any()))
+             .thenReturn(Collections.singletonList(existing));
+        when(mockShortUrlRepo.addCreators(existing.getId(), 2)).thenReturn(1);
+        when(mockShortUrlRepo.saveAll(any()))
+             .thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<BatchCreateResult> results = shortUrlService.createShortUrls(
+                Arrays.asList("http://www.stored.com", "http://www.new.com/",
+                              "http://WWW.NEW.COM:80/",
+                              "http://WWW.STORED.COM/"));
+
+        assertEquals(existing.getShortUrlPath(),
+                     results.get(0).getShortUrlPath());
+        assertEquals(BatchCreateResult.Status.CREATED,
+                     results.get(1).getStatus());
+        assertEquals(results.get(1).getShortUrlPath(),
+                     results.get(2).getShortUrlPath());
+        assertEquals(existing.getShortUrlPath(),
+                     results.get(3).getShortUrlPath());
+        verify(mockShortUrlRepo, times(1)).saveAll(argThat(
+                saved -> ((List<ShortUrl>) saved).size() == 1
+                         && ((List<ShortUrl>) saved).get(0).getCreators()
+                            == 2));
+    }
+
+    @Test
+    public void deleteByShortUrlPath_sharedOnlyRemovesCreator() {
+        when(mockShortUrlRepo.existsByShortUrlPath("dedupPath1"))
+             .thenReturn(true);
+        when(mockShortUrlRepo.removeCreator("dedupPath1")).thenReturn(1);
+
+        assertFalse(shortUrlService.deleteByShortUrlPath("dedupPath1"));
+
+        verify(mockShortUrlRepo, never()).deleteByShortUrlPath(any());
+    }
+
+    private ShortUrl storedShortUrl(final String redirectTo,
+                                    final Integer cacheMaxAge) {
+        ShortUrl shortUrl = new ShortUrl(redirectTo);
+        shortUrl.setShortUrlPath("dedupPath1");
+        shortUrl.setCacheMaxAge(cacheMaxAge);
+        shortUrl.setId(1);
+        shortUrl.setRedirectToHash(
+                redirectUrlCanonicaliser.hash(redirectTo, cacheMaxAge));
+        return shortUrl;
+    }
+}
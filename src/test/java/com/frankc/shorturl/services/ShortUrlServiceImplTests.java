@@ -19,16 +19,34 @@ package com.frankc.shorturl.services;
 import static org.mockito.ArgumentMatchers.any;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.invocation.InvocationOnMock;
@@ -44,19 +62,29 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import com.frankc.shorturl.cache.ShortUrlCache;
+import com.frankc.shorturl.cache.ShortUrlPathFilter;
 import com.frankc.shorturl.controllers.exceptions.MaxPathGenerationRetriesException;
 import com.frankc.shorturl.entities.ShortUrl;
+import com.frankc.shorturl.entities.ShortUrlRedirect;
+import com.frankc.shorturl.repositories.ClickCountRepo;
+import com.frankc.shorturl.repositories.RedirectPrefixRepo;
 import com.frankc.shorturl.repositories.ShortUrlRepo;
+import com.frankc.shorturl.repositories.ShortUrlRepo.ExportRow;
+import com.frankc.shorturl.repositories.ShortUrlRepo.PageRow;
+import com.frankc.shorturl.repositories.ShortUrlRepo.RedirectTarget;
 import com.frankc.shorturl.utils.RedirectUrlValidator;
 import com.frankc.shorturl.utils.ShortUrlPathGenerator;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 /**
  * Unit Tests for ShortUrlServiceImpl.
  *
  * @author Frank Callaly
  */
 @RunWith(SpringRunner.class)
-@SpringBootTest
+@SpringBootTest(properties = "com.frankc.shorturl.service.exportPageSize=2")
 @ActiveProfiles("nojpa")
 public class ShortUrlServiceImplTests {
 
@@ -70,9 +98,30 @@ public class ShortUrlServiceImplTests {
     @MockBean
     private ShortUrlRepo mockShortUrlRepo;
 
+    @MockBean
+    private ClickCountRepo mockClickCountRepo;
+
+    @MockBean
+    private RedirectPrefixRepo mockRedirectPrefixRepo;
+
     @SpyBean
     private ShortUrlPathGenerator shortUrlPathGenerator;
 
+    @Autowired
+    private ShortUrlCache shortUrlCache;
+
+    @Autowired
+    private ShortUrlPathFilter shortUrlPathFilter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Before
+    public void clearCacheAndFilter() {
+        shortUrlCache.invalidateAll();
+        shortUrlPathFilter.rebuild();
+    }
+
     @Test
     public void findAll_returnsList() {
         when(mockShortUrlRepo.findAll(any(Pageable.class)))
@@ -100,8 +149,111 @@ public class ShortUrlServiceImplTests {
                      testShortUrl.getShortUrlPath());
     }
 
+    @Test
+    public void findRedirectByShortUrlPath_returnsRedirect() {
+        ShortUrl testShortUrl = createShortUrl();
+        when(mockShortUrlRepo
+                .findRedirectTargetByShortUrlPath(
+                                            testShortUrl.getShortUrlPath()))
+             .thenReturn(createRedirectTarget(testShortUrl));
+
+        ShortUrlRedirect foundRedirect =
+                shortUrlService.findRedirectByShortUrlPath(
+                                            testShortUrl.getShortUrlPath());
+
+        assertEquals("findRedirectByShortUrlPath should return redirectTo",
+                     testShortUrl.getRedirectTo(),
+                     foundRedirect.getResponse().getHeaders()
+                                  .getLocation().toString());
+    }
+
+    @Test
+    public void findRedirectByShortUrlPath_usesLinkCacheMaxAge() {
+        ShortUrl testShortUrl = createShortUrl();
+        testShortUrl.setCacheMaxAge(60);
+        when(mockShortUrlRepo
+                .findRedirectTargetByShortUrlPath(
+                                            testShortUrl.getShortUrlPath()))
+             .thenReturn(createRedirectTarget(testShortUrl));
+
+        ShortUrlRedirect foundRedirect =
+                shortUrlService.findRedirectByShortUrlPath(
+                                            testShortUrl.getShortUrlPath());
+
+        assertEquals("Redirect should use the link's cacheMaxAge",
+                     "max-age=60",
+                     foundRedirect.getResponse().getHeaders()
+                                  .getCacheControl());
+    }
+
+    @Test
+    public void findRedirectByShortUrlPath_repeatedLookupIsCached() {
+        ShortUrl testShortUrl = createShortUrl();
+        when(mockShortUrlRepo
+                .findRedirectTargetByShortUrlPath(
+                                            testShortUrl.getShortUrlPath()))
+             .thenReturn(createRedirectTarget(testShortUrl));
+
+        shortUrlService.findRedirectByShortUrlPath(
+                                            testShortUrl.getShortUrlPath());
+        shortUrlService.findRedirectByShortUrlPath(
+                                            testShortUrl.getShortUrlPath());
+
+        verify(mockShortUrlRepo, times(1))
+            .findRedirectTargetByShortUrlPath(testShortUrl.getShortUrlPath());
+    }
+
+    @Test
+    public void findRedirectByShortUrlPath_unknownReturnsNull() {
+        shortUrlPathFilter.put(TEST_SHORTURLPATH);
+        when(mockShortUrlRepo
+                .findRedirectTargetByShortUrlPath(TEST_SHORTURLPATH))
+             .thenReturn(null);
+
+        assertNull(shortUrlService.findRedirectByShortUrlPath(
+                                                    TEST_SHORTURLPATH));
+    }
+
+    @Test
+    public void createShortUrl_populatesCache() {
+        when(mockShortUrlRepo.save(isA(ShortUrl.class)))
+             .thenAnswer(invocation -> invocation.getArgument(0));
+
+        ShortUrl createdShortUrl =
+                shortUrlService.createShortUrl("http://www.cachedcreate.com");
+
+        assertEquals("createShortUrl should populate the cache",
+                     createdShortUrl.getRedirectTo(),
+                     shortUrlCache.getIfPresent(
+                                     createdShortUrl.getShortUrlPath())
+                                  .getRedirectTo());
+    }
+
+    @Test
+    public void findByShortUrlPath_filteredPathSkipsRepo() {
+        assertNull("Unknown path should not be found",
+                   shortUrlService.findRedirectByShortUrlPath(
+                                                    TEST_SHORTURLPATH));
+        verify(mockShortUrlRepo, never())
+            .findRedirectTargetByShortUrlPath(anyString());
+    }
+
+    @Test
+    public void createShortUrl_addsPathToFilter() {
+        when(mockShortUrlRepo.save(isA(ShortUrl.class)))
+             .thenAnswer(invocation -> invocation.getArgument(0));
+
+        ShortUrl createdShortUrl =
+                shortUrlService.createShortUrl("http://www.filtercreate.com");
+
+        assertTrue("createShortUrl should add path to filter",
+                   shortUrlPathFilter.mightContain(
+                                       createdShortUrl.getShortUrlPath()));
+    }
+
     @Test(expected = NoSuchElementException.class)
     public void findByShortUrlPath_unknownThrowsNoSuchElem() {
+        shortUrlPathFilter.put(TEST_SHORTURLPATH);
         when(mockShortUrlRepo
                 .findShortUrlByShortUrlPath(TEST_SHORTURLPATH))
              .thenReturn(null);
@@ -155,6 +307,24 @@ public class ShortUrlServiceImplTests {
         shortUrlService.createShortUrl("http://invalidport:-2");
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void createShortUrl_negativeCacheMaxAgeThrowsIllegalArg() {
+        shortUrlService.createShortUrl("http://www.redirectTo.com", -1);
+    }
+
+    @Test
+    public void createShortUrl_normalisesRedirectTo() {
+        when(mockShortUrlRepo.save(isA(ShortUrl.class)))
+             .thenAnswer(invocation -> invocation.getArgument(0));
+
+        ShortUrl createdShortUrl = shortUrlService.createShortUrl(
+                                        "HTTPS://www.normalise.com/Path");
+
+        assertEquals("redirectTo scheme should be normalised",
+                     "https://www.normalise.com/Path",
+                     createdShortUrl.getRedirectTo());
+    }
+
     @Test(expected = MaxPathGenerationRetriesException.class)
     public void createShortUrl_conflictReturnsMaxRetriesException() {
         when(mockShortUrlRepo.save(isA(ShortUrl.class)))
@@ -163,6 +333,219 @@ public class ShortUrlServiceImplTests {
         shortUrlService.createShortUrl("http://www.redirectTo.com");
     }
 
+    @Test
+    public void createShortUrl_conflictCountsCollisions() {
+        when(mockShortUrlRepo.save(isA(ShortUrl.class)))
+             .thenThrow(new DataIntegrityViolationException("Conflict"));
+        double collisions = meterRegistry.counter(
+                ShortUrlServiceImpl.COLLISIONS_COUNTER).count();
+        double exhausted = meterRegistry.counter(
+                ShortUrlServiceImpl.RETRIES_EXHAUSTED_COUNTER).count();
+
+        try {
+            shortUrlService.createShortUrl("http://www.redirectTo.com");
+        } catch (MaxPathGenerationRetriesException ex) {
+            // expected once every attempt has collided
+        }
+
+        assertEquals("Each failed attempt should count a collision",
+                     collisions + 3,
+                     meterRegistry.counter(
+                         ShortUrlServiceImpl.COLLISIONS_COUNTER).count(),
+                     0);
+        assertEquals("Giving up should be counted",
+                     exhausted + 1,
+                     meterRegistry.counter(
+                         ShortUrlServiceImpl.RETRIES_EXHAUSTED_COUNTER)
+                         .count(),
+                     0);
+    }
+
+    @Test
+    public void createShortUrls_returnsResultPerItem() {
+        when(mockShortUrlRepo.saveAll(any()))
+             .thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<BatchCreateResult> results = shortUrlService.createShortUrls(
+                Arrays.asList("http://www.batch1.com", "notAUrl", null,
+                              "http://www.batch2.com"));
+
+        assertEquals(4, results.size());
+        assertEquals(BatchCreateResult.Status.CREATED,
+                     results.get(0).getStatus());
+        assertEquals(BatchCreateResult.Status.INVALID,
+                     results.get(1).getStatus());
+        assertEquals(BatchCreateResult.Status.INVALID,
+                     results.get(2).getStatus());
+        assertEquals("http://www.batch2.com",
+                     results.get(3).getRedirectTo());
+        assertTrue("Created ShortUrl should be cached",
+                   shortUrlCache.getIfPresent(
+                           results.get(3).getShortUrlPath()) != null);
+        verify(mockShortUrlRepo, times(1)).saveAll(any());
+        verify(mockShortUrlRepo, never()).save(isA(ShortUrl.class));
+    }
+
+    @Test
+    public void createShortUrls_collisionFallsBackToSingleInserts() {
+        when(mockShortUrlRepo.saveAll(any()))
+             .thenThrow(new DataIntegrityViolationException("Conflict"));
+        when(mockShortUrlRepo.save(isA(ShortUrl.class)))
+             .thenThrow(new DataIntegrityViolationException("Conflict"))
+             .thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<BatchCreateResult> results = shortUrlService.createShortUrls(
+                Arrays.asList("http://www.batch1.com",
+                              "http://www.batch2.com"));
+
+        assertEquals(BatchCreateResult.Status.CREATED,
+                     results.get(0).getStatus());
+        assertEquals(BatchCreateResult.Status.CREATED,
+                     results.get(1).getStatus());
+        verify(mockShortUrlRepo, times(3)).save(isA(ShortUrl.class));
+    }
+
+    @Test
+    public void createShortUrls_itemOutOfRetriesFailsOnlyThatItem() {
+        when(mockShortUrlRepo.saveAll(any()))
+             .thenThrow(new DataIntegrityViolationException("Conflict"));
+        when(mockShortUrlRepo.save(isA(ShortUrl.class)))
+             .thenAnswer(invocation -> invocation.getArgument(0))
+             .thenThrow(new DataIntegrityViolationException("Conflict"));
+
+        List<BatchCreateResult> results = shortUrlService.createShortUrls(
+                Arrays.asList("http://www.batch1.com",
+                              "http://www.batch2.com"));
+
+        assertEquals(BatchCreateResult.Status.CREATED,
+                     results.get(0).getStatus());
+        assertEquals(BatchCreateResult.Status.FAILED,
+                     results.get(1).getStatus());
+    }
+
+    @Test
+    public void importShortUrls_keepsGivenPath() {
+        when(mockShortUrlRepo.saveAll(any()))
+             .thenAnswer(invocation -> invocation.getArgument(0));
+        ShortUrl givenPath = new ShortUrl("http://www.import1.com");
+        givenPath.setShortUrlPath(TEST_SHORTURLPATH);
+
+        List<BatchCreateResult> results = shortUrlService.importShortUrls(
+                Arrays.asList(givenPath,
+                              new ShortUrl("http://www.import2.com")));
+
+        assertEquals(TEST_SHORTURLPATH, results.get(0).getShortUrlPath());
+        assertEquals(BatchCreateResult.Status.CREATED,
+                     results.get(1).getStatus());
+        assertTrue("A path should be generated when none is given",
+                   results.get(1).getShortUrlPath() != null);
+        assertTrue("Imported ShortUrl should be in the filter",
+                   shortUrlPathFilter.mightContain(TEST_SHORTURLPATH));
+    }
+
+    @Test
+    public void importShortUrls_takenGivenPathIsDuplicate() {
+        when(mockShortUrlRepo.saveAll(any()))
+             .thenThrow(new DataIntegrityViolationException("Conflict"));
+        when(mockShortUrlRepo.save(isA(ShortUrl.class)))
+             .thenThrow(new DataIntegrityViolationException("Conflict"))
+             .thenAnswer(invocation -> invocation.getArgument(0));
+        ShortUrl givenPath = new ShortUrl("http://www.import1.com");
+        givenPath.setShortUrlPath(TEST_SHORTURLPATH);
+
+        List<BatchCreateResult> results = shortUrlService.importShortUrls(
+                Arrays.asList(givenPath,
+                              new ShortUrl("http://www.import2.com")));
+
+        assertEquals(BatchCreateResult.Status.DUPLICATE,
+                     results.get(0).getStatus());
+        assertEquals(BatchCreateResult.Status.CREATED,
+                     results.get(1).getStatus());
+        verify(mockShortUrlRepo, times(2)).save(isA(ShortUrl.class));
+    }
+
+    @Test
+    public void exportShortUrls_passesEachRowToHandler() throws IOException {
+        PageRow first = mock(PageRow.class);
+        PageRow second = mock(PageRow.class);
+        when(second.getId()).thenReturn(2L);
+        when(mockShortUrlRepo.findMaxId()).thenReturn(3L);
+        when(mockShortUrlRepo.findExportPage(0, 3, null, null, null, null, 2))
+             .thenReturn(Arrays.asList(first, second));
+        when(mockShortUrlRepo.findExportPage(2, 3, null, null, null, null, 2))
+             .thenReturn(Collections.singletonList(first));
+        List<ExportRow> handled = new ArrayList<>();
+
+        long numRows = shortUrlService.exportShortUrls(null, null, null, null,
+                                                       handled::add);
+
+        assertEquals(3, numRows);
+        assertEquals(3, handled.size());
+    }
+
+    @Test
+    public void exportShortUrls_emptyTableExportsNothing() throws IOException {
+        when(mockShortUrlRepo.findMaxId()).thenReturn(null);
+        List<ExportRow> handled = new ArrayList<>();
+
+        long numRows = shortUrlService.exportShortUrls(null, null, null, null,
+                                                       handled::add);
+
+        assertEquals(0, numRows);
+        verify(mockShortUrlRepo, never()).findExportPage(
+                    anyLong(), anyLong(), any(), any(), any(), any(),
+                    anyInt());
+    }
+
+    @Test
+    public void findPage_usesCreatedCursor() {
+        ShortUrl lastShortUrl = createShortUrl();
+        lastShortUrl.setId(42);
+        lastShortUrl.setCreated(new Date());
+        ShortUrlCursor cursor = ShortUrlCursor
+                .first(ShortUrlCursor.Order.CREATED).after(lastShortUrl);
+        PageRow row = mock(PageRow.class);
+        when(row.getId()).thenReturn(43L);
+        when(row.getShortUrlPath()).thenReturn(TEST_SHORTURLPATH);
+        // cut to redirectToLength by the repository
+        when(row.getRedirectTo()).thenReturn("http://www.testdomai");
+        when(mockShortUrlRepo.findPageRowsAfterCreated(
+                    eq(lastShortUrl.getCreated()), eq(42L), eq(20), any()))
+             .thenReturn(Arrays.asList(row));
+
+        List<ShortUrl> page = shortUrlService.findPage(cursor, 5, 20);
+
+        assertEquals(1, page.size());
+        assertEquals(43L, page.get(0).getId());
+        assertEquals(TEST_SHORTURLPATH, page.get(0).getShortUrlPath());
+        assertEquals("http://www.testdomai",
+                     page.get(0).getRedirectTo());
+    }
+
+    @Test
+    public void countShortUrls_concurrentCallersShareOneCount()
+                                                    throws Exception {
+        // the filter rebuild before each test also counts
+        clearInvocations(mockShortUrlRepo);
+        when(mockShortUrlRepo.count()).thenAnswer(invocation -> {
+            Thread.sleep(100);
+            return 7L;
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        List<Future<Long>> counts = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            counts.add(executor.submit(shortUrlService::countShortUrls));
+        }
+        for (Future<Long> count : counts) {
+            assertEquals(7L, (long) count.get());
+        }
+        executor.shutdown();
+
+        assertEquals(7L, shortUrlService.countShortUrls());
+        verify(mockShortUrlRepo, times(1)).count();
+    }
+
     @Test
     public void deleteByShortUrlPath_noErrors() {
         when(mockShortUrlRepo
@@ -172,6 +555,56 @@ public class ShortUrlServiceImplTests {
         shortUrlService.deleteByShortUrlPath(TEST_SHORTURLPATH);
     }
 
+    @Test
+    public void deleteByShortUrlPath_invalidatesCache() {
+        ShortUrl testShortUrl = createShortUrl();
+        shortUrlCache.put(testShortUrl.getShortUrlPath(),
+                          new ShortUrlRedirect(testShortUrl.getShortUrlPath(),
+                                               testShortUrl.getRedirectTo()));
+        when(mockShortUrlRepo
+                .existsByShortUrlPath(testShortUrl.getShortUrlPath()))
+             .thenReturn(true);
+
+        shortUrlService.deleteByShortUrlPath(testShortUrl.getShortUrlPath());
+
+        assertTrue("deleteByShortUrlPath should invalidate the cache",
+                   shortUrlCache.getIfPresent(
+                                   testShortUrl.getShortUrlPath()) == null);
+    }
+
+    @Test
+    public void deleteByShortUrlPath_deletesClickCount() {
+        when(mockShortUrlRepo
+                .existsByShortUrlPath(TEST_SHORTURLPATH))
+             .thenReturn(true);
+
+        shortUrlService.deleteByShortUrlPath(TEST_SHORTURLPATH);
+
+        verify(mockClickCountRepo).deleteByShortUrlPath(TEST_SHORTURLPATH);
+    }
+
+    @Test
+    public void countClicks_returnsPersistedClicks() {
+        shortUrlPathFilter.put(TEST_SHORTURLPATH);
+        when(mockShortUrlRepo
+                .existsByShortUrlPath(TEST_SHORTURLPATH))
+             .thenReturn(true);
+        when(mockClickCountRepo.findClicks(TEST_SHORTURLPATH))
+             .thenReturn(7L);
+
+        assertEquals("countClicks should return the persisted count",
+                     7L, shortUrlService.countClicks(TEST_SHORTURLPATH));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void countClicks_unknownThrowsNoSuchElem() {
+        when(mockShortUrlRepo
+                .existsByShortUrlPath(TEST_SHORTURLPATH))
+             .thenReturn(false);
+
+        shortUrlService.countClicks(TEST_SHORTURLPATH);
+    }
+
     @Test(expected = NoSuchElementException.class)
     public void deleteByShortUrlPath_unknownThrowsNoSuchElem() {
         when(mockShortUrlRepo
@@ -186,6 +619,19 @@ public class ShortUrlServiceImplTests {
                                             + counter.incrementAndGet()
                                             + ".co.nz");
         newShortUrl.setShortUrlPath("efgHIJK456" + counter.incrementAndGet());
+        shortUrlPathFilter.put(newShortUrl.getShortUrlPath());
         return newShortUrl;
     }
+
+    private RedirectTarget createRedirectTarget(final ShortUrl shortUrl) {
+        return new RedirectTarget() {
+            public String getRedirectTo() {
+                return shortUrl.getRedirectTo();
+            }
+
+            public Integer getCacheMaxAge() {
+                return shortUrl.getCacheMaxAge();
+            }
+        };
+    }
 }
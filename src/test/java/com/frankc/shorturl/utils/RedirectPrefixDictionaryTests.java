@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.frankc.shorturl.repositories.RedirectPrefixRepo;
+
+/**
+ * Unit Tests for RedirectPrefixDictionary.
+ *
+ * @author Frank Callaly
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class RedirectPrefixDictionaryTests {
+
+    private static final String PREFIX = "https://www.example.com";
+
+    @Mock
+    private RedirectPrefixRepo mockRedirectPrefixRepo;
+
+    @InjectMocks
+    private RedirectPrefixDictionary dictionary;
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(dictionary, "configuredPrefixes",
+                                     new String[0]);
+    }
+
+    @Test
+    public void encode_replacesKnownPrefixWithId() {
+        when(mockRedirectPrefixRepo.findAll())
+            .thenReturn(Collections.singletonMap(40, PREFIX));
+
+        assertEquals("~14~/page?q=1", dictionary.encode(PREFIX + "/page?q=1"));
+        assertEquals("~14~", dictionary.encode(PREFIX));
+        assertEquals("~14~#top", dictionary.encode(PREFIX + "#top"));
+    }
+
+    @Test
+    public void encode_leavesOtherUrlsAsTheyAre() {
+        when(mockRedirectPrefixRepo.findAll())
+            .thenReturn(Collections.singletonMap(1, PREFIX));
+
+        assertEquals("https://www.example.co/page",
+                     dictionary.encode("https://www.example.co/page"));
+        assertEquals("https://www.example.com.au/",
+                     dictionary.encode("https://www.example.com.au/"));
+        assertEquals("http://www.example.com/",
+                     dictionary.encode("http://www.example.com/"));
+        assertEquals(null, dictionary.encode(null));
+    }
+
+    @Test
+    public void decode_reversesEncode() {
+        when(mockRedirectPrefixRepo.findAll())
+            .thenReturn(Collections.singletonMap(1, PREFIX));
+
+        for (String url : new String[] {PREFIX, PREFIX + "/a~b?c=~d",
+                                        "ftp://files.example.com/f"}) {
+            assertEquals(url, dictionary.decode(dictionary.encode(url)));
+        }
+        assertEquals(null, dictionary.decode(null));
+    }
+
+    @Test
+    public void decode_reloadsForIdAddedByAnotherNode() {
+        Map<Integer, String> added = new HashMap<>();
+        added.put(1, PREFIX);
+        added.put(2, "http://other.example.com");
+        when(mockRedirectPrefixRepo.findAll())
+            .thenReturn(Collections.singletonMap(1, PREFIX), added);
+
+        assertEquals("~1~/", dictionary.encode(PREFIX + "/"));
+        assertEquals("http://other.example.com/x",
+                     dictionary.decode("~2~/x"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void decode_throwsForUnknownId() {
+        when(mockRedirectPrefixRepo.findAll())
+            .thenReturn(Collections.emptyMap());
+
+        dictionary.decode("~9~/x");
+    }
+
+    @Test
+    public void addConfiguredPrefixes_insertsOnlyMissingPrefixes() {
+        ReflectionTestUtils.setField(dictionary, "configuredPrefixes",
+                new String[] {PREFIX, " http://other.example.com ", ""});
+        when(mockRedirectPrefixRepo.findAll())
+            .thenReturn(Collections.singletonMap(1, PREFIX));
+
+        dictionary.addConfiguredPrefixes();
+
+        verify(mockRedirectPrefixRepo)
+            .insertIfAbsent("http://other.example.com");
+        verify(mockRedirectPrefixRepo, never()).insertIfAbsent(PREFIX);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addConfiguredPrefixes_rejectsPrefixWithPath() {
+        ReflectionTestUtils.setField(dictionary, "configuredPrefixes",
+                new String[] {PREFIX + "/shop"});
+        when(mockRedirectPrefixRepo.findAll())
+            .thenReturn(Collections.emptyMap());
+
+        try {
+            dictionary.addConfiguredPrefixes();
+        } finally {
+            verify(mockRedirectPrefixRepo, never()).insertIfAbsent(anyString());
+        }
+    }
+}
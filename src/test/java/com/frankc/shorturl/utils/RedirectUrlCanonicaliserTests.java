@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Unit Tests for RedirectUrlCanonicaliser.
+ *
+ * @author Frank Callaly
+ */
+public class RedirectUrlCanonicaliserTests {
+
+    private final RedirectUrlCanonicaliser canonicaliser =
+            new RedirectUrlCanonicaliser();
+
+    @Test
+    public void canonicalUrl_lowerCasesSchemeAndHost() {
+        assertEquals("https://www.example.com/Page?Q=A#F",
+                     canonicaliser.canonicalUrl(
+                             "HTTPS://WWW.Example.COM/Page?Q=A#F"));
+    }
+
+    @Test
+    public void canonicalUrl_removesDefaultPorts() {
+        assertEquals("http://example.com/",
+                     canonicaliser.canonicalUrl("http://example.com:80/"));
+        assertEquals("https://example.com/",
+                     canonicaliser.canonicalUrl("https://example.com:443/"));
+        assertEquals("ftp://example.com/f",
+                     canonicaliser.canonicalUrl("ftp://example.com:21/f"));
+        assertEquals("http://example.com:443/",
+                     canonicaliser.canonicalUrl("http://example.com:443/"));
+    }
+
+    @Test
+    public void canonicalUrl_addsPathOnlyWhenEmpty() {
+        assertEquals("http://example.com/",
+                     canonicaliser.canonicalUrl("http://example.com"));
+        assertEquals("http://example.com/?a=b",
+                     canonicaliser.canonicalUrl("http://example.com?a=b"));
+        assertEquals("http://example.com/page",
+                     canonicaliser.canonicalUrl("http://example.com/page"));
+        assertEquals("http://example.com/page/",
+                     canonicaliser.canonicalUrl("http://example.com/page/"));
+    }
+
+    @Test
+    public void hash_isEqualForEquivalentUrls() {
+        byte[] hash = canonicaliser.hash("http://example.com", null);
+
+        assertEquals(RedirectUrlCanonicaliser.HASH_LENGTH, hash.length);
+        assertArrayEquals(hash,
+                          canonicaliser.hash("HTTP://EXAMPLE.com:80/", null));
+        assertFalse(Arrays.equals(hash,
+                                  canonicaliser.hash("https://example.com",
+                                                     null)));
+        assertFalse(Arrays.equals(hash,
+                                  canonicaliser.hash("http://example.com/a",
+                                                     null)));
+    }
+
+    @Test
+    public void hash_differsByCacheMaxAge() {
+        byte[] hash = canonicaliser.hash("HTTP://EXAMPLE.com:80", 60);
+
+        assertArrayEquals(hash, canonicaliser.hash("http://example.com/", 60));
+        assertFalse(Arrays.equals(hash,
+                                  canonicaliser.hash("http://example.com",
+                                                     null)));
+        assertFalse(Arrays.equals(hash,
+                                  canonicaliser.hash("http://example.com",
+                                                     6)));
+    }
+}
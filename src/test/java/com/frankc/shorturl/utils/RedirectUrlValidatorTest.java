@@ -16,9 +16,13 @@
  ******************************************************************************/
 package com.frankc.shorturl.utils;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.net.MalformedURLException;
+import java.util.Random;
 
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -74,4 +78,112 @@ public class RedirectUrlValidatorTest {
         validator.validateUrl("http://mw1.google.com/mw-earth-vectordb"
             + "/kml-samples/gp/seattle/gigapxl/$[level]/r$[y]_c$[x].jpg\r\n");
     }
+
+    @Test
+    public void normaliseUrl_matchesFullChecks() {
+        String[] urls = {
+            "www.google.ie", "http://www.google.ie", "HTtP://www.google.ie",
+            "https://example.com/a/b.html?x=1&y=2#top", "ftp://example.com/f",
+            "file:///etc/passwd", "mailto:someone@example.com",
+            "http:/example.com", "//example.com", "", "http://",
+            "example.com:8080/x", "example.com:65535", "example.com:65536",
+            "example.com:", "example.com:123456", "example.com:80x",
+            "user:pass@example.com/", "[::1]/x", "http://[::1]:80/",
+            "1.2.3.4/x", "256.1.1.1/x", "localhost:8080", "example",
+            "example.invalidtld", "example.com.", "-example.com",
+            "example-.com", "ex_ample.com", "a..com", "xn--bcher-kva.ch",
+            "exämple.com", "example.com/ä", "example.com/a b",
+            "example.com//a", "example.com/a//", "example.com/./a",
+            "example.com/../a", "example.com/a/..", "example.com/a/../..",
+            "example.com/.../a", "example.com/%20", "example.com/%2",
+            "example.com/%zz", "example.com/a%", "example.com?q=%41",
+            "example.com?q=%4", "example.com/[x]", "example.com?q=[x]",
+            "example.com#[x]", "example.com#a#b", "example.com?a?b",
+            "example.com/a\"b", "example.com?a<b", "example.com#a{b}",
+            "example.com/a|b", "example.com/a^b", "example.com/a`b",
+            "example.com/$,;:@&=+!~*'()_-.", "example.com?$,;:@&=+!~*'()/",
+            "example.com\r\n", "example.com\t", "example.com/a\u0000",
+            "http://mw1.google.com/mw-earth-vectordb/kml-samples/gp/seattle"
+            + "/gigapxl/$[level]/r$[y]_c$[x].jpg"};
+
+        for (String url : urls) {
+            assertEquals(url, fullOutcome(url), outcome(url));
+        }
+    }
+
+    @Test
+    public void normaliseUrl_matchesFullChecksForRandomUrls() {
+        String[] schemes = {"", "http://", "HTTPS://", "ftp://", "file://",
+                            "Http://", "mailto:", "http:/", "//", "hxxp://"};
+        String[] hosts = {"example.com", "www.example.co.uk", "EXAMPLE.COM",
+                          "localhost", "a-b.io", "-a.com", "a..com",
+                          "1.2.3.4", "256.1.1.1", "example.zzzz",
+                          "example.com.", "xn--bcher-kva.ch", "ex_ample.com",
+                          "", "user@example.com", "[::1]", "exämple.com"};
+        String[] ports = {"", "", "", ":80", ":65535", ":65536", ":",
+                          ":123456", ":x"};
+        String[] pieces = {"a", "Z", "9", "-", "_", ".", "..", "!", "~", "*",
+                           "'", "(", ")", ":", "@", "&", "=", "+", "$", ",",
+                           ";", "/", "//", "%20", "%2", "%zz", "%", "?", "#",
+                           "[", "]", "\"", "<", ">", "{", "}", "|", "\\",
+                           "^", "`", " ", "ä", "\t"};
+
+        Random random = new Random(42);
+        for (int n = 0; n < 50000; n++) {
+            StringBuilder url = new StringBuilder()
+                    .append(schemes[random.nextInt(schemes.length)])
+                    .append(hosts[random.nextInt(hosts.length)])
+                    .append(ports[random.nextInt(ports.length)]);
+            if (random.nextBoolean()) {
+                url.append('/');
+            }
+            int numPieces = random.nextInt(8);
+            for (int i = 0; i < numPieces; i++) {
+                url.append(random.nextInt(3) == 0
+                           ? pieces[random.nextInt(pieces.length)] : "a/");
+            }
+
+            assertEquals(url.toString(), fullOutcome(url.toString()),
+                         outcome(url.toString()));
+        }
+    }
+
+    @Test
+    public void fastNormaliseUrl_handlesCommonUrls()
+                                        throws MalformedURLException {
+        assertEquals("https://example.com/a?b=c#d",
+                     validator.fastNormaliseUrl("HTTPS://example.com/a?b=c#d"));
+        assertEquals("http://www.example.com:8080/",
+                     validator.fastNormaliseUrl("www.example.com:8080/"));
+        assertNotNull(validator.fastNormaliseUrl(
+                "https://www.example.com/some/landing/page?utm_source=x"
+                + "&utm_medium=email&utm_campaign=launch"));
+
+        assertNull(validator.fastNormaliseUrl("user@example.com"));
+        assertNull(validator.fastNormaliseUrl("http://[::1]/"));
+        assertNull(validator.fastNormaliseUrl("http://exämple.com/"));
+        assertNull(validator.fastNormaliseUrl("http://example.com/../a"));
+    }
+
+    @Test(expected = MalformedURLException.class)
+    public void fastNormaliseUrl_rejectsInvalidHost()
+                                        throws MalformedURLException {
+        validator.fastNormaliseUrl("http://example.zzzz/");
+    }
+
+    private String outcome(final String url) {
+        try {
+            return validator.normaliseUrl(url);
+        } catch (MalformedURLException e) {
+            return "invalid";
+        }
+    }
+
+    private String fullOutcome(final String url) {
+        try {
+            return validator.fullNormaliseUrl(url);
+        } catch (MalformedURLException e) {
+            return "invalid";
+        }
+    }
 }
@@ -19,7 +19,18 @@ package com.frankc.shorturl.utils;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.text.IsEmptyString.isEmptyOrNullString;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -36,4 +47,56 @@ public class ShortUrlGeneratorPathTests {
         assertThat(newShortUrl, is(not(isEmptyOrNullString())));
     }
 
+    @Test
+    public void generateBase62_hasConfiguredLengthAndCharset() {
+        for (boolean secure : new boolean[] {false, true}) {
+            ShortUrlPathGenerator generator =
+                    new ShortUrlPathGenerator(7, secure);
+
+            for (int i = 0; i < 1000; ++i) {
+                String newShortUrl = generator.generateBase62();
+                assertEquals(7, newShortUrl.length());
+                assertTrue("Path should be Base62: " + newShortUrl,
+                           newShortUrl.matches("[0-9A-Za-z]+"));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_lengthOverColumnWidthThrowsIllegalArg() {
+        new ShortUrlPathGenerator(ShortUrlPathGenerator.MAX_LENGTH + 1,
+                                  false);
+    }
+
+    @Test
+    public void generateBase62_concurrentPathsAreUnique() throws Exception {
+        final int threads = 8;
+        final int pathsPerThread = 50000;
+        final ShortUrlPathGenerator generator = new ShortUrlPathGenerator();
+        final Set<String> paths = ConcurrentHashMap.newKeySet();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; ++t) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < pathsPerThread; ++i) {
+                    String path = generator.generateBase62();
+                    assertEquals(ShortUrlPathGenerator.DEFAULT_LENGTH,
+                                 path.length());
+                    paths.add(path);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // 400k draws from 62^11 values, a collision is vanishingly unlikely
+        assertEquals(threads * pathsPerThread, paths.size());
+    }
 }
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (C) 2019 Frank Callaly
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package com.frankc.shorturl.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Unit Tests for UniqueShortUrlPathGenerator.
+ *
+ * @author Frank Callaly
+ */
+public class UniqueShortUrlPathGeneratorTests {
+
+    private static final String TEST_KEY = "testKey";
+
+    // a fixed instant, every id must then come from the sequence
+    private static final long FIXED_MILLIS = 1577836800000L;
+
+    @Test
+    public void generateShortUrlPath_hasFixedLengthAndCharset() {
+        UniqueShortUrlPathGenerator generator =
+                new UniqueShortUrlPathGenerator(1, TEST_KEY);
+
+        for (int i = 0; i < 1000; ++i) {
+            String path = generator.generateShortUrlPath();
+            assertEquals(UniqueShortUrlPathGenerator.LENGTH, path.length());
+            assertTrue("Path should be Base62: " + path,
+                       path.matches("[0-9A-Za-z]+"));
+        }
+    }
+
+    @Test
+    public void nextId_sequenceOverflowWaitsForClock() {
+        // the clock moves on a millisecond every 100 reads
+        AtomicLong reads = new AtomicLong();
+        UniqueShortUrlPathGenerator generator =
+                new UniqueShortUrlPathGenerator(1, TEST_KEY,
+                        () -> FIXED_MILLIS + reads.getAndIncrement() / 100);
+        Set<Long> ids = new HashSet<>();
+
+        // more than the 4096 ids available in one millisecond
+        for (int i = 0; i < 10000; ++i) {
+            long id = generator.nextId();
+            assertTrue(ids.add(id));
+            assertTrue("Id should not be ahead of the clock",
+                       UniqueShortUrlPathGenerator.millisOf(id)
+                           <= FIXED_MILLIS + reads.get() / 100);
+        }
+    }
+
+    @Test
+    public void nextId_clockGoingBackwardsStaysUnique() {
+        long[] now = {FIXED_MILLIS};
+        UniqueShortUrlPathGenerator generator =
+                new UniqueShortUrlPathGenerator(1, TEST_KEY, () -> now[0]);
+
+        long before = generator.nextId();
+        now[0] -= 1000;
+
+        assertTrue(generator.nextId() > before);
+    }
+
+    @Test
+    public void nextId_clockGoingBackwardsWaitsOnceSequenceUsed()
+                                                    throws Exception {
+        AtomicLong now = new AtomicLong(FIXED_MILLIS);
+        UniqueShortUrlPathGenerator generator =
+                new UniqueShortUrlPathGenerator(1, TEST_KEY, now::get);
+        for (int i = 0; i < 4096; ++i) {
+            generator.nextId();
+        }
+        now.addAndGet(-1000);
+
+        Thread catchUp = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            now.set(FIXED_MILLIS + 1);
+        });
+        catchUp.start();
+        long id = generator.nextId();
+        long clockWhenIssued = now.get();
+        catchUp.join();
+
+        assertEquals("Id should only be issued once the clock caught up",
+                     FIXED_MILLIS + 1, clockWhenIssued);
+        assertEquals(FIXED_MILLIS + 1,
+                     UniqueShortUrlPathGenerator.millisOf(id));
+    }
+
+    @Test
+    public void generateShortUrlPath_nodesNeverCollide() {
+        UniqueShortUrlPathGenerator node1 =
+                new UniqueShortUrlPathGenerator(1, TEST_KEY,
+                                                () -> FIXED_MILLIS);
+        UniqueShortUrlPathGenerator node2 =
+                new UniqueShortUrlPathGenerator(2, TEST_KEY,
+                                                () -> FIXED_MILLIS);
+        Set<String> paths = new HashSet<>();
+
+        for (int i = 0; i < 4096; ++i) {
+            assertTrue(paths.add(node1.generateShortUrlPath()));
+            assertTrue(paths.add(node2.generateShortUrlPath()));
+        }
+    }
+
+    @Test
+    public void generateShortUrlPath_concurrentPathsAreUnique()
+                                                    throws Exception {
+        final int threads = 8;
+        final int pathsPerThread = 50000;
+        final UniqueShortUrlPathGenerator generator =
+                new UniqueShortUrlPathGenerator(1, TEST_KEY);
+        final Set<String> paths = ConcurrentHashMap.newKeySet();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; ++t) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < pathsPerThread; ++i) {
+                    paths.add(generator.generateShortUrlPath());
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(threads * pathsPerThread, paths.size());
+    }
+
+    @Test
+    public void permute_isReversibleAndKeyed() {
+        UniqueShortUrlPathGenerator generator =
+                new UniqueShortUrlPathGenerator(1, TEST_KEY);
+        UniqueShortUrlPathGenerator otherKey =
+                new UniqueShortUrlPathGenerator(1, "otherKey");
+
+        for (long id = 0; id < 1000; ++id) {
+            assertEquals(id, generator.unpermute(generator.permute(id)));
+            assertNotEquals(generator.permute(id), otherKey.permute(id));
+        }
+        assertEquals(-1L, generator.unpermute(generator.permute(-1L)));
+    }
+
+    @Test
+    public void generateShortUrlPath_consecutivePathsAreUnrelated() {
+        UniqueShortUrlPathGenerator generator =
+                new UniqueShortUrlPathGenerator(1, TEST_KEY,
+                                                () -> FIXED_MILLIS);
+        String previous = generator.generateShortUrlPath();
+
+        for (int i = 0; i < 100; ++i) {
+            String next = generator.generateShortUrlPath();
+            int sameChars = 0;
+            for (int c = 0; c < next.length(); ++c) {
+                if (next.charAt(c) == previous.charAt(c)) {
+                    ++sameChars;
+                }
+            }
+            assertTrue("Consecutive paths should differ throughout: "
+                       + previous + " " + next, sameChars < 5);
+            previous = next;
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_nodeIdUnsetThrowsIllegalArg() {
+        new UniqueShortUrlPathGenerator(-1, TEST_KEY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_keyUnsetThrowsIllegalArg() {
+        new UniqueShortUrlPathGenerator(1, "");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_nodeIdOutOfRangeThrowsIllegalArg() {
+        new UniqueShortUrlPathGenerator(
+                UniqueShortUrlPathGenerator.MAX_NODE_ID + 1, TEST_KEY);
+    }
+}